@@ -0,0 +1,156 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks for synthesizing beeps, decoding samples, mixing and rendering the metronome
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AudioBenchmark {
+
+    /**
+     * The number of blocks rendered per invocation of metronomeLoop: about a second of audio
+     */
+    private static final int LOOP_BLOCKS = 86;
+
+    @Param({"60", "120", "300"})
+    public double bpm;
+
+    private AudioFormat format;
+    private byte[] block;
+    private byte[] beep;
+    private VoiceMixer mixer;
+    private MetronomeLoop loop;
+    private MetronomeLoop loggedLoop;
+    private EventRing events;
+    private File sample;
+    private SampleCache sampleCache;
+
+    @Setup
+    public void setup() throws IOException {
+        format = Audio.defaultFormat();
+        block = new byte[Audio.BLOCK_FRAMES * format.getFrameSize()];
+        beep = Audio.getBeep(880, format);
+        mixer = new VoiceMixer(format, Audio.VOICES, Audio.BLOCK_FRAMES);
+
+        Model model = new Model();
+        model.setVolume(0.75);
+        byte[] hiBeep = Audio.getBeep(1760, format);
+        AtomicReference<MetronomeParams> params =
+                new AtomicReference<>(new MetronomeParams(bpm, 1760, 880, 4, hiBeep, beep));
+        NullSink sink = new NullSink(format);
+        sink.open(4096);
+        loop = new MetronomeLoop(sink, model, params, new AtomicReference<SessionTimeline>(), TimingMetrics.get(),
+                new AdaptiveBufferSize(LatencyProfile.BALANCED, format, Audio.BLOCK_FRAMES));
+        loggedLoop = new MetronomeLoop(sink, model, params, new AtomicReference<SessionTimeline>(),
+                TimingMetrics.get(), new AdaptiveBufferSize(LatencyProfile.BALANCED, format, Audio.BLOCK_FRAMES));
+        events = new EventRing(4096);
+        loggedLoop.logTo(events, true);
+
+        // a typical click sample: a quarter of a second of 48kHz stereo, which has to be resampled and mixed down
+        AudioFormat sampleFormat = new AudioFormat(48000, 16, 2, true, false);
+        sample = File.createTempFile("click", ".wav");
+        WavFileSink wav = new WavFileSink(sample, sampleFormat);
+        wav.open(0);
+        byte[] tone = Wavetable.renderTone(880, sampleFormat, 250, Wavetable.Envelope.NONE, 0.5);
+        wav.write(tone, 0, tone.length);
+        wav.close();
+        sampleCache = new SampleCache(1 << 20);
+        sampleCache.get(sample, format);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sample.delete();
+    }
+
+    /**
+     * Getting a beep that's already been rendered
+     */
+    @Benchmark
+    public byte[] getBeepCached() {
+        return Audio.getBeep(880, format);
+    }
+
+    /**
+     * Synthesizing a beep from scratch, which is what getBeep does the first time it sees a tone
+     */
+    @Benchmark
+    public byte[] getBeepUncached() {
+        return Wavetable.renderTone(880, format, 100, Wavetable.Envelope.NONE, 1 / (2 * Math.PI));
+    }
+
+    /**
+     * Getting a sample that's already been decoded, which is all publishing settings does once it's loaded
+     */
+    @Benchmark
+    public byte[] getSampleCached() {
+        return sampleCache.getIfLoaded(sample, format);
+    }
+
+    /**
+     * Memory-mapping, decoding and resampling a sample, which the loader thread does the first time it's chosen
+     */
+    @Benchmark
+    public byte[] decodeSample() throws IOException {
+        return SampleDecoder.decode(sample, format, 0.5);
+    }
+
+    /**
+     * Mixing one block with a beep playing and a volume ramp, which is where the volume gets adjusted now
+     */
+    @Benchmark
+    public byte[] mixBlock() {
+        if (mixer.isIdle()) mixer.trigger(beep, mixer.getFramesRendered());
+        mixer.render(block, Audio.BLOCK_FRAMES, 0.5, 0.75);
+        return block;
+    }
+
+    /**
+     * About a second of the metronome thread's loop, writing to a sink that throws everything away
+     */
+    @Benchmark
+    @OperationsPerInvocation(LOOP_BLOCKS)
+    public void metronomeLoop() throws IOException {
+        for (int i = 0; i < LOOP_BLOCKS; i++) loop.playBlock(true, 1);
+    }
+
+    /**
+     * The same with every beat published to a practice log's ring, which is emptied after each second so that the
+     * ring never fills and starts throwing events away
+     */
+    @Benchmark
+    @OperationsPerInvocation(LOOP_BLOCKS)
+    public void metronomeLoopLogged() throws IOException {
+        for (int i = 0; i < LOOP_BLOCKS; i++) loggedLoop.playBlock(true, 1);
+        events.drain(IGNORE_EVENTS, Integer.MAX_VALUE);
+    }
+
+    private static final EventRing.Reader IGNORE_EVENTS = new EventRing.Reader() {
+        @Override
+        public void event(int kind, long millis, long frame, float value) {}
+    };
+}
@@ -0,0 +1,18 @@
+package metrotimer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Runs the JMH benchmarks, writing the results as JSON to jmh-result.json unless told otherwise, so that runs from
+ * different commits can be compared. Any arguments are passed straight on to JMH, and take priority.
+ */
+public class BenchmarkRunner {
+
+    public static void main(String[] args) throws Exception {
+        List<String> jmhArgs = new ArrayList<>(Arrays.asList("-rf", "json", "-rff", "jmh-result.json"));
+        jmhArgs.addAll(Arrays.asList(args));
+        org.openjdk.jmh.Main.main(jmhArgs.toArray(new String[0]));
+    }
+}
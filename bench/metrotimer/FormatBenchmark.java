@@ -0,0 +1,71 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks for rendering the metronome in each output format a sound system is likely to play natively. Every
+ * invocation renders one second of audio, so the score is the CPU time a second of playing takes: 10 ms/op is 1% of
+ * one core.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FormatBenchmark {
+
+    /**
+     * The output format, as sample rate/bits/channels, all little-endian except the old default
+     */
+    @Param({"44100/16/1/be", "44100/16/2", "48000/16/2", "48000/24/2", "48000/32/2"})
+    public String format;
+
+    private MetronomeLoop loop;
+    private int blocksPerSecond;
+
+    @Setup
+    public void setup() throws IOException {
+        String[] parts = format.split("/");
+        float rate = Float.parseFloat(parts[0]);
+        AudioFormat output = new AudioFormat(rate, Integer.parseInt(parts[1]), Integer.parseInt(parts[2]), true,
+                parts.length > 3 && parts[3].equals("be"));
+        AudioFormat toneFormat = Audio.toneFormat(output);
+        blocksPerSecond = Math.round(rate / Audio.BLOCK_FRAMES);
+
+        Model model = new Model();
+        model.setVolume(0.75);
+        List<ClickVoice> voices = ClickVoice.parseList("3:4@660, 2:1@1320x0.5");
+        AtomicReference<MetronomeParams> params = new AtomicReference<>(new MetronomeParams(120, 1760, 880, 4,
+                Audio.getBeep(1760, toneFormat), Audio.getBeep(880, toneFormat), voices,
+                Audio.getVoiceBeeps(voices, toneFormat)));
+        NullSink sink = new NullSink(output);
+        sink.open(8192);
+        loop = new MetronomeLoop(sink, model, params, new AtomicReference<SessionTimeline>(), TimingMetrics.get(),
+                new AdaptiveBufferSize(LatencyProfile.BALANCED, output, Audio.BLOCK_FRAMES));
+    }
+
+    /**
+     * One second of the metronome thread's loop, with two extra voices, writing to a sink that throws everything away
+     */
+    @Benchmark
+    public void oneSecond() throws IOException {
+        for (int i = 0; i < blocksPerSecond; i++) loop.playBlock(true, 1);
+    }
+}
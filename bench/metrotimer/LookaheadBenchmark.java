@@ -0,0 +1,72 @@
+package metrotimer;
+
+import java.util.Collections;
+
+/**
+ * Measures how big a lookahead has to be to ride out the output thread stalling: plays the metronome in real time
+ * through a LookaheadSink in front of a PacedSink the size of the balanced profile's buffer, with every read of the
+ * volume now and then taking as long as a bad GC pause, and reports the near misses, underruns and lowest lookahead
+ * fill for each lookahead size. JMH can't measure this, since it's about whether the output keeps up rather than how
+ * fast anything is.
+ *
+ * Usage: LookaheadBenchmark [seconds each] [stall ms] [lookahead ms...]. Stalls come every 2 seconds.
+ */
+public class LookaheadBenchmark {
+
+    /**
+     * How often the output thread stalls, in blocks: about every 2 seconds
+     */
+    private static final int STALL_EVERY_BLOCKS = 172;
+
+    public static void main(String[] args) throws Exception {
+        int seconds = (args.length > 0) ? Integer.parseInt(args[0]) : 10;
+        int stallMs = (args.length > 1) ? Integer.parseInt(args[1]) : 60;
+        int[] lookaheads = {11, 23, 46, 92};
+        if (args.length > 2) {
+            lookaheads = new int[args.length - 2];
+            for (int i = 2; i < args.length; i++) lookaheads[i - 2] = Integer.parseInt(args[i]);
+        }
+
+        System.out.printf("Output thread stalling %d ms every 2 s, line buffer %d ms%n", stallMs,
+                LatencyProfile.BALANCED.getStartMs());
+        for (int lookaheadMs : lookaheads) {
+            PacedSink line = new PacedSink(Audio.defaultFormat(), Scheduler.SYSTEM);
+            int frames = (int) (line.getFormat().getSampleRate() * lookaheadMs / 1000);
+            Audio audio = new Audio(new LookaheadSink(line, frames, Audio.BLOCK_FRAMES, Scheduler.SYSTEM));
+            audio.setModel(new StallingModel(stallMs));
+            TimingMetrics metrics = TimingMetrics.get();
+            metrics.reset();
+            audio.start(120, 880, 440, 4, Collections.<ClickVoice>emptyList(), null);
+            Thread.sleep(seconds * 1000L);
+            System.out.printf("Lookahead %5.1f ms   near misses %4d   underruns %4d   lowest fill %6.1f ms%n",
+                    metrics.getLookaheadMillis(), metrics.getNearMisses(), metrics.getUnderruns(),
+                    metrics.getMinLookaheadFillMillis());
+            audio.shutDown();
+        }
+    }
+
+    /**
+     * A Model whose volume takes stallMs to read every STALL_EVERY_BLOCKS reads. Only the output thread reads it
+     */
+    private static final class StallingModel extends Model {
+
+        private final int stallMs;
+        private int reads = 0;
+
+        StallingModel(int stallMs) {
+            this.stallMs = stallMs;
+        }
+
+        @Override
+        public double getVolume() {
+            if (++reads % STALL_EVERY_BLOCKS == 0) {
+                try {
+                    Thread.sleep(stallMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return super.getVolume();
+        }
+    }
+}
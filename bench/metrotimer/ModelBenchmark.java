@@ -0,0 +1,59 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for telling subscribers about changes to the Model
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ModelBenchmark {
+
+    @Param({"1", "4", "16"})
+    public int subscribers;
+
+    private Model model;
+
+    @Setup
+    public void setup(final Blackhole blackhole) {
+        model = new Model();
+        for (int i = 0; i < subscribers; i++) {
+            model.addSubscriber(new ModelListener() {
+                @Override
+                public void modelChanged(int changedFields) {
+                    blackhole.consume(model.getBpm());
+                }
+            });
+        }
+    }
+
+    @Benchmark
+    public void notifySubscribers() {
+        model.notifySubscribers();
+    }
+
+    /**
+     * A setter, which stores the value and then notifies every subscriber
+     */
+    @Benchmark
+    public void setVolume() {
+        model.setVolume(0.5);
+    }
+}
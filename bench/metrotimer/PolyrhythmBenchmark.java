@@ -0,0 +1,73 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Benchmarks for rendering the metronome with extra click voices, to see how the cost grows with the number of voices
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PolyrhythmBenchmark {
+
+    /**
+     * The number of blocks rendered per invocation: about a second of audio
+     */
+    private static final int BLOCKS = 86;
+
+    @Param({"0", "4", "12"})
+    public int voices;
+
+    @Param({"44100", "48000"})
+    public int sampleRate;
+
+    private byte[] block;
+    private VoiceMixer mixer;
+    private ClickRenderer renderer;
+
+    @Setup
+    public void setup() {
+        AudioFormat format = new AudioFormat(sampleRate, 16, 1, true, true);
+        // 2 against 4, 3 against 4 and so on, each at its own pitch
+        List<ClickVoice> voiceList = new ArrayList<>();
+        for (int i = 0; i < voices; i++) voiceList.add(new ClickVoice(i + 2, 4, 440 + 110 * i, 0.5f));
+        MetronomeParams params = new MetronomeParams(120, 1760, 880, 4, Audio.getBeep(1760, format),
+                Audio.getBeep(880, format), voiceList, Audio.getVoiceBeeps(voiceList, format));
+        block = new byte[Audio.BLOCK_FRAMES * format.getFrameSize()];
+        mixer = new VoiceMixer(format, Audio.VOICES, Audio.BLOCK_FRAMES);
+        renderer = new ClickRenderer(sampleRate, new AtomicReference<>(params), mixer);
+    }
+
+    /**
+     * About a second of scheduling and mixing every voice
+     */
+    @Benchmark
+    @OperationsPerInvocation(BLOCKS)
+    public byte[] renderBlock() {
+        for (int i = 0; i < BLOCKS; i++) {
+            renderer.render(Audio.BLOCK_FRAMES);
+            mixer.render(block, Audio.BLOCK_FRAMES, 0.75, 0.75);
+        }
+        return block;
+    }
+}
@@ -0,0 +1,85 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for loading a bank of presets as the app does at startup: reading the file, then rendering every preset
+ * ready to switch to. Each is timed once per fork, in a JVM that has done nothing else, so the score is what a user
+ * waits for at startup, class loading and all.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class PresetBenchmark {
+
+    /**
+     * The number of presets in the bank
+     */
+    @Param({"300"})
+    public int presets;
+
+    private File file;
+    private AudioFormat toneFormat;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        List<Preset> list = new ArrayList<>();
+        for (int i = 0; i < presets; i++) {
+            List<ClickVoice> voices = ClickVoice.parseList((i % 3 == 0) ? "" : "3:4@" + (440 + 55 * (i % 8)));
+            list.add(new Preset("Song " + (i + 1), 60 + i % 120, i % 7, 1760, 880 + 110 * (i % 4), voices, i % 5 * 60));
+        }
+        file = File.createTempFile("presets", ".mtp");
+        PresetBank.of(list).write(file);
+        toneFormat = Audio.toneFormat(new AudioFormat(48000, 16, 2, true, false));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        file.delete();
+    }
+
+    /**
+     * Read the bank file
+     */
+    @Benchmark
+    public PresetBank load() throws IOException {
+        return PresetBank.read(file);
+    }
+
+    /**
+     * Read the bank file and render every preset in it, as the app does before presets can be switched to
+     */
+    @Benchmark
+    public Map<Preset, MetronomeParams> loadAndRender() throws IOException {
+        Map<Float, byte[]> beeps = new HashMap<>();
+        Map<Preset, MetronomeParams> params = new HashMap<>();
+        for (Preset p : PresetBank.read(file).getPresets()) {
+            params.put(p, RenderedPresets.renderPreset(p, toneFormat, null, null, beeps));
+        }
+        return params;
+    }
+}
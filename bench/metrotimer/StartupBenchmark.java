@@ -0,0 +1,76 @@
+package metrotimer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Measures how long the app takes to start, by launching it over and over with StartupProbe turned on and reporting
+ * the time to the window being ready and the time from pressing start to the first click. JMH can't measure this,
+ * since every run needs a fresh JVM.
+ *
+ * Usage: StartupBenchmark [runs] [command...]. The command defaults to running Main from this JVM's class path, in
+ * headless mode if there's no display; give target/image/bin/metrotimer to measure the runtime image instead. The
+ * probe is turned on through METROTIMER_OPTS as well as on the default command line, so the image's launcher picks
+ * it up too.
+ */
+public class StartupBenchmark {
+
+    private static final Pattern RESULT =
+            Pattern.compile("Startup: ready after (\\d+) ms, first click heard ([\\d.]+) ms after pressing start");
+
+    public static void main(String[] args) throws Exception {
+        int runs = 10;
+        List<String> command = new ArrayList<>();
+        if (args.length > 0) {
+            runs = Integer.parseInt(args[0]);
+            command.addAll(Arrays.asList(args).subList(1, args.length));
+        }
+        if (command.isEmpty()) {
+            command.addAll(Arrays.asList(System.getProperty("java.home") + File.separator + "bin" + File.separator
+                    + "java", "-Dmetrotimer.probe=true", "-cp", System.getProperty("java.class.path"), "metrotimer.Main"));
+            if (System.getenv("DISPLAY") == null) command.add("--headless");
+        }
+
+        List<Double> ready = new ArrayList<>();
+        List<Double> firstClick = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            ProcessBuilder builder = new ProcessBuilder(command).redirectErrorStream(true);
+            builder.environment().put("METROTIMER_OPTS", "-Dmetrotimer.probe=true");
+            Process process = builder.start();
+            process.getOutputStream().close();
+            Matcher result = null;
+            try (BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    Matcher m = RESULT.matcher(line);
+                    if (m.find()) result = m;
+                }
+            }
+            process.waitFor();
+            if (result == null) {
+                System.err.println("Run " + (i + 1) + " didn't report its startup times");
+                System.exit(1);
+            }
+            ready.add(Double.parseDouble(result.group(1)));
+            firstClick.add(Double.parseDouble(result.group(2)));
+        }
+        System.out.println("Command: " + String.join(" ", command));
+        report("Time to window (ms)", ready);
+        report("Time to first click (ms)", firstClick);
+    }
+
+    private static void report(String name, List<Double> values) {
+        Collections.sort(values);
+        System.out.printf("%-26s median %7.1f   min %7.1f   max %7.1f   (%d runs)%n", name,
+                values.get(values.size() / 2), values.get(0), values.get(values.size() - 1), values.size());
+    }
+}
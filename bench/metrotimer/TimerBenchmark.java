@@ -0,0 +1,64 @@
+package metrotimer;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for what the timer does every second
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TimerBenchmark {
+
+    private Model model;
+    private TimerController timerController;
+
+    /**
+     * The timer's clock. Moved on a second before every tick
+     */
+    private SimulatedScheduler scheduler;
+
+    @Setup
+    public void setup() {
+        model = new Model();
+        model.addSubscriber(new ModelListener() {
+            @Override
+            public void modelChanged(int changedFields) {}
+        });
+        model.setSavedTime(99, 59);
+        model.restoreSavedTime();
+        scheduler = new SimulatedScheduler();
+        timerController = new TimerController(scheduler);
+        timerController.setModel(model);
+        timerController.setAudio(new Audio(new NullSink(Audio.defaultFormat())));
+        timerController.resetCountdown();
+    }
+
+    /**
+     * One tick of a running timer, a second after the last. The timer is wound back before it runs out so no alarms
+     * go off
+     */
+    @Benchmark
+    public long tick() {
+        scheduler.advance(1_000_000_000);
+        if (model.getTimerMin() == 0) {
+            model.restoreSavedTime();
+            timerController.resetCountdown();
+        }
+        return timerController.tick();
+    }
+}
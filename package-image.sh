@@ -0,0 +1,59 @@
+#!/bin/sh
+# Builds a self-contained MetroTimer in target/image: a cut-down Java runtime with JavaFX built in (so nothing else
+# needs installing), plus a class data sharing archive so it starts faster. Run it from anywhere; afterwards start
+# MetroTimer with target/image/bin/metrotimer (add --headless to run it without a window).
+#
+# You need a JDK 11 or newer (with jlink) and Maven on your command path.
+
+# The path to the JavaFX 11 jmods, ie .../javafx-jmods-11.../
+# Leave it blank to use the JavaFX jars that Maven downloads when building
+PATH_TO_FX_MODS=""
+
+# You don't need to change anything below here
+set -e
+cd "$(dirname "$0")"
+IMAGE="$(pwd)/target/image"
+
+mvn -B -q package -DskipTests
+
+if [ -z "$PATH_TO_FX_MODS" ]; then
+    FX_VERSION=$(sed -n 's:.*<javafx.version>\(.*\)</javafx.version>.*:\1:p' pom.xml)
+    case "$(uname -s)" in
+        Darwin) FX_PLATFORM=mac ;;
+        *) FX_PLATFORM=linux ;;
+    esac
+    PATH_TO_FX_MODS=$(ls "$HOME"/.m2/repository/org/openjfx/javafx-*/"$FX_VERSION"/*-"$FX_PLATFORM".jar | tr '\n' ':')
+fi
+
+# only the modules MetroTimer uses (jdeps --print-module-deps lists them)
+rm -rf "$IMAGE"
+jlink --module-path "$PATH_TO_FX_MODS" \
+      --add-modules java.desktop,java.management,jdk.jfr,javafx.controls,javafx.fxml \
+      --strip-debug --no-header-files --no-man-pages --compress=2 \
+      --output "$IMAGE"
+mkdir -p "$IMAGE/app"
+cp target/metrotimer-*.jar "$IMAGE/app/metrotimer.jar"
+
+cat > "$IMAGE/bin/metrotimer" <<'EOF'
+#!/bin/sh
+# Starts MetroTimer. Any options for the JVM can be given in METROTIMER_OPTS
+DIR="$(cd "$(dirname "$0")/.." && pwd)"
+exec "$DIR/bin/java" -XX:SharedArchiveFile="$DIR/app/metrotimer.jsa" -Xshare:auto $METROTIMER_OPTS \
+     -cp "$DIR/app/metrotimer.jar" metrotimer.Main "$@"
+EOF
+chmod +x "$IMAGE/bin/metrotimer"
+
+# class data sharing: list the classes that starting up and playing the first click loads, then archive them so
+# later starts can map them in rather than loading them one by one. The archive only covers MetroTimer's own
+# classes while the image stays where it was built; move it and run this again
+TRAIN_ARGS=""
+if [ "$(uname -s)" != Darwin ] && [ -z "$DISPLAY" ]; then
+    TRAIN_ARGS="--headless"
+fi
+"$IMAGE/bin/java" -Xshare:off -XX:DumpLoadedClassList="$IMAGE/app/classes.lst" -Dmetrotimer.probe=true \
+    -cp "$IMAGE/app/metrotimer.jar" metrotimer.Main $TRAIN_ARGS < /dev/null
+"$IMAGE/bin/java" -Xshare:dump -XX:SharedClassListFile="$IMAGE/app/classes.lst" \
+    -XX:SharedArchiveFile="$IMAGE/app/metrotimer.jsa" -cp "$IMAGE/app/metrotimer.jar" > /dev/null
+rm "$IMAGE/app/classes.lst"
+
+echo "Built $IMAGE ($(du -sh "$IMAGE" | cut -f1)). Start it with $IMAGE/bin/metrotimer"
@@ -1,11 +0,0 @@
-/**
- * Class that launches MainView. Did this because I read that JavaFX gets moody when your main class extends
- * Application.
- */
-public class Main {
-
-    public static void main(String[] args) {
-        MainView.main(args);
-    }
-
-}
@@ -1,5 +0,0 @@
-public interface ModelListener {
-
-    void modelChanged();
-
-}
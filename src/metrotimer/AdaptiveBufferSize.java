@@ -0,0 +1,100 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Decides how big the output buffer should be. Starts at the latency profile's starting size and doubles it, up to
+ * the profile's maximum, whenever underruns show it's too small for the load the machine is under. Never shrinks,
+ * so the size it settles on is the smallest one that hasn't underrun.
+ */
+public class AdaptiveBufferSize {
+
+    /**
+     * After growing, underruns are ignored for this long (in frames of audio) so the new buffer has time to fill
+     */
+    private static final double SETTLE_SECONDS = 1;
+
+    private final LatencyProfile profile;
+
+    /**
+     * The format of the output, which turns milliseconds into bytes
+     */
+    private final AudioFormat format;
+
+    /**
+     * The smallest buffer that's allowed, in bytes: enough to hold one block
+     */
+    private final int minBytes;
+
+    /**
+     * The current buffer size in bytes
+     */
+    private volatile int bufferBytes;
+
+    /**
+     * The buffer size the output was last opened with, or 0 if it hasn't been opened with this yet
+     */
+    private volatile int appliedBytes = 0;
+
+    /**
+     * The frame position at which the buffer last grew
+     */
+    private long lastGrowthFrame = Long.MIN_VALUE / 2;
+
+    /**
+     * @param blockFrames The number of frames written at a time, which the buffer must at least hold
+     */
+    public AdaptiveBufferSize(LatencyProfile profile, AudioFormat format, int blockFrames) {
+        this.profile = profile;
+        this.format = format;
+        this.minBytes = blockFrames * format.getFrameSize();
+        this.bufferBytes = Math.max(minBytes, msToBytes(profile.getStartMs()));
+    }
+
+    /**
+     * Note that an underrun happened, and decide whether the buffer should grow because of it
+     *
+     * @param frame The number of frames rendered when the underrun was noticed
+     * @return True if the buffer size just grew and the output should be reopened with it
+     */
+    public boolean underrun(long frame) {
+        if (frame - lastGrowthFrame < SETTLE_SECONDS * format.getSampleRate()) return false;
+        int max = Math.max(minBytes, msToBytes(profile.getMaxMs()));
+        if (bufferBytes >= max) return false;
+        bufferBytes = Math.min(max, bufferBytes * 2);
+        lastGrowthFrame = frame;
+        return true;
+    }
+
+    /**
+     * @return The size the buffer should be, in bytes
+     */
+    public int getBufferBytes() {
+        return bufferBytes;
+    }
+
+    /**
+     * Note that the output has just been opened with the current buffer size
+     */
+    public void applied() {
+        appliedBytes = bufferBytes;
+    }
+
+    /**
+     * @return Does the output need to be reopened for its buffer to be the size it should be?
+     */
+    public boolean needsReopen() {
+        return appliedBytes != bufferBytes;
+    }
+
+    public LatencyProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * @return The number of bytes of audio that last the given number of milliseconds, in whole frames
+     */
+    private int msToBytes(int ms) {
+        return (int) (ms * format.getSampleRate() / 1000) * format.getFrameSize();
+    }
+}
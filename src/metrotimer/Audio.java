@@ -0,0 +1,1060 @@
+package metrotimer;
+
+import javax.sound.sampled.*;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Controls for audio output. The metronome and alarms are mixed into one stream and written to the sink by one output
+ * thread (see MetronomeLoop), which is kept waiting in between rather than exiting. The warm-up, preset rendering and
+ * sample loading run on one control thread, and MIDI clock is sent from a thread of its own
+ */
+public class Audio implements ModelListener {
+
+    /**
+     * Is the metronome currently supposed to be playing?
+     */
+    private volatile boolean metroPlaying = false;
+
+    /**
+     * The number of times the metronome has been started
+     */
+    private volatile int metroStarts = 0;
+
+    /**
+     * Is the output thread playing, rather than waiting? Guarded by this
+     */
+    private boolean outputRunning = false;
+
+    /**
+     * Has shutDown() been called?
+     */
+    private volatile boolean shutDown = false;
+
+    /**
+     * The thread writing audio data to the sink, or null before anything has been played. Guarded by this
+     */
+    private Thread outputThread;
+
+    /**
+     * The number of alarms the output thread hasn't started yet
+     */
+    private final AtomicInteger pendingAlarms = new AtomicInteger();
+
+    /**
+     * An alarm booked for an exact frame that the output thread hasn't picked up yet, or null
+     */
+    private final AtomicReference<ScheduledAlarm> scheduledAlarm = new AtomicReference<>();
+
+    /**
+     * The clock of the stream the output thread is writing, or null if it isn't playing
+     */
+    private volatile FrameClock frameClock;
+
+    /**
+     * What the output thread is doing, or null if it isn't playing
+     */
+    private volatile MetronomeLoop outputLoop;
+
+    /**
+     * The session to play the next time the metronome starts, or null
+     */
+    private final AtomicReference<SessionTimeline> sessionTimeline = new AtomicReference<>();
+
+    /**
+     * Where to send MIDI clock, or null to send none
+     */
+    private final AtomicReference<MidiClock> midiClock = new AtomicReference<>();
+
+    /**
+     * When a beat of the clock being followed was heard, or Long.MIN_VALUE if there isn't one to align to
+     */
+    private final AtomicLong beatAlignment = new AtomicLong(Long.MIN_VALUE);
+
+    /**
+     * The PCM data for one whole alarm, in the tone format
+     */
+    private byte[] alarmTone;
+
+    /**
+     * The format audio is played in, once it's been worked out
+     */
+    private final FutureTask<AudioFormat> formatReady;
+
+    /**
+     * Where audio data is written, once it's been got ready
+     */
+    private final FutureTask<AudioSink> sinkReady;
+
+    /**
+     * What makes the output thread and keeps its time
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The model from which we get volume data, or null to play at the default volume
+     */
+    private Model model;
+
+    /**
+     * How big the output buffer should be, or null until it's first needed. Guarded by this
+     */
+    private AdaptiveBufferSize bufferSize;
+
+    /**
+     * The latency profile the next output buffer is sized for
+     */
+    private volatile LatencyProfile latencyProfile = LatencyProfile.BALANCED;
+
+    /**
+     * The latest metronome settings, for the output thread to pick up at its next beat
+     */
+    private final AtomicReference<MetronomeParams> metroParams = new AtomicReference<>();
+
+    /**
+     * Where the output thread publishes what it plays, or null to keep no log
+     */
+    private volatile EventRing practiceEvents;
+
+    /**
+     * Every preset in the bank, rendered ready to switch to, or null if none have been rendered
+     */
+    private volatile RenderedPresets renderedPresets;
+
+    /**
+     * Is there a render of the presets waiting to run?
+     */
+    private final AtomicBoolean presetRenderQueued = new AtomicBoolean();
+
+    /**
+     * Where the warm-up runs, presets are rendered and samples are loaded. Jobs given after shutDown() are dropped
+     */
+    private final ScheduledExecutorService control = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "Audio control");
+            thread.setDaemon(true);
+            return thread;
+        }
+    }, new ThreadPoolExecutor.DiscardPolicy());
+
+    /**
+     * The thread sending MIDI clock, or null before any has been sent. Guarded by this
+     */
+    private Thread midiSender;
+
+    /**
+     * MIDI clocks handed to the sending thread that it hasn't picked up yet
+     */
+    private final ConcurrentLinkedQueue<MidiClock> midiClocksAdded = new ConcurrentLinkedQueue<>();
+
+    /**
+     * The Model fields the metronome plays from
+     */
+    private static final int METRONOME_FIELDS = Model.Field.BPM.bit() | Model.Field.HI_FREQ.bit()
+            | Model.Field.LO_FREQ.bit() | Model.Field.ACCENT_INTERVAL.bit() | Model.Field.VOICES.bit()
+            | Model.Field.TEMPO_RAMP.bit() | Model.Field.CLICK_SOUNDS.bit();
+
+    /**
+     * How long does a single metronome beep last?
+     */
+    private static final int BEEP_MS = 100;
+
+    /**
+     * The sample rate in Hz to play at if the sound system can't say what it plays natively
+     */
+    private static final int SAMPLE_RATE_HZ = 44100;
+
+    /**
+     * The alarm is a really fast metronome at this tempo
+     */
+    private static final int ALARM_BPM = 500;
+
+    /**
+     * The number of beeps in one alarm
+     */
+    private static final int ALARM_BEEPS = 7;
+
+    /**
+     * The frequency (pitch) of the alarm beeps
+     */
+    private static final float ALARM_FREQ = 3600;
+
+    /**
+     * Every beep played by any Audio
+     */
+    private static final ToneCache TONE_CACHE = new ToneCache(32);
+
+    /**
+     * The clicks played, from the samples chosen once they're loaded
+     */
+    private final ClickSounds sounds = new ClickSounds(control, new SampleCache.LoadListener() {
+        @Override
+        public void loaded(File file) {
+            republish();
+        }
+
+        @Override
+        public void failed(File file, IOException e) {
+            // it's been asked for more than once if so; say so only the first time
+            if (model != null && !file.equals(model.getHiSample()) && !file.equals(model.getLoSample())) return;
+            System.err.println("Couldn't load " + file + ", playing the beep instead: " + e.getMessage());
+            if (model != null) model.clearClickSample(file);
+        }
+    });
+
+    /**
+     * How many frames are rendered and written to the data line at a time
+     */
+    static final int BLOCK_FRAMES = 512;
+
+    /**
+     * How far ahead of the line the output thread renders, in milliseconds. Set with -Dmetrotimer.lookahead
+     */
+    static final int LOOKAHEAD_MS = Integer.getInteger("metrotimer.lookahead", 20);
+
+    /**
+     * The most sounds that can be heard at once
+     */
+    static final int VOICES = 32;
+
+    /**
+     * How often the tempo a ramp has got to is passed on to the Model, in milliseconds
+     */
+    private static final int LIVE_BPM_INTERVAL_MS = 100;
+
+    /**
+     * How long shutDown() waits for each thread to stop, in milliseconds
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * How often shutDown() looks at whether a thread has finished, in nanoseconds on the scheduler
+     */
+    private static final long JOIN_POLL_NANOS = 1_000_000;
+
+    /**
+     * Play through the sound card, or nowhere if there's no line available to play on
+     */
+    public Audio() {
+        scheduler = Scheduler.SYSTEM;
+        formatReady = new FutureTask<>(new Callable<AudioFormat>() {
+            @Override
+            public AudioFormat call() {
+                AudioFormat format = NativeFormat.negotiate();
+                return (format != null) ? format : defaultFormat();
+            }
+        });
+        sinkReady = new FutureTask<>(new Callable<AudioSink>() {
+            @Override
+            public AudioSink call() {
+                return warmUp();
+            }
+        });
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                formatReady.run();
+                sinkReady.run();
+            }
+        });
+    }
+
+    /**
+     * @param sink Where to write audio data
+     */
+    public Audio(AudioSink sink) {
+        this(sink, Scheduler.SYSTEM);
+    }
+
+    /**
+     * @param sink Where to write audio data
+     * @param scheduler What makes the output thread and keeps its time. Should be what the sink's paced by
+     */
+    public Audio(final AudioSink sink, Scheduler scheduler) {
+        this.scheduler = scheduler;
+        this.formatReady = new FutureTask<>(new Callable<AudioFormat>() {
+            @Override
+            public AudioFormat call() {
+                return sink.getFormat();
+            }
+        });
+        formatReady.run();
+        this.alarmTone = getAlarm(toneFormat(sink.getFormat()));
+        this.sinkReady = new FutureTask<>(new Callable<AudioSink>() {
+            @Override
+            public AudioSink call() {
+                return sink;
+            }
+        });
+        sinkReady.run();
+    }
+
+    /**
+     * Open a line to play on, play a block of silence through it and run the render path once. Runs on the control
+     * thread
+     *
+     * @return The line, or a sink that plays nowhere if there's no line available
+     */
+    private AudioSink warmUp() {
+        AudioFormat format = format();
+        alarmTone = getAlarm(toneFormat(format));
+        AudioSink sink;
+        try {
+            sink = withLookahead(new LineSink(format), scheduler);
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            // there's no line at all in the format (e.g. no sound card) if it's the latter
+            System.err.println("No audio line available, audio will not be heard: " + e.getMessage());
+            sink = new NullSink(format);
+        }
+        try {
+            openSink(sink, bufferSize(), TimingMetrics.get());
+            byte[] silence = new byte[BLOCK_FRAMES * format.getFrameSize()];
+            sink.start();
+            sink.write(silence, 0, silence.length);
+            sink.drain();
+            sink.stop();
+            sink.flush();
+        } catch (IOException e) {
+            // the output thread will try opening it again when it's needed
+            e.printStackTrace();
+        }
+
+        ModelState defaults = ModelState.DEFAULTS;
+        AudioFormat tones = toneFormat(format);
+        AtomicReference<MetronomeParams> params = new AtomicReference<>(new MetronomeParams(defaults.getBpm(),
+                defaults.getHiFreq(), defaults.getLoFreq(), 4, getBeep(defaults.getHiFreq(), tones),
+                getBeep(defaults.getLoFreq(), tones)));
+        VoiceMixer mixer = new VoiceMixer(format, VOICES, BLOCK_FRAMES);
+        ClickRenderer renderer = new ClickRenderer(format.getSampleRate(), params, mixer);
+        byte[] block = new byte[BLOCK_FRAMES * format.getFrameSize()];
+        for (int i = 0; i < format.getSampleRate() / BLOCK_FRAMES; i++) {
+            renderer.render(BLOCK_FRAMES);
+            mixer.render(block, BLOCK_FRAMES, 1, 1);
+        }
+        return sink;
+    }
+
+    /**
+     * @param sink A sink to play to
+     * @param scheduler What the lookahead's writer thread waits on
+     * @return The sink with LOOKAHEAD_MS of lookahead in front of it, or the sink itself if there's no lookahead
+     */
+    static AudioSink withLookahead(AudioSink sink, Scheduler scheduler) {
+        if (LOOKAHEAD_MS <= 0 || !sink.isRealTime()) return sink;
+        int frames = (int) (sink.getFormat().getSampleRate() * LOOKAHEAD_MS / 1000);
+        return new LookaheadSink(sink, frames, BLOCK_FRAMES, scheduler);
+    }
+
+    /**
+     * @return Where audio data is written, waiting for the warm-up to finish if it hasn't yet
+     */
+    private AudioSink sink() {
+        return await(sinkReady);
+    }
+
+    /**
+     * @return The format audio is played in, waiting for it to be worked out if it hasn't been yet
+     */
+    private AudioFormat format() {
+        return await(formatReady);
+    }
+
+    /**
+     * @return The format clicks and alarms are kept in for this Audio's output
+     */
+    private AudioFormat toneFormat() {
+        return toneFormat(format());
+    }
+
+    /**
+     * Wait for part of the warm-up, even if interrupted
+     */
+    private static <T> T await(FutureTask<T> task) {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Audio warm-up failed", e.getCause());
+                }
+            }
+        } finally {
+            if (interrupted) Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return How big the output buffer should be for the current latency profile
+     */
+    private synchronized AdaptiveBufferSize bufferSize() {
+        // a new profile starts over from its own starting size
+        if (bufferSize == null || bufferSize.getProfile() != latencyProfile) {
+            bufferSize = new AdaptiveBufferSize(latencyProfile, format(), BLOCK_FRAMES);
+        }
+        return bufferSize;
+    }
+
+    /**
+     * @param format The format the output is played in
+     * @return The format clicks and alarms are kept in: 16-bit mono at the same rate and byte order
+     */
+    static AudioFormat toneFormat(AudioFormat format) {
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, format.getSampleRate(), 16, 1, 2,
+                format.getSampleRate(), format.isBigEndian());
+    }
+
+    /**
+     * @return The format played in when the sound system can't say what it plays natively
+     */
+    static AudioFormat defaultFormat() {
+        return new AudioFormat(
+                AudioFormat.Encoding.PCM_SIGNED,
+                SAMPLE_RATE_HZ,
+                16,
+                1,
+                2,
+                SAMPLE_RATE_HZ,
+                true
+        );
+    }
+
+    /**
+     * Start playing a metronome, starting the output thread if it isn't already running
+     *
+     * @param bpm The tempo of the metronome, in bpm. Doesn't need to be a whole number
+     * @param hiFreq The frequency of the accented sine wave "beep"
+     * @param loFreq The frequency of the unaccented sine wave "beep"
+     * @param accentInterval Play an accented tone every N beats, where N = accentInterval
+     */
+    public void start(double bpm, float hiFreq, float loFreq, int accentInterval) {
+        start(bpm, hiFreq, loFreq, accentInterval, Collections.<ClickVoice>emptyList());
+    }
+
+    /**
+     * Start playing a metronome with extra voices mixed in
+     *
+     * @param bpm The tempo of the metronome, in bpm. Doesn't need to be a whole number
+     * @param hiFreq The frequency of the accented sine wave "beep"
+     * @param loFreq The frequency of the unaccented sine wave "beep"
+     * @param accentInterval Play an accented tone every N beats, where N = accentInterval
+     * @param voices The extra voices to play alongside the main beat. Must not be changed afterwards
+     */
+    public void start(double bpm, float hiFreq, float loFreq, int accentInterval, List<ClickVoice> voices) {
+        start(bpm, hiFreq, loFreq, accentInterval, voices, null);
+    }
+
+    /**
+     * Start playing a metronome with extra voices mixed in and the tempo following a ramp
+     *
+     * @param bpm The tempo of the metronome, in bpm, if there's no ramp
+     * @param hiFreq The frequency of the accented sine wave "beep"
+     * @param loFreq The frequency of the unaccented sine wave "beep"
+     * @param accentInterval Play an accented tone every N beats, where N = accentInterval
+     * @param voices The extra voices to play alongside the main beat. Must not be changed afterwards
+     * @param ramp The tempo ramp to play from the first beat, or null to play at a steady bpm
+     */
+    public synchronized void start(final double bpm, final float hiFreq, final float loFreq,
+                                   final int accentInterval, final List<ClickVoice> voices, final TempoRamp ramp) {
+
+        if (metroPlaying) {
+            System.err.println("start() called when audio was already playing");
+            return;
+        }
+
+        ModelState state = (model == null) ? ModelState.DEFAULTS : model.getState();
+        publishParams(bpm, hiFreq, loFreq, accentInterval, voices, ramp, state.getHiSample(), state.getLoSample(),
+                false);
+        sessionTimeline.set(null);
+        beatAlignment.set(Long.MIN_VALUE);
+        TimingMetrics.get().recordStartRequested(System.nanoTime());
+        metroStarts++;
+        metroPlaying = true;
+        ensureOutputRunning();
+    }
+
+    /**
+     * Start playing a practice session, which stops the metronome with an alarm at the end of its last segment
+     *
+     * @param plan The session to play. Must not be empty
+     * @param hiFreq The frequency of the accented beep
+     * @param loFreq The frequency of the unaccented beep
+     * @param voices Extra voices to play through the whole session
+     * @return The session as it's being played, or null if the metronome was already playing
+     */
+    public synchronized SessionTimeline startSession(SessionPlan plan, float hiFreq, float loFreq,
+                                                     List<ClickVoice> voices) {
+        if (metroPlaying) {
+            System.err.println("startSession() called when audio was already playing");
+            return null;
+        }
+        ModelState state = (model == null) ? ModelState.DEFAULTS : model.getState();
+        AudioFormat format = toneFormat();
+        SessionTimeline timeline = SessionTimeline.compile(plan, hiFreq, loFreq,
+                sounds.get(hiFreq, state.getHiSample(), format), sounds.get(loFreq, state.getLoSample(), format),
+                voices, format);
+        sessionTimeline.set(timeline);
+        TimingMetrics.get().recordStartRequested(System.nanoTime());
+        metroStarts++;
+        metroPlaying = true;
+        ensureOutputRunning();
+        return timeline;
+    }
+
+    /**
+     * Stop the metronome at the end of a session, unless it's been started again since
+     *
+     * @param starts The value of metroStarts the session was started with
+     */
+    private void sessionFinished(int starts) {
+        synchronized (this) {
+            if (!metroPlaying || metroStarts != starts) return;
+            metroPlaying = false;
+        }
+        if (model != null) model.notifySubscribers(Model.Field.RUNNING);
+    }
+
+    /**
+     * @return The session being played, or null if the metronome isn't playing one
+     */
+    public SessionTimeline getSessionTimeline() {
+        return metroPlaying ? sessionTimeline.get() : null;
+    }
+
+    /**
+     * @return How far into the session being played the output has got, in frames, or -1 if none is playing
+     */
+    public long getSessionFrame() {
+        MetronomeLoop loop = outputLoop;
+        SessionTimeline timeline = sessionTimeline.get();
+        if (!metroPlaying || loop == null || timeline == null) return -1;
+        return loop.getSessionFrame(timeline);
+    }
+
+    /**
+     * Set the output thread playing if it isn't already. Must be called while synchronized on this
+     */
+    private void ensureOutputRunning() {
+        if (outputRunning || shutDown) return;
+        outputRunning = true;
+        if (outputThread != null) {
+            scheduler.unpark(outputThread);
+            return;
+        }
+        this.outputThread = scheduler.newThread(new Runnable() {
+            @Override
+            public void run() {
+                while (awaitOutput()) playOutput();
+            }
+        }, "Audio output");
+        outputThread.setDaemon(true);
+        outputThread.setPriority(Thread.MAX_PRIORITY);
+        outputThread.start();
+    }
+
+    /**
+     * Wait until there's something to play
+     *
+     * @return True to play it, false if shut down
+     */
+    private boolean awaitOutput() {
+        while (true) {
+            synchronized (this) {
+                if (shutDown) return false;
+                if (outputRunning) return true;
+            }
+            scheduler.park(this);
+        }
+    }
+
+    /**
+     * Play the metronome and alarms on a new stream until there's nothing left to play
+     */
+    private void playOutput() {
+        // on the first start this waits for the warm-up, rather than making whoever pressed start wait
+        AudioSink sink = sink();
+        AdaptiveBufferSize size = bufferSize();
+        MetronomeLoop loop = new MetronomeLoop(sink, model, metroParams, sessionTimeline, TimingMetrics.get(), size,
+                scheduler);
+        frameClock = loop.getClock();
+        outputLoop = loop;
+        try {
+            if (! sink.isOpen() || size.needsReopen()) openSink(sink, size, TimingMetrics.get());
+            sink.start();
+            while (true) {
+                boolean clicking = metroPlaying;
+                loop.useMidiClock(midiClock.get(), clicking);
+                loop.logTo(practiceEvents, clicking);
+                long alignment = beatAlignment.getAndSet(Long.MIN_VALUE);
+                if (alignment != Long.MIN_VALUE && clicking) loop.alignBeat(alignment);
+                if (pendingAlarms.getAndSet(0) > 0) loop.alarm(alarmTone, clicking);
+                ScheduledAlarm scheduled = scheduledAlarm.getAndSet(null);
+                if (scheduled != null) loop.scheduleAlarm(scheduled, alarmTone);
+                // on shutting down, an alarm that's sounding is cut off
+                if (! clicking && (! loop.isAlarmPlaying() || shutDown) && finish(loop)) return;
+                loop.playBlock(clicking, metroStarts);
+                if (loop.takeSessionFinished()) sessionFinished(loop.getStarts());
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+            synchronized (this) {
+                loop.useMidiClock(midiClock.get(), false);
+                metroPlaying = false;
+                pendingAlarms.set(0);
+                ScheduledAlarm scheduled = scheduledAlarm.getAndSet(null);
+                if (scheduled != null) scheduled.cancel();
+                frameClock = null;
+                outputLoop = null;
+                outputRunning = false;
+            }
+        }
+    }
+
+    /**
+     * Stop playing, unless the metronome or an alarm has been started since the output thread last looked
+     *
+     * @param loop What the output thread is doing
+     * @return True if the output thread should stop playing and wait
+     */
+    private synchronized boolean finish(MetronomeLoop loop) {
+        if (metroPlaying || pendingAlarms.get() > 0 || scheduledAlarm.get() != null) return false;
+        // close any MIDI clock that's been replaced since the last block, as nothing else will now
+        loop.useMidiClock(midiClock.get(), false);
+        // metronome paused: flush the sink before anyone else can start writing to it
+        AudioSink sink = sink();
+        sink.stop();
+        sink.flush();
+        outputRunning = false;
+        frameClock = null;
+        outputLoop = null;
+        return true;
+    }
+
+    /**
+     * Stop everything for good: the output thread, the MIDI clock sender, the control thread, and then the sink
+     */
+    public void shutDown() {
+        Thread output;
+        synchronized (this) {
+            if (shutDown) return;
+            shutDown = true;
+            metroPlaying = false;
+            pendingAlarms.set(0);
+            ScheduledAlarm scheduled = scheduledAlarm.getAndSet(null);
+            if (scheduled != null) scheduled.cancel();
+            output = outputThread;
+            if (output != null) scheduler.unpark(output);
+        }
+        if (output != null) join(output);
+        setMidiClock(null);
+        Thread sender;
+        synchronized (this) {
+            sender = midiSender;
+        }
+        if (sender != null) {
+            scheduler.unpark(sender);
+            join(sender);
+        }
+        control.shutdownNow();
+        try {
+            if (!control.awaitTermination(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                System.err.println("Audio control thread didn't stop");
+            }
+            AudioSink sink = sinkReady.get(SHUTDOWN_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            synchronized (this) {
+                // the output thread may still be writing if it didn't stop in time
+                if (output == null || !output.isAlive()) sink.release();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | CancellationException | TimeoutException e) {
+            System.err.println("Audio warm-up didn't finish, so the sink was left as it is");
+        }
+    }
+
+    /**
+     * Wait a bounded time for a thread to finish, reporting it if it doesn't
+     */
+    private void join(Thread thread) {
+        long deadline = System.nanoTime() + SHUTDOWN_TIMEOUT_MILLIS * 1_000_000;
+        while (thread.isAlive() && !Thread.currentThread().isInterrupted() && System.nanoTime() < deadline) {
+            scheduler.parkNanos(this, JOIN_POLL_NANOS);
+        }
+        if (thread.isAlive()) System.err.println(thread.getName() + " thread didn't stop");
+    }
+
+    /**
+     * Pass on any changes to the metronome settings to the output thread
+     */
+    public void modelChanged(int changedFields) {
+        // the buffer is sized for a new profile the next time the metronome starts
+        if (Model.Field.LATENCY_PROFILE.in(changedFields)) latencyProfile = model.getLatencyProfile();
+        if (Model.Field.CLICK_SOUNDS.in(changedFields)) sounds.load(model.getState(), toneFormat());
+        if (Model.Field.PRESET.in(changedFields) || Model.Field.CLICK_SOUNDS.in(changedFields)) renderPresets();
+        if ((changedFields & METRONOME_FIELDS) == 0) return;
+        if (Model.Field.PRESET.in(changedFields)) switchPreset();
+        else republish();
+    }
+
+    /**
+     * Publish the Model's current settings for the output thread, if the metronome is playing
+     */
+    private synchronized void republish() {
+        if (!metroPlaying || model == null) return;
+        // all from one state, so a change made halfway through reading them can't be half-used
+        ModelState state = model.getState();
+        publishParams(state.getBpm(), state.getHiFreq(), state.getLoFreq(), state.getAccentInterval(),
+                state.getVoices(), state.getTempoRamp(), state.getHiSample(), state.getLoSample(), false);
+    }
+
+    /**
+     * Publish the preset the Model has just switched to, for the output thread to take over at its next bar line
+     */
+    private synchronized void switchPreset() {
+        if (!metroPlaying || model == null) return;
+        ModelState state = model.getState();
+        RenderedPresets rendered = renderedPresets;
+        MetronomeParams params = (rendered != null && rendered.isFor(state) && state.getPreset() != null)
+                ? rendered.get(state.getPreset()) : null;
+        if (params != null && params.matches(state.getBpm(), state.getHiFreq(), state.getLoFreq(),
+                state.getAccentInterval(), state.getVoices(), state.getTempoRamp())) {
+            metroParams.set(params);
+        } else {
+            publishParams(state.getBpm(), state.getHiFreq(), state.getLoFreq(), state.getAccentInterval(),
+                    state.getVoices(), state.getTempoRamp(), state.getHiSample(), state.getLoSample(), true);
+        }
+    }
+
+    /**
+     * Render every preset in the Model's bank on the control thread, unless they already are
+     */
+    private void renderPresets() {
+        if (model == null || shutDown) return;
+        RenderedPresets rendered = renderedPresets;
+        ModelState state = model.getState();
+        if (state.getPresetBank().isEmpty() || (rendered != null && rendered.isFor(state))) return;
+        if (!presetRenderQueued.compareAndSet(false, true)) return;
+        control.execute(new Runnable() {
+            @Override
+            public void run() {
+                presetRenderQueued.set(false);
+                // render whatever the bank is by now, which may have changed again since this was queued
+                ModelState state = model.getState();
+                RenderedPresets previous = renderedPresets;
+                if (previous != null && previous.isFor(state)) return;
+                renderedPresets = RenderedPresets.render(state, toneFormat(), previous);
+            }
+        });
+    }
+
+    /**
+     * @return Have all the presets in the Model's bank been rendered with its click sounds?
+     */
+    public boolean presetsRendered() {
+        RenderedPresets rendered = renderedPresets;
+        return model != null && rendered != null && rendered.isFor(model.getState());
+    }
+
+    /**
+     * Publish the given settings for the output thread, unless they're already published. Must be called while
+     * synchronized on this
+     *
+     * @param atBarLine Should the output thread wait for the next bar line to take them over?
+     */
+    private void publishParams(double bpm, float hiFreq, float loFreq, int accentInterval, List<ClickVoice> voices,
+                               TempoRamp ramp, File hiSample, File loSample, boolean atBarLine) {
+        byte[] loBeep = sounds.get(loFreq, loSample, toneFormat());
+        byte[] hiBeep = (accentInterval == 0) ? null : sounds.get(hiFreq, hiSample, toneFormat());
+        MetronomeParams current = metroParams.get();
+        if (current != null && current.matches(bpm, hiFreq, loFreq, accentInterval, voices, ramp)
+                && current.getHiBeep() == hiBeep && current.getLoBeep() == loBeep) {
+            return;
+        }
+        MetronomeParams params = new MetronomeParams(bpm, hiFreq, loFreq, accentInterval, hiBeep, loBeep, voices,
+                getVoiceBeeps(voices, toneFormat()), ramp);
+        metroParams.set(atBarLine ? params.atBarLine() : params);
+    }
+
+    /**
+     * Start sending MIDI clock somewhere, or stop sending it
+     *
+     * @param clock Where to send the clock, or null to send none. The one it replaces is sent a stop and closed
+     */
+    public synchronized void setMidiClock(MidiClock clock) {
+        MidiClock replaced = midiClock.getAndSet(clock);
+        // with the output thread waiting, nothing has been sent to it since it was last stopped
+        if (replaced != null && replaced != clock && !outputRunning) replaced.close();
+        if (clock == null || clock == replaced) return;
+        if (shutDown) {
+            midiClock.set(null);
+            clock.close();
+            // nothing has been placed on it, so this just closes the receiver
+            clock.sendDue();
+            return;
+        }
+        ensureMidiSenderRunning();
+        clock.sendFrom(midiSender);
+        midiClocksAdded.add(clock);
+        scheduler.unpark(midiSender);
+    }
+
+    /**
+     * Make the MIDI clock sender if it's never been made. Must be called while synchronized on this
+     */
+    private void ensureMidiSenderRunning() {
+        if (midiSender != null) return;
+        midiSender = scheduler.newThread(new Runnable() {
+            @Override
+            public void run() {
+                sendMidiClocks();
+            }
+        }, "MIDI clock");
+        midiSender.setDaemon(true);
+        midiSender.setPriority(Thread.MAX_PRIORITY);
+        midiSender.start();
+    }
+
+    /**
+     * Send each clock's messages when they're due, until shut down with every clock closed and sent
+     */
+    private void sendMidiClocks() {
+        List<MidiClock> sending = new ArrayList<>();
+        // an interrupt stops it for good, and is left set for whoever interrupted it to see
+        while (!Thread.currentThread().isInterrupted()) {
+            MidiClock added;
+            while ((added = midiClocksAdded.poll()) != null) sending.add(added);
+            long next = Long.MAX_VALUE;
+            for (int i = sending.size() - 1; i >= 0; i--) {
+                long due = sending.get(i).sendDue();
+                if (due == MidiClock.FINISHED) sending.remove(i);
+                else next = Math.min(next, due);
+            }
+            if (sending.isEmpty() && shutDown && midiClocksAdded.isEmpty()) return;
+            if (next == Long.MAX_VALUE) scheduler.park(this);
+            else scheduler.parkNanos(this, next - scheduler.nanoTime());
+        }
+    }
+
+    /**
+     * Nudge the metronome's beat grid towards a beat of a clock it's following
+     *
+     * @param heardNanos The time on the scheduler (see getScheduler) the clock's beat was heard at
+     */
+    public void alignBeat(long heardNanos) {
+        if (metroPlaying) beatAlignment.set(heardNanos);
+    }
+
+    /**
+     * @return What the output thread keeps time on
+     */
+    Scheduler getScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * @return The control thread, for the rest of the app's background work. Jobs on it should be short
+     */
+    ScheduledExecutorService getControl() {
+        return control;
+    }
+
+    /**
+     * @return Where MIDI clock is being sent, or null if it isn't
+     */
+    public MidiClock getMidiClock() {
+        return midiClock.get();
+    }
+
+    /**
+     * Stop the metronome. The output thread stops playing too, once any alarm that's sounding has finished
+     */
+    public synchronized void stop() {
+        this.metroPlaying = false;
+    }
+
+    /**
+     * Play an alarm sound without disrupting the metronome, on its next beat if it's playing
+     */
+    public synchronized void alarm() {
+        pendingAlarms.incrementAndGet();
+        ensureOutputRunning();
+    }
+
+    /**
+     * Book an alarm to start on an exact frame of the stream the metronome is playing on, or the first downbeat after
+     *
+     * @param clock The clock the frame was worked out on, from getFrameClock()
+     * @param frame The frame to start on, or the earliest frame if waiting for a downbeat
+     * @param onDownbeat Wait for the first downbeat on or after the frame?
+     * @return The booked alarm, or null if the metronome isn't playing on that clock any more
+     */
+    public synchronized ScheduledAlarm scheduleAlarm(FrameClock clock, long frame, boolean onDownbeat) {
+        if (!metroPlaying || clock != frameClock) return null;
+        ScheduledAlarm alarm = new ScheduledAlarm(frame, onDownbeat);
+        ScheduledAlarm replaced = scheduledAlarm.getAndSet(alarm);
+        if (replaced != null) replaced.cancel();
+        return alarm;
+    }
+
+    /**
+     * @return The clock of the stream the metronome is playing on, or null if it isn't playing
+     */
+    public FrameClock getFrameClock() {
+        return metroPlaying ? frameClock : null;
+    }
+
+    /**
+     * (Re)open the sink with the buffer size it should have, and record it in TimingMetrics
+     *
+     * @throws IOException If the sink couldn't be opened
+     */
+    static void openSink(AudioSink sink, AdaptiveBufferSize bufferSize, TimingMetrics metrics) throws IOException {
+        if (sink.isOpen()) sink.close();
+        sink.open(bufferSize.getBufferBytes());
+        bufferSize.applied();
+        if (sink.isRealTime()) metrics.recordBufferSize(sink.getBufferSize(), getLatencyMillis(sink));
+    }
+
+    /**
+     * @return How long it takes for the sink to play a full buffer, in milliseconds
+     */
+    private static double getLatencyMillis(AudioSink sink) {
+        AudioFormat format = sink.getFormat();
+        return sink.getBufferSize() / (double) format.getFrameSize() / format.getSampleRate() * 1000;
+    }
+
+    /**
+     * @return The format audio is played in, waiting for it to be worked out if it hasn't been yet
+     */
+    public AudioFormat getFormat() {
+        return format();
+    }
+
+    /**
+     * @return The size of the output buffer in bytes
+     */
+    public int getBufferSizeBytes() {
+        return sink().getBufferSize();
+    }
+
+    /**
+     * @return How long it takes for the output to play a full buffer, in milliseconds
+     */
+    public double getOutputLatencyMillis() {
+        return getLatencyMillis(sink());
+    }
+
+    /**
+     * Get a byte buffer containing the PCM data for a single "beep" (at max volume). Shared, so it must not be changed
+     *
+     * @param freq The pitch of the beep
+     * @param format The tone format (see toneFormat)
+     * @return A byte buffer containing the beep
+     */
+    static byte[] getBeep(float freq, AudioFormat format) {
+        return TONE_CACHE.get(freq, format, BEEP_MS, Wavetable.Envelope.NONE);
+    }
+
+    /**
+     * Get a new byte buffer containing the PCM data for a whole alarm (at max volume): a few beeps at ALARM_BPM
+     *
+     * @param format The tone format of the PCM data (see toneFormat)
+     * @return A new byte buffer containing the alarm, which the caller is free to change
+     */
+    static byte[] getAlarm(AudioFormat format) {
+        byte[] beep = getBeep(ALARM_FREQ, format);
+        int beatBytes = (int) (format.getSampleRate() * 60 / ALARM_BPM) * format.getFrameSize();
+        byte[] alarm = new byte[beatBytes * ALARM_BEEPS];
+        for (int i = 0; i < ALARM_BEEPS; i++) {
+            System.arraycopy(beep, 0, alarm, i * beatBytes, beep.length);
+        }
+        return alarm;
+    }
+
+    /**
+     * @return The beep for each voice, from the shared tone cache
+     */
+    static byte[][] getVoiceBeeps(List<ClickVoice> voices, AudioFormat format) {
+        byte[][] beeps = new byte[voices.size()][];
+        for (int i = 0; i < beeps.length; i++) beeps[i] = getBeep(voices.get(i).getFreq(), format);
+        return beeps;
+    }
+
+    /**
+     * @return The cache all beeps are rendered into, so its hit and miss counts can be checked
+     */
+    public static ToneCache getToneCache() {
+        return TONE_CACHE;
+    }
+
+    /**
+     * @return The cache all samples are decoded into
+     */
+    public static SampleCache getSampleCache() {
+        return ClickSounds.SAMPLE_CACHE;
+    }
+
+    /**
+     * @return Where audio data is written
+     */
+    public AudioSink getSink() {
+        return sink();
+    }
+
+    /**
+     * @return Is audio playing right now?
+     */
+    public boolean audioPlaying() {
+        return this.metroPlaying;
+    }
+
+    public void setModel(Model model) {
+        this.model = model;
+        model.addSubscriber(this);
+        control.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                passOnLiveBpm();
+            }
+        }, LIVE_BPM_INTERVAL_MS, LIVE_BPM_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Tell the Model the tempo a ramp has got to, if that's changed. Runs on the control thread
+     */
+    private void passOnLiveBpm() {
+        MetronomeLoop loop = outputLoop;
+        double bpm = (loop != null && metroPlaying) ? loop.getLiveBpm() : Double.NaN;
+        if (Double.compare(bpm, model.getState().getLiveBpm()) != 0) model.setLiveBpm(bpm);
+    }
+
+    /**
+     * @param log Where to record what's played from the next block on, or null to record nothing
+     */
+    public void setPracticeLog(PracticeLog log) {
+        this.practiceEvents = (log != null) ? log.newRing() : null;
+    }
+}
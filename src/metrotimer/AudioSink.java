@@ -0,0 +1,93 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Somewhere for Audio to send its PCM data. Modelled on SourceDataLine, so a sound card, a file or nothing at all
+ * can be played to in exactly the same way.
+ */
+public interface AudioSink extends Closeable {
+
+    /**
+     * @return The format that all data written to this sink must be in
+     */
+    AudioFormat getFormat();
+
+    /**
+     * @return Has open() been called since this was created or last closed?
+     */
+    boolean isOpen();
+
+    /**
+     * Get ready to have data written
+     *
+     * @param bufferSize The requested size of the sink's internal buffer in bytes. Sinks that don't buffer ignore it
+     * @throws IOException If the sink can't be opened
+     */
+    void open(int bufferSize) throws IOException;
+
+    /**
+     * Start (or resume) playing data as it's written
+     */
+    void start();
+
+    /**
+     * Stop playing data, keeping anything that's been written but not played yet
+     */
+    void stop();
+
+    /**
+     * Throw away anything that's been written but not played yet
+     */
+    void flush();
+
+    /**
+     * Block until everything that's been written has been played
+     */
+    void drain();
+
+    /**
+     * Write PCM data to the sink, blocking until there's room for all of it if the sink plays in real time
+     *
+     * @param b The data to write. Must be in the sink's format
+     * @param off The offset of the first byte to write
+     * @param len The number of bytes to write. Must be a whole number of frames
+     * @throws IOException If the data couldn't be written
+     */
+    void write(byte[] b, int off, int len) throws IOException;
+
+    /**
+     * @return The size of the sink's internal buffer in bytes
+     */
+    int getBufferSize();
+
+    /**
+     * @return The number of bytes that can currently be written without blocking
+     */
+    int available();
+
+    /**
+     * @return The number of frames played since the sink was opened
+     */
+    long getLongFramePosition();
+
+    /**
+     * @return Does this sink play data at the speed of its sample rate? If not, it takes data as fast as it's
+     *         written and timing measurements like underruns mean nothing for it
+     */
+    default boolean isRealTime() {
+        return true;
+    }
+
+    /**
+     * Close this if it's open, and let go of anything kept between one open and the next, such as a thread. Nothing
+     * can be played to it afterwards
+     *
+     * @throws IOException If it couldn't be closed
+     */
+    default void release() throws IOException {
+        if (isOpen()) close();
+    }
+}
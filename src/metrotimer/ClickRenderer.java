@@ -0,0 +1,592 @@
+package metrotimer;
+
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Schedules the metronome's beeps onto a VoiceMixer, a block at a time.
+ *
+ * The position of the next beat is tracked as a whole frame number plus a fractional-sample remainder, so each beat
+ * lands on the sample its exact position falls in (never more than a sample early, never late) and the tempo never
+ * drifts, no matter how long it plays.
+ *
+ * Settings are read from a shared reference at the start of every beat, so they can be changed while it plays
+ * without any locking: a new tempo takes effect from the beat after the one that's about to start. Settings marked to
+ * wait for the bar line (a preset being switched to) take over on the next downbeat instead, which starts a new bar
+ * with the new settings' accent. Nothing is allocated in switching, so a switch costs the output thread nothing.
+ *
+ * Extra voices (see ClickVoice) each keep their own cycle, which starts over on a main beat every few beats. Every
+ * pulse in a cycle is placed from the cycle's exact start, so voices stay sample-aligned with the main beat. A tempo
+ * change reaches a voice at the start of its next cycle.
+ *
+ * A TempoRamp in the settings starts on the beat they're first played on. Each beat's position is worked out from the
+ * ramp's start, so the length of every beat is different but the beats never drift from where the ramp puts them.
+ *
+ * Instead of following the published settings, it can play a SessionTimeline, switching settings by itself on the
+ * downbeat that ends each segment and stopping after the last.
+ *
+ * An alarm can be booked to start on an exact frame, or on the first downbeat (accented beat, or any beat if there
+ * are no accents) from a given frame on, so that a timer running out mid-bar can wait for the bar line.
+ *
+ * A TickListener can be told where MIDI clock ticks fall: TICKS_PER_BEAT of them to a beat, the first on the beat and
+ * the rest spread evenly across it, placed from the beat's exact position like a voice's pulses.
+ *
+ * When following another clock, the beat grid can be nudged towards where that clock says a beat falls (see
+ * alignBeat), a little at a time so the nudges aren't heard, so that the beats never drift away from it.
+ */
+public class ClickRenderer {
+
+    /**
+     * Told where each MIDI clock tick falls, as the blocks it falls in are rendered
+     */
+    public interface TickListener {
+        /**
+         * @param frame The frame the tick falls on. Ticks come in order
+         * @param onBeat Is it the tick on a beat, which a click starts on?
+         */
+        void tick(long frame, boolean onBeat);
+    }
+
+    /**
+     * The number of MIDI clock ticks to a beat (pulses per quarter note)
+     */
+    public static final int TICKS_PER_BEAT = 24;
+
+    /**
+     * The number of voice cycles made up front. More are only made if settings ever have more extra voices than this
+     */
+    private static final int INITIAL_CYCLES = 8;
+
+    /**
+     * The output sample rate in Hz
+     */
+    private final float sampleRate;
+
+    /**
+     * Where the latest settings get published
+     */
+    private final AtomicReference<MetronomeParams> paramsRef;
+
+    /**
+     * What the beeps get played on
+     */
+    private final VoiceMixer mixer;
+
+    /**
+     * The settings currently being played
+     */
+    private MetronomeParams params;
+
+    /**
+     * The exact (fractional) number of frames between the start of one beat and the start of the next
+     */
+    private double framesPerBeat;
+
+    /**
+     * The frame number of the first frame of the next block to be rendered
+     */
+    private long framesRendered = 0;
+
+    /**
+     * The frame on which the next beat starts
+     */
+    private long nextBeatFrame = 0;
+
+    /**
+     * The frame on which the most recent beat started, or -1 if no beat has started yet
+     */
+    private long lastBeatFrame = -1;
+
+    /**
+     * The part of the next beat's position that falls between nextBeatFrame and the frame after it, in [0, 1)
+     */
+    private double beatFraction = 0;
+
+    /**
+     * The number of beats started so far
+     */
+    private long beats = 0;
+
+    /**
+     * Where each extra voice is in its cycle, in the same order as the voices in params. Only the first cycleCount
+     * are in use; the rest are kept so that changing the voices needn't make new ones
+     */
+    private VoiceCycle[] cycles = new VoiceCycle[INITIAL_CYCLES];
+
+    /**
+     * The number of cycles in use, one for each voice in params
+     */
+    private int cycleCount = 0;
+
+    /**
+     * Should the tempo ramp in params (if any) start over on the next beat?
+     */
+    private boolean rampPending = true;
+
+    /**
+     * The exact (fractional) frame the tempo ramp being played started on
+     */
+    private double rampStart;
+
+    /**
+     * The number of beats started since the tempo ramp being played started
+     */
+    private long rampBeats;
+
+    /**
+     * The session being played, or null if following the published settings
+     */
+    private SessionTimeline timeline;
+
+    /**
+     * The segment of the session being played. Equal to the timeline's size once the session's over
+     */
+    private int segment;
+
+    /**
+     * Told where MIDI clock ticks fall, or null
+     */
+    private TickListener tickListener;
+
+    /**
+     * The exact (fractional) frame of the beat the next tick belongs to
+     */
+    private double tickBeatStart;
+
+    /**
+     * The exact number of frames between ticks in the current beat
+     */
+    private double framesPerTick;
+
+    /**
+     * The index in the current beat of the next tick
+     */
+    private int tick;
+
+    /**
+     * The frame on which the next tick falls, or Long.MAX_VALUE if there are no more before the next beat
+     */
+    private long nextTickFrame = Long.MAX_VALUE;
+
+    /**
+     * The alarm booked to start, or null
+     */
+    private ScheduledAlarm alarm;
+
+    /**
+     * The PCM data for the booked alarm
+     */
+    private byte[] alarmTone;
+
+    /**
+     * A downbeat this many frames before a booked alarm's frame still counts as being on it, so that rounding doesn't
+     * push an alarm that's meant to land on a downbeat all the way to the next one. One millisecond
+     */
+    private final long snapToleranceFrames;
+
+    /**
+     * @param sampleRate The output sample rate in Hz
+     * @param paramsRef Where the settings to play get published. May only hold null until the first beat is rendered
+     * @param mixer What to play the beeps on
+     */
+    public ClickRenderer(float sampleRate, AtomicReference<MetronomeParams> paramsRef, VoiceMixer mixer) {
+        this.sampleRate = sampleRate;
+        this.paramsRef = paramsRef;
+        this.mixer = mixer;
+        this.snapToleranceFrames = (long) (sampleRate / 1000);
+        for (int i = 0; i < cycles.length; i++) cycles[i] = new VoiceCycle();
+    }
+
+    /**
+     * Schedule every beep that starts in the next numFrames frames
+     *
+     * @param numFrames The number of frames to render
+     */
+    public void render(int numFrames) {
+        long blockEnd = framesRendered + numFrames;
+        // go through the beats and pulses in the order they fall, since a beat can start a voice's cycle over
+        while (true) {
+            VoiceCycle cycle = earliestPulseBefore(Math.min(nextBeatFrame, blockEnd));
+            if (cycle != null) {
+                cycle.playPulse();
+            } else if (nextTickFrame < Math.min(nextBeatFrame, blockEnd)) {
+                playTick();
+            } else if (nextBeatFrame < blockEnd) {
+                startBeat();
+            } else {
+                break;
+            }
+        }
+        if (alarm != null && !alarm.isOnDownbeat() && alarm.getFrame() < blockEnd) startAlarm(alarm.getFrame());
+        framesRendered = blockEnd;
+    }
+
+    /**
+     * Start or stop telling a listener where MIDI clock ticks fall. A new listener hears from the next beat on
+     *
+     * @param listener Told about each tick, or null to stop
+     */
+    public void setTickListener(TickListener listener) {
+        if (listener != tickListener) nextTickFrame = Long.MAX_VALUE;
+        tickListener = listener;
+    }
+
+    /**
+     * Book an alarm, replacing any alarm booked before that hasn't started yet
+     *
+     * @param alarm When to start the alarm. Marked as started once it's been triggered
+     * @param tone The PCM data for the alarm. Not copied, so it must not be changed
+     */
+    public void scheduleAlarm(ScheduledAlarm alarm, byte[] tone) {
+        if (this.alarm != null) this.alarm.cancel();
+        this.alarm = alarm;
+        this.alarmTone = tone;
+    }
+
+    /**
+     * Start the booked alarm, if there is one, at the start of the next block rather than waiting for its frame.
+     * Used when the metronome stops before the alarm's downbeat comes around
+     */
+    public void startAlarmNow() {
+        if (alarm != null) startAlarm(framesRendered);
+    }
+
+    /**
+     * Trigger the booked alarm on the given frame (or the next one to be rendered, if it's already past), unless it's
+     * been cancelled
+     */
+    private void startAlarm(long frame) {
+        frame = Math.max(frame, framesRendered);
+        if (alarm.start(frame)) mixer.trigger(alarmTone, frame);
+        alarm = null;
+        alarmTone = null;
+    }
+
+    /**
+     * Start the beat grid over, with the first beat on the given frame. Used when the metronome starts again on a
+     * stream that's been running without it
+     *
+     * @param frame The frame of the stream that the next block starts on
+     */
+    public void restartAt(long frame) {
+        framesRendered = frame;
+        nextBeatFrame = frame;
+        lastBeatFrame = -1;
+        beatFraction = 0;
+        beats = 0;
+        nextTickFrame = Long.MAX_VALUE;
+        timeline = null;
+        rampPending = true;
+        for (int i = 0; i < cycleCount; i++) cycles[i].reset();
+    }
+
+    /**
+     * Play a session from the next beat rather than following the published settings. Call straight after
+     * restartAt, which goes back to following the published settings
+     *
+     * @param timeline The session to play
+     */
+    public void playTimeline(SessionTimeline timeline) {
+        this.timeline = timeline;
+        this.segment = 0;
+        useParams(timeline.getParams(0));
+    }
+
+    /**
+     * @return Has a session been played all the way through? Nothing more is played once it has
+     */
+    public boolean isTimelineFinished() {
+        return timeline != null && segment == timeline.size();
+    }
+
+    /**
+     * @return The segment of the session being played, or the timeline's size once it's over
+     */
+    public int getSegment() {
+        return segment;
+    }
+
+    /**
+     * Move the beat grid part of the way towards having a beat on the given frame, by moving the next beat that hasn't
+     * been rendered yet. Whichever beat of the grid is nearest the frame is the one moved towards it, so the frame can
+     * be for a beat that's already been played, as long as the tempo hasn't changed much since. Nothing is moved until
+     * a beat has been played, or once a session is over
+     *
+     * @param frame The exact (fractional) frame a beat should fall on
+     * @param gain The fraction of the way to move, in (0, 1]
+     * @param maxFrames The furthest to move, in frames
+     * @return How far the grid was moved, in frames. Positive if the beats now come later
+     */
+    public double alignBeat(double frame, double gain, double maxFrames) {
+        if (lastBeatFrame < 0 || nextBeatFrame == Long.MAX_VALUE) return 0;
+        double next = nextBeatFrame + beatFraction;
+        double error = frame - next;
+        // to the nearest beat of the grid, so within half a beat either way
+        error -= Math.round(error / framesPerBeat) * framesPerBeat;
+        double moved = Math.max(next + Math.max(Math.min(error * gain, maxFrames), -maxFrames), framesRendered);
+        nextBeatFrame = (long) moved;
+        beatFraction = moved - nextBeatFrame;
+        // a ramp carries on from the moved beat rather than pulling it back where it was
+        rampStart += moved - next;
+        return moved - next;
+    }
+
+    /**
+     * @return The voice whose next pulse comes first, if it comes before the given frame, else null
+     */
+    private VoiceCycle earliestPulseBefore(long frame) {
+        VoiceCycle earliest = null;
+        for (int i = 0; i < cycleCount; i++) {
+            VoiceCycle cycle = cycles[i];
+            if (cycle.nextPulseFrame < frame && (earliest == null || cycle.nextPulseFrame < earliest.nextPulseFrame)) {
+                earliest = cycle;
+            }
+        }
+        return earliest;
+    }
+
+    /**
+     * Start playing the beep for the beat at nextBeatFrame, and work out where the beat after it falls
+     */
+    private void startBeat() {
+        MetronomeParams published = (timeline == null) ? paramsRef.get() : params;
+        // nothing's been played since starting over if there's no last beat, so there's no bar to wait for
+        if (published != params && (lastBeatFrame < 0 || !published.isAtBarLine())) useParams(published);
+        beats += 1;
+        int accentInterval = params.getAccentInterval();
+        if (published != params && (accentInterval == 0 || beats % accentInterval == 0)) {
+            // settings waiting for the bar line start a bar on this downbeat, counting beats afresh from it
+            useParams(published);
+            beats = 0;
+            accentInterval = params.getAccentInterval();
+        }
+        boolean accented = accentInterval != 0 && beats % accentInterval == 0;
+        mixer.trigger(accented ? params.getHiBeep() : params.getLoBeep(), nextBeatFrame);
+        // with no accents every beat is a downbeat
+        if ((accented || accentInterval == 0) && alarm != null && alarm.isOnDownbeat()
+                && nextBeatFrame >= alarm.getFrame() - snapToleranceFrames) {
+            startAlarm(nextBeatFrame);
+        }
+        lastBeatFrame = nextBeatFrame;
+        if (tickListener != null) tickListener.tick(nextBeatFrame, true);
+        if (timeline != null && beats == timeline.getBeats(segment)) {
+            // this downbeat ends the segment: the next segment's tempo takes over from here, counting beats afresh
+            segment++;
+            beats = 0;
+            if (segment == timeline.size()) {
+                for (int i = 0; i < cycleCount; i++) cycles[i].reset();
+                nextBeatFrame = Long.MAX_VALUE;
+                return;
+            }
+            useParams(timeline.getParams(segment));
+        }
+        if (params.getRamp() != null) rampBeat();
+        for (int i = 0; i < cycleCount; i++) cycles[i].beat(nextBeatFrame, beatFraction);
+        if (tickListener != null) {
+            tickBeatStart = nextBeatFrame + beatFraction;
+            framesPerTick = framesPerBeat / TICKS_PER_BEAT;
+            tick = 1;
+            nextTickFrame = (long) (tickBeatStart + framesPerTick);
+        }
+        // keep the fractional part so rounding errors never accumulate from beat to beat
+        beatFraction += framesPerBeat;
+        long wholeFrames = (long) beatFraction;
+        nextBeatFrame += wholeFrames;
+        beatFraction -= wholeFrames;
+    }
+
+    /**
+     * Set framesPerBeat to the length of the beat that's starting, going by where the ramp puts the beat after it
+     */
+    private void rampBeat() {
+        double beatStart = nextBeatFrame + beatFraction;
+        if (rampPending) {
+            rampStart = beatStart;
+            rampBeats = 0;
+            rampPending = false;
+        }
+        rampBeats++;
+        double length = rampStart + params.getRamp().secondsToBeat(rampBeats) * sampleRate - beatStart;
+        // a beat the ramp can't place carries on at the last tempo rather than never ending the block
+        if (playable(length)) framesPerBeat = length;
+    }
+
+    /**
+     * Tell the listener about the tick at nextTickFrame, and work out where the tick after it falls
+     */
+    private void playTick() {
+        tickListener.tick(nextTickFrame, false);
+        tick++;
+        nextTickFrame = (tick < TICKS_PER_BEAT) ? (long) (tickBeatStart + tick * framesPerTick) : Long.MAX_VALUE;
+    }
+
+    /**
+     * Switch to new settings, unless their beats couldn't be played (see playable), in which case the settings playing
+     * carry on. Settings like that with nothing playing yet are played at the default tempo
+     */
+    private void useParams(MetronomeParams newParams) {
+        double length = sampleRate * 60d / newParams.getBpm();
+        if (!playable(length)) {
+            if (params != null) return;
+            length = sampleRate * 60d / ModelState.DEFAULTS.getBpm();
+        }
+        MetronomeParams previous = params;
+        params = newParams;
+        framesPerBeat = length;
+        if (previous != null && !Objects.equals(previous.getRamp(), params.getRamp())) rampPending = true;
+        if (previous == null || !previous.getVoices().equals(params.getVoices())) {
+            cycleCount = params.getVoices().size();
+            if (cycleCount > cycles.length) {
+                VoiceCycle[] more = Arrays.copyOf(cycles, cycleCount);
+                for (int i = cycles.length; i < more.length; i++) more[i] = new VoiceCycle();
+                cycles = more;
+            }
+            // new cycles join in partway through, wherever the old ones would have been
+            for (int i = 0; i < cycleCount; i++) cycles[i].use(params.getVoices().get(i), params.getVoiceBeep(i));
+        }
+    }
+
+    /**
+     * @return Can a beat this many frames long be played? Not if it's under a frame or isn't finite, since render()
+     *         would never get past it
+     */
+    private static boolean playable(double framesPerBeat) {
+        return framesPerBeat >= 1 && framesPerBeat < Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @return The frame on which the most recent beat started, or -1 if no beat has started yet
+     */
+    public long getLastBeatFrame() {
+        return lastBeatFrame;
+    }
+
+    /**
+     * @return Is a tempo ramp being played?
+     */
+    public boolean isRamping() {
+        return params != null && params.getRamp() != null && !isTimelineFinished();
+    }
+
+    /**
+     * @return The tempo of the beat that started most recently, in BPM, going by how long it lasts
+     */
+    public double getCurrentBpm() {
+        return sampleRate * 60d / framesPerBeat;
+    }
+
+    /**
+     * @return The frame on which the next beat starts. Never before the next frame to be rendered
+     */
+    public long getNextBeatFrame() {
+        return nextBeatFrame;
+    }
+
+    /**
+     * @return The number of frames rendered so far
+     */
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /**
+     * @return The number of beats started so far
+     */
+    public long getBeats() {
+        return beats;
+    }
+
+    /**
+     * One extra voice's place in its cycle
+     */
+    private final class VoiceCycle {
+
+        private ClickVoice voice;
+
+        /**
+         * PCM data for the voice's beep
+         */
+        private byte[] beep;
+
+        /**
+         * Where the current cycle started, in frames, including the fraction of a frame
+         */
+        private double cycleStart;
+
+        /**
+         * The exact number of frames between pulses in the current cycle
+         */
+        private double framesPerPulse;
+
+        /**
+         * The index in the cycle of the next pulse
+         */
+        private int pulse;
+
+        /**
+         * The frame on which the next pulse starts, or Long.MAX_VALUE if the cycle has no pulses left
+         */
+        long nextPulseFrame = Long.MAX_VALUE;
+
+        /**
+         * Has a cycle been started since the beat grid was last started over?
+         */
+        private boolean started = false;
+
+        /**
+         * Start following a voice, joining in on the next beat
+         */
+        void use(ClickVoice voice, byte[] beep) {
+            this.voice = voice;
+            this.beep = beep;
+            reset();
+        }
+
+        /**
+         * Called on every main beat, after beats has been counted: start the next cycle if it's due, or join the
+         * current one partway through if this voice hasn't started yet
+         *
+         * @param beatFrame The frame the beat starts on
+         * @param fraction How far past beatFrame the beat's exact position is, in [0, 1)
+         */
+        void beat(long beatFrame, double fraction) {
+            int phase = (int) (beats % voice.getBeats());
+            if (phase == 0 || !started) {
+                cycleStart = beatFrame + fraction - phase * framesPerBeat;
+                framesPerPulse = framesPerBeat * voice.getBeats() / voice.getPulses();
+                // skip any pulses from before this beat when joining partway through
+                pulse = (int) Math.max(0, Math.ceil((beatFrame - cycleStart) / framesPerPulse));
+                while (pulse > 0 && pulseFrame(pulse - 1) >= beatFrame) pulse--;
+                while (pulse < voice.getPulses() && pulseFrame(pulse) < beatFrame) pulse++;
+                nextPulseFrame = (pulse < voice.getPulses()) ? pulseFrame(pulse) : Long.MAX_VALUE;
+                started = true;
+            }
+        }
+
+        /**
+         * Trigger the next pulse's beep and move on to the one after
+         */
+        void playPulse() {
+            mixer.trigger(beep, nextPulseFrame, voice.getGain());
+            pulse++;
+            nextPulseFrame = (pulse < voice.getPulses()) ? pulseFrame(pulse) : Long.MAX_VALUE;
+        }
+
+        /**
+         * Forget the current cycle, so the voice joins in again on the next beat
+         */
+        void reset() {
+            started = false;
+            nextPulseFrame = Long.MAX_VALUE;
+        }
+
+        /**
+         * @return The frame the given pulse of the current cycle starts on. Placed from the cycle's start rather than
+         *         the previous pulse, so rounding errors never build up
+         */
+        private long pulseFrame(int pulse) {
+            return (long) (cycleStart + pulse * framesPerPulse);
+        }
+    }
+}
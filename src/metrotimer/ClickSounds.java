@@ -0,0 +1,85 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+
+/**
+ * The sounds clicks are played from: the chosen samples once they're loaded, and beeps until then
+ */
+final class ClickSounds {
+
+    /**
+     * Every sample played by any Audio. 16MB holds a minute and a half of mono 44.1kHz audio
+     */
+    static final SampleCache SAMPLE_CACHE = new SampleCache(16 << 20);
+
+    /**
+     * Where samples are loaded
+     */
+    private final Executor loader;
+
+    /**
+     * Told when a sample has loaded or couldn't be
+     */
+    private final SampleCache.LoadListener listener;
+
+    /**
+     * @param loader Where samples are loaded
+     * @param listener Told when a sample has loaded or couldn't be
+     */
+    ClickSounds(Executor loader, SampleCache.LoadListener listener) {
+        this.loader = loader;
+        this.listener = listener;
+    }
+
+    /**
+     * Get the PCM data for a click: a sample if one's chosen and loaded, otherwise a beep. A sample that isn't loaded
+     * yet starts loading
+     *
+     * @param freq The pitch of the beep
+     * @param sample The WAV file to play instead, or null for the beep
+     * @param format The tone format (see Audio.toneFormat)
+     * @return The click's PCM data. Shared, so it must not be changed
+     */
+    byte[] get(float freq, File sample, AudioFormat format) {
+        if (sample != null) {
+            byte[] pcm = SAMPLE_CACHE.getIfLoaded(sample, format);
+            if (pcm != null) return pcm;
+            SAMPLE_CACHE.load(sample, format, listener, loader);
+        }
+        return Audio.getBeep(freq, format);
+    }
+
+    /**
+     * Start loading the samples in a state, then the rest of the folders they're in
+     *
+     * @param format The tone format (see Audio.toneFormat)
+     */
+    void load(ModelState state, AudioFormat format) {
+        Set<File> folders = new LinkedHashSet<>();
+        for (File sample : new File[] {state.getHiSample(), state.getLoSample()}) {
+            if (sample == null) continue;
+            SAMPLE_CACHE.load(sample, format, listener, loader);
+            File folder = sample.getAbsoluteFile().getParentFile();
+            if (folder != null) folders.add(folder);
+        }
+        for (File folder : folders) SAMPLE_CACHE.preload(folder, format, loader);
+    }
+
+    /**
+     * @return The PCM data for a sample, decoding it on this thread if it isn't cached, or null if there's no sample
+     *         or it can't be loaded
+     */
+    static byte[] decode(File sample, AudioFormat format) {
+        if (sample == null) return null;
+        try {
+            return SAMPLE_CACHE.get(sample, format);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
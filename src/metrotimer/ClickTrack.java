@@ -0,0 +1,181 @@
+package metrotimer;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Everything needed to render a click track to a file without a user interface: the metronome settings, how long
+ * it lasts, and how often the timer alarm goes off
+ */
+public final class ClickTrack {
+
+    /**
+     * Where the track gets written
+     */
+    private final File file;
+
+    /**
+     * The tempo in BPM
+     */
+    private final double bpm;
+
+    /**
+     * Accent every N beats, where this = N
+     */
+    private final int accentInterval;
+
+    /**
+     * The frequency (pitch) of the accented tone
+     */
+    private final float hiFreq;
+
+    /**
+     * The frequency (pitch) of the unaccented tone
+     */
+    private final float loFreq;
+
+    /**
+     * The volume from 0 to 1
+     */
+    private final double volume;
+
+    /**
+     * The length of the track in milliseconds
+     */
+    private final long durationMs;
+
+    /**
+     * The alarm goes off every time this many milliseconds pass, like a looping timer. 0 for no alarm
+     */
+    private final long alarmIntervalMs;
+
+    /**
+     * The extra voices played alongside the main beat
+     */
+    private final List<ClickVoice> voices;
+
+    public ClickTrack(File file, double bpm, int accentInterval, float hiFreq, float loFreq, double volume,
+                      long durationMs, long alarmIntervalMs) {
+        this(file, bpm, accentInterval, hiFreq, loFreq, volume, durationMs, alarmIntervalMs,
+                Collections.<ClickVoice>emptyList());
+    }
+
+    /**
+     * @param voices The extra voices to play alongside the main beat. Must not be changed afterwards
+     */
+    public ClickTrack(File file, double bpm, int accentInterval, float hiFreq, float loFreq, double volume,
+                      long durationMs, long alarmIntervalMs, List<ClickVoice> voices) {
+        if (!(bpm >= Controller.MIN_BPM && bpm <= Controller.MAX_BPM)) {
+            throw new IllegalArgumentException(
+                    "bpm must be from " + Controller.MIN_BPM + " to " + Controller.MAX_BPM + ": " + bpm);
+        }
+        if (accentInterval < 0) throw new IllegalArgumentException("accent must not be negative: " + accentInterval);
+        if (volume < 0 || volume > 1) throw new IllegalArgumentException("volume must be from 0 to 1: " + volume);
+        if (durationMs <= 0) throw new IllegalArgumentException("duration must be positive: " + durationMs);
+        if (alarmIntervalMs != 0 && alarmIntervalMs < 1000) {
+            throw new IllegalArgumentException("alarm interval must be 0 or at least a second: " + alarmIntervalMs);
+        }
+        this.file = file;
+        this.bpm = bpm;
+        this.accentInterval = accentInterval;
+        this.hiFreq = hiFreq;
+        this.loFreq = loFreq;
+        this.volume = volume;
+        this.durationMs = durationMs;
+        this.alarmIntervalMs = alarmIntervalMs;
+        this.voices = voices;
+    }
+
+    /**
+     * Read a track from a line of space-separated key=value pairs, where the first word is the file to write to.
+     * For example: "ex1-92.wav bpm=92.5 accent=4 duration=2:00 alarm=1:00 hi=1760 lo=880 volume=0.75".
+     * Durations can be given as seconds or as min:sec. Extra voices are given as voices=3:4@660,2:1@1320x0.5 (see
+     * ClickVoice). Anything left out gets the same default as the app.
+     *
+     * @throws IllegalArgumentException If the line couldn't be understood
+     */
+    public static ClickTrack parse(String line) {
+        String[] words = line.trim().split("\\s+");
+        if (words.length == 0 || words[0].isEmpty()) throw new IllegalArgumentException("No file given: " + line);
+        double bpm = 120;
+        int accent = 0;
+        float hi = 1760;
+        float lo = 880;
+        double volume = 0.75;
+        long duration = 60_000;
+        long alarm = 0;
+        List<ClickVoice> voices = Collections.emptyList();
+        for (int i = 1; i < words.length; i++) {
+            int eq = words[i].indexOf('=');
+            if (eq < 0) throw new IllegalArgumentException("Expected key=value: " + words[i]);
+            String key = words[i].substring(0, eq);
+            String value = words[i].substring(eq + 1);
+            try {
+                switch (key) {
+                    case "bpm": bpm = Double.parseDouble(value); break;
+                    case "accent": accent = Integer.parseInt(value); break;
+                    case "hi": hi = Float.parseFloat(value); break;
+                    case "lo": lo = Float.parseFloat(value); break;
+                    case "volume": volume = Double.parseDouble(value); break;
+                    case "duration": duration = parseDurationMs(value); break;
+                    case "alarm": alarm = parseDurationMs(value); break;
+                    case "voices": voices = ClickVoice.parseList(value); break;
+                    default: throw new IllegalArgumentException("Unknown key: " + key);
+                }
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Couldn't read " + key + ": " + value, e);
+            }
+        }
+        return new ClickTrack(new File(words[0]), bpm, accent, hi, lo, volume, duration, alarm, voices);
+    }
+
+    /**
+     * @param text A number of seconds (which may be fractional), or min:sec
+     * @return The duration in milliseconds
+     * @throws NumberFormatException If the text couldn't be understood
+     */
+    static long parseDurationMs(String text) {
+        int colon = text.indexOf(':');
+        if (colon < 0) return Math.round(Double.parseDouble(text) * 1000);
+        long min = Long.parseLong(text.substring(0, colon));
+        double sec = Double.parseDouble(text.substring(colon + 1));
+        return min * 60_000 + Math.round(sec * 1000);
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    public double getBpm() {
+        return bpm;
+    }
+
+    public int getAccentInterval() {
+        return accentInterval;
+    }
+
+    public float getHiFreq() {
+        return hiFreq;
+    }
+
+    public float getLoFreq() {
+        return loFreq;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public long getAlarmIntervalMs() {
+        return alarmIntervalMs;
+    }
+
+    public List<ClickVoice> getVoices() {
+        return voices;
+    }
+}
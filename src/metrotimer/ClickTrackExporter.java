@@ -0,0 +1,170 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders click tracks straight to a sink as fast as the CPU allows, rather than in real time. Used to generate
+ * practice tracks in bulk without a sound card.
+ *
+ * Run as a program with a file listing one track per line (see ClickTrack.parse) and optionally the number of
+ * tracks to render at once, which defaults to the number of processors. If any line can't be read, nothing is
+ * exported.
+ */
+public class ClickTrackExporter {
+
+    /**
+     * How many frames are rendered and written at a time. Much bigger than when playing live since latency
+     * doesn't matter here
+     */
+    private static final int BLOCK_FRAMES = 8192;
+
+    /**
+     * The format tracks are rendered in
+     */
+    private final AudioFormat format;
+
+    /**
+     * @param format The format to render tracks in. Must be 16, 24 or 32-bit signed PCM
+     */
+    public ClickTrackExporter(AudioFormat format) {
+        this.format = format;
+    }
+
+    /**
+     * Render tracks in the same format the app plays in
+     */
+    public ClickTrackExporter() {
+        this(Audio.defaultFormat());
+    }
+
+    /**
+     * Render a track to its WAV file
+     *
+     * @throws IOException If the file couldn't be written
+     */
+    public void export(ClickTrack track) throws IOException {
+        try (WavFileSink sink = new WavFileSink(track.getFile(), format)) {
+            render(track, sink);
+        }
+    }
+
+    /**
+     * Render many tracks to their WAV files, several at once. Tracks that fail are reported and skipped, so one bad
+     * track doesn't stop the rest.
+     *
+     * @param tracks The tracks to render
+     * @param threads The number of tracks to render at once
+     * @return The number of tracks that were rendered successfully
+     * @throws InterruptedException If interrupted while waiting for tracks to finish
+     */
+    public int exportAll(List<ClickTrack> tracks, int threads) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<File>> results = new ArrayList<>();
+            for (final ClickTrack track : tracks) {
+                results.add(executor.submit(new Callable<File>() {
+                    @Override
+                    public File call() throws IOException {
+                        export(track);
+                        return track.getFile();
+                    }
+                }));
+            }
+            int succeeded = 0;
+            for (int i = 0; i < results.size(); i++) {
+                try {
+                    results.get(i).get();
+                    succeeded++;
+                } catch (ExecutionException e) {
+                    System.err.println("Couldn't export " + tracks.get(i).getFile() + ": " + e.getCause());
+                }
+            }
+            return succeeded;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Render a track to an open sink. The sink is opened first if it isn't already, but isn't closed.
+     *
+     * @throws IOException If the sink couldn't be written to
+     */
+    public void render(ClickTrack track, AudioSink sink) throws IOException {
+        int frameSize = format.getFrameSize();
+        float sampleRate = format.getSampleRate();
+        AudioFormat toneFormat = Audio.toneFormat(format);
+        byte[] hiBeep = (track.getAccentInterval() == 0) ? null : Audio.getBeep(track.getHiFreq(), toneFormat);
+        byte[] loBeep = Audio.getBeep(track.getLoFreq(), toneFormat);
+        AtomicReference<MetronomeParams> params = new AtomicReference<>(new MetronomeParams(
+                track.getBpm(), track.getHiFreq(), track.getLoFreq(), track.getAccentInterval(), hiBeep, loBeep,
+                track.getVoices(), Audio.getVoiceBeeps(track.getVoices(), toneFormat)
+        ));
+        VoiceMixer mixer = new VoiceMixer(format, Audio.VOICES, BLOCK_FRAMES);
+        ClickRenderer renderer = new ClickRenderer(sampleRate, params, mixer);
+
+        // the alarm goes off at the end of every interval, like a looping timer, on the next beat after that
+        byte[] alarm = (track.getAlarmIntervalMs() > 0) ? Audio.getAlarm(toneFormat) : null;
+        long alarmIntervalFrames = Math.round(track.getAlarmIntervalMs() * (double) sampleRate / 1000);
+        long nextAlarmFrame = (alarm != null) ? alarmIntervalFrames : Long.MAX_VALUE;
+
+        long totalFrames = Math.round(track.getDurationMs() * (double) sampleRate / 1000);
+        byte[] block = new byte[BLOCK_FRAMES * frameSize];
+        if (!sink.isOpen()) sink.open(block.length);
+        sink.start();
+        while (mixer.getFramesRendered() < totalFrames) {
+            long blockStart = mixer.getFramesRendered();
+            if (blockStart == nextAlarmFrame) {
+                mixer.trigger(alarm, renderer.getNextBeatFrame());
+                nextAlarmFrame += alarmIntervalFrames;
+            }
+            // end blocks early at alarm times, so every beat before the alarm has been scheduled when it's triggered
+            int frames = (int) Math.min(BLOCK_FRAMES, Math.min(totalFrames, nextAlarmFrame) - blockStart);
+            renderer.render(frames);
+            mixer.render(block, frames, track.getVolume(), track.getVolume());
+            sink.write(block, 0, frames * frameSize);
+        }
+        sink.stop();
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("Usage: ClickTrackExporter <track list file> [threads]");
+            System.exit(2);
+        }
+        List<ClickTrack> tracks = new ArrayList<>();
+        List<String> lines = Files.readAllLines(new File(args[0]).toPath(), StandardCharsets.UTF_8);
+        boolean bad = false;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            if (line.trim().isEmpty() || line.trim().startsWith("#")) continue;
+            try {
+                tracks.add(ClickTrack.parse(line));
+            } catch (IllegalArgumentException e) {
+                // every bad line is reported before giving up, so they can all be fixed in one go
+                System.err.println(args[0] + ":" + (i + 1) + ": " + e.getMessage());
+                bad = true;
+            }
+        }
+        if (bad) System.exit(2);
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+        long startNanos = System.nanoTime();
+        int succeeded = new ClickTrackExporter().exportAll(tracks, threads);
+        System.out.printf("Exported %d of %d tracks in %.2f s%n",
+                succeeded, tracks.size(), (System.nanoTime() - startNanos) / 1e9);
+        if (succeeded < tracks.size()) System.exit(1);
+    }
+}
@@ -0,0 +1,152 @@
+package metrotimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An extra click played alongside the metronome's main beat, for polyrhythms and subdivisions: a number of evenly
+ * spaced pulses spread over a number of main beats. 3 pulses over 4 beats plays 3 against 4; 2 pulses over 1 beat
+ * clicks every eighth note. Cycles start on every main beat whose number is a multiple of beats, counting beats the
+ * same way accents are counted, so a voice over the same number of beats as the accent interval lines up with the
+ * accents.
+ *
+ * Written as pulses:beats@freq, optionally followed by xgain, e.g. "3:4@660" or "2:1@1320x0.5".
+ */
+public final class ClickVoice {
+
+    /**
+     * The most pulses a cycle can have. Even over a single beat at the fastest tempo, this many are still heard as
+     * separate clicks
+     */
+    public static final int MAX_PULSES = 32;
+
+    /**
+     * The most main beats a cycle can last
+     */
+    public static final int MAX_BEATS = 32;
+
+    /**
+     * The number of pulses per cycle
+     */
+    private final int pulses;
+
+    /**
+     * The number of main beats per cycle
+     */
+    private final int beats;
+
+    /**
+     * The frequency (pitch) of the voice's beep
+     */
+    private final float freq;
+
+    /**
+     * How loud the voice is compared to the main beat, from 0 to 1 inclusive
+     */
+    private final float gain;
+
+    /**
+     * @param pulses The number of pulses per cycle. From 1 to MAX_PULSES
+     * @param beats The number of main beats per cycle. From 1 to MAX_BEATS
+     * @param freq The frequency (pitch) of the voice's beep
+     * @param gain How loud the voice is compared to the main beat, from 0 to 1 inclusive
+     */
+    public ClickVoice(int pulses, int beats, float freq, float gain) {
+        if (pulses < 1 || beats < 1) {
+            throw new IllegalArgumentException("A voice needs at least 1 pulse over at least 1 beat: "
+                    + pulses + ":" + beats);
+        }
+        if (pulses > MAX_PULSES || beats > MAX_BEATS) {
+            throw new IllegalArgumentException("A voice can have at most " + MAX_PULSES + " pulses over at most "
+                    + MAX_BEATS + " beats: " + pulses + ":" + beats);
+        }
+        if (!(freq > 0)) throw new IllegalArgumentException("Frequency must be positive: " + freq);
+        if (!(gain >= 0 && gain <= 1)) throw new IllegalArgumentException("Gain must be from 0 to 1: " + gain);
+        this.pulses = pulses;
+        this.beats = beats;
+        this.freq = freq;
+        this.gain = gain;
+    }
+
+    /**
+     * Parse one voice, written as pulses:beats@freq[xgain]
+     *
+     * @throws IllegalArgumentException If it isn't written that way
+     */
+    public static ClickVoice parse(String spec) {
+        String s = spec.trim();
+        try {
+            int colon = s.indexOf(':');
+            int at = s.indexOf('@');
+            int x = s.indexOf('x', at);
+            if (colon < 0 || at < colon) throw new IllegalArgumentException("Expected pulses:beats@freq: " + spec);
+            int pulses = Integer.parseInt(s.substring(0, colon).trim());
+            int beats = Integer.parseInt(s.substring(colon + 1, at).trim());
+            float freq = Float.parseFloat(s.substring(at + 1, (x < 0) ? s.length() : x).trim());
+            float gain = (x < 0) ? 1 : Float.parseFloat(s.substring(x + 1).trim());
+            return new ClickVoice(pulses, beats, freq, gain);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in voice " + spec, e);
+        }
+    }
+
+    /**
+     * Parse a list of voices separated by commas. An empty or blank string is an empty list
+     *
+     * @return An unmodifiable list of the voices
+     * @throws IllegalArgumentException If any voice isn't written right
+     */
+    public static List<ClickVoice> parseList(String specs) {
+        if (specs.trim().isEmpty()) return Collections.emptyList();
+        List<ClickVoice> voices = new ArrayList<>();
+        for (String spec : specs.split(",")) voices.add(parse(spec));
+        return Collections.unmodifiableList(voices);
+    }
+
+    /**
+     * @return The voices written the way parseList reads them
+     */
+    public static String toString(List<ClickVoice> voices) {
+        StringBuilder sb = new StringBuilder();
+        for (ClickVoice v : voices) {
+            if (sb.length() > 0) sb.append(", ");
+            sb.append(v);
+        }
+        return sb.toString();
+    }
+
+    public int getPulses() {
+        return pulses;
+    }
+
+    public int getBeats() {
+        return beats;
+    }
+
+    public float getFreq() {
+        return freq;
+    }
+
+    public float getGain() {
+        return gain;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof ClickVoice)) return false;
+        ClickVoice other = (ClickVoice) o;
+        return pulses == other.pulses && beats == other.beats && freq == other.freq && gain == other.gain;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((pulses * 31 + beats) * 31 + Float.hashCode(freq)) * 31 + Float.hashCode(gain);
+    }
+
+    @Override
+    public String toString() {
+        String f = (freq == (int) freq) ? Integer.toString((int) freq) : Float.toString(freq);
+        return pulses + ":" + beats + "@" + f + ((gain == 1) ? "" : "x" + gain);
+    }
+}
@@ -0,0 +1,413 @@
+package metrotimer;
+
+import javax.sound.midi.MidiUnavailableException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Objects;
+
+/**
+ * Actions to be called when something changes or gets clicked
+ */
+public class Controller {
+
+    private Model model;
+
+    private TimerController timerController;
+
+    private Audio audio;
+
+    private MidiSync midiSync;
+
+    /**
+     * Where the preset bank is kept, or null if it hasn't been loaded from anywhere and so isn't saved
+     */
+    private File presetFile;
+
+    /**
+     * How long the preset bank took to load, in nanoseconds
+     */
+    private long presetLoadNanos;
+
+    /**
+     * The slowest playable tempo by this metronome
+     */
+    static final double MIN_BPM = 10;
+
+    /**
+     * The highest playable tempo by this metronome
+     */
+    static final double MAX_BPM = 300;
+
+    /**
+     * Returned by parseSound for a file that doesn't exist
+     */
+    private static final File NO_SOUND = new File("");
+
+    /**
+     * For the timer "start" button
+     */
+    public void handleTimerClick() {
+        if (!timerController.timerRunning()) {
+            timerController.startTimer();
+        } else {
+            timerController.stopTimer();
+        }
+        model.notifySubscribers(Model.Field.RUNNING);
+    }
+
+    /**
+     * for the metronome "start" button
+     */
+    public void handleMetroClick() {
+        if (!audio.audioPlaying()) {
+            ModelState state = model.getState();
+            audio.start(state.getBpm(), state.getHiFreq(), state.getLoFreq(), state.getAccentInterval(),
+                    state.getVoices(), state.getTempoRamp());
+        } else {
+            audio.stop();
+        }
+        model.notifySubscribers(Model.Field.RUNNING);
+    }
+
+    /**
+     * For the practice session "start" button. Plays the session from the top, with the timer showing the time left in
+     * each segment, or stops it
+     */
+    public void handleSessionClick() {
+        if (!audio.audioPlaying()) {
+            ModelState state = model.getState();
+            if (state.getSessionPlan().isEmpty()) return;
+            if (timerController.timerRunning()) timerController.stopTimer();
+            SessionTimeline timeline = audio.startSession(state.getSessionPlan(), state.getHiFreq(),
+                    state.getLoFreq(), state.getVoices());
+            if (timeline != null) timerController.startSessionTimer(timeline);
+        } else {
+            audio.stop();
+            if (timerController.followingSession()) timerController.stopTimer();
+        }
+        model.notifySubscribers(Model.Field.RUNNING);
+    }
+
+    /**
+     * For the timer's minute textbox
+     *
+     * @param newText The new text entered by the user
+     * @return True if it was successfully converted to an integer and stored in the Model, else false
+     */
+    public boolean handleMinTextChanged(String newText) {
+        int newMin;
+        try {
+            newMin = Integer.parseInt(newText);
+            if (newMin < 0 || newMin > 99) {
+                return false;
+            }
+            model.setTimerAndSavedTime(newMin, model.getTimerSec());
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the timer's second textbox
+     *
+     * @param newText The new text entered by the user
+     * @return True if it was successfully converted to an integer and stored in the Model, else false
+     */
+    public boolean handleSecTextChanged(String newText) {
+        int newSec;
+        try {
+            newSec = Integer.parseInt(newText);
+            if (newSec < 0 || newSec > 59) {
+                return false;
+            }
+            model.setTimerAndSavedTime(model.getTimerMin(), newSec);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the BPM textbox
+     *
+     * @param newText The new text entered by the user
+     * @return True if it was successfully converted to a number and stored in the Model, else false
+     */
+    public boolean handleBpmTextChanged(String newText) {
+        double newBpm;
+        try {
+            newBpm = Double.parseDouble(newText);
+            if (Double.isNaN(newBpm) || newBpm < MIN_BPM || newBpm > MAX_BPM)
+                return false;
+            model.setBpm(newBpm);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the interval textbox
+     *
+     * @param newText The new text entered by the user
+     * @return True if it was successfully converted to an integer and stored in the Model, else false
+     */
+    public boolean handleIntervalTextChanged(String newText) {
+        int newInterval;
+        try {
+            newInterval = Integer.parseInt(newText);
+            if (newInterval < 0)
+                return false;
+            model.setAccentInterval(newInterval);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the voices textbox
+     *
+     * @param newText The new text entered by the user: voices written as ClickVoice.parseList reads them
+     * @return True if every voice was understood and the list was stored in the Model, else false
+     */
+    public boolean handleVoicesTextChanged(String newText) {
+        try {
+            model.setVoices(ClickVoice.parseList(newText));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the tempo ramp textbox
+     *
+     * @param newText The new text entered by the user: a ramp written as TempoRamp.parse reads it, or nothing for a
+     *                steady tempo
+     * @return True if it was understood and stored in the Model, else false
+     */
+    public boolean handleRampTextChanged(String newText) {
+        try {
+            model.setTempoRamp(newText.trim().isEmpty() ? null : TempoRamp.parse(newText));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the click sounds textbox. The files are checked to exist here, but loaded in the background; one that turns
+     * out not to be a WAV that can be played is put back to the beep once that's found out
+     *
+     * @param newText The new text entered by the user: the WAV file for accented beats then the one for unaccented
+     *                beats, separated by a comma. "beep" in either place plays the beep, one file is used for both,
+     *                and nothing plays the beeps
+     * @return True if every file exists and they were stored in the Model, else false
+     */
+    public boolean handleSoundsTextChanged(String newText) {
+        String[] parts = newText.split(",", -1);
+        if (parts.length > 2) return false;
+        File hi = parseSound(parts[0]);
+        File lo = (parts.length > 1) ? parseSound(parts[1]) : hi;
+        if (hi == NO_SOUND || lo == NO_SOUND) return false;
+        model.setClickSamples(hi, lo);
+        return true;
+    }
+
+    /**
+     * @return The WAV file named, null for the beep, or NO_SOUND if there's no such file
+     */
+    private static File parseSound(String text) {
+        String name = text.trim();
+        if (name.isEmpty() || name.equalsIgnoreCase("beep")) return null;
+        File file = new File(name);
+        return file.isFile() ? file : NO_SOUND;
+    }
+
+    /**
+     * @return The click sounds written the way handleSoundsTextChanged reads them
+     */
+    public static String soundsText(File hiSample, File loSample) {
+        if (hiSample == null && loSample == null) return "";
+        if (Objects.equals(hiSample, loSample)) return hiSample.getPath();
+        return ((hiSample == null) ? "beep" : hiSample.getPath()) + ", "
+                + ((loSample == null) ? "beep" : loSample.getPath());
+    }
+
+    /**
+     * For the practice session textbox
+     *
+     * @param newText The new text entered by the user: a session written as SessionPlan.parse reads it
+     * @return True if it was understood and stored in the Model, else false
+     */
+    public boolean handleSessionTextChanged(String newText) {
+        try {
+            model.setSessionPlan(SessionPlan.parse(newText));
+            return true;
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the volume slider
+     */
+    public void handleVolSliderChange(double newVol) {
+        model.setVolume(newVol);
+    }
+
+    /**
+     * For the "snap to downbeat" checkbox
+     */
+    public void handleSnapChange(boolean snap) {
+        model.setTimerSnapToDownbeat(snap);
+    }
+
+    /**
+     * For the latency choice box. Takes effect the next time the metronome starts
+     */
+    public void handleLatencyProfileChange(LatencyProfile profile) {
+        model.setLatencyProfile(profile);
+    }
+
+    /**
+     * For the MIDI clock choice box
+     *
+     * @return True if its MIDI port was opened, else false, leaving MIDI clock off
+     */
+    public boolean handleMidiSyncChange(MidiSync.Option option) {
+        try {
+            midiSync.use(option);
+            return true;
+        } catch (MidiUnavailableException e) {
+            System.err.println("Couldn't open MIDI port: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Load the preset bank from a file, which presets are saved back to from then on
+     *
+     * @param file The bank file. If there's no such file the bank starts empty
+     * @return True if it was loaded, else false, leaving the bank as it was
+     */
+    public boolean loadPresets(File file) {
+        long start = System.nanoTime();
+        PresetBank bank;
+        try {
+            bank = PresetBank.read(file);
+        } catch (IOException e) {
+            System.err.println("Couldn't load presets: " + e.getMessage());
+            return false;
+        }
+        presetLoadNanos = System.nanoTime() - start;
+        presetFile = file;
+        model.setPresetBank(bank);
+        return true;
+    }
+
+    /**
+     * @return How long the preset bank took to load from its file, in milliseconds
+     */
+    public double getPresetLoadMillis() {
+        return presetLoadNanos / 1e6;
+    }
+
+    /**
+     * For the preset choice box and the function keys. A playing metronome switches at its next bar line
+     *
+     * @param index The position of the preset in the bank, from 0
+     * @return True if there's a preset there, else false
+     */
+    public boolean handlePresetSelect(int index) {
+        PresetBank bank = model.getPresetBank();
+        if (index < 0 || index >= bank.size()) return false;
+        model.usePreset(bank.get(index));
+        return true;
+    }
+
+    /**
+     * For the page up and page down keys, which is what most page-turning footswitches send: switch to the preset
+     * before or after the one last switched to, going round at the ends
+     *
+     * @param step 1 for the next preset, -1 for the one before
+     * @return True if there are any presets, else false
+     */
+    public boolean handlePresetStep(int step) {
+        PresetBank bank = model.getPresetBank();
+        if (bank.isEmpty()) return false;
+        Preset current = model.getPreset();
+        int index = (current == null) ? -1 : bank.indexOf(current.getName());
+        // with no preset chosen yet, the first step goes to the first (or last) one
+        if (index < 0) index = (step > 0) ? -1 : 0;
+        return handlePresetSelect(Math.floorMod(index + step, bank.size()));
+    }
+
+    /**
+     * For the preset command
+     *
+     * @param text The name of a preset, or its number in the bank counting from 1
+     * @return True if there's such a preset, else false
+     */
+    public boolean handlePresetChoice(String text) {
+        int index = model.getPresetBank().indexOf(text);
+        if (index >= 0) return handlePresetSelect(index);
+        try {
+            return handlePresetSelect(Integer.parseInt(text.trim()) - 1);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * For the preset save button: keep the current settings as a preset, replacing any with the same name, and save
+     * the bank
+     *
+     * @param name What to call the preset
+     * @return True if it was kept and saved, else false
+     */
+    public boolean handlePresetSave(String name) {
+        if (name.trim().isEmpty()) return false;
+        PresetBank bank = model.storePreset(name);
+        if (presetFile == null) return true;
+        try {
+            bank.write(presetFile);
+            return true;
+        } catch (IOException e) {
+            System.err.println("Couldn't save presets: " + e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Increment the bpm by 1, for up arrow key, going no higher than MAX_BPM
+     */
+    public void handleBpmIncr() {
+        model.setBpm(Math.min(MAX_BPM, model.getBpm() + 1));
+    }
+
+    /**
+     * Decrement the bpm by 1, for the down arrow key, going no lower than MIN_BPM
+     */
+    public void handleBpmDecr() {
+        model.setBpm(Math.max(MIN_BPM, model.getBpm() - 1));
+    }
+
+    public void setModel(Model model) {
+        this.model = model;
+    }
+
+    public void setTimerController(TimerController timerController) {
+        this.timerController = timerController;
+    }
+
+    public void setAudio(Audio audio) {
+        this.audio = audio;
+    }
+
+    public void setMidiSync(MidiSync midiSync) {
+        this.midiSync = midiSync;
+    }
+}
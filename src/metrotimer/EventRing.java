@@ -0,0 +1,141 @@
+package metrotimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size ring of practice events (see PracticeLog) passed from one thread that publishes them to one thread that
+ * reads them, without locks and without allocating anything.
+ *
+ * Events are kept in parallel arrays of primitives made up front. The publishing thread fills in a slot and then moves
+ * the tail past it with an ordered write, and the reading thread moves the head past the slots it's read the same way,
+ * so neither ever waits for the other. If the reader falls so far behind that the ring is full, new events are thrown
+ * away and counted rather than making the publisher wait.
+ *
+ * Only one thread may ever publish to a ring, and only one read from it at a time; reads on different threads must be
+ * ordered by a lock, as PracticeLog's are.
+ */
+public final class EventRing {
+
+    /**
+     * Told about each event read from a ring
+     */
+    public interface Reader {
+        /**
+         * @param kind What happened, one of the kinds in PracticeLog
+         * @param millis The wall-clock time it happened, in milliseconds since the epoch
+         * @param frame The frame of the audio stream it happened on, or -1 if it wasn't on one
+         * @param value The tempo, volume or time that goes with it, depending on the kind
+         */
+        void event(int kind, long millis, long frame, float value);
+    }
+
+    /**
+     * The number of slots less one. The number of slots is a power of 2, so this turns a position into a slot
+     */
+    private final int mask;
+
+    private final byte[] kinds;
+    private final long[] millis;
+    private final long[] frames;
+    private final float[] values;
+
+    /**
+     * The position of the next slot to be published. Written by the publisher only
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next slot to be read. Written by the reader only
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The head as the publisher last saw it, so the publisher only has to look at the reader's head when the ring
+     * looks full. Publisher only
+     */
+    private long knownHead = 0;
+
+    /**
+     * The number of events thrown away because the ring was full. Written by the publisher only
+     */
+    private volatile long dropped = 0;
+
+    /**
+     * @param capacity The most events the ring holds at once. Rounded up to a power of 2
+     */
+    public EventRing(int capacity) {
+        int slots = Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1;
+        this.mask = slots - 1;
+        this.kinds = new byte[slots];
+        this.millis = new long[slots];
+        this.frames = new long[slots];
+        this.values = new float[slots];
+    }
+
+    /**
+     * Publish an event, or throw it away if the ring is full. Never waits. Publisher only
+     *
+     * @param kind What happened, one of the kinds in PracticeLog
+     * @param millis The wall-clock time it happened, in milliseconds since the epoch
+     * @param frame The frame of the audio stream it happened on, or -1 if it wasn't on one
+     * @param value The tempo, volume or time that goes with it, depending on the kind
+     * @return False if the ring was full
+     */
+    public boolean offer(int kind, long millis, long frame, float value) {
+        long position = tail.get();
+        if (position - knownHead > mask) {
+            knownHead = head.get();
+            if (position - knownHead > mask) {
+                dropped = dropped + 1;
+                return false;
+            }
+        }
+        int slot = (int) position & mask;
+        kinds[slot] = (byte) kind;
+        this.millis[slot] = millis;
+        frames[slot] = frame;
+        values[slot] = value;
+        // the slot is filled in before the reader can see it's there
+        tail.lazySet(position + 1);
+        return true;
+    }
+
+    /**
+     * Read events in the order they were published, freeing their slots for the publisher. Reader only
+     *
+     * @param reader Told about each event
+     * @param max The most events to read
+     * @return The number of events read
+     */
+    public int drain(Reader reader, int max) {
+        long position = head.get();
+        int count = (int) Math.min(tail.get() - position, max);
+        for (int i = 0; i < count; i++) {
+            int slot = (int) (position + i) & mask;
+            reader.event(kinds[slot], millis[slot], frames[slot], values[slot]);
+        }
+        head.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * @return The number of events waiting to be read
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return The number of events published so far, read or not
+     */
+    public long getPublished() {
+        return tail.get();
+    }
+
+    /**
+     * @return The number of events thrown away so far because the ring was full
+     */
+    public long getDropped() {
+        return dropped;
+    }
+}
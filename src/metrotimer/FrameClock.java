@@ -0,0 +1,85 @@
+package metrotimer;
+
+/**
+ * A clock that runs on the frames of an audio stream rather than the system clock, so that time measured on it is
+ * exactly the time it takes to play the stream (the sound card's crystal, not the CPU's, decides how long a second
+ * is). Frame f of the stream is at f / sampleRate seconds.
+ *
+ * The stream only advances a block at a time, so between blocks the reading is carried forward on the system clock,
+ * for at most one block. Readings never go backwards.
+ */
+public class FrameClock implements TimeSource {
+
+    /**
+     * The stream's sample rate in Hz
+     */
+    private final float sampleRate;
+
+    /**
+     * The clock used to fill in between blocks
+     */
+    private final TimeSource system;
+
+    /**
+     * The furthest a reading is carried forward past the latest frame, in nanoseconds
+     */
+    private final long maxCarryNanos;
+
+    /**
+     * The latest frame the stream has reached
+     */
+    private long frame = 0;
+
+    /**
+     * The system time when the stream reached that frame
+     */
+    private long frameSystemNanos;
+
+    /**
+     * The last reading returned, so readings never go backwards
+     */
+    private long lastReading = 0;
+
+    /**
+     * @param sampleRate The stream's sample rate in Hz
+     * @param blockFrames The most frames the stream advances by at once
+     * @param system The clock used to fill in between blocks
+     */
+    public FrameClock(float sampleRate, int blockFrames, TimeSource system) {
+        this.sampleRate = sampleRate;
+        this.system = system;
+        this.maxCarryNanos = framesToNanos(blockFrames);
+        this.frameSystemNanos = system.nanoTime();
+    }
+
+    /**
+     * Move the clock to a frame of the stream. Called by the thread producing the stream
+     *
+     * @param frame The frame the stream has reached
+     */
+    public synchronized void advanceTo(long frame) {
+        this.frame = frame;
+        this.frameSystemNanos = system.nanoTime();
+    }
+
+    @Override
+    public synchronized long nanoTime() {
+        long carried = Math.min(Math.max(system.nanoTime() - frameSystemNanos, 0), maxCarryNanos);
+        lastReading = Math.max(lastReading, framesToNanos(frame) + carried);
+        return lastReading;
+    }
+
+    /**
+     * @return The time on this clock at which the stream reaches the given frame
+     */
+    public long framesToNanos(long frames) {
+        return (long) (frames * 1e9 / sampleRate);
+    }
+
+    /**
+     * @return The frame of the stream that is reached at the given time on this clock, rounded to the nearest frame
+     */
+    public long nanosToFrames(long nanos) {
+        return Math.round(nanos * (double) sampleRate / 1e9);
+    }
+}
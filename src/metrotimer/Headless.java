@@ -0,0 +1,474 @@
+package metrotimer;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Locale;
+import java.util.Properties;
+
+/**
+ * Runs the metronome and timer without a user interface, for a machine with no screen. Nothing here touches
+ * JavaFX, so it starts much faster and uses much less memory than the window does.
+ *
+ * Settings come from an optional config file of key=value lines, then from the command line as --key value, which
+ * wins. Once running, commands are read one per line from standard input (see HELP). If standard input closes, it
+ * carries on until the metronome and timer have both stopped.
+ *
+ * Everything played is recorded in a practice log (see PracticeLog) unless --log off is given.
+ */
+public class Headless implements ModelListener {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: Main --headless [--config <file>] [--<key> <value>]...",
+            "Keys (also usable as key=value lines in the config file):",
+            "  bpm      tempo, e.g. 92.5                 accent   accent every N beats, 0 for none",
+            "  timer    timer length, seconds or m:ss    loop     on|off, restart the timer when it runs out",
+            "  snap     on|off, end the timer on a downbeat",
+            "  volume   0 to 1                           latency  low|balanced|saving",
+            "  voices   e.g. 3:4@660,2:1@1320x0.5        ramp     e.g. \"80-140 10:00 exp\"",
+            "  session  e.g. \"92/4 2:00 x2; 100/4 2:00\"",
+            "  sounds   WAV files for the accented and other beats, e.g. \"hi.wav, lo.wav\", or beep",
+            "  midi     MIDI clock: off, send <port>, follow <port>, or list to show the ports",
+            "  presets  preset bank file, by default ~/.metrotimer/presets.mtp",
+            "  preset   preset to switch to, by name or number",
+            "  log      practice log file, by default ~/.metrotimer/practice.log, or off",
+            "  start    what to start straight away: metronome, timer, both or session");
+
+    private static final String HELP = String.join(System.lineSeparator(),
+            "Commands:",
+            "  start | stop | toggle        the metronome",
+            "  up | down                    the tempo by 1 BPM",
+            "  timer start | timer stop     the timer",
+            "  session start | session stop the practice session",
+            "  preset next | preset prev    switch preset, at the next bar line if playing",
+            "  preset save <name>           keep the settings as a preset",
+            "  presets                      list the presets",
+            "  history                      sum up the practice log",
+            "  <key> <value>                change a setting, using the same keys as the command line",
+            "  status                       show the settings",
+            "  quit");
+
+    private final Model model;
+
+    private final Audio audio;
+
+    private final TimerController timerController;
+
+    private final Controller controller;
+
+    private final MidiSync midiSync;
+
+    /**
+     * Where everything played is recorded, or null if nothing is
+     */
+    private PracticeLog practiceLog;
+
+    /**
+     * Was the metronome playing when last reported?
+     */
+    private boolean wasPlaying = false;
+
+    /**
+     * Was the timer running when last reported?
+     */
+    private boolean wasTiming = false;
+
+    public Headless() {
+        this.model = new Model();
+        this.audio = new Audio();
+        this.timerController = new TimerController();
+        this.controller = new Controller();
+        this.midiSync = new MidiSync(model, audio, controller);
+
+        timerController.setAudio(audio);
+        timerController.setModel(model);
+        controller.setAudio(audio);
+        controller.setModel(model);
+        controller.setTimerController(timerController);
+        controller.setMidiSync(midiSync);
+        audio.setModel(model);
+        model.addSubscriber(this);
+        // the window's volume slider starts here
+        model.setVolume(0.75);
+    }
+
+    /**
+     * Report the metronome or timer starting or stopping
+     */
+    @Override
+    public synchronized void modelChanged(int changedFields) {
+        if (!Model.Field.RUNNING.in(changedFields)) return;
+        boolean playing = audio.audioPlaying();
+        boolean timing = timerController.timerRunning();
+        if (playing != wasPlaying) {
+            System.out.println(playing ? "Metronome started" : "Metronome stopped");
+        }
+        if (timing != wasTiming) {
+            System.out.println(timing ? "Timer started" : "Timer stopped");
+        }
+        wasPlaying = playing;
+        wasTiming = timing;
+    }
+
+    /**
+     * Change one setting
+     *
+     * @param key The setting's name, as on the command line
+     * @param value Its new value
+     * @throws IllegalArgumentException If there's no such setting or the value isn't allowed
+     */
+    public void set(String key, String value) {
+        boolean ok;
+        switch (key) {
+            case "bpm": ok = controller.handleBpmTextChanged(value); break;
+            case "accent": ok = controller.handleIntervalTextChanged(value); break;
+            case "voices": ok = controller.handleVoicesTextChanged(value); break;
+            case "ramp": ok = controller.handleRampTextChanged(value.equals("off") ? "" : value); break;
+            case "session": ok = controller.handleSessionTextChanged(value); break;
+            case "sounds": ok = controller.handleSoundsTextChanged(value); break;
+            case "loop": model.setTimerLooping(parseSwitch(key, value)); ok = true; break;
+            case "snap": controller.handleSnapChange(parseSwitch(key, value)); ok = true; break;
+            case "timer": ok = setTimer(value); break;
+            case "volume": ok = setVolume(value); break;
+            case "latency": controller.handleLatencyProfileChange(parseLatencyProfile(value)); ok = true; break;
+            case "midi": ok = setMidi(value); break;
+            case "preset": ok = controller.handlePresetChoice(value); break;
+            case "presets": ok = loadPresets(new File(value)); break;
+            default: throw new IllegalArgumentException("Unknown setting: " + key);
+        }
+        if (!ok) throw new IllegalArgumentException("Bad value for " + key + ": " + value);
+    }
+
+    /**
+     * @return False if the timer length couldn't be understood or is over 99:59
+     */
+    private boolean setTimer(String value) {
+        long millis;
+        try {
+            millis = ClickTrack.parseDurationMs(value);
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        if (millis < 0 || millis >= 100 * 60_000) return false;
+        model.setTimerAndSavedTime((int) (millis / 60_000), (int) (millis / 1000 % 60));
+        return true;
+    }
+
+    /**
+     * @return False if the volume couldn't be understood or isn't from 0 to 1
+     */
+    private boolean setVolume(String value) {
+        try {
+            double volume = Double.parseDouble(value);
+            if (!(volume >= 0 && volume <= 1)) return false;
+            controller.handleVolSliderChange(volume);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Load a preset bank, saying how long it took
+     *
+     * @return False if it couldn't be loaded
+     */
+    private boolean loadPresets(File file) {
+        if (!controller.loadPresets(file)) return false;
+        PresetBank bank = model.getPresetBank();
+        if (!bank.isEmpty()) {
+            System.out.printf("Loaded %d presets from %s in %.1f ms%n", bank.size(), file,
+                    controller.getPresetLoadMillis());
+        }
+        return true;
+    }
+
+    /**
+     * Start recording everything played in a practice log
+     *
+     * @param file Where to keep the log, or null to keep none
+     */
+    private void startLog(File file) {
+        if (file == null) return;
+        practiceLog = PracticeLog.start(file, audio.getControl());
+        audio.setPracticeLog(practiceLog);
+        timerController.setPracticeLog(practiceLog);
+    }
+
+    /**
+     * Print a summary of the practice log. What was played in the last moment may not have been written to it yet
+     */
+    private void printHistory() {
+        if (practiceLog == null) throw new IllegalArgumentException("No practice log is being kept");
+        ZoneId zone = ZoneId.systemDefault();
+        practiceLog.flush();
+        try {
+            System.out.println(PracticeReport.read(practiceLog.getFile(), zone).summary(LocalDate.now(zone), 7));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Couldn't read the practice log: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Shut everything down in order: the timer, so it can't set off another alarm, then MIDI sync, so nothing can
+     * start the metronome again, then the audio output and its line, and last the practice log
+     */
+    private void shutDown() {
+        timerController.shutDown();
+        midiSync.off();
+        audio.shutDown();
+        if (practiceLog != null) practiceLog.close();
+    }
+
+    /**
+     * Print every preset in the bank, numbered from 1, marking the one last switched to
+     */
+    private void listPresets() {
+        ModelState state = model.getState();
+        if (state.getPresetBank().isEmpty()) System.out.println("No presets; use preset save <name> to keep one");
+        for (int i = 0; i < state.getPresetBank().size(); i++) {
+            Preset preset = state.getPresetBank().get(i);
+            boolean current = state.getPreset() != null && state.getPreset().getName().equals(preset.getName());
+            System.out.printf("%s%3d %s%n", current ? "*" : " ", i + 1, preset);
+        }
+    }
+
+    /**
+     * @return False if the MIDI port couldn't be opened
+     */
+    private boolean setMidi(String value) {
+        if (!value.equals("list")) return controller.handleMidiSyncChange(MidiSync.option(value));
+        for (MidiSync.Option option : MidiSync.options()) System.out.println("  " + option);
+        return true;
+    }
+
+    private static boolean parseSwitch(String key, String value) {
+        switch (value) {
+            case "on": case "true": case "yes": return true;
+            case "off": case "false": case "no": return false;
+            default: throw new IllegalArgumentException("Expected on or off for " + key + ": " + value);
+        }
+    }
+
+    private static LatencyProfile parseLatencyProfile(String value) {
+        switch (value.toLowerCase(Locale.ROOT)) {
+            case "low": return LatencyProfile.LOW_LATENCY;
+            case "balanced": return LatencyProfile.BALANCED;
+            case "saving": return LatencyProfile.POWER_SAVING;
+            default: throw new IllegalArgumentException("Expected low, balanced or saving: " + value);
+        }
+    }
+
+    /**
+     * Start whatever the "start" setting says to
+     */
+    private void start(String what) {
+        switch (what) {
+            case "none": break;
+            case "metronome": startMetronome(); break;
+            case "timer": startTimer(); break;
+            case "both": startMetronome(); startTimer(); break;
+            case "session": startSession(); break;
+            default: throw new IllegalArgumentException("Expected metronome, timer, both or session: " + what);
+        }
+    }
+
+    private void startMetronome() {
+        if (!audio.audioPlaying()) controller.handleMetroClick();
+    }
+
+    private void stopMetronome() {
+        if (audio.audioPlaying()) controller.handleMetroClick();
+    }
+
+    private void startTimer() {
+        if (!timerController.timerRunning()) controller.handleTimerClick();
+    }
+
+    private void stopTimer() {
+        if (timerController.timerRunning()) controller.handleTimerClick();
+    }
+
+    private void startSession() {
+        if (model.getSessionPlan().isEmpty()) throw new IllegalArgumentException("No session has been set");
+        if (audio.audioPlaying()) controller.handleMetroClick();
+        controller.handleSessionClick();
+    }
+
+    private void stopSession() {
+        if (audio.getSessionTimeline() != null) controller.handleSessionClick();
+    }
+
+    /**
+     * Carry out one command
+     *
+     * @param line The command, as typed
+     * @return False if it was the command to quit
+     * @throws IllegalArgumentException If the command couldn't be understood
+     */
+    public boolean command(String line) {
+        String trimmed = line.trim();
+        int space = trimmed.indexOf(' ');
+        String word = (space < 0) ? trimmed : trimmed.substring(0, space);
+        String arg = (space < 0) ? "" : trimmed.substring(space + 1).trim();
+        switch (word) {
+            case "": break;
+            case "quit": case "exit": return false;
+            case "help": System.out.println(HELP); break;
+            case "status": System.out.println(status()); break;
+            case "start": startMetronome(); break;
+            case "stop": stopMetronome(); break;
+            case "toggle": controller.handleMetroClick(); break;
+            case "up": controller.handleBpmIncr(); System.out.println(status()); break;
+            case "down": controller.handleBpmDecr(); System.out.println(status()); break;
+            case "timer":
+                if (arg.equals("start")) startTimer();
+                else if (arg.equals("stop")) stopTimer();
+                else set(word, arg);
+                break;
+            case "session":
+                if (arg.equals("start")) startSession();
+                else if (arg.equals("stop")) stopSession();
+                else set(word, arg);
+                break;
+            case "history": printHistory(); break;
+            case "presets":
+                if (arg.isEmpty()) listPresets();
+                else set(word, arg);
+                break;
+            case "preset":
+                if (arg.equals("next")) controller.handlePresetStep(1);
+                else if (arg.equals("prev")) controller.handlePresetStep(-1);
+                else if (arg.startsWith("save ")) savePreset(arg.substring(5).trim());
+                else set(word, arg);
+                if (!arg.startsWith("save ")) System.out.println(status());
+                break;
+            default:
+                if (arg.isEmpty()) throw new IllegalArgumentException("Unknown command: " + word);
+                set(word, arg);
+                break;
+        }
+        return true;
+    }
+
+    private void savePreset(String name) {
+        if (!controller.handlePresetSave(name)) throw new IllegalArgumentException("Couldn't save preset " + name);
+        System.out.println("Saved " + model.getPreset());
+    }
+
+    /**
+     * @return The settings and what's running, on one line
+     */
+    private String status() {
+        ModelState state = model.getState();
+        StringBuilder sb = new StringBuilder();
+        if (state.getPreset() != null) sb.append("Preset ").append(state.getPreset().getName()).append(", ");
+        sb.append(String.format("%s BPM", formatBpm(state.getBpm())));
+        if (audio.audioPlaying() && !Double.isNaN(state.getLiveBpm())) {
+            sb.append(String.format(" (playing %s)", formatBpm(state.getLiveBpm())));
+        }
+        sb.append(", accent ").append(state.getAccentInterval());
+        sb.append(String.format(", timer %d:%02d", state.getTimerMin(), state.getTimerSec()));
+        sb.append(state.isTimerLooping() ? " looping" : "");
+        sb.append(String.format(", volume %.0f%%", state.getVolume() * 100));
+        if (!state.getVoices().isEmpty()) sb.append(", voices ").append(ClickVoice.toString(state.getVoices()));
+        if (state.getTempoRamp() != null) sb.append(", ramp ").append(state.getTempoRamp());
+        if (state.getHiSample() != null || state.getLoSample() != null) {
+            sb.append(", sounds ").append(Controller.soundsText(state.getHiSample(), state.getLoSample()));
+        }
+        if (midiSync.getOption() != MidiSync.Option.OFF) sb.append(", ").append(midiSync.getOption());
+        sb.append(audio.audioPlaying() ? ", metronome playing" : ", metronome stopped");
+        sb.append(timerController.timerRunning() ? ", timer running" : ", timer stopped");
+        return sb.toString();
+    }
+
+    /**
+     * @return A tempo as it can be typed back in: with a point whatever the locale
+     */
+    private static String formatBpm(double bpm) {
+        return (bpm == Math.rint(bpm)) ? Long.toString((long) bpm) : String.format(Locale.ROOT, "%.2f", bpm);
+    }
+
+    /**
+     * Read commands until told to quit or there are none left. When there are none left, wait for the metronome and
+     * timer to stop
+     *
+     * @throws IOException If the commands couldn't be read
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public void run(Reader commands) throws IOException, InterruptedException {
+        BufferedReader in = new BufferedReader(commands);
+        String line;
+        while ((line = in.readLine()) != null) {
+            try {
+                if (!command(line)) {
+                    audio.stop();
+                    timerController.stopTimer();
+                    return;
+                }
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+            }
+        }
+        while (audio.audioPlaying() || timerController.timerRunning()) Thread.sleep(250);
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Properties settings = new Properties();
+        Properties given = new Properties();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("--help")) {
+                System.out.println(USAGE);
+                return;
+            }
+            if (!args[i].startsWith("--") || i + 1 == args.length) {
+                System.err.println(USAGE);
+                System.exit(2);
+            }
+            given.setProperty(args[i].substring(2), args[++i]);
+        }
+        String config = given.getProperty("config");
+        if (config != null) {
+            try (Reader reader = new InputStreamReader(new FileInputStream(config), StandardCharsets.UTF_8)) {
+                settings.load(reader);
+            }
+            given.remove("config");
+        }
+        settings.putAll(given);
+
+        final Headless headless = new Headless();
+        String start = settings.getProperty("start", "none");
+        settings.remove("start");
+        // the bank is loaded first and the preset switched to before anything else, so settings given override it
+        String presets = (String) settings.remove("presets");
+        String preset = (String) settings.remove("preset");
+        String log = (String) settings.remove("log");
+        if (log == null) headless.startLog(PracticeLog.defaultFile());
+        else if (!log.trim().equals("off")) headless.startLog(new File(log.trim()));
+        if (presets == null) headless.loadPresets(PresetBank.defaultFile());
+        try {
+            if (presets != null) headless.set("presets", presets.trim());
+            if (preset != null) headless.set("preset", preset.trim());
+            for (String key : settings.stringPropertyNames()) headless.set(key, settings.getProperty(key).trim());
+            headless.start(start);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.exit(2);
+        }
+        System.out.println("Ready. " + headless.status());
+        StartupProbe.ready(new Runnable() {
+            @Override
+            public void run() {
+                headless.startMetronome();
+            }
+        }, headless.audio.getControl());
+        headless.run(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+        headless.shutDown();
+    }
+}
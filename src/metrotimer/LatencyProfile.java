@@ -0,0 +1,57 @@
+package metrotimer;
+
+/**
+ * How to trade output latency against the risk of the output running dry. Each profile picks how big the output
+ * buffer starts out and how big it's allowed to grow if underruns keep happening.
+ */
+public enum LatencyProfile {
+
+    /**
+     * Start with the smallest buffer that can hold a block, and grow only as far as underruns force it to
+     */
+    LOW_LATENCY("Low latency", 12, 100),
+
+    /**
+     * Start with about the buffer size that's always been used
+     */
+    BALANCED("Balanced", 46, 250),
+
+    /**
+     * Start with a big buffer so the audio thread wakes up rarely
+     */
+    POWER_SAVING("Power saving", 200, 1000);
+
+    /**
+     * The name shown to the user
+     */
+    private final String label;
+
+    /**
+     * The length of the buffer to start with, in milliseconds
+     */
+    private final int startMs;
+
+    /**
+     * The longest the buffer may grow to, in milliseconds
+     */
+    private final int maxMs;
+
+    LatencyProfile(String label, int startMs, int maxMs) {
+        this.label = label;
+        this.startMs = startMs;
+        this.maxMs = maxMs;
+    }
+
+    public int getStartMs() {
+        return startMs;
+    }
+
+    public int getMaxMs() {
+        return maxMs;
+    }
+
+    @Override
+    public String toString() {
+        return label;
+    }
+}
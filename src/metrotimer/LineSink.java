@@ -0,0 +1,96 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.io.IOException;
+
+/**
+ * Plays audio through the sound card using a SourceDataLine
+ */
+public class LineSink implements AudioSink {
+
+    /**
+     * The line all data gets written to
+     */
+    private final SourceDataLine dataLine;
+
+    /**
+     * The format of the line
+     */
+    private final AudioFormat format;
+
+    /**
+     * @param format The format that all data will be written in
+     * @throws LineUnavailableException If the system has no line that can play this format
+     */
+    public LineSink(AudioFormat format) throws LineUnavailableException {
+        this.format = format;
+        this.dataLine = AudioSystem.getSourceDataLine(format);
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return dataLine.isOpen();
+    }
+
+    @Override
+    public void open(int bufferSize) throws IOException {
+        try {
+            dataLine.open(format, bufferSize);
+        } catch (LineUnavailableException e) {
+            throw new IOException("Couldn't open line for " + format, e);
+        }
+    }
+
+    @Override
+    public void start() {
+        dataLine.start();
+    }
+
+    @Override
+    public void stop() {
+        dataLine.stop();
+    }
+
+    @Override
+    public void flush() {
+        dataLine.flush();
+    }
+
+    @Override
+    public void drain() {
+        dataLine.drain();
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        dataLine.write(b, off, len);
+    }
+
+    @Override
+    public int getBufferSize() {
+        return dataLine.getBufferSize();
+    }
+
+    @Override
+    public int available() {
+        return dataLine.available();
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return dataLine.getLongFramePosition();
+    }
+
+    @Override
+    public void close() {
+        dataLine.close();
+    }
+}
@@ -0,0 +1,371 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+
+/**
+ * Puts a fixed lookahead between rendering audio and writing it to a sink that blocks, so a hiccup on the rendering
+ * thread (a GC pause, a slow read of a setting) is taken up by audio that's already been rendered rather than being
+ * heard as the line running dry.
+ *
+ * What's written goes into a SampleRing made up front, and returns straight away unless the ring is full, so the
+ * thread rendering keeps the lookahead filled. A writer thread of its own takes it out a block at a time and does the
+ * blocking writes to the sink underneath. Like Audio's output thread, the writer is made the first time this is
+ * opened and lives until release(), waiting in between rather than exiting, so reopening (e.g. to resize the buffer)
+ * never makes another thread, and there's never more than one taking from the ring. It does all its waiting on a
+ * Scheduler, so it runs in simulated time along with everything else.
+ *
+ * The writer records how full the lookahead was each time it took a block, and counts a near miss whenever it finds
+ * the sink's own buffer less than a quarter full, which is as close as the output gets to running dry without doing
+ * so. Both go to TimingMetrics, to size the lookahead by: a lookahead whose lowest fill stays well above 0 and that
+ * has no near misses is big enough.
+ *
+ * Only one thread at a time may use this, as with any sink.
+ */
+public class LookaheadSink implements AudioSink {
+
+    /**
+     * How long close() waits for the writer to stop writing, and release() for it to finish, in milliseconds
+     */
+    private static final long CLOSE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The sink the writer writes to
+     */
+    private final AudioSink line;
+
+    private final Scheduler scheduler;
+
+    private final TimingMetrics metrics;
+
+    /**
+     * The lookahead: rendered audio waiting for the writer
+     */
+    private final SampleRing ring;
+
+    /**
+     * The block the writer has taken out of the ring and is writing. Writer only
+     */
+    private final byte[] block;
+
+    private final double nanosPerByte;
+
+    /**
+     * The thread writing to the line, or null if this has never been opened
+     */
+    private volatile Thread writer;
+
+    /**
+     * Should the writer be writing to the line? Set while this is open
+     */
+    private volatile boolean open = false;
+
+    /**
+     * Has writing to the line failed since this was opened? The writer stops writing until it's opened again
+     */
+    private volatile boolean failed = false;
+
+    /**
+     * Has release() been called? The writer finishes once it has
+     */
+    private volatile boolean released = false;
+
+    /**
+     * Is the writer waiting to be opened, rather than writing or about to? Only ever set by the writer, so once set,
+     * nothing else reads the ring or writes to the line until this is opened again
+     */
+    private volatile boolean idle = true;
+
+    /**
+     * The thread that last wrote, flushed or drained, which the writer wakes when there's room or it's caught up
+     */
+    private volatile Thread caller;
+
+    /**
+     * The number of bytes out of the ring the writer has finished writing to the line. Written by the writer only,
+     * except while it isn't running
+     */
+    private volatile long written = 0;
+
+    /**
+     * Has the caller asked the writer to throw everything away? Cleared by the writer once it has
+     */
+    private volatile boolean flushing = false;
+
+    /**
+     * Has the lookahead been full since the line was last flushed? Until it has, the lookahead and the line being low
+     * is just them filling up rather than the rendering thread falling behind, so it isn't measured. Writer only
+     */
+    private boolean primed = false;
+
+    /**
+     * @param line The sink to write to
+     * @param lookaheadFrames How many frames to render ahead of what's been written to the line. Rounded up to a whole
+     *                        number of blocks
+     * @param blockFrames The number of frames the writer writes to the line at a time
+     * @param scheduler What makes the writer and what it waits on
+     */
+    public LookaheadSink(AudioSink line, int lookaheadFrames, int blockFrames, Scheduler scheduler) {
+        this.line = line;
+        this.scheduler = scheduler;
+        this.metrics = TimingMetrics.get();
+        AudioFormat format = line.getFormat();
+        int blocks = Math.max((lookaheadFrames + blockFrames - 1) / blockFrames, 1);
+        this.block = new byte[blockFrames * format.getFrameSize()];
+        this.ring = new SampleRing(blocks * block.length);
+        this.nanosPerByte = 1e9 / format.getSampleRate() / format.getFrameSize();
+    }
+
+    /**
+     * What the writer thread does: while open, take a block out of the ring whenever there is one and write it to the
+     * line, and otherwise wait to be opened, until released
+     */
+    private void write() {
+        while (!released) {
+            // cleared before looking at open, so either close() sees the writer isn't idle or the writer sees it's
+            // been closed
+            idle = false;
+            if (!open || failed) {
+                idle = true;
+                Thread waiting = caller;
+                if (waiting != null) scheduler.unpark(waiting);
+                scheduler.park(this);
+                continue;
+            }
+            try {
+                writeBlock();
+            } catch (IOException e) {
+                e.printStackTrace();
+                failed = true;
+            }
+        }
+        idle = true;
+        Thread waiting = caller;
+        if (waiting != null) scheduler.unpark(waiting);
+    }
+
+    /**
+     * Do the next thing there is to do while open: throw everything away if asked to, or write the next block to the
+     * line if there is one, or wait for one. Writer only
+     */
+    private void writeBlock() throws IOException {
+        if (flushing) {
+            ring.skip();
+            line.flush();
+            written = ring.getWritten();
+            primed = false;
+            flushing = false;
+            scheduler.unpark(caller);
+            return;
+        }
+        int count = ring.read(block, 0, block.length);
+        if (count == 0) {
+            scheduler.park(this);
+            return;
+        }
+        // there's room for the caller to render more
+        scheduler.unpark(caller);
+        int left = ring.size();
+        if (left + count == ring.capacity()) primed = true;
+        if (primed) {
+            metrics.recordLookaheadFill((long) (left * nanosPerByte));
+            int queued = line.getBufferSize() - line.available();
+            if (queued < line.getBufferSize() / 4) {
+                metrics.recordNearMiss(line.getLongFramePosition(), (long) (queued * nanosPerByte));
+            }
+        }
+        line.write(block, 0, count);
+        written += count;
+        scheduler.unpark(caller);
+    }
+
+    /**
+     * @return Is the writer running? If not, nothing written will ever reach the line
+     */
+    private boolean writing() {
+        Thread thread = writer;
+        return thread != null && thread.isAlive() && open && !failed;
+    }
+
+    /**
+     * Wait a bounded time for the writer to be idle, having been closed
+     *
+     * @return Is it idle?
+     */
+    private boolean awaitIdle() {
+        Thread thread = writer;
+        if (thread == null) return true;
+        caller = Thread.currentThread();
+        scheduler.unpark(thread);
+        long deadline = scheduler.nanoTime() + CLOSE_TIMEOUT_MILLIS * 1_000_000;
+        long wait;
+        while (!idle && thread.isAlive() && (wait = deadline - scheduler.nanoTime()) > 0) {
+            scheduler.parkNanos(this, wait);
+        }
+        return idle || !thread.isAlive();
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return line.getFormat();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return line.isOpen();
+    }
+
+    /**
+     * Open the line and set the writer writing to it, making the writer if this is the first time
+     *
+     * @param bufferSize The size of the line's own buffer in bytes, not counting the lookahead
+     * @throws IOException If the line couldn't be opened, or the writer is still writing from when this was last open
+     *                     (see close), or this has been released
+     */
+    @Override
+    public void open(int bufferSize) throws IOException {
+        if (released) throw new IOException("Audio writer has been released");
+        if (!awaitIdle()) throw new IOException("Audio writer is still writing from before");
+        line.open(bufferSize);
+        // the writer is idle, so nothing else is reading the ring
+        ring.skip();
+        written = ring.getWritten();
+        primed = false;
+        flushing = false;
+        failed = false;
+        metrics.recordLookahead(ring.capacity() * nanosPerByte / 1e6);
+        open = true;
+        if (writer != null) {
+            scheduler.unpark(writer);
+            return;
+        }
+        Thread thread = scheduler.newThread(new Runnable() {
+            @Override
+            public void run() {
+                write();
+            }
+        }, "Audio writer");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MAX_PRIORITY);
+        writer = thread;
+        thread.start();
+    }
+
+    @Override
+    public void start() {
+        line.start();
+    }
+
+    @Override
+    public void stop() {
+        line.stop();
+    }
+
+    /**
+     * Throw away everything in the lookahead and the line's buffer, waiting for the writer to have done so
+     */
+    @Override
+    public void flush() {
+        if (!writing()) {
+            line.flush();
+            return;
+        }
+        caller = Thread.currentThread();
+        flushing = true;
+        // the writer may be stuck writing to a line that's stopped and full, which this frees it from
+        line.flush();
+        scheduler.unpark(writer);
+        while (flushing && writing()) scheduler.park(this);
+    }
+
+    /**
+     * Wait for everything in the lookahead to be written to the line, then for the line to play it
+     */
+    @Override
+    public void drain() {
+        caller = Thread.currentThread();
+        while (written < ring.getWritten() && writing()) {
+            scheduler.unpark(writer);
+            scheduler.park(this);
+        }
+        line.drain();
+    }
+
+    /**
+     * Put data into the lookahead, waiting only if it's full
+     *
+     * @throws IOException If the writer isn't running, so the data would never be played
+     */
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        caller = Thread.currentThread();
+        while (true) {
+            if (!writing()) throw new IOException("Audio writer isn't running");
+            int count = ring.write(b, off, len);
+            if (count > 0) scheduler.unpark(writer);
+            off += count;
+            len -= count;
+            if (len == 0) return;
+            scheduler.park(this);
+        }
+    }
+
+    /**
+     * @return The size of the lookahead plus the size of the line's buffer, in bytes
+     */
+    @Override
+    public int getBufferSize() {
+        return ring.capacity() + line.getBufferSize();
+    }
+
+    /**
+     * @return The room in the lookahead, less any block the writer has yet to finish writing, plus the room in the
+     *         line's buffer, in bytes
+     */
+    @Override
+    public int available() {
+        long pending = ring.getWritten() - written;
+        return (int) Math.max(ring.capacity() - pending + line.available(), 0);
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return line.getLongFramePosition();
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return line.isRealTime();
+    }
+
+    /**
+     * Stop the writer writing, waiting a bounded time for it, then close the line. The writer waits to be opened
+     * again. If it doesn't stop in time (stuck in a write to the line), this can't be opened again until it has
+     */
+    @Override
+    public void close() throws IOException {
+        open = false;
+        // in case it's stuck writing to a line that's stopped and full
+        line.flush();
+        if (!awaitIdle()) System.err.println("Audio writer didn't stop writing");
+        line.close();
+    }
+
+    /**
+     * Close the line if it's open, and finish the writer, waiting a bounded time for it. Can't be opened again
+     */
+    @Override
+    public void release() throws IOException {
+        if (isOpen()) close();
+        released = true;
+        Thread thread = writer;
+        if (thread == null) return;
+        scheduler.unpark(thread);
+        try {
+            thread.join(CLOSE_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (thread.isAlive()) System.err.println("Audio writer thread didn't stop");
+    }
+}
@@ -0,0 +1,21 @@
+package metrotimer;
+
+import java.util.Arrays;
+
+/**
+ * Class that launches MainView. Did this because I read that JavaFX gets moody when your main class extends
+ * Application.
+ *
+ * With --headless as the first argument it runs Headless instead, which never loads JavaFX at all.
+ */
+public class Main {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--headless")) {
+            Headless.main(Arrays.copyOfRange(args, 1, args.length));
+        } else {
+            MainView.main(args);
+        }
+    }
+
+}
@@ -0,0 +1,460 @@
+package metrotimer;
+
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.beans.value.ObservableValue;
+import javafx.event.ActionEvent;
+import javafx.event.Event;
+import javafx.event.EventHandler;
+import javafx.fxml.FXMLLoader;
+import javafx.scene.Parent;
+import javafx.scene.Scene;
+import javafx.scene.control.Button;
+import javafx.scene.control.CheckBox;
+import javafx.scene.control.ChoiceBox;
+import javafx.scene.control.Slider;
+import javafx.scene.control.TextField;
+import javafx.scene.control.TextInputDialog;
+import javafx.scene.image.Image;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+
+import java.text.DecimalFormat;
+import java.text.DecimalFormatSymbols;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Startup code for the application, and controls for the UI
+ */
+public class MainView extends Application implements ModelListener {
+
+    public TextField minText;
+    public TextField secText;
+    public Button timerButton;
+    public Button metroButton;
+    public TextField intervalText;
+    public TextField voicesText;
+    public TextField rampText;
+    public TextField soundsText;
+    public TextField sessionText;
+    public Button sessionButton;
+    public TextField bpmText;
+    public Text volumeText;
+    public Slider volumeSlider;
+    public ChoiceBox<LatencyProfile> latencyChoice;
+    public CheckBox snapCheck;
+    public ChoiceBox<MidiSync.Option> midiChoice;
+    public ChoiceBox<String> presetChoice;
+    public Button presetButton;
+
+    private TimerController timerController;
+    private Model model;
+    private Audio audio;
+    private Controller controller;
+    private MidiSync midiSync;
+    private PracticeLog practiceLog;
+
+    /**
+     * Have the MIDI ports been listed in the MIDI choice box yet? Only looked at on the UI thread
+     */
+    private boolean midiPortsListed = false;
+
+    /**
+     * Is the preset choice box being brought up to date? Choosing a preset only switches to it if the user chose it
+     */
+    private boolean showingPresets = false;
+
+    /**
+     * Shows whole tempos without a decimal point, and fractional ones to at most 2 decimal places. Always with a
+     * point, whatever the locale, so what's shown parses back as the same tempo
+     */
+    private static final DecimalFormat BPM_FORMAT = new DecimalFormat("0.##",
+            DecimalFormatSymbols.getInstance(Locale.ROOT));
+
+    /**
+     * The Model fields that change what's shown in the BPM textbox
+     */
+    private static final int BPM_DISPLAY_FIELDS = Model.Field.BPM.bit() | Model.Field.LIVE_BPM.bit()
+            | Model.Field.RUNNING.bit();
+
+    /**
+     * The Model fields that have changed since the view was last updated, as a set of Model.Field bits. While this
+     * isn't empty there's an update waiting to run on the UI thread, so changes coming in faster than the UI thread
+     * runs pile up into one update rather than one each
+     */
+    private final AtomicInteger pendingFields = new AtomicInteger();
+
+    /**
+     * Brings the controls for every field in pendingFields up to date. Runs on the UI thread
+     */
+    private final Runnable updateView = new Runnable() {
+        @Override
+        public void run() {
+            int fields = pendingFields.getAndSet(0);
+            ModelState state = model.getState();
+            if (Model.Field.TIMER.in(fields)) {
+                minText.setText(Integer.toString(state.getTimerMin()));
+                String sec = Integer.toString(state.getTimerSec());
+                if (state.getTimerSec() < 10)    // pad seconds with extra 0 if necessary
+                    sec  = "0" + sec;
+                secText.setText(sec);
+            }
+            if (Model.Field.ACCENT_INTERVAL.in(fields)) {
+                intervalText.setText(Integer.toString(state.getAccentInterval()));
+            }
+            if (Model.Field.VOICES.in(fields)) {
+                voicesText.setText(ClickVoice.toString(state.getVoices()));
+            }
+            if (Model.Field.TEMPO_RAMP.in(fields)) {
+                rampText.setText((state.getTempoRamp() == null) ? "" : state.getTempoRamp().toString());
+            }
+            if (Model.Field.CLICK_SOUNDS.in(fields)) {
+                soundsText.setText(Controller.soundsText(state.getHiSample(), state.getLoSample()));
+            }
+            if (Model.Field.SESSION.in(fields)) {
+                sessionText.setText(state.getSessionPlan().toString());
+            }
+            if ((fields & BPM_DISPLAY_FIELDS) != 0) {
+                // show the tempo a ramp has got to while it plays, and the tempo that's been set otherwise
+                boolean ramping = audio.audioPlaying() && !Double.isNaN(state.getLiveBpm());
+                if (ramping && !bpmText.isFocused()) {
+                    bpmText.setText(BPM_FORMAT.format(state.getLiveBpm()));
+                } else if (!ramping) {
+                    bpmText.setText(BPM_FORMAT.format(state.getBpm()));
+                }
+            }
+            if (Model.Field.RUNNING.in(fields)) {
+                minText.setEditable(!timerController.timerRunning());
+                secText.setEditable(!timerController.timerRunning());
+                timerButton.setText(timerController.timerRunning() ? "Stop" : "Start");
+                metroButton.setText(audio.audioPlaying() ? "Stop" : "Start");
+                sessionButton.setText((audio.getSessionTimeline() != null) ? "Stop" : "Session");
+            }
+            if (Model.Field.VOLUME.in(fields)) {
+                volumeText.setText(String.format("%.0f%%", state.getVolume() * 100));
+            }
+            if (Model.Field.LATENCY_PROFILE.in(fields)) {
+                latencyChoice.setValue(state.getLatencyProfile());
+            }
+            if (Model.Field.TIMER_SNAP.in(fields)) {
+                snapCheck.setSelected(state.isTimerSnapToDownbeat());
+            }
+            if (Model.Field.PRESET.in(fields)) {
+                showingPresets = true;
+                presetChoice.getItems().clear();
+                for (Preset p : state.getPresetBank().getPresets()) presetChoice.getItems().add(p.getName());
+                presetChoice.setValue((state.getPreset() == null) ? null : state.getPreset().getName());
+                showingPresets = false;
+            }
+
+            // the live tempo changes too often to take the focus away every time
+            if ((fields & ~Model.Field.LIVE_BPM.bit()) != 0) volumeText.requestFocus();
+        }
+    };
+
+    /**
+     * Update UI after a change to the Model
+     */
+    public void modelChanged(int changedFields) {
+        if (changedFields == 0) return;
+        int before;
+        do {
+            before = pendingFields.get();
+        } while (!pendingFields.compareAndSet(before, before | changedFields));
+        // if there were already changes pending, the update for them hasn't run yet and will pick these up too
+        if (before == 0) Platform.runLater(updateView);
+    }
+
+    /**
+     * Setup for the application
+     */
+    @Override
+    public void start(Stage primaryStage) throws Exception {
+
+        // setup MVC
+        timerController = new TimerController();
+        model = new Model();
+        audio = new Audio();
+        practiceLog = PracticeLog.start(PracticeLog.defaultFile(), audio.getControl());
+        controller = new Controller();
+        midiSync = new MidiSync(model, audio, controller);
+
+        timerController.setAudio(audio);
+        timerController.setModel(model);
+        controller.setAudio(audio);
+        controller.setModel(model);
+        controller.setTimerController(timerController);
+        controller.setMidiSync(midiSync);
+        audio.setModel(model);
+        audio.setPracticeLog(practiceLog);
+        timerController.setPracticeLog(practiceLog);
+        model.addSubscriber(this);
+
+        // setup the stage, with the loader filling in this view's fields from the elements with matching fx:ids
+        FXMLLoader loader = new FXMLLoader(getClass().getResource("MainView.fxml"));
+        loader.setController(this);
+        Parent root = loader.load();
+        primaryStage.setTitle("MetroTime");
+        primaryStage.setScene(new Scene(root));
+        primaryStage.show();
+
+        // fill in the elements
+        latencyChoice.getItems().setAll(LatencyProfile.values());
+        latencyChoice.setValue(model.getLatencyProfile());
+        snapCheck.setSelected(model.isTimerSnapToDownbeat());
+        // the MIDI ports aren't looked for until the choice is first opened, as asking the MIDI system for its
+        // devices can take longer than building the rest of the window
+        midiChoice.getItems().setAll(midiSync.getOption());
+        midiChoice.setValue(midiSync.getOption());
+        midiChoice.setOnShowing(new EventHandler<Event>() {
+            @Override
+            public void handle(Event event) {
+                if (midiPortsListed) return;
+                midiPortsListed = true;
+                midiChoice.getItems().setAll(MidiSync.options());
+                midiChoice.setValue(midiSync.getOption());
+            }
+        });
+
+        // add button listeners
+        metroButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                controller.handleMetroClick();
+            }
+        });
+        sessionButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                controller.handleSessionClick();
+            }
+        });
+        timerButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                controller.handleTimerClick();
+            }
+        });
+        presetButton.setOnAction(new EventHandler<ActionEvent>() {
+            @Override
+            public void handle(ActionEvent actionEvent) {
+                Preset current = model.getPreset();
+                TextInputDialog dialog = new TextInputDialog((current == null) ? "" : current.getName());
+                dialog.setTitle("Save preset");
+                dialog.setHeaderText("Keep the metronome settings and timer length as a preset");
+                dialog.setContentText("Name:");
+                Optional<String> name = dialog.showAndWait();
+                if (name.isPresent()) controller.handlePresetSave(name.get());
+            }
+        });
+
+        // add text input listeners
+        minText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleMinTextChanged(minText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.TIMER);
+                    }
+                }
+            }
+        });
+        secText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleSecTextChanged(secText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.TIMER);
+                    }
+                }
+            }
+        });
+        intervalText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleIntervalTextChanged(intervalText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.ACCENT_INTERVAL);
+                    }
+                }
+            }
+        });
+        voicesText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleVoicesTextChanged(voicesText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.VOICES);
+                    }
+                }
+            }
+        });
+        rampText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleRampTextChanged(rampText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.TEMPO_RAMP);
+                    }
+                }
+            }
+        });
+        soundsText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleSoundsTextChanged(soundsText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.CLICK_SOUNDS);
+                    }
+                }
+            }
+        });
+        sessionText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleSessionTextChanged(sessionText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.SESSION);
+                    }
+                }
+            }
+        });
+        bpmText.focusedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                if (!newVal) {
+                    if (! controller.handleBpmTextChanged(bpmText.textProperty().get())) {
+                        // return to old value if couldn't parse input
+                        model.notifySubscribers(Model.Field.BPM);
+                    }
+                }
+            }
+        });
+        volumeSlider.valueProperty().addListener(new ChangeListener<Number>() {
+            @Override
+            public void changed(ObservableValue<? extends Number> observableValue, Number oldVal, Number newVal) {
+                controller.handleVolSliderChange((Double) newVal);
+            }
+        });
+        latencyChoice.valueProperty().addListener(new ChangeListener<LatencyProfile>() {
+            @Override
+            public void changed(ObservableValue<? extends LatencyProfile> observableValue, LatencyProfile oldVal,
+                                LatencyProfile newVal) {
+                controller.handleLatencyProfileChange(newVal);
+            }
+        });
+        midiChoice.valueProperty().addListener(new ChangeListener<MidiSync.Option>() {
+            @Override
+            public void changed(ObservableValue<? extends MidiSync.Option> observableValue, MidiSync.Option oldVal,
+                                MidiSync.Option newVal) {
+                if (newVal != null && !controller.handleMidiSyncChange(newVal)) {
+                    // show that it's been left off if the port couldn't be opened
+                    midiChoice.setValue(midiSync.getOption());
+                }
+            }
+        });
+
+        presetChoice.valueProperty().addListener(new ChangeListener<String>() {
+            @Override
+            public void changed(ObservableValue<? extends String> observableValue, String oldVal, String newVal) {
+                if (newVal != null && !showingPresets) controller.handlePresetChoice(newVal);
+            }
+        });
+
+        snapCheck.selectedProperty().addListener(new ChangeListener<Boolean>() {
+            @Override
+            public void changed(ObservableValue<? extends Boolean> observableValue, Boolean oldVal, Boolean newVal) {
+                controller.handleSnapChange(newVal);
+            }
+        });
+
+        // Add key listeners
+        primaryStage.getScene().setOnKeyPressed(new EventHandler<KeyEvent>() {
+            @Override
+            public void handle(KeyEvent keyEvent) {
+                boolean flag;
+                switch (keyEvent.getCode()) {
+                    case UP:
+                        // up arrow corresponds to increasing BPM
+                        controller.handleBpmIncr();
+                        break;
+                    case DOWN:
+                        // down arrow corresponds to decreasing BPM
+                        controller.handleBpmDecr();
+                        break;
+                    case SPACE:
+                        // space corresponds to starting/stopping the metronome
+                        controller.handleMetroClick();
+                        break;
+                    case ENTER:
+                        // enter takes the focus away from the current node
+                        volumeText.requestFocus();
+                        break;
+                    case PAGE_UP:
+                        // page up and page down (which footswitches send) go through the presets
+                        controller.handlePresetStep(-1);
+                        break;
+                    case PAGE_DOWN:
+                        controller.handlePresetStep(1);
+                        break;
+                    default:
+                        // F1 to F12 switch to the first twelve presets; do nothing for any other key
+                        KeyCode code = keyEvent.getCode();
+                        if (code.isFunctionKey()) {
+                            controller.handlePresetSelect(Integer.parseInt(code.getName().substring(1)) - 1);
+                        }
+                        break;
+                }
+            }
+        });
+
+        // get slider label to display correct value on startup
+        model.setVolume(volumeSlider.getValue());
+        model.notifySubscribers();
+
+        // the presets load on the control thread so the window isn't held up, and show up once they have
+        audio.getControl().execute(new Runnable() {
+            @Override
+            public void run() {
+                controller.loadPresets(PresetBank.defaultFile());
+            }
+        });
+
+        StartupProbe.ready(new Runnable() {
+            @Override
+            public void run() {
+                controller.handleMetroClick();
+            }
+        }, audio.getControl());
+    }
+
+    /**
+     * Shut everything down in order as the window closes: the timer, so it can't set off another alarm, then MIDI
+     * sync, so nothing can start the metronome again, then the audio output and its line, and last the practice log,
+     * so it gets the metronome stopping
+     */
+    @Override
+    public void stop() {
+        timerController.shutDown();
+        midiSync.off();
+        audio.shutDown();
+        if (practiceLog != null) practiceLog.close();
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+
+}
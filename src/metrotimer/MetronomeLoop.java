@@ -0,0 +1,462 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * One block at a time of what Audio's output thread does: schedule the clicks, mix, write to the sink, and measure
+ * how well the sink is keeping up
+ */
+final class MetronomeLoop {
+
+    /**
+     * How far each block's reading of when the stream is heard moves the MIDI clock's estimate of it
+     */
+    private static final double MIDI_CLOCK_SMOOTHING = 1 / 16d;
+
+    /**
+     * A reading this far from the estimate means the stream jumped, so the estimate starts over from it
+     */
+    private static final long MIDI_CLOCK_RESYNC_NANOS = 5_000_000;
+
+    /**
+     * How far each beat of a clock being followed moves the beat grid towards it
+     */
+    private static final double BEAT_ALIGNMENT_GAIN = 0.5;
+
+    /**
+     * The furthest each beat of a clock being followed moves the beat grid, in milliseconds
+     */
+    private static final double MAX_BEAT_ALIGNMENT_MS = 10;
+
+    private final VoiceMixer mixer;
+    private final ClickRenderer renderer;
+    private final AudioSink sink;
+    private final Model model;
+    private final TimingMetrics metrics;
+    private final AdaptiveBufferSize bufferSize;
+
+    /**
+     * Where the time between blocks and the time of logged events come from
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * Time on the stream being rendered
+     */
+    private final FrameClock clock;
+
+    /**
+     * Where the session to play on the next start gets published
+     */
+    private final AtomicReference<SessionTimeline> timelineRef;
+
+    /**
+     * The session being played since the last start, or null. Written after sessionStartFrame
+     */
+    private volatile SessionTimeline playingTimeline;
+
+    /**
+     * The stream frame the session being played started on
+     */
+    private volatile long sessionStartFrame;
+
+    /**
+     * Has the session being played finished, without anyone having been told yet?
+     */
+    private boolean sessionFinished = false;
+
+    /**
+     * The alarm that sounds at the end of a session
+     */
+    private final byte[] sessionAlarm;
+
+    /**
+     * The size of one frame of a click or alarm
+     */
+    private final int toneFrameSize;
+
+    /**
+     * The tempo a ramp has got to, or NaN if nothing's ramping
+     */
+    private volatile double liveBpm = Double.NaN;
+
+    /**
+     * Where MIDI clock is being sent, or null
+     */
+    private MidiClock midiClock;
+
+    /**
+     * The time on the scheduler at which frame 0 of the stream is heard, or Long.MIN_VALUE if there's no estimate yet
+     */
+    private long midiFrameZeroNanos = Long.MIN_VALUE;
+
+    /**
+     * Where what's played is published, or null
+     */
+    private EventRing events;
+
+    /**
+     * Was the metronome playing the last time logTo was called?
+     */
+    private boolean wasClicking = false;
+
+    /**
+     * The tempo last published, or NaN if it's ramping or nothing's been published yet
+     */
+    private double loggedBpm = Double.NaN;
+
+    /**
+     * The volume last published, in percent, or -1 if none has been
+     */
+    private long loggedVolume = -1;
+
+    /**
+     * The alarm last booked with the renderer, until it starts
+     */
+    private ScheduledAlarm scheduledAlarm;
+
+    /**
+     * The length of that alarm in frames
+     */
+    private long scheduledAlarmFrames;
+
+    /**
+     * The length of one frame in nanoseconds
+     */
+    private final double nanosPerFrame;
+
+    /**
+     * The buffer each block is rendered into
+     */
+    private final byte[] block;
+
+    /**
+     * The volume the last block ended at
+     */
+    private double lastVolume;
+
+    /**
+     * The number of starts the beat grid was last started for
+     */
+    private int seenStarts = -1;
+
+    /**
+     * The frame the most recent alarm finishes on
+     */
+    private long alarmEndFrame = 0;
+
+    /**
+     * The sink's frame position when the first block was written, or -1 before then
+     */
+    private long sinkStartFrame = -1;
+
+    /**
+     * The System.nanoTime at which stream frame 0 would have been heard, or Long.MIN_VALUE before the first beat
+     */
+    private long originNanos = Long.MIN_VALUE;
+
+    MetronomeLoop(AudioSink sink, Model model, AtomicReference<MetronomeParams> params,
+                  AtomicReference<SessionTimeline> timelineRef, TimingMetrics metrics,
+                  AdaptiveBufferSize bufferSize) {
+        this(sink, model, params, timelineRef, metrics, bufferSize, Scheduler.SYSTEM);
+    }
+
+    MetronomeLoop(AudioSink sink, Model model, AtomicReference<MetronomeParams> params,
+                  AtomicReference<SessionTimeline> timelineRef, TimingMetrics metrics,
+                  AdaptiveBufferSize bufferSize, Scheduler scheduler) {
+        this.scheduler = scheduler;
+        this.timelineRef = timelineRef;
+        AudioFormat format = sink.getFormat();
+        this.mixer = new VoiceMixer(format, Audio.VOICES, Audio.BLOCK_FRAMES);
+        this.renderer = new ClickRenderer(format.getSampleRate(), params, mixer);
+        this.sink = sink;
+        this.model = model;
+        this.metrics = metrics;
+        this.bufferSize = bufferSize;
+        this.nanosPerFrame = 1e9 / format.getSampleRate();
+        this.clock = new FrameClock(format.getSampleRate(), Audio.BLOCK_FRAMES, scheduler);
+        this.block = new byte[Audio.BLOCK_FRAMES * format.getFrameSize()];
+        this.lastVolume = volume();
+        this.sessionAlarm = Audio.getAlarm(Audio.toneFormat(format));
+        this.toneFrameSize = Audio.toneFormat(format).getFrameSize();
+    }
+
+    /**
+     * Start an alarm on the next beat if the metronome is playing, or on the next block if not
+     *
+     * @param alarm The PCM data for the alarm. Not copied, so it must not be changed
+     * @param clicking Is the metronome playing?
+     */
+    void alarm(byte[] alarm, boolean clicking) {
+        long start = (clicking && !renderer.isTimelineFinished())
+                ? renderer.getNextBeatFrame() : mixer.getFramesRendered();
+        start = Math.max(start, mixer.getFramesRendered());
+        mixer.trigger(alarm, start);
+        alarmEndFrame = Math.max(alarmEndFrame, start + alarm.length / toneFrameSize);
+        log(PracticeLog.ALARM, start, 0);
+    }
+
+    /**
+     * Book an alarm for an exact frame, or the first downbeat from then on
+     *
+     * @param alarm When to start
+     * @param tone The PCM data for the alarm. Not copied, so it must not be changed
+     */
+    void scheduleAlarm(ScheduledAlarm alarm, byte[] tone) {
+        renderer.scheduleAlarm(alarm, tone);
+        scheduledAlarm = alarm;
+        scheduledAlarmFrames = tone.length / toneFrameSize;
+    }
+
+    /**
+     * Send MIDI clock to the given clock from the next beat, closing the one it was sent to before
+     *
+     * @param clock Where to send MIDI clock, or null
+     * @param clicking Is the metronome playing?
+     */
+    void useMidiClock(MidiClock clock, boolean clicking) {
+        if (clock != midiClock) {
+            if (midiClock != null) {
+                midiClock.stop(mixer.getFramesRendered());
+                midiClock.schedule(midiFrameZeroNanos(), nanosPerFrame);
+                midiClock.close();
+            }
+            midiClock = clock;
+            renderer.setTickListener(clock);
+        }
+        if (!clicking && midiClock != null) {
+            midiClock.stop(mixer.getFramesRendered());
+            midiClock.schedule(midiFrameZeroNanos(), nanosPerFrame);
+        }
+    }
+
+    /**
+     * Nudge the beat grid towards a beat heard at a time on the scheduler
+     */
+    void alignBeat(long heardNanos) {
+        double frame = (heardNanos - midiFrameZeroNanos()) / nanosPerFrame;
+        double maxFrames = MAX_BEAT_ALIGNMENT_MS / 1000 * sink.getFormat().getSampleRate();
+        renderer.alignBeat(frame, BEAT_ALIGNMENT_GAIN, maxFrames);
+    }
+
+    /**
+     * Publish what's played from the next block on to a ring, and that the metronome's stopped if it has
+     *
+     * @param events Where to publish, or null
+     * @param clicking Is the metronome playing?
+     */
+    void logTo(EventRing events, boolean clicking) {
+        this.events = events;
+        if (wasClicking && !clicking) log(PracticeLog.STOPPED, mixer.getFramesRendered(), 0);
+        wasClicking = clicking;
+    }
+
+    /**
+     * Publish an event to the ring, if there is one. If the ring's full the event is lost
+     */
+    private void log(int kind, long frame, double value) {
+        if (events != null) events.offer(kind, scheduler.currentTimeMillis(), frame, (float) value);
+    }
+
+    /**
+     * Publish the beat that started in the block just rendered, after the tempo if it's been changed
+     */
+    private void logBeat() {
+        double bpm = renderer.getCurrentBpm();
+        long frame = renderer.getLastBeatFrame();
+        if (renderer.isRamping()) {
+            loggedBpm = Double.NaN;
+        } else if (Double.compare(bpm, loggedBpm) != 0) {
+            log(PracticeLog.TEMPO, frame, bpm);
+            loggedBpm = bpm;
+        }
+        log(PracticeLog.BEAT, frame, bpm);
+    }
+
+    /**
+     * @return The time on the scheduler at which frame 0 of the stream is heard, smoothed over many blocks
+     */
+    private long midiFrameZeroNanos() {
+        if (!sink.isRealTime() || sinkStartFrame < 0) {
+            midiFrameZeroNanos = Long.MIN_VALUE;
+            return scheduler.nanoTime() - (long) (mixer.getFramesRendered() * nanosPerFrame);
+        }
+        long position = sink.getLongFramePosition();
+        long measured = scheduler.nanoTime() + (long) ((sinkStartFrame - position) * nanosPerFrame);
+        long error = measured - midiFrameZeroNanos;
+        if (midiFrameZeroNanos == Long.MIN_VALUE || Math.abs(error) > MIDI_CLOCK_RESYNC_NANOS) {
+            midiFrameZeroNanos = measured;
+        } else {
+            midiFrameZeroNanos += (long) (error * MIDI_CLOCK_SMOOTHING);
+        }
+        return midiFrameZeroNanos;
+    }
+
+    /**
+     * @return Has the session being played just finished? Only true once per session
+     */
+    boolean takeSessionFinished() {
+        boolean finished = sessionFinished;
+        sessionFinished = false;
+        return finished;
+    }
+
+    /**
+     * @return The number of starts the beat grid was last started for
+     */
+    int getStarts() {
+        return seenStarts;
+    }
+
+    /**
+     * @param timeline The session that's meant to be playing
+     * @return How far into that session the stream has got, in frames, or -1 if it isn't the one being played
+     */
+    long getSessionFrame(SessionTimeline timeline) {
+        if (playingTimeline != timeline) return -1;
+        return clock.nanosToFrames(clock.nanoTime()) - sessionStartFrame;
+    }
+
+    /**
+     * @return The volume to play at, from the Model, or the default volume if there's no Model
+     */
+    private double volume() {
+        return (model != null) ? model.getVolume() : ModelState.DEFAULTS.getVolume();
+    }
+
+    /**
+     * @return The tempo a ramp has got to, or NaN if nothing's ramping
+     */
+    double getLiveBpm() {
+        return liveBpm;
+    }
+
+    /**
+     * @return Time on the stream being rendered
+     */
+    FrameClock getClock() {
+        return clock;
+    }
+
+    /**
+     * @return Is there an alarm that hasn't been completely heard yet, or a booked one that hasn't started?
+     */
+    boolean isAlarmPlaying() {
+        if (scheduledAlarm != null) return true;
+        long bufferFrames = sink.getBufferSize() / sink.getFormat().getFrameSize();
+        return mixer.getFramesRendered() < alarmEndFrame + bufferFrames;
+    }
+
+    /**
+     * Render the next block and write it to the sink, blocking until the sink has room for it
+     *
+     * @param clicking Should the metronome be playing?
+     * @param starts The number of times the metronome has been started. The beat grid starts over when it changes
+     * @throws IOException If the sink couldn't be written to
+     */
+    void playBlock(boolean clicking, int starts) throws IOException {
+        clock.advanceTo(mixer.getFramesRendered());
+
+        // if the buffer needs to grow, wait for a gap between sounds so that reopening the sink only ever
+        // stretches a silence
+        if (bufferSize.needsReopen() && sink.isRealTime() && mixer.isIdle()) {
+            sink.drain();
+            Audio.openSink(sink, bufferSize, metrics);
+            sink.start();
+            sinkStartFrame = -1;
+            originNanos = Long.MIN_VALUE;
+        }
+
+        long beatsBefore = renderer.getBeats();
+        long lastBeatBefore = renderer.getLastBeatFrame();
+        if (clicking) {
+            if (starts != seenStarts) {
+                // a start straight after a stop: followers need the stop to count beats from the top again
+                if (midiClock != null) midiClock.stop(mixer.getFramesRendered());
+                renderer.restartAt(mixer.getFramesRendered());
+                SessionTimeline timeline = timelineRef.get();
+                if (timeline != null) renderer.playTimeline(timeline);
+                sessionStartFrame = mixer.getFramesRendered();
+                playingTimeline = timeline;
+                beatsBefore = 0;
+                seenStarts = starts;
+                originNanos = Long.MIN_VALUE;
+                log(PracticeLog.STARTED, mixer.getFramesRendered(), 0);
+            }
+            boolean wasFinished = renderer.isTimelineFinished();
+            renderer.render(Audio.BLOCK_FRAMES);
+            if (!wasFinished && renderer.isTimelineFinished()) {
+                // sound the alarm on the session's last downbeat
+                mixer.trigger(sessionAlarm, renderer.getLastBeatFrame());
+                alarmEndFrame = Math.max(alarmEndFrame,
+                        renderer.getLastBeatFrame() + sessionAlarm.length / toneFrameSize);
+                sessionFinished = true;
+                log(PracticeLog.ALARM, renderer.getLastBeatFrame(), 0);
+            }
+            if (renderer.getLastBeatFrame() != lastBeatBefore) logBeat();
+            // to 2 decimal places, the most the UI shows
+            liveBpm = renderer.isRamping() ? Math.round(renderer.getCurrentBpm() * 100) / 100d : Double.NaN;
+        } else {
+            // nothing is going to reach the booked alarm's downbeat now
+            renderer.startAlarmNow();
+        }
+        if (scheduledAlarm != null && (scheduledAlarm.hasStarted() || scheduledAlarm.isCancelled())) {
+            if (scheduledAlarm.hasStarted()) {
+                alarmEndFrame = Math.max(alarmEndFrame, scheduledAlarm.getStartFrame() + scheduledAlarmFrames);
+                log(PracticeLog.ALARM, scheduledAlarm.getStartFrame(), 0);
+            }
+            scheduledAlarm = null;
+        }
+        // mix, ramping from the last volume to the current one across the block so volume changes don't click
+        double volume = volume();
+        mixer.render(block, Audio.BLOCK_FRAMES, lastVolume, volume);
+        lastVolume = volume;
+        // to the nearest percent, so dragging the slider doesn't log every block
+        long percent = Math.round(volume * 100);
+        if (percent != loggedVolume && events != null) {
+            log(PracticeLog.VOLUME, mixer.getFramesRendered() - Audio.BLOCK_FRAMES, volume);
+            loggedVolume = percent;
+        }
+
+        if (!sink.isRealTime()) {
+            sink.write(block, 0, block.length);
+            if (renderer.getBeats() != beatsBefore) metrics.recordClickHeard(System.nanoTime());
+            if (midiClock != null) midiClock.schedule(midiFrameZeroNanos(), nanosPerFrame);
+            return;
+        }
+
+        // if nothing is left in the sink's buffer by now, there's been a gap in the output
+        if (sinkStartFrame < 0) {
+            sinkStartFrame = sink.getLongFramePosition() - (mixer.getFramesRendered() - Audio.BLOCK_FRAMES);
+        } else if (sink.available() >= sink.getBufferSize()) {
+            metrics.recordUnderrun(sink.getLongFramePosition());
+            bufferSize.underrun(mixer.getFramesRendered());
+        }
+
+        // write the samples
+        long beforeWrite = System.nanoTime();
+        sink.write(block, 0, block.length);
+        long afterWrite = System.nanoTime();
+        metrics.recordWrite(afterWrite - beforeWrite);
+        if (midiClock != null) midiClock.schedule(midiFrameZeroNanos(), nanosPerFrame);
+
+        if (renderer.getBeats() != beatsBefore) recordBeatOnset(afterWrite);
+    }
+
+    /**
+     * Work out when the beat just written will be heard, and compare that to when the first beat says it should be
+     */
+    private void recordBeatOnset(long now) {
+        long beatFrame = renderer.getLastBeatFrame();
+        long framesAhead = sinkStartFrame + beatFrame - sink.getLongFramePosition();
+        long heardNanos = now + (long) (framesAhead * nanosPerFrame);
+        long scheduledNanos = (long) (beatFrame * nanosPerFrame);
+        if (originNanos == Long.MIN_VALUE) {
+            originNanos = heardNanos - scheduledNanos;
+            metrics.recordClickHeard(heardNanos);
+        }
+        metrics.recordBeatOnset(renderer.getBeats(), beatFrame, heardNanos - (originNanos + scheduledNanos));
+    }
+}
@@ -0,0 +1,190 @@
+package metrotimer;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * An immutable snapshot of everything the metronome thread needs to know about what to play. A new snapshot is
+ * published whenever a setting changes, and the metronome thread picks it up at the next beat (or the next bar line,
+ * for a preset), so nothing it reads can ever change underneath it.
+ */
+public final class MetronomeParams {
+
+    /**
+     * The tempo in BPM
+     */
+    private final double bpm;
+
+    /**
+     * The frequency (pitch) of the accented tone
+     */
+    private final float hiFreq;
+
+    /**
+     * The frequency (pitch) of the unaccented tone
+     */
+    private final float loFreq;
+
+    /**
+     * Accent every N beats, where this = N
+     */
+    private final int accentInterval;
+
+    /**
+     * PCM data for the accented beep, or null if there are no accents
+     */
+    private final byte[] hiBeep;
+
+    /**
+     * PCM data for the unaccented beep
+     */
+    private final byte[] loBeep;
+
+    /**
+     * The extra voices played alongside the main beat
+     */
+    private final List<ClickVoice> voices;
+
+    /**
+     * PCM data for each voice's beep, in the same order as voices
+     */
+    private final byte[][] voiceBeeps;
+
+    /**
+     * The tempo ramp to play instead of the steady tempo, or null to play at bpm
+     */
+    private final TempoRamp ramp;
+
+    /**
+     * Should these settings wait for the bar line before taking over from the ones playing?
+     */
+    private final boolean atBarLine;
+
+    /**
+     * @param hiBeep Already-rendered PCM data for hiFreq, or null if accentInterval is 0. Must not be changed after
+     *               being passed in here
+     * @param loBeep Already-rendered PCM data for loFreq. Must not be changed after being passed in here
+     */
+    public MetronomeParams(double bpm, float hiFreq, float loFreq, int accentInterval, byte[] hiBeep, byte[] loBeep) {
+        this(bpm, hiFreq, loFreq, accentInterval, hiBeep, loBeep, Collections.<ClickVoice>emptyList(), new byte[0][]);
+    }
+
+    /**
+     * @param voices The extra voices to play alongside the main beat. Must not be changed after being passed in here
+     * @param voiceBeeps Already-rendered PCM data for each voice's beep, in the same order as voices. Must not be
+     *                   changed after being passed in here
+     */
+    public MetronomeParams(double bpm, float hiFreq, float loFreq, int accentInterval, byte[] hiBeep, byte[] loBeep,
+                           List<ClickVoice> voices, byte[][] voiceBeeps) {
+        this(bpm, hiFreq, loFreq, accentInterval, hiBeep, loBeep, voices, voiceBeeps, null);
+    }
+
+    /**
+     * @param ramp The tempo ramp to play instead of bpm, starting from the first beat these settings are played on,
+     *             or null to play at a steady bpm
+     */
+    public MetronomeParams(double bpm, float hiFreq, float loFreq, int accentInterval, byte[] hiBeep, byte[] loBeep,
+                           List<ClickVoice> voices, byte[][] voiceBeeps, TempoRamp ramp) {
+        if (bpm <= 0) throw new IllegalArgumentException("bpm must be positive: " + bpm);
+        if (voices.size() != voiceBeeps.length) throw new IllegalArgumentException("Every voice needs a beep");
+        this.bpm = bpm;
+        this.hiFreq = hiFreq;
+        this.loFreq = loFreq;
+        this.accentInterval = accentInterval;
+        this.hiBeep = hiBeep;
+        this.loBeep = loBeep;
+        this.voices = voices;
+        this.voiceBeeps = voiceBeeps;
+        this.ramp = ramp;
+        this.atBarLine = false;
+    }
+
+    /**
+     * A copy of other with only atBarLine changed
+     */
+    private MetronomeParams(MetronomeParams other, boolean atBarLine) {
+        this.bpm = other.bpm;
+        this.hiFreq = other.hiFreq;
+        this.loFreq = other.loFreq;
+        this.accentInterval = other.accentInterval;
+        this.hiBeep = other.hiBeep;
+        this.loBeep = other.loBeep;
+        this.voices = other.voices;
+        this.voiceBeeps = other.voiceBeeps;
+        this.ramp = other.ramp;
+        this.atBarLine = atBarLine;
+    }
+
+    /**
+     * @return These settings, but waiting for the next bar line to take over, as switching to a preset does, rather
+     *         than the next beat
+     */
+    public MetronomeParams atBarLine() {
+        return atBarLine ? this : new MetronomeParams(this, true);
+    }
+
+    /**
+     * @return Would a snapshot of these settings play exactly the same thing as this one?
+     */
+    public boolean matches(double bpm, float hiFreq, float loFreq, int accentInterval, List<ClickVoice> voices,
+                           TempoRamp ramp) {
+        return this.bpm == bpm
+                && this.hiFreq == hiFreq
+                && this.loFreq == loFreq
+                && this.accentInterval == accentInterval
+                && this.voices.equals(voices)
+                && Objects.equals(this.ramp, ramp);
+    }
+
+    public double getBpm() {
+        return bpm;
+    }
+
+    public float getHiFreq() {
+        return hiFreq;
+    }
+
+    public float getLoFreq() {
+        return loFreq;
+    }
+
+    public int getAccentInterval() {
+        return accentInterval;
+    }
+
+    public byte[] getHiBeep() {
+        return hiBeep;
+    }
+
+    public byte[] getLoBeep() {
+        return loBeep;
+    }
+
+    public List<ClickVoice> getVoices() {
+        return voices;
+    }
+
+    /**
+     * @return The tempo ramp to play instead of the steady tempo, or null to play at getBpm()
+     */
+    public TempoRamp getRamp() {
+        return ramp;
+    }
+
+    /**
+     * @return Should these settings wait for the bar line before taking over from the ones playing? If not they take
+     *         over at the next beat
+     */
+    public boolean isAtBarLine() {
+        return atBarLine;
+    }
+
+    /**
+     * @param i The index of a voice in getVoices()
+     * @return PCM data for that voice's beep
+     */
+    public byte[] getVoiceBeep(int i) {
+        return voiceBeeps[i];
+    }
+}
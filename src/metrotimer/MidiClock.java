@@ -0,0 +1,256 @@
+package metrotimer;
+
+import javax.sound.midi.InvalidMidiDataException;
+import javax.sound.midi.MidiDeviceReceiver;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import java.io.Closeable;
+
+/**
+ * Sends MIDI beat clock (24 ticks to the beat) with start and stop messages, so that drum machines and DAWs can follow
+ * the metronome.
+ *
+ * Nothing here keeps time by itself. The output thread places the ticks on exact frames of the audio stream as it
+ * renders each block (see ClickRenderer), and once the block has been written works out when those frames will be
+ * heard. Audio's MIDI clock sender then waits for each of those moments and sends the tick (see sendDue), so the
+ * clock follows the sound card's crystal, and the tick on each beat goes out as its click is heard. How far from that
+ * it actually goes out is recorded in TimingMetrics as the clock-to-click skew, along with any tick there was no room
+ * to queue.
+ *
+ * There's one sender for all the clocks an Audio is given, rather than a thread of each clock's own, so choosing
+ * another MIDI output never makes a thread. It does all its waiting on a Scheduler, the same one the output thread
+ * keeps time on, so MIDI clock can be sent and checked in simulated time along with everything else.
+ *
+ * Messages are sent without timestamps: MIDI real-time messages are meant to be sent the moment they happen, and most
+ * devices ignore timestamps anyway.
+ */
+public class MidiClock implements ClickRenderer.TickListener, Closeable {
+
+    /**
+     * The kinds of message, as indexes into MESSAGES
+     */
+    private static final int CLOCK = 0;
+    private static final int BEAT = 1;
+    private static final int START = 2;
+    private static final int STOP = 3;
+
+    /**
+     * The message sent for each kind. Real-time messages have no data, so the same ones can be sent every time
+     */
+    private static final ShortMessage[] MESSAGES = {
+            realTimeMessage(ShortMessage.TIMING_CLOCK),
+            realTimeMessage(ShortMessage.TIMING_CLOCK),
+            realTimeMessage(ShortMessage.START),
+            realTimeMessage(ShortMessage.STOP)
+    };
+
+    /**
+     * What sendDue returns once the clock has been closed and has sent everything
+     */
+    static final long FINISHED = Long.MIN_VALUE;
+
+    /**
+     * The most messages that can be placed in one block. At the fastest tempo a block holds two ticks at most
+     */
+    private static final int MAX_PENDING = 64;
+
+    /**
+     * The most messages that can be waiting to be sent. Enough for over a second of ticks at the fastest tempo, which
+     * is more than any output buffer holds
+     */
+    private static final int QUEUE_SIZE = 1024;
+
+    private final Receiver receiver;
+
+    private final TimingMetrics metrics;
+
+    /**
+     * The messages placed in the block being rendered, with the frames they fall on. Output thread only
+     */
+    private final long[] pendingFrames = new long[MAX_PENDING];
+    private final int[] pendingKinds = new int[MAX_PENDING];
+    private int pendingCount = 0;
+
+    /**
+     * Has a start been sent without a stop after it? Output thread only
+     */
+    private boolean running = false;
+
+    /**
+     * The messages waiting to be sent, as a ring, with the time on the scheduler each is due at. Guarded by this
+     */
+    private final long[] queueNanos = new long[QUEUE_SIZE];
+    private final int[] queueKinds = new int[QUEUE_SIZE];
+    private int queueHead = 0;
+    private int queueCount = 0;
+
+    /**
+     * Has close() been called? Guarded by this
+     */
+    private boolean closed = false;
+
+    /**
+     * Has the receiver been closed? Sender only
+     */
+    private boolean finished = false;
+
+    /**
+     * What the sender keeps time on and waits on
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The thread sending this clock, woken whenever there's something new to send, or null until it's been handed to
+     * one
+     */
+    private volatile Thread sender;
+
+    /**
+     * @param receiver Where to send the clock. Closed, along with its device if it has one, when this is closed
+     */
+    public MidiClock(Receiver receiver) {
+        this(receiver, Scheduler.SYSTEM);
+    }
+
+    /**
+     * @param receiver Where to send the clock. Closed, along with its device if it has one, when this is closed
+     * @param scheduler What the sender keeps time on. Should be what the output thread keeps time on
+     */
+    public MidiClock(Receiver receiver, Scheduler scheduler) {
+        this(receiver, scheduler, TimingMetrics.get());
+    }
+
+    MidiClock(Receiver receiver, Scheduler scheduler, TimingMetrics metrics) {
+        this.receiver = receiver;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+    }
+
+    private static ShortMessage realTimeMessage(int status) {
+        try {
+            return new ShortMessage(status);
+        } catch (InvalidMidiDataException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Place a tick on a frame, after a start if the clock isn't running yet. A stopped clock only starts on a beat, so
+     * that whoever follows it counts beats from the right tick. Output thread only
+     */
+    @Override
+    public void tick(long frame, boolean onBeat) {
+        if (!running) {
+            if (!onBeat) return;
+            place(START, frame);
+            running = true;
+        }
+        place(onBeat ? BEAT : CLOCK, frame);
+    }
+
+    /**
+     * Place a stop on a frame, if the clock is running. Output thread only
+     */
+    public void stop(long frame) {
+        if (!running) return;
+        place(STOP, frame);
+        running = false;
+    }
+
+    private void place(int kind, long frame) {
+        if (pendingCount == MAX_PENDING) {
+            metrics.recordMidiClockDropped(1);
+            return;
+        }
+        pendingFrames[pendingCount] = frame;
+        pendingKinds[pendingCount] = kind;
+        pendingCount++;
+    }
+
+    /**
+     * Hand everything placed since last time to the sender, now that it's known when each frame will be heard.
+     * Output thread only
+     *
+     * @param frameZeroNanos The time on the scheduler at which frame 0 of the stream is heard (or would have been)
+     * @param nanosPerFrame The length of one frame in nanoseconds
+     */
+    public void schedule(long frameZeroNanos, double nanosPerFrame) {
+        if (pendingCount == 0) return;
+        int dropped = 0;
+        synchronized (this) {
+            for (int i = 0; i < pendingCount; i++) {
+                if (queueCount == QUEUE_SIZE) {
+                    dropped++;
+                    continue;
+                }
+                int slot = (queueHead + queueCount) % QUEUE_SIZE;
+                queueNanos[slot] = frameZeroNanos + (long) (pendingFrames[i] * nanosPerFrame);
+                queueKinds[slot] = pendingKinds[i];
+                queueCount++;
+            }
+        }
+        pendingCount = 0;
+        if (dropped > 0) metrics.recordMidiClockDropped(dropped);
+        wakeSender();
+    }
+
+    /**
+     * Have a thread send this clock from now on, calling sendDue whenever it's woken and when each message is due
+     */
+    void sendFrom(Thread sender) {
+        this.sender = sender;
+    }
+
+    private void wakeSender() {
+        Thread thread = sender;
+        if (thread != null) scheduler.unpark(thread);
+    }
+
+    /**
+     * Send every message that's due, and once closed with nothing left to send, close the receiver. Sender only
+     *
+     * @return The time on the scheduler the next message is due at, Long.MAX_VALUE if there's nothing to send yet, or
+     *         FINISHED once the receiver has been closed
+     */
+    long sendDue() {
+        if (finished) return FINISHED;
+        while (true) {
+            long due;
+            int kind;
+            synchronized (this) {
+                if (queueCount == 0 && closed) break;
+                if (queueCount == 0) return Long.MAX_VALUE;
+                due = queueNanos[queueHead];
+                kind = queueKinds[queueHead];
+            }
+            long sent = scheduler.nanoTime();
+            if (due > sent) return due;
+            try {
+                receiver.send(MESSAGES[kind], -1);
+            } catch (IllegalStateException e) {
+                // the device went away: keep emptying the queue so the output thread never waits on it
+                e.printStackTrace();
+            }
+            if (kind == BEAT) metrics.recordMidiClockSkew(sent - due);
+            synchronized (this) {
+                queueHead = (queueHead + 1) % QUEUE_SIZE;
+                queueCount--;
+            }
+        }
+        finished = true;
+        receiver.close();
+        if (receiver instanceof MidiDeviceReceiver) ((MidiDeviceReceiver) receiver).getMidiDevice().close();
+        return FINISHED;
+    }
+
+    /**
+     * Close the receiver once everything already handed over has been sent. Nothing handed over afterwards is sent
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        wakeSender();
+    }
+}
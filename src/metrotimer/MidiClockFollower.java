@@ -0,0 +1,187 @@
+package metrotimer;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+
+/**
+ * Follows MIDI beat clock from a drum machine, a DAW or another MetroTimer: starts and stops the metronome when the
+ * clock does, and sets its tempo from how fast the clock ticks.
+ *
+ * The tempo is measured across the last beat's worth of ticks, which smooths out how unevenly single ticks arrive,
+ * and only passed on when it's moved by at least TEMPO_STEP, so a steady clock doesn't keep setting the same tempo.
+ * After a start, the metronome starts on the first tick, which is beat 1 as far as the clock's sender is concerned.
+ * Clocks usually keep ticking while stopped, so the tempo is known by the time the start comes.
+ *
+ * Matching the tempo isn't enough on its own: what's left over inside TEMPO_STEP, and the output latency the
+ * metronome starts with, would add up to the beats drifting away from the clock's. So every TICKS_PER_BEAT-th tick
+ * after a start, which the sender sends as its beat is heard, is passed to Audio as where a beat should be heard, and
+ * the beat grid is nudged towards it. A clock followed without a start isn't nudged, as there's no telling which of
+ * its ticks are on the beat.
+ *
+ * The tempo is measured from ticks' timestamps if they have them (a MIDI input device stamps them as they arrive) and
+ * from when they get here if not. Beats are always placed by when they get here, on the Audio's scheduler, as that's
+ * what the metronome's own beats are placed by.
+ *
+ * A MIDI footswitch on the same port switches presets: a program change switches to that preset in the bank, and
+ * pressing a sustain pedal switches to the next one.
+ */
+public class MidiClockFollower implements Receiver {
+
+    /**
+     * The smallest change in the measured tempo that's passed on, in BPM
+     */
+    static final double TEMPO_STEP = 0.05;
+
+    /**
+     * The fewest ticks to measure the tempo across, a quarter of a beat, before passing it on
+     */
+    private static final int MIN_TICKS = ClickRenderer.TICKS_PER_BEAT / 4;
+
+    /**
+     * A gap between ticks this long means the clock stopped ticking, so the ticks before it are forgotten
+     */
+    private static final long GAP_NANOS = 1_000_000_000L;
+
+    /**
+     * The controller a sustain pedal sends, which counts as pressed from a value of SUSTAIN_DOWN up
+     */
+    private static final int SUSTAIN = 64;
+    private static final int SUSTAIN_DOWN = 64;
+
+    private final Model model;
+    private final Audio audio;
+    private final Controller controller;
+
+    /**
+     * When each of the last beat's worth of ticks came, as a ring, and how many of them there are
+     */
+    private final long[] tickNanos = new long[ClickRenderer.TICKS_PER_BEAT + 1];
+    private int ticks = 0;
+
+    /**
+     * The position in tickNanos of the latest tick
+     */
+    private int latest = -1;
+
+    /**
+     * Has a start come without a tick after it yet?
+     */
+    private boolean startPending = false;
+
+    /**
+     * The number of ticks since the last start, or -1 if there hasn't been a start since the last stop
+     */
+    private long ticksSinceStart = -1;
+
+    /**
+     * Where beats are placed from
+     */
+    private final Scheduler scheduler;
+
+    /**
+     * The tempo the clock was last measured at, or NaN if it hasn't been yet
+     */
+    private volatile double clockBpm = Double.NaN;
+
+    /**
+     * Is the sustain pedal held down?
+     */
+    private boolean pedalDown = false;
+
+    /**
+     * @param model Where the tempo gets set
+     * @param audio Checked to see if the metronome is playing
+     * @param controller Used to start and stop the metronome, as its start button would
+     */
+    public MidiClockFollower(Model model, Audio audio, Controller controller) {
+        this.model = model;
+        this.audio = audio;
+        this.controller = controller;
+        this.scheduler = audio.getScheduler();
+    }
+
+    @Override
+    public synchronized void send(MidiMessage message, long timeStamp) {
+        if (message instanceof ShortMessage && message.getStatus() < 0xF0) {
+            footswitch((ShortMessage) message);
+            return;
+        }
+        switch (message.getStatus()) {
+            case ShortMessage.TIMING_CLOCK:
+                long now = scheduler.nanoTime();
+                tick((timeStamp >= 0) ? timeStamp * 1000 : now);
+                if (ticksSinceStart >= 0 && ticksSinceStart++ % ClickRenderer.TICKS_PER_BEAT == 0) audio.alignBeat(now);
+                break;
+            case ShortMessage.START:
+                startPending = true;
+                ticksSinceStart = 0;
+                break;
+            case ShortMessage.CONTINUE:
+                // carries on from partway through a bar, maybe partway through a beat, so the beats can't be counted
+                startPending = true;
+                ticksSinceStart = -1;
+                break;
+            case ShortMessage.STOP:
+                startPending = false;
+                ticksSinceStart = -1;
+                if (audio.audioPlaying()) controller.handleMetroClick();
+                break;
+            default:
+                // not clock or transport, so nothing to follow
+                break;
+        }
+    }
+
+    /**
+     * Switch presets for a program change, or for the sustain pedal going down
+     */
+    private void footswitch(ShortMessage message) {
+        if (message.getCommand() == ShortMessage.PROGRAM_CHANGE) {
+            controller.handlePresetSelect(message.getData1());
+        } else if (message.getCommand() == ShortMessage.CONTROL_CHANGE && message.getData1() == SUSTAIN) {
+            boolean down = message.getData2() >= SUSTAIN_DOWN;
+            if (down && !pedalDown) controller.handlePresetStep(1);
+            pedalDown = down;
+        }
+    }
+
+    /**
+     * Measure the tempo with a new tick, pass it on if it's changed, and start the metronome if this is the first
+     * tick after a start
+     *
+     * @param nanos When the tick came
+     */
+    private void tick(long nanos) {
+        if (ticks > 0 && nanos - tickNanos[latest] > GAP_NANOS) ticks = 0;
+        latest = (latest + 1) % tickNanos.length;
+        tickNanos[latest] = nanos;
+        if (ticks < tickNanos.length) ticks++;
+
+        if (ticks > MIN_TICKS) {
+            int oldest = (latest - ticks + 1 + tickNanos.length) % tickNanos.length;
+            double beatNanos = (double) (nanos - tickNanos[oldest]) / (ticks - 1) * ClickRenderer.TICKS_PER_BEAT;
+            if (beatNanos > 0) {
+                double bpm = Math.min(Math.max(60e9 / beatNanos, Controller.MIN_BPM), Controller.MAX_BPM);
+                clockBpm = bpm;
+                // to 2 decimal places, the most the UI shows
+                bpm = Math.round(bpm * 100) / 100d;
+                if (Math.abs(bpm - model.getBpm()) >= TEMPO_STEP) model.setBpm(bpm);
+            }
+        }
+        if (startPending) {
+            startPending = false;
+            if (!audio.audioPlaying()) controller.handleMetroClick();
+        }
+    }
+
+    /**
+     * @return The tempo the clock was last measured at, in BPM, or NaN if it hasn't ticked enough yet
+     */
+    public double getClockBpm() {
+        return clockBpm;
+    }
+
+    @Override
+    public void close() {}
+}
@@ -0,0 +1,235 @@
+package metrotimer;
+
+import javax.sound.midi.MidiDevice;
+import javax.sound.midi.MidiDeviceTransmitter;
+import javax.sound.midi.MidiSystem;
+import javax.sound.midi.MidiUnavailableException;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.Sequencer;
+import javax.sound.midi.Synthesizer;
+import javax.sound.midi.Transmitter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Keeps the metronome in step with other gear over MIDI: either sending MIDI clock out (see MidiClock) or following
+ * MIDI clock coming in (see MidiClockFollower), but not both at once.
+ *
+ * Devices are chosen from Options, one for each MIDI port. sendClockTo and followClockFrom take any Receiver or
+ * Transmitter instead, so that two metronomes can be wired to each other inside one JVM.
+ */
+public class MidiSync {
+
+    /**
+     * A way of syncing: off, or sending or following clock on a MIDI port
+     */
+    public static final class Option {
+
+        /**
+         * Not syncing at all
+         */
+        public static final Option OFF = new Option(false, null);
+
+        /**
+         * Following clock rather than sending it?
+         */
+        private final boolean follow;
+
+        /**
+         * The port to send or follow on, or null if off
+         */
+        private final MidiDevice.Info device;
+
+        private Option(boolean follow, MidiDevice.Info device) {
+            this.follow = follow;
+            this.device = device;
+        }
+
+        public boolean isFollow() {
+            return follow;
+        }
+
+        public MidiDevice.Info getDevice() {
+            return device;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Option)) return false;
+            Option other = (Option) o;
+            return follow == other.follow && (device == null ? other.device == null : device.equals(other.device));
+        }
+
+        @Override
+        public int hashCode() {
+            return (device == null ? 0 : device.hashCode()) * 2 + (follow ? 1 : 0);
+        }
+
+        /**
+         * @return The option as shown to choose from
+         */
+        @Override
+        public String toString() {
+            if (device == null) return "No MIDI clock";
+            return (follow ? "Follow clock from " : "Send clock to ") + device.getName();
+        }
+    }
+
+    private final Model model;
+    private final Audio audio;
+    private final Controller controller;
+
+    /**
+     * How it's syncing now
+     */
+    private Option option = Option.OFF;
+
+    /**
+     * Where clock is being followed from, or null if it isn't
+     */
+    private Transmitter transmitter;
+
+    /**
+     * What's following the clock, or null if nothing is
+     */
+    private MidiClockFollower follower;
+
+    public MidiSync(Model model, Audio audio, Controller controller) {
+        this.model = model;
+        this.audio = audio;
+        this.controller = controller;
+    }
+
+    /**
+     * @return Every way of syncing there is on this machine: off, then sending to each port that takes MIDI, then
+     *         following each port that gives it. Sequencers and synthesizers are left out, as neither has any use for a
+     *         clock
+     */
+    public static List<Option> options() {
+        List<Option> options = new ArrayList<>();
+        List<Option> follows = new ArrayList<>();
+        options.add(Option.OFF);
+        for (MidiDevice.Info info : MidiSystem.getMidiDeviceInfo()) {
+            MidiDevice device;
+            try {
+                device = MidiSystem.getMidiDevice(info);
+            } catch (MidiUnavailableException e) {
+                continue;
+            }
+            if (device instanceof Sequencer || device instanceof Synthesizer) continue;
+            if (device.getMaxReceivers() != 0) options.add(new Option(false, info));
+            if (device.getMaxTransmitters() != 0) follows.add(new Option(true, info));
+        }
+        options.addAll(follows);
+        return options;
+    }
+
+    /**
+     * Find a way of syncing by name
+     *
+     * @param text "off", "send" followed by a port's name, or "follow" followed by a port's name. The start of the
+     *             name is enough, in any case, as long as only one port has a name starting that way
+     * @return The matching option
+     * @throws IllegalArgumentException If there's no such port, or more than one
+     */
+    public static Option option(String text) {
+        String trimmed = text.trim();
+        if (trimmed.equals("off")) return Option.OFF;
+        int space = trimmed.indexOf(' ');
+        String mode = (space < 0) ? trimmed : trimmed.substring(0, space);
+        if (!mode.equals("send") && !mode.equals("follow")) {
+            throw new IllegalArgumentException("Expected off, send <port> or follow <port>: " + text);
+        }
+        String name = (space < 0) ? "" : trimmed.substring(space + 1).trim().toLowerCase(Locale.ROOT);
+        Option found = null;
+        for (Option option : options()) {
+            if (option.device == null || option.follow != mode.equals("follow")) continue;
+            String portName = option.device.getName().toLowerCase(Locale.ROOT);
+            if (portName.equals(name)) return option;
+            if (portName.startsWith(name)) {
+                if (found != null) throw new IllegalArgumentException("More than one MIDI port matches " + name);
+                found = option;
+            }
+        }
+        if (found == null) throw new IllegalArgumentException("No MIDI port to " + mode + " called " + name);
+        return found;
+    }
+
+    /**
+     * Start syncing a different way, opening its port. Whatever it was doing before stops first
+     *
+     * @throws MidiUnavailableException If the port couldn't be opened, in which case it's left off
+     */
+    public synchronized void use(Option option) throws MidiUnavailableException {
+        if (option.equals(this.option)) return;
+        off();
+        if (option.device == null) return;
+        MidiDevice device = MidiSystem.getMidiDevice(option.device);
+        device.open();
+        try {
+            if (option.follow) followClockFrom(device.getTransmitter());
+            else sendClockTo(device.getReceiver());
+        } catch (MidiUnavailableException e) {
+            device.close();
+            throw e;
+        }
+        this.option = option;
+    }
+
+    /**
+     * Send MIDI clock to a receiver from the next beat, instead of whatever it was doing before
+     *
+     * @param receiver Where to send the clock. Closed, along with its device if it has one, once it's done with
+     */
+    public synchronized void sendClockTo(Receiver receiver) {
+        off();
+        audio.setMidiClock(new MidiClock(receiver, audio.getScheduler()));
+        option = Option.OFF;
+    }
+
+    /**
+     * Follow MIDI clock from a transmitter, instead of whatever it was doing before
+     *
+     * @param transmitter Where the clock comes from. Closed, along with its device if it has one, once it's done with
+     * @return What follows the clock
+     */
+    public synchronized MidiClockFollower followClockFrom(Transmitter transmitter) {
+        off();
+        follower = new MidiClockFollower(model, audio, controller);
+        transmitter.setReceiver(follower);
+        this.transmitter = transmitter;
+        option = Option.OFF;
+        return follower;
+    }
+
+    /**
+     * Stop sending or following MIDI clock, closing the port
+     */
+    public synchronized void off() {
+        audio.setMidiClock(null);
+        if (transmitter != null) {
+            transmitter.close();
+            if (transmitter instanceof MidiDeviceTransmitter) {
+                ((MidiDeviceTransmitter) transmitter).getMidiDevice().close();
+            }
+            transmitter = null;
+            follower = null;
+        }
+        option = Option.OFF;
+    }
+
+    /**
+     * @return How it's syncing now. Off if it's sending or following on a Receiver or Transmitter given directly
+     */
+    public synchronized Option getOption() {
+        return option;
+    }
+
+    /**
+     * @return What's following MIDI clock, or null if nothing is
+     */
+    public synchronized MidiClockFollower getFollower() {
+        return follower;
+    }
+}
@@ -0,0 +1,478 @@
+package metrotimer;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Where all the data gets stored.
+ *
+ * The data is kept as one immutable ModelState, which every change replaces atomically with a new version, so the
+ * audio, timer and UI threads can all read and change it at once without locking and without ever seeing half of a
+ * change. Subscribers are told after each change that actually changed something.
+ */
+public class Model {
+
+    /**
+     * The things subscribers get told have changed. Sets of fields are passed around as ints with one bit per field,
+     * so that notifying allocates nothing
+     */
+    public enum Field {
+        BPM,
+        ACCENT_INTERVAL,
+        HI_FREQ,
+        LO_FREQ,
+        TIMER,
+        VOLUME,
+        LATENCY_PROFILE,
+        TIMER_SNAP,
+        VOICES,
+        SESSION,
+        TEMPO_RAMP,
+        /**
+         * The WAV files played instead of the beeps
+         */
+        CLICK_SOUNDS,
+        /**
+         * The preset bank, or which preset was switched to last. Switching to a preset also changes the settings it
+         * holds, which are passed on as changed too
+         */
+        PRESET,
+        /**
+         * The tempo a ramping metronome is playing at. Reported by the audio output a few times a second
+         */
+        LIVE_BPM,
+        /**
+         * The metronome or timer started or stopped. Not stored in the Model, but views show it
+         */
+        RUNNING;
+
+        /**
+         * @return The bit for this field in a set of fields
+         */
+        public int bit() {
+            return 1 << ordinal();
+        }
+
+        /**
+         * @return Is this field in the given set of fields?
+         */
+        public boolean in(int fields) {
+            return (fields & bit()) != 0;
+        }
+    }
+
+    /**
+     * The set of every field
+     */
+    public static final int ALL_FIELDS = (1 << Field.values().length) - 1;
+
+    /**
+     * The current state. Replaced, never changed
+     */
+    private final AtomicReference<ModelState> state = new AtomicReference<>(ModelState.DEFAULTS);
+
+    /**
+     * All ModelListeners listening to this model. Subscribing is rare and notifying is frequent, so this is copied on
+     * every subscription rather than locked on every notification
+     */
+    private final List<ModelListener> subscribers = new CopyOnWriteArrayList<>();
+
+    /**
+     * A change to the state, applied with update()
+     */
+    private interface Transition {
+        /**
+         * @return The state after the change, or the same state if nothing changes. May be called more than once if
+         *         another thread changes the state at the same time, so it mustn't do anything else
+         */
+        ModelState apply(ModelState current);
+    }
+
+    /**
+     * Atomically change the state, then tell subscribers if anything changed
+     *
+     * @param transition The change to make
+     * @param field The field it changes
+     */
+    private void update(Transition transition, Field field) {
+        update(transition, field.bit());
+    }
+
+    /**
+     * Atomically change the state, then tell subscribers if anything changed
+     *
+     * @param transition The change to make
+     * @param fields The fields it may change, as a set of Field bits
+     */
+    private void update(Transition transition, int fields) {
+        ModelState current;
+        ModelState next;
+        do {
+            current = state.get();
+            next = transition.apply(current);
+        } while (next != current && !state.compareAndSet(current, next));
+        if (next != current) notifySubscribers(fields);
+    }
+
+    /**
+     * Tell every subscriber that everything may have changed
+     */
+    public void notifySubscribers() {
+        notifySubscribers(ALL_FIELDS);
+    }
+
+    /**
+     * Tell every subscriber that one field has changed
+     */
+    public void notifySubscribers(Field field) {
+        notifySubscribers(field.bit());
+    }
+
+    /**
+     * Tell every subscriber that some fields have changed
+     *
+     * @param changedFields A set of Field bits
+     */
+    public void notifySubscribers(int changedFields) {
+        for (ModelListener l : subscribers) l.modelChanged(changedFields);
+    }
+
+    /////////////////////////////// Accessor / Mutator ////////////////////////////////////////
+
+    /**
+     * @return Everything in the model right now. Use this rather than several getters to see values that are
+     *         consistent with each other
+     */
+    public ModelState getState() {
+        return state.get();
+    }
+
+    public void addSubscriber(ModelListener listener) {
+        subscribers.add(listener);
+    }
+
+    public double getBpm() {
+        return state.get().getBpm();
+    }
+
+    public void setBpm(final double bpm) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withBpm(bpm);
+            }
+        }, Field.BPM);
+    }
+
+    public int getAccentInterval() {
+        return state.get().getAccentInterval();
+    }
+
+    public void setAccentInterval(final int accentInterval) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withAccentInterval(accentInterval);
+            }
+        }, Field.ACCENT_INTERVAL);
+    }
+
+    public float getHiFreq() {
+        return state.get().getHiFreq();
+    }
+
+    public void setHiFreq(final float hiFreq) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withHiFreq(hiFreq);
+            }
+        }, Field.HI_FREQ);
+    }
+
+    public float getLoFreq() {
+        return state.get().getLoFreq();
+    }
+
+    public void setLoFreq(final float loFreq) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withLoFreq(loFreq);
+            }
+        }, Field.LO_FREQ);
+    }
+
+    /**
+     * @return The minutes shown on the timer
+     */
+    public int getTimerMin() {
+        return state.get().getTimerMin();
+    }
+
+    /**
+     * Set the minutes on the timer, keeping the seconds shown
+     */
+    public void setTimerMin(final int timerMin) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTimerMin(timerMin);
+            }
+        }, Field.TIMER);
+    }
+
+    /**
+     * @return The seconds shown on the timer
+     */
+    public int getTimerSec() {
+        return state.get().getTimerSec();
+    }
+
+    /**
+     * Set the seconds on the timer, keeping the minutes shown
+     */
+    public void setTimerSec(final int timerSec) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTimerSec(timerSec);
+            }
+        }, Field.TIMER);
+    }
+
+    public long getTimerMillis() {
+        return state.get().getTimerMillis();
+    }
+
+    /**
+     * Set the time left on the timer. Anything below 0 counts as 0
+     */
+    public void setTimerMillis(final long timerMillis) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTimerMillis(timerMillis);
+            }
+        }, Field.TIMER);
+    }
+
+    public boolean timeUp() {
+        return state.get().timeUp();
+    }
+
+    public double getVolume() {
+        return state.get().getVolume();
+    }
+
+    public void setVolume(final double vol) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withVolume(vol);
+            }
+        }, Field.VOLUME);
+    }
+
+    /**
+     * Set both the time on the timer and the time it goes back to when it loops
+     */
+    public void setTimerAndSavedTime(final int min, final int sec) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                long millis = (min * 60L + sec) * 1000;
+                return current.withTimerMillis(millis).withSavedTimerMillis(millis);
+            }
+        }, Field.TIMER);
+    }
+
+    public void setSavedTime(final int min, final int sec) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withSavedTimerMillis((min * 60L + sec) * 1000);
+            }
+        }, Field.TIMER);
+    }
+
+    public long getSavedTimerMillis() {
+        return state.get().getSavedTimerMillis();
+    }
+
+    public void restoreSavedTime() {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withSavedTimeRestored();
+            }
+        }, Field.TIMER);
+    }
+
+    public LatencyProfile getLatencyProfile() {
+        return state.get().getLatencyProfile();
+    }
+
+    public void setLatencyProfile(final LatencyProfile latencyProfile) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withLatencyProfile(latencyProfile);
+            }
+        }, Field.LATENCY_PROFILE);
+    }
+
+    public boolean isTimerLooping() {
+        return state.get().isTimerLooping();
+    }
+
+    public void setTimerLooping(final boolean timerLooping) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTimerLooping(timerLooping);
+            }
+        }, Field.TIMER);
+    }
+
+    public List<ClickVoice> getVoices() {
+        return state.get().getVoices();
+    }
+
+    public void setVoices(final List<ClickVoice> voices) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withVoices(voices);
+            }
+        }, Field.VOICES);
+    }
+
+    public SessionPlan getSessionPlan() {
+        return state.get().getSessionPlan();
+    }
+
+    public void setSessionPlan(final SessionPlan sessionPlan) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withSessionPlan(sessionPlan);
+            }
+        }, Field.SESSION);
+    }
+
+    public TempoRamp getTempoRamp() {
+        return state.get().getTempoRamp();
+    }
+
+    public void setTempoRamp(final TempoRamp tempoRamp) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTempoRamp(tempoRamp);
+            }
+        }, Field.TEMPO_RAMP);
+    }
+
+    public File getHiSample() {
+        return state.get().getHiSample();
+    }
+
+    public File getLoSample() {
+        return state.get().getLoSample();
+    }
+
+    public void setClickSamples(final File hiSample, final File loSample) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withClickSamples(hiSample, loSample);
+            }
+        }, Field.CLICK_SOUNDS);
+    }
+
+    /**
+     * Go back to the beep wherever a sample is played
+     *
+     * @param sample The WAV file to stop playing
+     */
+    public void clearClickSample(final File sample) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withClickSamples(sample.equals(current.getHiSample()) ? null : current.getHiSample(),
+                        sample.equals(current.getLoSample()) ? null : current.getLoSample());
+            }
+        }, Field.CLICK_SOUNDS);
+    }
+
+    public void setLiveBpm(final double liveBpm) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withLiveBpm(liveBpm);
+            }
+        }, Field.LIVE_BPM);
+    }
+
+    public boolean isTimerSnapToDownbeat() {
+        return state.get().isTimerSnapToDownbeat();
+    }
+
+    public void setTimerSnapToDownbeat(final boolean timerSnapToDownbeat) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withTimerSnapToDownbeat(timerSnapToDownbeat);
+            }
+        }, Field.TIMER_SNAP);
+    }
+
+    public PresetBank getPresetBank() {
+        return state.get().getPresetBank();
+    }
+
+    public void setPresetBank(final PresetBank presetBank) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withPresetBank(presetBank);
+            }
+        }, Field.PRESET);
+    }
+
+    public Preset getPreset() {
+        return state.get().getPreset();
+    }
+
+    /**
+     * Switch to a preset's settings. A playing metronome switches at its next bar line
+     */
+    public void usePreset(final Preset preset) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withPreset(preset);
+            }
+        }, Field.PRESET.bit() | Field.BPM.bit() | Field.ACCENT_INTERVAL.bit() | Field.HI_FREQ.bit()
+                | Field.LO_FREQ.bit() | Field.VOICES.bit() | Field.TEMPO_RAMP.bit() | Field.TIMER.bit());
+    }
+
+    /**
+     * Keep the current settings in the preset bank, replacing any preset with the same name
+     *
+     * @param name What to call the preset
+     * @return The preset bank with the new preset in it
+     */
+    public PresetBank storePreset(final String name) {
+        update(new Transition() {
+            @Override
+            public ModelState apply(ModelState current) {
+                return current.withPresetStored(Preset.of(name, current));
+            }
+        }, Field.PRESET);
+        return state.get().getPresetBank();
+    }
+}
@@ -0,0 +1,12 @@
+package metrotimer;
+
+public interface ModelListener {
+
+    /**
+     * Called after the Model changes, on whichever thread changed it
+     *
+     * @param changedFields The fields that changed, as a set of Model.Field bits
+     */
+    void modelChanged(int changedFields);
+
+}
@@ -0,0 +1,418 @@
+package metrotimer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Everything stored in the Model at one moment. Never changes once published: every change makes a new state with
+ * the next version number, so a reader on any thread can take one state and see a consistent set of values without
+ * locking.
+ */
+public final class ModelState {
+
+    /**
+     * The state a new Model starts in
+     */
+    public static final ModelState DEFAULTS = new ModelState();
+
+    // Only ever assigned while a new state is being made in one of the with methods, before it's published
+
+    private long version = 0;
+    private double bpm = 120;
+    private int accentInterval = 0;
+    private float hiFreq = 1760;
+    private float loFreq = 880;
+    private long timerMillis = 0;
+    private long savedTimerMillis = 0;
+    private double volume = 0;
+    private boolean timerLooping = true;
+    private boolean timerSnapToDownbeat = false;
+    private LatencyProfile latencyProfile = LatencyProfile.BALANCED;
+    private List<ClickVoice> voices = Collections.emptyList();
+    private SessionPlan sessionPlan = SessionPlan.EMPTY;
+    private TempoRamp tempoRamp = null;
+    private File hiSample = null;
+    private File loSample = null;
+    private double liveBpm = Double.NaN;
+    private PresetBank presetBank = PresetBank.EMPTY;
+    private Preset preset = null;
+
+    private ModelState() {}
+
+    /**
+     * @return A copy of this state with the next version number, for one of the with methods to change
+     */
+    private ModelState next() {
+        ModelState next = new ModelState();
+        next.version = version + 1;
+        next.bpm = bpm;
+        next.accentInterval = accentInterval;
+        next.hiFreq = hiFreq;
+        next.loFreq = loFreq;
+        next.timerMillis = timerMillis;
+        next.savedTimerMillis = savedTimerMillis;
+        next.volume = volume;
+        next.timerLooping = timerLooping;
+        next.timerSnapToDownbeat = timerSnapToDownbeat;
+        next.latencyProfile = latencyProfile;
+        next.voices = voices;
+        next.sessionPlan = sessionPlan;
+        next.tempoRamp = tempoRamp;
+        next.hiSample = hiSample;
+        next.loSample = loSample;
+        next.liveBpm = liveBpm;
+        next.presetBank = presetBank;
+        next.preset = preset;
+        return next;
+    }
+
+    /////////////////////////////// Transitions ////////////////////////////////////////
+    // Each returns this state if nothing would change, so callers can tell whether anything did
+
+    public ModelState withBpm(double bpm) {
+        if (bpm == this.bpm) return this;
+        ModelState next = next();
+        next.bpm = bpm;
+        return next;
+    }
+
+    public ModelState withAccentInterval(int accentInterval) {
+        if (accentInterval == this.accentInterval) return this;
+        ModelState next = next();
+        next.accentInterval = accentInterval;
+        return next;
+    }
+
+    public ModelState withHiFreq(float hiFreq) {
+        if (hiFreq == this.hiFreq) return this;
+        ModelState next = next();
+        next.hiFreq = hiFreq;
+        return next;
+    }
+
+    public ModelState withLoFreq(float loFreq) {
+        if (loFreq == this.loFreq) return this;
+        ModelState next = next();
+        next.loFreq = loFreq;
+        return next;
+    }
+
+    /**
+     * @param timerMillis The time left on the timer. Anything below 0 counts as 0
+     */
+    public ModelState withTimerMillis(long timerMillis) {
+        timerMillis = Math.max(timerMillis, 0);
+        if (timerMillis == this.timerMillis) return this;
+        ModelState next = next();
+        next.timerMillis = timerMillis;
+        return next;
+    }
+
+    /**
+     * Set the minutes on the timer, keeping the seconds shown
+     */
+    public ModelState withTimerMin(int timerMin) {
+        return withTimerMillis((timerMin * 60L + getTimerSec()) * 1000);
+    }
+
+    /**
+     * Set the seconds on the timer, keeping the minutes shown
+     */
+    public ModelState withTimerSec(int timerSec) {
+        return withTimerMillis((getTimerMin() * 60L + timerSec) * 1000);
+    }
+
+    public ModelState withSavedTimerMillis(long savedTimerMillis) {
+        if (savedTimerMillis == this.savedTimerMillis) return this;
+        ModelState next = next();
+        next.savedTimerMillis = savedTimerMillis;
+        return next;
+    }
+
+    /**
+     * @return This state with the saved time put back on the timer
+     */
+    public ModelState withSavedTimeRestored() {
+        return withTimerMillis(savedTimerMillis);
+    }
+
+    public ModelState withVolume(double volume) {
+        if (volume == this.volume) return this;
+        ModelState next = next();
+        next.volume = volume;
+        return next;
+    }
+
+    public ModelState withTimerLooping(boolean timerLooping) {
+        if (timerLooping == this.timerLooping) return this;
+        ModelState next = next();
+        next.timerLooping = timerLooping;
+        return next;
+    }
+
+    public ModelState withTimerSnapToDownbeat(boolean timerSnapToDownbeat) {
+        if (timerSnapToDownbeat == this.timerSnapToDownbeat) return this;
+        ModelState next = next();
+        next.timerSnapToDownbeat = timerSnapToDownbeat;
+        return next;
+    }
+
+    public ModelState withLatencyProfile(LatencyProfile latencyProfile) {
+        if (latencyProfile == this.latencyProfile) return this;
+        ModelState next = next();
+        next.latencyProfile = latencyProfile;
+        return next;
+    }
+
+    /**
+     * @param voices The extra voices to play alongside the main beat. Copied
+     */
+    public ModelState withVoices(List<ClickVoice> voices) {
+        if (voices.equals(this.voices)) return this;
+        ModelState next = next();
+        next.voices = Collections.unmodifiableList(new ArrayList<>(voices));
+        return next;
+    }
+
+    public ModelState withSessionPlan(SessionPlan sessionPlan) {
+        if (sessionPlan.equals(this.sessionPlan)) return this;
+        ModelState next = next();
+        next.sessionPlan = sessionPlan;
+        return next;
+    }
+
+    /**
+     * @param tempoRamp The ramp to play instead of the steady tempo, or null for none
+     */
+    public ModelState withTempoRamp(TempoRamp tempoRamp) {
+        if (Objects.equals(tempoRamp, this.tempoRamp)) return this;
+        ModelState next = next();
+        next.tempoRamp = tempoRamp;
+        return next;
+    }
+
+    /**
+     * @param hiSample The WAV file played for accented beats, or null to play the accented beep
+     * @param loSample The WAV file played for unaccented beats, or null to play the unaccented beep
+     */
+    public ModelState withClickSamples(File hiSample, File loSample) {
+        if (Objects.equals(hiSample, this.hiSample) && Objects.equals(loSample, this.loSample)) return this;
+        ModelState next = next();
+        next.hiSample = hiSample;
+        next.loSample = loSample;
+        return next;
+    }
+
+    /**
+     * @param liveBpm The tempo the metronome is playing at right now, or NaN if it isn't ramping
+     */
+    public ModelState withLiveBpm(double liveBpm) {
+        if (Double.compare(liveBpm, this.liveBpm) == 0) return this;
+        ModelState next = next();
+        next.liveBpm = liveBpm;
+        return next;
+    }
+
+    public ModelState withPresetBank(PresetBank presetBank) {
+        if (presetBank == this.presetBank) return this;
+        ModelState next = next();
+        next.presetBank = presetBank;
+        return next;
+    }
+
+    /**
+     * Keep a preset in the bank, replacing any with the same name, and count it as the one last switched to without
+     * changing any settings, since it was made from them
+     */
+    public ModelState withPresetStored(Preset preset) {
+        ModelState next = next();
+        next.presetBank = presetBank.withPreset(preset);
+        next.preset = preset;
+        return next;
+    }
+
+    /**
+     * Switch to a preset: take its tempo, accents, pitches and voices, and its timer length if it has one. A tempo
+     * ramp is stopped, since a preset plays at a steady tempo
+     *
+     * @param preset The preset to switch to
+     */
+    public ModelState withPreset(Preset preset) {
+        ModelState next = withBpm(preset.getBpm())
+                .withAccentInterval(preset.getAccentInterval())
+                .withHiFreq(preset.getHiFreq())
+                .withLoFreq(preset.getLoFreq())
+                .withVoices(preset.getVoices())
+                .withTempoRamp(null);
+        if (preset.getTimerSeconds() > 0) {
+            long millis = preset.getTimerSeconds() * 1000L;
+            next = next.withTimerMillis(millis).withSavedTimerMillis(millis);
+        }
+        if (next == this && preset.equals(this.preset)) return this;
+        // a new state even if the settings are all the same, so switching to a preset is always passed on
+        if (next == this) next = next();
+        next.preset = preset;
+        return next;
+    }
+
+    /////////////////////////////// Accessors ////////////////////////////////////////
+
+    /**
+     * @return How many changes were made to get to this state. Later states always have higher versions
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return The tempo setting in BPM. Doesn't need to be a whole number
+     */
+    public double getBpm() {
+        return bpm;
+    }
+
+    /**
+     * @return Accent every N beats, where this = N
+     */
+    public int getAccentInterval() {
+        return accentInterval;
+    }
+
+    /**
+     * @return The frequency (pitch) of the accented tone
+     */
+    public float getHiFreq() {
+        return hiFreq;
+    }
+
+    /**
+     * @return The frequency (pitch) of the unaccented tone
+     */
+    public float getLoFreq() {
+        return loFreq;
+    }
+
+    /**
+     * @return The time left on the timer in milliseconds
+     */
+    public long getTimerMillis() {
+        return timerMillis;
+    }
+
+    /**
+     * @return The minutes shown on the timer. The timer is shown in whole seconds, rounded up so it only reads 0:00
+     *         once time is actually up
+     */
+    public int getTimerMin() {
+        return (int) (shownTimerSeconds() / 60);
+    }
+
+    /**
+     * @return The seconds shown on the timer
+     */
+    public int getTimerSec() {
+        return (int) (shownTimerSeconds() % 60);
+    }
+
+    private long shownTimerSeconds() {
+        return (timerMillis + 999) / 1000;
+    }
+
+    public boolean timeUp() {
+        return timerMillis == 0;
+    }
+
+    /**
+     * @return The last time for the timer entered by the user, in milliseconds
+     */
+    public long getSavedTimerMillis() {
+        return savedTimerMillis;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    /**
+     * @return Should the timer loop?
+     */
+    public boolean isTimerLooping() {
+        return timerLooping;
+    }
+
+    /**
+     * @return When the timer runs out while the metronome is playing, should the alarm (and the next loop) wait for
+     *         the metronome's next downbeat?
+     */
+    public boolean isTimerSnapToDownbeat() {
+        return timerSnapToDownbeat;
+    }
+
+    /**
+     * @return How to trade output latency against the risk of the output running dry
+     */
+    public LatencyProfile getLatencyProfile() {
+        return latencyProfile;
+    }
+
+    /**
+     * @return The extra voices (polyrhythms and subdivisions) played alongside the main beat. Unmodifiable
+     */
+    public List<ClickVoice> getVoices() {
+        return voices;
+    }
+
+    /**
+     * @return The practice session played by the session button. Empty if none has been entered
+     */
+    public SessionPlan getSessionPlan() {
+        return sessionPlan;
+    }
+
+    /**
+     * @return The ramp the metronome plays instead of the steady tempo, or null for none
+     */
+    public TempoRamp getTempoRamp() {
+        return tempoRamp;
+    }
+
+    /**
+     * @return The WAV file played for accented beats, or null if the accented beep is played instead
+     */
+    public File getHiSample() {
+        return hiSample;
+    }
+
+    /**
+     * @return The WAV file played for unaccented beats, or null if the unaccented beep is played instead
+     */
+    public File getLoSample() {
+        return loSample;
+    }
+
+    /**
+     * @return The tempo a ramping metronome was last reported playing at, or NaN if it isn't ramping. May be out of
+     *         date once the metronome stops
+     */
+    public double getLiveBpm() {
+        return liveBpm;
+    }
+
+    /**
+     * @return The presets that can be switched to
+     */
+    public PresetBank getPresetBank() {
+        return presetBank;
+    }
+
+    /**
+     * @return The preset most recently switched to, or null if there hasn't been one. Its settings may have been
+     *         changed since
+     */
+    public Preset getPreset() {
+        return preset;
+    }
+}
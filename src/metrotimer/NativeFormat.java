@@ -0,0 +1,149 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import java.nio.ByteOrder;
+
+/**
+ * Works out which format to play in: one the sound system takes as it is, so that Java Sound doesn't have to convert
+ * and resample every buffer on its way out.
+ *
+ * The default mixer is asked for every format its lines take. Mixers often leave the sample rate (and sometimes the
+ * channel count) unspecified, meaning any, so those are filled in with the usual rates of sound hardware. Of the
+ * formats the mixer says it supports, the best is picked by, in order: sample rate (48kHz, as most mixers run at, then
+ * 44.1kHz, then anything else), channels (stereo, then mono, then more), sample size (the smallest, since clicks
+ * don't need more than 16 bits) and byte order (the machine's own).
+ */
+public final class NativeFormat {
+
+    /**
+     * The sample rates to fill in where a mixer leaves them unspecified, best first
+     */
+    private static final float[] PREFERRED_RATES = {48000, 44100};
+
+    /**
+     * The channel counts to fill in where a mixer leaves them unspecified, best first
+     */
+    private static final int[] PREFERRED_CHANNELS = {2, 1};
+
+    private NativeFormat() {}
+
+    /**
+     * @return The best format the default mixer plays without converting, or null if there's no mixer or it takes no
+     *         format that can be played
+     */
+    public static AudioFormat negotiate() {
+        Mixer mixer;
+        try {
+            mixer = AudioSystem.getMixer(null);
+        } catch (IllegalArgumentException | SecurityException e) {
+            // no mixer at all (e.g. no sound card)
+            return null;
+        }
+        return negotiate(mixer);
+    }
+
+    /**
+     * @return The best format the given mixer plays without converting, or null if it takes no format that can be
+     *         played
+     */
+    public static AudioFormat negotiate(Mixer mixer) {
+        AudioFormat best = null;
+        for (Line.Info info : mixer.getSourceLineInfo(new Line.Info(SourceDataLine.class))) {
+            if (!(info instanceof DataLine.Info)) continue;
+            for (AudioFormat format : ((DataLine.Info) info).getFormats()) {
+                for (AudioFormat candidate : fillIn(format)) {
+                    if (!isPlayable(candidate) || (best != null && compare(candidate, best) >= 0)) continue;
+                    if (mixer.isLineSupported(new DataLine.Info(SourceDataLine.class, candidate))) best = candidate;
+                }
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return The format with each preferred rate and channel count filled in where it's unspecified, or just the
+     *         format if nothing is
+     */
+    private static AudioFormat[] fillIn(AudioFormat format) {
+        float[] rates = (format.getSampleRate() == AudioSystem.NOT_SPECIFIED)
+                ? PREFERRED_RATES : new float[] {format.getSampleRate()};
+        int[] channelCounts = (format.getChannels() == AudioSystem.NOT_SPECIFIED)
+                ? PREFERRED_CHANNELS : new int[] {format.getChannels()};
+        int bits = format.getSampleSizeInBits();
+        AudioFormat[] filled = new AudioFormat[rates.length * channelCounts.length];
+        int i = 0;
+        for (float rate : rates) {
+            for (int channels : channelCounts) {
+                int frameSize = (bits == AudioSystem.NOT_SPECIFIED || channels == AudioSystem.NOT_SPECIFIED)
+                        ? AudioSystem.NOT_SPECIFIED : channels * ((bits + 7) / 8);
+                filled[i++] = new AudioFormat(format.getEncoding(), rate, bits, channels, frameSize, rate,
+                        format.isBigEndian());
+            }
+        }
+        return filled;
+    }
+
+    /**
+     * @return Can the output be rendered in this format? It must be 16, 24 or 32-bit signed PCM, with its samples
+     *         packed into whole bytes and every field specified
+     */
+    public static boolean isPlayable(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        return format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED
+                && (bits == 16 || bits == 24 || bits == 32)
+                && format.getChannels() > 0
+                && format.getFrameSize() == format.getChannels() * bits / 8
+                && format.getSampleRate() > 0;
+    }
+
+    /**
+     * @return Negative if a is a better format to play in than b, positive if it's worse, 0 if they're as good
+     */
+    static int compare(AudioFormat a, AudioFormat b) {
+        int c = Integer.compare(rank(a.getSampleRate(), PREFERRED_RATES), rank(b.getSampleRate(), PREFERRED_RATES));
+        if (c == 0) c = Integer.compare(rank(a.getChannels(), PREFERRED_CHANNELS),
+                rank(b.getChannels(), PREFERRED_CHANNELS));
+        if (c == 0) c = Integer.compare(a.getSampleSizeInBits(), b.getSampleSizeInBits());
+        if (c == 0) c = Boolean.compare(!isNativeOrder(a), !isNativeOrder(b));
+        return c;
+    }
+
+    private static int rank(float rate, float[] preferred) {
+        for (int i = 0; i < preferred.length; i++) {
+            if (rate == preferred[i]) return i;
+        }
+        return preferred.length;
+    }
+
+    private static int rank(int channels, int[] preferred) {
+        for (int i = 0; i < preferred.length; i++) {
+            if (channels == preferred[i]) return i;
+        }
+        // more channels than any preferred count: fewer is better, as every channel is the same anyway
+        return preferred.length + channels;
+    }
+
+    private static boolean isNativeOrder(AudioFormat format) {
+        return format.isBigEndian() == (ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN);
+    }
+
+    /**
+     * @return The format written the way people say it, e.g. "48kHz 16-bit stereo"
+     */
+    public static String describe(AudioFormat format) {
+        float rate = format.getSampleRate();
+        String kHz = (rate % 1000 == 0) ? Integer.toString((int) (rate / 1000)) : Float.toString(rate / 1000);
+        String channels;
+        switch (format.getChannels()) {
+            case 1: channels = "mono"; break;
+            case 2: channels = "stereo"; break;
+            default: channels = format.getChannels() + " channels"; break;
+        }
+        return kHz + "kHz " + format.getSampleSizeInBits() + "-bit " + channels;
+    }
+}
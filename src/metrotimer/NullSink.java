@@ -0,0 +1,93 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Throws away everything written to it, as fast as it's written. For machines without a sound card, and for
+ * measuring how fast audio can be rendered.
+ */
+public class NullSink implements AudioSink {
+
+    /**
+     * The format that data is expected in
+     */
+    private final AudioFormat format;
+
+    /**
+     * The requested buffer size, only kept so it can be reported back
+     */
+    private int bufferSize = 0;
+
+    /**
+     * Is the sink open?
+     */
+    private volatile boolean open = false;
+
+    /**
+     * The number of frames written since the sink was opened
+     */
+    private volatile long framesWritten = 0;
+
+    public NullSink(AudioFormat format) {
+        this.format = format;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void open(int bufferSize) {
+        this.bufferSize = bufferSize;
+        this.framesWritten = 0;
+        this.open = true;
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void drain() {}
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        framesWritten += len / format.getFrameSize();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    @Override
+    public int available() {
+        return bufferSize;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return framesWritten;
+    }
+
+    @Override
+    public void close() {
+        this.open = false;
+    }
+}
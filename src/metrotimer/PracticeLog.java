@@ -0,0 +1,333 @@
+package metrotimer;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A record of everything practised, kept on disk across runs so that PracticeReport can sum it up: every beat played
+ * with its tempo, the metronome starting and stopping, tempo and volume changes, alarms and the timer starting a loop
+ * over. Every event has the wall-clock time it happened and, for anything played, the exact frame of the audio stream
+ * it was played on.
+ *
+ * The audio and timer threads never touch the file, or wait for anything at all. Each has an EventRing of its own to
+ * publish to, which is a few array writes per event. A writing turn on a background executor (Audio's control thread)
+ * empties the rings a few times a second and appends everything it finds to the file in one write, so a practice
+ * session costs one small write every quarter of a second, however fast the beats are, and no thread of its own.
+ *
+ * The file is a header and then fixed-size records, big-endian, so it can be appended to without reading it first and
+ * a record cut short by a crash is easy to spot and drop:
+ *
+ *     int     magic, "MTPL"
+ *     short   format version, 1
+ *     then for each event:
+ *         byte    kind
+ *         long    wall-clock time, in milliseconds since the epoch
+ *         long    frame of the audio stream, or -1
+ *         float   tempo in BPM (beats and tempo changes), volume from 0 to 1, or seconds on the timer (loop restarts)
+ */
+public final class PracticeLog implements Closeable {
+
+    /**
+     * The metronome started. The frame is the one its first beat falls on
+     */
+    public static final int STARTED = 1;
+
+    /**
+     * The metronome stopped
+     */
+    public static final int STOPPED = 2;
+
+    /**
+     * A beat was played, at the tempo in the value
+     */
+    public static final int BEAT = 3;
+
+    /**
+     * The tempo changed to the value, other than by a tempo ramp (whose tempo is on each beat)
+     */
+    public static final int TEMPO = 4;
+
+    /**
+     * The volume changed to the value
+     */
+    public static final int VOLUME = 5;
+
+    /**
+     * An alarm started
+     */
+    public static final int ALARM = 6;
+
+    /**
+     * The timer started over from its saved time, the value, in seconds
+     */
+    public static final int TIMER_RESTART = 7;
+
+    /**
+     * The first four bytes of every log file
+     */
+    static final int MAGIC = 0x4D54504C;
+
+    /**
+     * The version of the file format written
+     */
+    static final short VERSION = 1;
+
+    /**
+     * The size of the header, in bytes
+     */
+    static final int HEADER_BYTES = 6;
+
+    /**
+     * The size of one event in the file, in bytes
+     */
+    static final int RECORD_BYTES = 21;
+
+    /**
+     * The most events each ring holds. At 300 BPM that's over 13 minutes of beats, so writing can fall a long way
+     * behind before anything's lost
+     */
+    private static final int RING_CAPACITY = 4096;
+
+    /**
+     * How often the rings are emptied
+     */
+    private static final long WRITE_INTERVAL_NANOS = 250_000_000;
+
+    private final File file;
+
+    /**
+     * One ring per thread publishing events
+     */
+    private final List<EventRing> rings = new CopyOnWriteArrayList<>();
+
+    /**
+     * Where each batch of events is put together before being written. Guarded by this
+     */
+    private final ByteBuffer batch = ByteBuffer.allocate(RING_CAPACITY * RECORD_BYTES);
+
+    /**
+     * Adds each event read from a ring to the batch. Guarded by this
+     */
+    private final EventRing.Reader batcher = new EventRing.Reader() {
+        @Override
+        public void event(int kind, long millis, long frame, float value) {
+            batch.put((byte) kind).putLong(millis).putLong(frame).putFloat(value);
+        }
+    };
+
+    /**
+     * The file being appended to, or null if it hasn't been opened yet or has been closed. Guarded by this
+     */
+    private FileChannel channel;
+
+    /**
+     * Has the file been closed, by close() or because it couldn't be written? Nothing more is written once it has.
+     * Guarded by this
+     */
+    private boolean finished = false;
+
+    /**
+     * The writing turns, run every WRITE_INTERVAL_NANOS
+     */
+    private ScheduledFuture<?> turns;
+
+    /**
+     * The number of events written to the file so far
+     */
+    private volatile long written = 0;
+
+    private PracticeLog(File file) {
+        this.file = file;
+    }
+
+    /**
+     * Start logging to a file, adding to whatever it already holds. The file is opened in the first writing turn, so
+     * this returns straight away; if it can't be written, that's reported on standard error and events are thrown away
+     *
+     * @param file Where to keep the log. Made, along with its folder, if it doesn't exist
+     * @param executor Where the writing turns run. Audio's control thread, so the log needs no thread of its own
+     * @return The log, for threads to get rings to publish to from
+     */
+    public static PracticeLog start(File file, ScheduledExecutorService executor) {
+        final PracticeLog log = new PracticeLog(file);
+        log.turns = executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                log.write();
+            }
+        }, 0, WRITE_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+        return log;
+    }
+
+    /**
+     * @return The file the log is kept in unless another is given: practice.log in .metrotimer in the user's home
+     */
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".metrotimer"), "practice.log");
+    }
+
+    /**
+     * @return A new ring for one thread to publish events to, which is emptied along with the rest
+     */
+    public EventRing newRing() {
+        EventRing ring = new EventRing(RING_CAPACITY);
+        rings.add(ring);
+        return ring;
+    }
+
+    /**
+     * One writing turn: open the file if it isn't yet, then write whatever's in the rings. If the file can't be
+     * written, that's reported and nothing more is written
+     */
+    private synchronized void write() {
+        if (finished) return;
+        try {
+            if (channel == null) channel = open();
+            writeBatches(channel);
+        } catch (IOException e) {
+            System.err.println("Couldn't write the practice log " + file + ": " + e.getMessage());
+            finished = true;
+            closeChannel();
+        }
+    }
+
+    /**
+     * Close the file if it's open, reporting it if that fails. Must be called while synchronized on this
+     */
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            System.err.println("Couldn't close the practice log " + file + ": " + e.getMessage());
+        }
+        channel = null;
+    }
+
+    /**
+     * Open the file for appending, starting it with a header if it's new, and dropping any record left cut short
+     */
+    private FileChannel open() throws IOException {
+        File folder = file.getAbsoluteFile().getParentFile();
+        if (folder != null) Files.createDirectories(folder.toPath());
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        try {
+            long size = channel.size();
+            if (size == 0) {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).putInt(MAGIC).putShort(VERSION);
+                header.flip();
+                while (header.hasRemaining()) channel.write(header);
+                size = HEADER_BYTES;
+            } else {
+                ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                channel.read(header, 0);
+                header.flip();
+                if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC || header.getShort() != VERSION) {
+                    throw new IOException("Not a practice log");
+                }
+                long whole = size - (size - HEADER_BYTES) % RECORD_BYTES;
+                if (whole != size) channel.truncate(whole);
+                size = whole;
+            }
+            channel.position(size);
+            return channel;
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Empty every ring into the file, a batch at a time. Must be called while synchronized on this
+     */
+    private void writeBatches(FileChannel channel) throws IOException {
+        int max = batch.capacity() / RECORD_BYTES;
+        for (EventRing ring : rings) {
+            int count;
+            do {
+                batch.clear();
+                count = ring.drain(batcher, max);
+                batch.flip();
+                while (batch.hasRemaining()) channel.write(batch);
+                written += count;
+            } while (count == max);
+        }
+    }
+
+    /**
+     * Read every event in a log file, in the order each thread published them. A record cut short at the end is left
+     * out
+     *
+     * @param file A log file
+     * @param reader Told about each event
+     * @throws IOException If the file couldn't be read or isn't a practice log
+     */
+    public static void read(File file, EventRing.Reader reader) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.remaining() < HEADER_BYTES || map.getInt() != MAGIC) {
+                throw new IOException("Not a practice log: " + file);
+            }
+            short version = map.getShort();
+            if (version != VERSION) throw new IOException("Unknown practice log version " + version + ": " + file);
+            while (map.remaining() >= RECORD_BYTES) {
+                reader.event(map.get(), map.getLong(), map.getLong(), map.getFloat());
+            }
+        }
+    }
+
+    /**
+     * Write every event published so far on this thread, rather than waiting for the next turn
+     */
+    public void flush() {
+        write();
+    }
+
+    /**
+     * Stop the writing turns, write whatever's left in the rings on this thread and close the file. Events published
+     * afterwards are thrown away. Can be called after the executor has been shut down
+     */
+    @Override
+    public void close() {
+        turns.cancel(false);
+        synchronized (this) {
+            write();
+            finished = true;
+            closeChannel();
+        }
+    }
+
+    /**
+     * @return The file the log is kept in
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return The number of events written to the file so far
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * @return The number of events thrown away so far because writing had fallen too far behind
+     */
+    public long getDropped() {
+        long dropped = 0;
+        for (EventRing ring : rings) dropped += ring.getDropped();
+        return dropped;
+    }
+}
@@ -0,0 +1,219 @@
+package metrotimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Collections;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Sums up a practice log (see PracticeLog): how long was spent practising in all, on each day and at each tempo, how
+ * many days in a row have had some practice, and how many alarms and timer loops there were.
+ *
+ * Practice time is counted from the beats: each beat counts for its own length at its own tempo, so time with the
+ * metronome stopped doesn't count, and a tempo ramp's time is shared out among the tempos it passes through. Days are
+ * days in the given time zone.
+ *
+ * Usage: PracticeReport [log file] [days]. The log file defaults to PracticeLog.defaultFile(), and days is how many of
+ * the latest days to show the practice time of, 14 unless given.
+ */
+public class PracticeReport implements EventRing.Reader {
+
+    private static final double SECONDS_PER_MINUTE = 60;
+
+    /**
+     * The number of days to show the practice time of unless told otherwise
+     */
+    private static final int DEFAULT_DAYS = 14;
+
+    /**
+     * The time zone days are counted in
+     */
+    private final ZoneId zone;
+
+    /**
+     * Seconds of practice at each tempo, rounded to the nearest BPM
+     */
+    private final SortedMap<Long, Double> secondsByBpm = new TreeMap<>();
+
+    /**
+     * Seconds of practice on each day
+     */
+    private final SortedMap<LocalDate, Double> secondsByDay = new TreeMap<>();
+
+    private double totalSeconds = 0;
+    private long beats = 0;
+    private int starts = 0;
+    private int alarms = 0;
+    private int timerRestarts = 0;
+
+    /**
+     * @param zone The time zone to count days in
+     */
+    public PracticeReport(ZoneId zone) {
+        this.zone = zone;
+    }
+
+    /**
+     * @param file A practice log
+     * @param zone The time zone to count days in
+     * @return A summary of everything in the log, or of nothing if there's no such file
+     * @throws IOException If the file couldn't be read or isn't a practice log
+     */
+    public static PracticeReport read(File file, ZoneId zone) throws IOException {
+        PracticeReport report = new PracticeReport(zone);
+        if (file.exists()) PracticeLog.read(file, report);
+        return report;
+    }
+
+    /**
+     * Add one event from the log to the summary
+     */
+    @Override
+    public void event(int kind, long millis, long frame, float value) {
+        switch (kind) {
+            case PracticeLog.BEAT:
+                if (!(value > 0)) return;
+                double seconds = SECONDS_PER_MINUTE / value;
+                beats++;
+                totalSeconds += seconds;
+                add(secondsByBpm, (long) Math.round(value), seconds);
+                add(secondsByDay, Instant.ofEpochMilli(millis).atZone(zone).toLocalDate(), seconds);
+                break;
+            case PracticeLog.STARTED: starts++; break;
+            case PracticeLog.ALARM: alarms++; break;
+            case PracticeLog.TIMER_RESTART: timerRestarts++; break;
+            default: break;
+        }
+    }
+
+    private static <K> void add(Map<K, Double> totals, K key, double seconds) {
+        Double total = totals.get(key);
+        totals.put(key, (total != null) ? total + seconds : seconds);
+    }
+
+    /**
+     * @return The number of days in a row, up to today, with some practice on them. A streak that ran up to yesterday
+     *         still counts, since today's practice may be yet to come
+     */
+    public int getStreak(LocalDate today) {
+        LocalDate day = secondsByDay.containsKey(today) ? today : today.minusDays(1);
+        int streak = 0;
+        while (secondsByDay.containsKey(day)) {
+            streak++;
+            day = day.minusDays(1);
+        }
+        return streak;
+    }
+
+    /**
+     * @return The most days in a row there's ever been some practice on
+     */
+    public int getLongestStreak() {
+        int longest = 0;
+        int streak = 0;
+        LocalDate last = null;
+        for (LocalDate day : secondsByDay.keySet()) {
+            streak = (last != null && last.plusDays(1).equals(day)) ? streak + 1 : 1;
+            longest = Math.max(longest, streak);
+            last = day;
+        }
+        return longest;
+    }
+
+    /**
+     * @return Seconds of practice at each tempo, rounded to the nearest BPM. Unmodifiable
+     */
+    public SortedMap<Long, Double> getSecondsByBpm() {
+        return Collections.unmodifiableSortedMap(secondsByBpm);
+    }
+
+    /**
+     * @return Seconds of practice on each day with any. Unmodifiable
+     */
+    public SortedMap<LocalDate, Double> getSecondsByDay() {
+        return Collections.unmodifiableSortedMap(secondsByDay);
+    }
+
+    public double getTotalSeconds() {
+        return totalSeconds;
+    }
+
+    public long getBeats() {
+        return beats;
+    }
+
+    /**
+     * @return The number of times the metronome was started
+     */
+    public int getStarts() {
+        return starts;
+    }
+
+    public int getAlarms() {
+        return alarms;
+    }
+
+    /**
+     * @return The number of times the timer started over from its saved time
+     */
+    public int getTimerRestarts() {
+        return timerRestarts;
+    }
+
+    /**
+     * @param today The day the streak runs up to, and the last of the days shown
+     * @param days How many of the latest days to show the practice time of
+     * @return The summary, over several lines
+     */
+    public String summary(LocalDate today, int days) {
+        if (beats == 0) return "Nothing practised yet";
+        StringBuilder sb = new StringBuilder();
+        long minutes = Math.round(totalSeconds / SECONDS_PER_MINUTE);
+        sb.append(String.format("%d h %02d min practised, started %s, from %s to %s%n", minutes / 60, minutes % 60,
+                count(starts, "time"), secondsByDay.firstKey(), secondsByDay.lastKey()));
+        sb.append(String.format("Streak: %s (longest %s)%n", count(getStreak(today), "day"),
+                count(getLongestStreak(), "day")));
+        sb.append(String.format("Alarms: %d, timer loops: %d%n", alarms, timerRestarts));
+        sb.append(String.format("Minutes at each tempo:%n"));
+        for (Map.Entry<Long, Double> e : secondsByBpm.entrySet()) {
+            sb.append(String.format("  %5d BPM %8.1f%n", e.getKey(), e.getValue() / SECONDS_PER_MINUTE));
+        }
+        sb.append(String.format("Minutes on each of the last %s:", count(days, "day")));
+        for (LocalDate day = today.minusDays(days - 1); !day.isAfter(today); day = day.plusDays(1)) {
+            Double seconds = secondsByDay.get(day);
+            sb.append(String.format("%n  %s %8.1f", day, (seconds != null) ? seconds / SECONDS_PER_MINUTE : 0));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * @return e.g. "1 day" or "3 days"
+     */
+    private static String count(int n, String noun) {
+        return n + " " + noun + ((n == 1) ? "" : "s");
+    }
+
+    public static void main(String[] args) {
+        File file = (args.length > 0) ? new File(args[0]) : PracticeLog.defaultFile();
+        int days = DEFAULT_DAYS;
+        try {
+            if (args.length > 1) days = Math.max(Integer.parseInt(args[1]), 1);
+        } catch (NumberFormatException e) {
+            System.err.println("Usage: PracticeReport [log file] [days]");
+            System.exit(2);
+        }
+        try {
+            ZoneId zone = ZoneId.systemDefault();
+            System.out.println("Practice log " + file);
+            System.out.println(read(file, zone).summary(LocalDate.now(zone), days));
+        } catch (IOException e) {
+            System.err.println("Couldn't read the practice log: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package metrotimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * A named set of metronome settings that can be switched to in one go: the tempo, accents, pitches, extra voices and
+ * the timer's length. Kept in a PresetBank.
+ */
+public final class Preset {
+
+    /**
+     * What the preset is called. Unique within a bank
+     */
+    private final String name;
+
+    /**
+     * The tempo in BPM
+     */
+    private final double bpm;
+
+    /**
+     * Accent every N beats, where this = N
+     */
+    private final int accentInterval;
+
+    /**
+     * The frequency (pitch) of the accented tone
+     */
+    private final float hiFreq;
+
+    /**
+     * The frequency (pitch) of the unaccented tone
+     */
+    private final float loFreq;
+
+    /**
+     * The extra voices played alongside the main beat
+     */
+    private final List<ClickVoice> voices;
+
+    /**
+     * The length of the timer in seconds, or 0 to leave the timer as it is
+     */
+    private final int timerSeconds;
+
+    /**
+     * @param name What the preset is called. Not blank
+     * @param bpm The tempo in BPM. From Controller.MIN_BPM to MAX_BPM
+     * @param accentInterval Accent every N beats, where N = accentInterval, or 0 for no accents
+     * @param hiFreq The frequency (pitch) of the accented tone
+     * @param loFreq The frequency (pitch) of the unaccented tone
+     * @param voices The extra voices played alongside the main beat. Copied
+     * @param timerSeconds The length of the timer in seconds, or 0 to leave the timer as it is
+     */
+    public Preset(String name, double bpm, int accentInterval, float hiFreq, float loFreq, List<ClickVoice> voices,
+                  int timerSeconds) {
+        if (name.trim().isEmpty()) throw new IllegalArgumentException("A preset needs a name");
+        if (!(bpm >= Controller.MIN_BPM && bpm <= Controller.MAX_BPM)) {
+            throw new IllegalArgumentException(
+                    "bpm must be from " + Controller.MIN_BPM + " to " + Controller.MAX_BPM + ": " + bpm);
+        }
+        if (accentInterval < 0) throw new IllegalArgumentException("Accent interval can't be negative");
+        if (!(hiFreq > 0 && loFreq > 0)) throw new IllegalArgumentException("Frequencies must be positive");
+        if (timerSeconds < 0) throw new IllegalArgumentException("Timer can't be negative: " + timerSeconds);
+        this.name = name.trim();
+        this.bpm = bpm;
+        this.accentInterval = accentInterval;
+        this.hiFreq = hiFreq;
+        this.loFreq = loFreq;
+        this.voices = Collections.unmodifiableList(new ArrayList<>(voices));
+        this.timerSeconds = timerSeconds;
+    }
+
+    /**
+     * @param name What to call the preset
+     * @param state The settings to keep in it
+     * @return A preset of the settings in a state, with the timer at its last length entered
+     */
+    public static Preset of(String name, ModelState state) {
+        return new Preset(name, state.getBpm(), state.getAccentInterval(), state.getHiFreq(), state.getLoFreq(),
+                state.getVoices(), (int) (state.getSavedTimerMillis() / 1000));
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public double getBpm() {
+        return bpm;
+    }
+
+    public int getAccentInterval() {
+        return accentInterval;
+    }
+
+    public float getHiFreq() {
+        return hiFreq;
+    }
+
+    public float getLoFreq() {
+        return loFreq;
+    }
+
+    /**
+     * @return The extra voices played alongside the main beat. Unmodifiable
+     */
+    public List<ClickVoice> getVoices() {
+        return voices;
+    }
+
+    /**
+     * @return The length of the timer in seconds, or 0 to leave the timer as it is
+     */
+    public int getTimerSeconds() {
+        return timerSeconds;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Preset)) return false;
+        Preset p = (Preset) o;
+        return name.equals(p.name)
+                && bpm == p.bpm
+                && accentInterval == p.accentInterval
+                && hiFreq == p.hiFreq
+                && loFreq == p.loFreq
+                && voices.equals(p.voices)
+                && timerSeconds == p.timerSeconds;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(name, bpm, accentInterval, hiFreq, loFreq, voices, timerSeconds);
+    }
+
+    /**
+     * @return The preset on one line, e.g. "warm-up: 92 BPM, accent 4, timer 2:00"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(name).append(": ");
+        sb.append((bpm == Math.rint(bpm)) ? Long.toString((long) bpm) : String.format("%.2f", bpm)).append(" BPM");
+        sb.append(", accent ").append(accentInterval);
+        if (!voices.isEmpty()) sb.append(", voices ").append(ClickVoice.toString(voices));
+        if (timerSeconds > 0) sb.append(String.format(", timer %d:%02d", timerSeconds / 60, timerSeconds % 60));
+        return sb.toString();
+    }
+}
@@ -0,0 +1,234 @@
+package metrotimer;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * An ordered list of presets, kept on disk between runs. Never changes: adding or removing a preset makes a new bank.
+ *
+ * On disk a bank is a small binary file rather than text, so loading a few hundred presets is one read and no parsing:
+ * the file is read whole into a heap buffer and every field is read straight out at a fixed size. It isn't
+ * memory-mapped, as a mapping lives until it's garbage collected, and on Windows a file that's mapped can't be
+ * replaced by a save. All numbers are big-endian.
+ *
+ *     int     magic, "MTPB"
+ *     short   format version, 1
+ *     int     number of presets
+ *     then for each preset:
+ *         short   length of the name in bytes, then the name in UTF-8
+ *         double  bpm
+ *         float   hiFreq, loFreq
+ *         int     accentInterval, timerSeconds
+ *         byte    number of voices, then for each: int pulses, int beats, float freq, float gain
+ *
+ * Saving writes a new file next to the old one and moves it into place, so a bank is never left half written.
+ */
+public final class PresetBank {
+
+    /**
+     * A bank with no presets
+     */
+    public static final PresetBank EMPTY = new PresetBank(Collections.<Preset>emptyList());
+
+    /**
+     * The first four bytes of every bank file
+     */
+    private static final int MAGIC = 0x4D545042;
+
+    /**
+     * The version of the file format written
+     */
+    private static final short VERSION = 1;
+
+    /**
+     * The most extra voices a preset can be saved with, since the count is stored in a byte
+     */
+    private static final int MAX_VOICES = 255;
+
+    /**
+     * The presets, in order. Unmodifiable
+     */
+    private final List<Preset> presets;
+
+    private PresetBank(List<Preset> presets) {
+        this.presets = presets;
+    }
+
+    /**
+     * @param presets The presets, in order. Copied
+     * @throws IllegalArgumentException If two presets have the same name
+     */
+    public static PresetBank of(List<Preset> presets) {
+        Set<String> names = new HashSet<>();
+        for (Preset p : presets) {
+            if (!names.add(p.getName().toLowerCase(Locale.ROOT))) {
+                throw new IllegalArgumentException("Two presets called " + p.getName());
+            }
+        }
+        return new PresetBank(Collections.unmodifiableList(new ArrayList<>(presets)));
+    }
+
+    /**
+     * @return The file presets are kept in unless another is given: presets.mtp in .metrotimer in the user's home
+     */
+    public static File defaultFile() {
+        return new File(new File(System.getProperty("user.home"), ".metrotimer"), "presets.mtp");
+    }
+
+    /**
+     * @param file A bank file
+     * @return The presets in it, or an empty bank if there's no such file
+     * @throws IOException If the file couldn't be read or isn't a bank
+     */
+    public static PresetBank read(File file) throws IOException {
+        if (!file.exists()) return EMPTY;
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+        try {
+            if (in.remaining() < 10 || in.getInt() != MAGIC) throw new IOException("Not a preset bank: " + file);
+            short version = in.getShort();
+            if (version != VERSION) throw new IOException("Unknown preset bank version " + version + ": " + file);
+            int count = in.getInt();
+            if (count < 0) throw new IOException("Corrupt preset bank: " + file);
+            List<Preset> presets = new ArrayList<>(Math.min(count, 4096));
+            for (int i = 0; i < count; i++) presets.add(readPreset(in));
+            return of(presets);
+        } catch (BufferUnderflowException e) {
+            throw new IOException("Preset bank is cut short: " + file, e);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Corrupt preset bank: " + file + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static Preset readPreset(ByteBuffer in) {
+        byte[] name = new byte[in.getShort() & 0xFFFF];
+        in.get(name);
+        double bpm = in.getDouble();
+        float hiFreq = in.getFloat();
+        float loFreq = in.getFloat();
+        int accentInterval = in.getInt();
+        int timerSeconds = in.getInt();
+        int voiceCount = in.get() & 0xFF;
+        List<ClickVoice> voices = new ArrayList<>(voiceCount);
+        for (int v = 0; v < voiceCount; v++) {
+            voices.add(new ClickVoice(in.getInt(), in.getInt(), in.getFloat(), in.getFloat()));
+        }
+        return new Preset(new String(name, StandardCharsets.UTF_8), bpm, accentInterval, hiFreq, loFreq, voices,
+                timerSeconds);
+    }
+
+    /**
+     * Save the bank, replacing whatever was in the file. Makes the folder it goes in if there isn't one
+     *
+     * @param file Where to save it
+     * @throws IOException If it couldn't be saved, in which case the file is left as it was
+     */
+    public void write(File file) throws IOException {
+        File folder = file.getAbsoluteFile().getParentFile();
+        if (folder != null) Files.createDirectories(folder.toPath());
+        File temp = new File(folder, file.getName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeShort(VERSION);
+            out.writeInt(presets.size());
+            for (Preset p : presets) writePreset(out, p);
+        }
+        try {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static void writePreset(DataOutputStream out, Preset p) throws IOException {
+        byte[] name = p.getName().getBytes(StandardCharsets.UTF_8);
+        if (name.length > 0xFFFF) throw new IOException("Preset name is too long: " + p.getName());
+        if (p.getVoices().size() > MAX_VOICES) throw new IOException("Too many voices in preset " + p.getName());
+        out.writeShort(name.length);
+        out.write(name);
+        out.writeDouble(p.getBpm());
+        out.writeFloat(p.getHiFreq());
+        out.writeFloat(p.getLoFreq());
+        out.writeInt(p.getAccentInterval());
+        out.writeInt(p.getTimerSeconds());
+        out.writeByte(p.getVoices().size());
+        for (ClickVoice v : p.getVoices()) {
+            out.writeInt(v.getPulses());
+            out.writeInt(v.getBeats());
+            out.writeFloat(v.getFreq());
+            out.writeFloat(v.getGain());
+        }
+    }
+
+    /**
+     * @param preset A preset to add
+     * @return This bank with the preset in place of the one with the same name, or on the end if there isn't one
+     */
+    public PresetBank withPreset(Preset preset) {
+        List<Preset> next = new ArrayList<>(presets);
+        int i = indexOf(preset.getName());
+        if (i >= 0) next.set(i, preset);
+        else next.add(preset);
+        return new PresetBank(Collections.unmodifiableList(next));
+    }
+
+    /**
+     * @param name The name of a preset to remove
+     * @return This bank without that preset, or this bank if there's no preset by that name
+     */
+    public PresetBank withoutPreset(String name) {
+        int i = indexOf(name);
+        if (i < 0) return this;
+        List<Preset> next = new ArrayList<>(presets);
+        next.remove(i);
+        return new PresetBank(Collections.unmodifiableList(next));
+    }
+
+    /**
+     * @return The position of the preset with the given name, ignoring case, or -1 if there isn't one
+     */
+    public int indexOf(String name) {
+        String key = name.trim().toLowerCase(Locale.ROOT);
+        for (int i = 0; i < presets.size(); i++) {
+            if (presets.get(i).getName().toLowerCase(Locale.ROOT).equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return The preset at a position, from 0
+     */
+    public Preset get(int index) {
+        return presets.get(index);
+    }
+
+    public int size() {
+        return presets.size();
+    }
+
+    public boolean isEmpty() {
+        return presets.isEmpty();
+    }
+
+    /**
+     * @return The presets, in order. Unmodifiable
+     */
+    public List<Preset> getPresets() {
+        return presets;
+    }
+}
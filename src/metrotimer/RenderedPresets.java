@@ -0,0 +1,101 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Every preset in a bank, rendered with the click sounds that were chosen at the time
+ */
+final class RenderedPresets {
+
+    private final PresetBank bank;
+    private final File hiSample;
+    private final File loSample;
+
+    /**
+     * Each preset's settings, waiting for the bar line. Never changed once made
+     */
+    private final Map<Preset, MetronomeParams> params;
+
+    private RenderedPresets(ModelState state, Map<Preset, MetronomeParams> params) {
+        this.bank = state.getPresetBank();
+        this.hiSample = state.getHiSample();
+        this.loSample = state.getLoSample();
+        this.params = params;
+    }
+
+    /**
+     * Render every preset in a state's bank with its click sounds
+     *
+     * @param state The bank and click sounds to render
+     * @param format The tone format to render in (see Audio.toneFormat)
+     * @param previous The presets rendered last time, or null. Those with the same click sounds are kept
+     * @return The rendered presets
+     */
+    static RenderedPresets render(ModelState state, AudioFormat format, RenderedPresets previous) {
+        byte[] hiSample = ClickSounds.decode(state.getHiSample(), format);
+        byte[] loSample = ClickSounds.decode(state.getLoSample(), format);
+        boolean sameSounds = previous != null && Objects.equals(previous.hiSample, state.getHiSample())
+                && Objects.equals(previous.loSample, state.getLoSample());
+        Map<Preset, MetronomeParams> params = new HashMap<>();
+        Map<Float, byte[]> beeps = new HashMap<>();
+        for (Preset preset : state.getPresetBank().getPresets()) {
+            MetronomeParams p = sameSounds ? previous.params.get(preset) : null;
+            params.put(preset, (p != null) ? p : renderPreset(preset, format, hiSample, loSample, beeps));
+        }
+        return new RenderedPresets(state, params);
+    }
+
+    /**
+     * Render a preset's clicks, ready to be switched to at the next bar line
+     *
+     * @param preset The preset to render
+     * @param format The tone format to render in (see Audio.toneFormat)
+     * @param hiSample The PCM data played for accented beats, or null for the beep
+     * @param loSample The PCM data played for other beats, or null for the beep
+     * @param beeps Beeps already rendered, by pitch. Added to
+     * @return The preset's settings, waiting for the bar line
+     */
+    static MetronomeParams renderPreset(Preset preset, AudioFormat format, byte[] hiSample, byte[] loSample,
+                                        Map<Float, byte[]> beeps) {
+        byte[] loBeep = (loSample != null) ? loSample : beep(preset.getLoFreq(), format, beeps);
+        byte[] hiBeep = (preset.getAccentInterval() == 0) ? null
+                : (hiSample != null) ? hiSample : beep(preset.getHiFreq(), format, beeps);
+        List<ClickVoice> voices = preset.getVoices();
+        byte[][] voiceBeeps = new byte[voices.size()][];
+        for (int i = 0; i < voiceBeeps.length; i++) voiceBeeps[i] = beep(voices.get(i).getFreq(), format, beeps);
+        return new MetronomeParams(preset.getBpm(), preset.getHiFreq(), preset.getLoFreq(),
+                preset.getAccentInterval(), hiBeep, loBeep, voices, voiceBeeps).atBarLine();
+    }
+
+    /**
+     * @return The beep at a pitch from beeps, or from the tone cache and put in beeps if it isn't there
+     */
+    private static byte[] beep(float freq, AudioFormat format, Map<Float, byte[]> beeps) {
+        byte[] beep = beeps.get(freq);
+        if (beep == null) {
+            beep = Audio.getBeep(freq, format);
+            beeps.put(freq, beep);
+        }
+        return beep;
+    }
+
+    /**
+     * @return Were these rendered from the bank and click sounds in a state?
+     */
+    boolean isFor(ModelState state) {
+        return bank == state.getPresetBank() && Objects.equals(hiSample, state.getHiSample())
+                && Objects.equals(loSample, state.getLoSample());
+    }
+
+    /**
+     * @return A preset's settings, or null if it isn't in the bank
+     */
+    MetronomeParams get(Preset preset) {
+        return params.get(preset);
+    }
+}
@@ -0,0 +1,350 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A cache of WAV files decoded for playing as clicks (see SampleDecoder), bounded by how many bytes of PCM data it
+ * holds rather than how many files. When it's over budget the least recently used samples get thrown out.
+ *
+ * Decoding happens in the background on a loader the caller gives (Audio's control thread), so that choosing a sound
+ * or loading a whole folder of them never holds up the UI or the output thread: load() hands the work over and says
+ * when it's done, and getIfLoaded() only ever looks in the cache. A folder is preloaded a file at a time, each one a
+ * job of its own, so other work on the loader gets a turn in between. A file that's changed on disk since it was
+ * decoded is decoded again.
+ *
+ * The buffers handed out are shared between everyone who asks for the same sample, so they must never be changed.
+ */
+public class SampleCache {
+
+    /**
+     * Told when a sample asked for with load() is ready or couldn't be loaded. Called on the loader thread
+     */
+    public interface LoadListener {
+        void loaded(File file);
+
+        void failed(File file, IOException e);
+    }
+
+    /**
+     * The most bytes of PCM data to keep
+     */
+    private final long budgetBytes;
+
+    /**
+     * All cached samples, in least recently used first order. Guarded by itself, along with usedBytes, loading and
+     * failures
+     */
+    private final LinkedHashMap<Key, byte[]> samples = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The number of bytes of PCM data in samples
+     */
+    private long usedBytes = 0;
+
+    /**
+     * The samples being loaded, with who to tell when each is done
+     */
+    private final Map<Key, List<LoadListener>> loading = new HashMap<>();
+
+    /**
+     * Why each file that couldn't be loaded couldn't be, so it isn't tried again until it changes
+     */
+    private final Map<Key, IOException> failures = new HashMap<>();
+
+    /**
+     * The number of times a sample was found in the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of times a sample had to be decoded
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * The number of samples thrown out to stay within the budget
+     */
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * @param budgetBytes The most bytes of PCM data to keep. A single sample bigger than this is still cached, until
+     *                    the next one comes in
+     */
+    public SampleCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    /**
+     * @param file A WAV file
+     * @param format The format to play it in
+     * @return The file's PCM data, or null if it isn't cached. Shared, so it must not be changed
+     */
+    public byte[] getIfLoaded(File file, AudioFormat format) {
+        Key key = new Key(file, format);
+        synchronized (samples) {
+            byte[] pcm = samples.get(key);
+            if (pcm != null) hits.incrementAndGet();
+            return pcm;
+        }
+    }
+
+    /**
+     * Get a sample, decoding it on this thread if it isn't already cached
+     *
+     * @param file A WAV file
+     * @param format The format to play it in. Must be 16-bit signed PCM
+     * @return The file's PCM data. Shared, so it must not be changed
+     * @throws IOException If the file couldn't be read or isn't a WAV that can be played
+     */
+    public byte[] get(File file, AudioFormat format) throws IOException {
+        byte[] pcm = getIfLoaded(file, format);
+        return (pcm != null) ? pcm : decode(new Key(file, format), file, format, false);
+    }
+
+    /**
+     * Decode a sample on the loader if it isn't already cached or being loaded
+     *
+     * @param file A WAV file
+     * @param format The format to play it in. Must be 16-bit signed PCM
+     * @param listener Told when it's ready or failed to load, or null. Told as soon as the loader thread gets to
+     *                 it if it's already cached or already known not to load
+     * @param loader Where to decode it. Should run one job at a time
+     */
+    public void load(final File file, final AudioFormat format, final LoadListener listener, final Executor loader) {
+        final Key key = new Key(file, format);
+        final boolean cached;
+        final IOException failure;
+        synchronized (samples) {
+            cached = samples.containsKey(key);
+            failure = failures.get(key);
+        }
+        if (cached || failure != null) {
+            // told on the loader thread all the same, so the caller never has the listener run in the middle of it
+            if (listener == null) return;
+            loader.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (cached) listener.loaded(file);
+                    else listener.failed(file, failure);
+                }
+            });
+            return;
+        }
+        synchronized (samples) {
+            List<LoadListener> listeners = loading.get(key);
+            if (listeners != null) {
+                if (listener != null && !listeners.contains(listener)) listeners.add(listener);
+                return;
+            }
+            listeners = new ArrayList<>();
+            if (listener != null) listeners.add(listener);
+            loading.put(key, listeners);
+        }
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                IOException failure = null;
+                try {
+                    decode(key, file, format, false);
+                } catch (IOException e) {
+                    failure = e;
+                } catch (RuntimeException e) {
+                    failure = new IOException(e);
+                }
+                List<LoadListener> listeners;
+                synchronized (samples) {
+                    listeners = loading.remove(key);
+                    if (failure != null) failures.put(key, failure);
+                }
+                for (LoadListener l : listeners) {
+                    if (failure == null) l.loaded(file);
+                    else l.failed(file, failure);
+                }
+            }
+        });
+    }
+
+    /**
+     * Decode every WAV file in a folder on the loader, in name order, until the budget is full, so that any
+     * of them can be switched to straight away. Anything already cached is kept. Files that can't be loaded are
+     * skipped
+     *
+     * @param folder A folder of WAV files
+     * @param format The format to play them in. Must be 16-bit signed PCM
+     * @param loader Where to decode them. Should run one job at a time
+     */
+    public void preload(final File folder, final AudioFormat format, final Executor loader) {
+        loader.execute(new Runnable() {
+            @Override
+            public void run() {
+                File[] files = folder.listFiles(new FileFilter() {
+                    @Override
+                    public boolean accept(File f) {
+                        return f.isFile() && f.getName().toLowerCase(Locale.ROOT).endsWith(".wav");
+                    }
+                });
+                if (files == null) return;
+                Arrays.sort(files);
+                preload(files, 0, format, loader);
+            }
+        });
+    }
+
+    /**
+     * Decode the first file from an index on that isn't already cached, loading or known not to load, if there's room
+     * for it, then hand the rest back to the loader as a job of their own. Runs on the loader
+     */
+    private void preload(final File[] files, int index, final AudioFormat format, final Executor loader) {
+        for (int i = index; i < files.length; i++) {
+            File file = files[i];
+            Key key = new Key(file, format);
+            synchronized (samples) {
+                if (samples.containsKey(key) || loading.containsKey(key) || failures.containsKey(key)) continue;
+            }
+            try {
+                if (decode(key, file, format, true) == null) return;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Couldn't preload " + file + ": " + e.getMessage());
+                synchronized (samples) {
+                    failures.put(key, (e instanceof IOException) ? (IOException) e : new IOException(e));
+                }
+            }
+            final int next = i + 1;
+            if (next < files.length) {
+                loader.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        preload(files, next, format, loader);
+                    }
+                });
+            }
+            return;
+        }
+    }
+
+    /**
+     * Decode a file and cache it
+     *
+     * @param onlyIfRoom Leave it out, rather than throwing other samples out to make room for it?
+     * @return The file's PCM data, or null if it was left out
+     */
+    private byte[] decode(Key key, File file, AudioFormat format, boolean onlyIfRoom) throws IOException {
+        misses.incrementAndGet();
+        byte[] pcm = SampleDecoder.decode(file, format, ToneCache.AMPLITUDE);
+        synchronized (samples) {
+            if (onlyIfRoom && usedBytes + pcm.length > budgetBytes) return null;
+            byte[] replaced = samples.put(key, pcm);
+            if (replaced != null) usedBytes -= replaced.length;
+            usedBytes += pcm.length;
+            Iterator<Map.Entry<Key, byte[]>> eldest = samples.entrySet().iterator();
+            while (usedBytes > budgetBytes && samples.size() > 1) {
+                Map.Entry<Key, byte[]> entry = eldest.next();
+                usedBytes -= entry.getValue().length;
+                eldest.remove();
+                evictions.incrementAndGet();
+            }
+        }
+        return pcm;
+    }
+
+    /**
+     * @return The number of times a sample was found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of times a sample had to be decoded
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of bytes of PCM data cached
+     */
+    public long getUsedBytes() {
+        synchronized (samples) {
+            return usedBytes;
+        }
+    }
+
+    /**
+     * @return The number of samples currently cached
+     */
+    public int size() {
+        synchronized (samples) {
+            return samples.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("SampleCache[size=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]", size(),
+                getUsedBytes(), budgetBytes, getHits(), getMisses(), evictions.get());
+    }
+
+    /**
+     * Everything that makes one decoded sample different from another, including which version of the file it was
+     */
+    private static final class Key {
+
+        private final File file;
+        private final long lastModified;
+        private final long length;
+        private final float sampleRate;
+        private final int sampleSizeInBits;
+        private final int channels;
+        private final boolean bigEndian;
+
+        Key(File file, AudioFormat format) {
+            this.file = file.getAbsoluteFile();
+            this.lastModified = file.lastModified();
+            this.length = file.length();
+            this.sampleRate = format.getSampleRate();
+            this.sampleSizeInBits = format.getSampleSizeInBits();
+            this.channels = format.getChannels();
+            this.bigEndian = format.isBigEndian();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return file.equals(k.file)
+                    && lastModified == k.lastModified
+                    && length == k.length
+                    && sampleRate == k.sampleRate
+                    && sampleSizeInBits == k.sampleSizeInBits
+                    && channels == k.channels
+                    && bigEndian == k.bigEndian;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = file.hashCode();
+            h = 31 * h + Long.hashCode(lastModified);
+            h = 31 * h + Long.hashCode(length);
+            h = 31 * h + Float.floatToIntBits(sampleRate);
+            h = 31 * h + sampleSizeInBits;
+            h = 31 * h + channels;
+            h = 31 * h + (bigEndian ? 1 : 0);
+            return h;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Turns a WAV file into PCM data ready to be played: read, mixed down to one channel, resampled to the output rate and
+ * converted to the output format, all in one go so that nothing has to be done to it while it plays.
+ *
+ * The file is memory-mapped rather than read through a stream, so the OS pages it straight in and nothing is copied
+ * before it's decoded. 8, 16, 24 and 32-bit integer and 32-bit float WAVs are understood, including the extensible
+ * kind. Resampling uses a windowed sinc filter that cuts off below the lower of the two rates' Nyquist frequencies, so
+ * going down in rate doesn't alias.
+ */
+public final class SampleDecoder {
+
+    /**
+     * The number of input samples either side of each output sample that the resampling filter looks at, at the
+     * input's rate. More is sharper and slower; this is plenty for a click
+     */
+    private static final int FILTER_HALF_WIDTH = 16;
+
+    /**
+     * The number of points the filter is worked out at between one zero crossing and the next. Points in between are
+     * interpolated, which is far quicker than working out a sine and a cosine for every tap
+     */
+    private static final int FILTER_RESOLUTION = 256;
+
+    /**
+     * The Hann-windowed sinc filter from its centre to its edge, at FILTER_RESOLUTION points per zero crossing, with a
+     * zero on the end so interpolating up to the edge needs no check
+     */
+    private static final float[] FILTER = new float[FILTER_HALF_WIDTH * FILTER_RESOLUTION + 2];
+
+    static {
+        for (int i = 0; i < FILTER.length - 1; i++) {
+            double u = (double) i / FILTER_RESOLUTION;
+            double window = 0.5 + 0.5 * Math.cos(Math.PI * u / FILTER_HALF_WIDTH);
+            FILTER[i] = (float) ((i == 0) ? 1 : Math.sin(Math.PI * u) / (Math.PI * u) * window);
+        }
+    }
+
+    /**
+     * The WAV format codes for integer PCM, float PCM and the extensible format (which gives the real code later)
+     */
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_IEEE_FLOAT = 3;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /**
+     * WAVs longer than this are turned down, since a click this long is almost certainly the wrong file
+     */
+    private static final int MAX_SECONDS = 30;
+
+    private SampleDecoder() {}
+
+    /**
+     * @param file A WAV file
+     * @param format The format to convert it to. Must be 16-bit signed PCM
+     * @param peak The level to scale the loudest sample to, from 0 to 1
+     * @return A new byte buffer containing the whole file, in the given format, with the same sample in every channel
+     * @throws IOException If the file couldn't be read or isn't a WAV this understands
+     */
+    public static byte[] decode(File file, AudioFormat format, double peak) throws IOException {
+        if (format.getSampleSizeInBits() != 16 || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("Only 16-bit signed PCM is supported: " + format);
+        }
+        float[] samples;
+        float rate;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            map.order(ByteOrder.LITTLE_ENDIAN);
+            Wav wav = new Wav(map, file);
+            samples = wav.mono();
+            rate = wav.sampleRate;
+        }
+        samples = resample(samples, rate, format.getSampleRate());
+        return encode(samples, format, peak);
+    }
+
+    /**
+     * The parts of a WAV file needed to decode it
+     */
+    private static final class Wav {
+        final ByteBuffer data;
+        final int formatCode;
+        final int channels;
+        final float sampleRate;
+        final int bytesPerSample;
+        final int frames;
+
+        Wav(ByteBuffer map, File file) throws IOException {
+            if (map.remaining() < 12 || map.getInt(0) != 0x46464952 || map.getInt(8) != 0x45564157) {
+                throw new IOException("Not a WAV file: " + file);
+            }
+            ByteBuffer fmt = null;
+            ByteBuffer dataChunk = null;
+            int pos = 12;
+            while (pos + 8 <= map.limit() && (fmt == null || dataChunk == null)) {
+                int id = map.getInt(pos);
+                long size = map.getInt(pos + 4) & 0xFFFFFFFFL;
+                int start = pos + 8;
+                // a data chunk's size is sometimes left unset by recorders that were cut off; take what's there
+                int end = (int) Math.min(start + size, map.limit());
+                ByteBuffer window = map.duplicate();
+                window.position(start);
+                window.limit(end);
+                ByteBuffer chunk = window.slice().order(ByteOrder.LITTLE_ENDIAN);
+                if (id == 0x20746d66) fmt = chunk;
+                else if (id == 0x61746164) dataChunk = chunk;
+                // chunks are padded to an even length
+                pos = (int) Math.min(start + size + (size & 1), Integer.MAX_VALUE);
+            }
+            if (fmt == null || dataChunk == null || fmt.remaining() < 16) {
+                throw new IOException("WAV file has no format or no data: " + file);
+            }
+            int code = fmt.getShort(0) & 0xFFFF;
+            if (code == WAVE_FORMAT_EXTENSIBLE && fmt.remaining() >= 26) code = fmt.getShort(24) & 0xFFFF;
+            this.formatCode = code;
+            this.channels = fmt.getShort(2) & 0xFFFF;
+            this.sampleRate = fmt.getInt(4);
+            int bits = fmt.getShort(14) & 0xFFFF;
+            this.bytesPerSample = (bits + 7) / 8;
+            boolean supported = (code == WAVE_FORMAT_PCM && bytesPerSample >= 1 && bytesPerSample <= 4)
+                    || (code == WAVE_FORMAT_IEEE_FLOAT && bytesPerSample == 4);
+            if (!supported || channels < 1 || sampleRate <= 0) {
+                throw new IOException("Unsupported WAV format (code " + code + ", " + bits + " bits, " + channels
+                        + " channels): " + file);
+            }
+            this.data = dataChunk;
+            this.frames = dataChunk.remaining() / (bytesPerSample * channels);
+            if (frames > MAX_SECONDS * sampleRate) {
+                throw new IOException("WAV file is longer than " + MAX_SECONDS + " seconds: " + file);
+            }
+        }
+
+        /**
+         * @return Every frame, with its channels averaged, from -1 to 1
+         */
+        float[] mono() {
+            float[] out = new float[frames];
+            int pos = 0;
+            for (int i = 0; i < frames; i++) {
+                float sum = 0;
+                for (int c = 0; c < channels; c++) {
+                    sum += sample(pos);
+                    pos += bytesPerSample;
+                }
+                out[i] = sum / channels;
+            }
+            return out;
+        }
+
+        /**
+         * @return The sample starting at a byte position in the data, from -1 to 1
+         */
+        private float sample(int pos) {
+            if (formatCode == WAVE_FORMAT_IEEE_FLOAT) return data.getFloat(pos);
+            switch (bytesPerSample) {
+                // 8-bit WAVs are unsigned
+                case 1: return ((data.get(pos) & 0xFF) - 128) / 128f;
+                case 2: return data.getShort(pos) / 32768f;
+                case 3: return ((data.get(pos) & 0xFF) | (data.get(pos + 1) & 0xFF) << 8 | data.get(pos + 2) << 16)
+                        / 8388608f;
+                default: return data.getInt(pos) / 2147483648f;
+            }
+        }
+    }
+
+    /**
+     * Resample with a Hann-windowed sinc filter
+     *
+     * @param in The samples at the input rate
+     * @param inRate The input sample rate in Hz
+     * @param outRate The output sample rate in Hz
+     * @return The samples at the output rate, or the same array if the rates are the same
+     */
+    static float[] resample(float[] in, float inRate, float outRate) {
+        if (inRate == outRate || in.length == 0) return in;
+        double step = inRate / (double) outRate;
+        // cut off at the lower Nyquist frequency, as a fraction of the input's
+        double cutoff = Math.min(1, outRate / (double) inRate);
+        double halfWidth = FILTER_HALF_WIDTH / cutoff;
+        int outLength = (int) Math.ceil(in.length / step);
+        float[] out = new float[outLength];
+        for (int i = 0; i < outLength; i++) {
+            double centre = i * step;
+            int first = (int) Math.max(0, Math.ceil(centre - halfWidth));
+            int last = (int) Math.min(in.length - 1, Math.floor(centre + halfWidth));
+            double sum = 0;
+            for (int j = first; j <= last; j++) {
+                // how far the input sample is from the centre, in points of FILTER
+                double point = Math.abs(j - centre) * cutoff * FILTER_RESOLUTION;
+                int index = (int) point;
+                double frac = point - index;
+                sum += in[j] * (FILTER[index] + (FILTER[index + 1] - FILTER[index]) * frac);
+            }
+            out[i] = (float) (sum * cutoff);
+        }
+        return out;
+    }
+
+    /**
+     * Scale the samples so the loudest is at the given peak and convert them to 16-bit PCM in the given format
+     */
+    private static byte[] encode(float[] samples, AudioFormat format, double peak) {
+        float loudest = 0;
+        for (float s : samples) loudest = Math.max(loudest, Math.abs(s));
+        double gain = (loudest == 0) ? 0 : peak / loudest;
+        int channels = format.getChannels();
+        boolean bigEndian = format.isBigEndian();
+        byte[] out = new byte[samples.length * format.getFrameSize()];
+        int pos = 0;
+        for (float s : samples) {
+            short a = (short) Math.round(s * gain * Short.MAX_VALUE);
+            for (int c = 0; c < channels; c++) {
+                out[pos++] = (byte) (bigEndian ? a >> 8 : a & 0xFF);
+                out[pos++] = (byte) (bigEndian ? a & 0xFF : a >> 8);
+            }
+        }
+        return out;
+    }
+}
@@ -0,0 +1,119 @@
+package metrotimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A fixed-size ring of PCM bytes passed from one thread that renders them to one thread that plays them, without
+ * locks and without allocating anything (see LookaheadSink).
+ *
+ * The bytes are kept in one array made up front. Like EventRing, the writing thread copies bytes in and then moves the
+ * tail past them with an ordered write, and the reading thread moves the head past the bytes it's copied out the same
+ * way, so neither ever waits for the other. Neither blocks either: a write takes as much as there's room for and a
+ * read as much as there is, and it's up to the caller what to do about the rest.
+ *
+ * Only one thread may ever write to a ring, and only one read from it.
+ */
+public final class SampleRing {
+
+    private final byte[] bytes;
+
+    /**
+     * The position of the next byte to be written, counting every byte ever written. Written by the writer only
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next byte to be read. Written by the reader only
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * @param capacity The most bytes the ring holds at once
+     */
+    public SampleRing(int capacity) {
+        this.bytes = new byte[capacity];
+    }
+
+    /**
+     * Copy in as much of the data as there's room for. Never waits. Writer only
+     *
+     * @param b The data
+     * @param off Where in b the data starts
+     * @param len The number of bytes of data
+     * @return The number of bytes copied in, from the start of the data
+     */
+    public int write(byte[] b, int off, int len) {
+        long position = tail.get();
+        int count = (int) Math.min(len, bytes.length - (position - head.get()));
+        copy(b, off, position, count, true);
+        // the bytes are in before the reader can see they're there
+        tail.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * Copy out as many bytes as there are, up to a limit, freeing their room for the writer. Never waits. Reader only
+     *
+     * @param b Where to copy them
+     * @param off Where in b to start
+     * @param max The most bytes to copy
+     * @return The number of bytes copied out
+     */
+    public int read(byte[] b, int off, int max) {
+        long position = head.get();
+        int count = (int) Math.min(max, tail.get() - position);
+        copy(b, off, position, count, false);
+        head.lazySet(position + count);
+        return count;
+    }
+
+    /**
+     * Throw away every byte written so far. Reader only
+     *
+     * @return The number of bytes thrown away
+     */
+    public int skip() {
+        long position = head.get();
+        long end = tail.get();
+        head.lazySet(end);
+        return (int) (end - position);
+    }
+
+    /**
+     * Copy between b and the ring, in two parts if the bytes wrap round the end of the ring's array
+     *
+     * @param into True to copy from b into the ring, false to copy from the ring into b
+     */
+    private void copy(byte[] b, int off, long position, int count, boolean into) {
+        int start = (int) (position % bytes.length);
+        int first = Math.min(count, bytes.length - start);
+        if (into) {
+            System.arraycopy(b, off, bytes, start, first);
+            System.arraycopy(b, off + first, bytes, 0, count - first);
+        } else {
+            System.arraycopy(bytes, start, b, off, first);
+            System.arraycopy(bytes, 0, b, off + first, count - first);
+        }
+    }
+
+    /**
+     * @return The most bytes the ring holds at once
+     */
+    public int capacity() {
+        return bytes.length;
+    }
+
+    /**
+     * @return The number of bytes waiting to be read
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * @return The number of bytes written so far, read or not
+     */
+    public long getWritten() {
+        return tail.get();
+    }
+}
@@ -0,0 +1,93 @@
+package metrotimer;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An alarm booked to start on a given frame of the output stream, or on the first downbeat from then on. Handed to
+ * the output thread ahead of time, so it can start the alarm on exactly the right frame, and then watched by whoever
+ * booked it to find out when it actually started.
+ */
+public class ScheduledAlarm {
+
+    private static final long NOT_STARTED = -1;
+    private static final long CANCELLED = -2;
+
+    /**
+     * The frame to start on, or the earliest frame if waiting for a downbeat
+     */
+    private final long frame;
+
+    /**
+     * Wait for the first downbeat on or after frame?
+     */
+    private final boolean onDownbeat;
+
+    /**
+     * The frame it started on, NOT_STARTED or CANCELLED
+     */
+    private final AtomicLong startFrame = new AtomicLong(NOT_STARTED);
+
+    /**
+     * @param frame The frame of the output stream to start on, or the earliest frame if waiting for a downbeat
+     * @param onDownbeat Wait for the first downbeat on or after frame?
+     */
+    public ScheduledAlarm(long frame, boolean onDownbeat) {
+        this.frame = frame;
+        this.onDownbeat = onDownbeat;
+    }
+
+    /**
+     * Record that the alarm has started. Called by the output thread only
+     *
+     * @param frame The frame it started on
+     * @return False if it was cancelled first, in which case it mustn't be played
+     */
+    boolean start(long frame) {
+        return startFrame.compareAndSet(NOT_STARTED, frame);
+    }
+
+    /**
+     * Stop the alarm from being played, unless it's already started
+     *
+     * @return True if it was cancelled before it started
+     */
+    public boolean cancel() {
+        return startFrame.compareAndSet(NOT_STARTED, CANCELLED);
+    }
+
+    /**
+     * @return The frame to start on, or the earliest frame if waiting for a downbeat
+     */
+    public long getFrame() {
+        return frame;
+    }
+
+    /**
+     * @return Wait for the first downbeat on or after getFrame()?
+     */
+    public boolean isOnDownbeat() {
+        return onDownbeat;
+    }
+
+    /**
+     * @return Has the output thread started the alarm?
+     */
+    public boolean hasStarted() {
+        return startFrame.get() >= 0;
+    }
+
+    /**
+     * @return Was the alarm cancelled before it started?
+     */
+    public boolean isCancelled() {
+        return startFrame.get() == CANCELLED;
+    }
+
+    /**
+     * @return The frame the alarm started on, or -1 if it hasn't started
+     */
+    public long getStartFrame() {
+        long start = startFrame.get();
+        return (start >= 0) ? start : -1;
+    }
+}
@@ -0,0 +1,82 @@
+package metrotimer;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A clock that threads can also wait on: everything the timer and audio output do that depends on time passing goes
+ * through one of these, so the same code runs against the real clock or a SimulatedScheduler, where hours go by in
+ * moments.
+ *
+ * Waiting works like LockSupport: a thread parks until its time comes or another thread unparks it, and may also wake
+ * for no reason, so callers check what they were waiting for and park again if need be.
+ */
+public interface Scheduler extends TimeSource {
+
+    /**
+     * The system's clocks and threads: System.nanoTime, System.currentTimeMillis and LockSupport
+     */
+    Scheduler SYSTEM = new Scheduler() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void parkNanos(Object blocker, long nanos) {
+            LockSupport.parkNanos(blocker, nanos);
+        }
+
+        @Override
+        public void park(Object blocker) {
+            LockSupport.park(blocker);
+        }
+
+        @Override
+        public void unpark(Thread thread) {
+            LockSupport.unpark(thread);
+        }
+
+        @Override
+        public Thread newThread(Runnable task, String name) {
+            return new Thread(task, name);
+        }
+    };
+
+    /**
+     * @return The wall-clock time, in milliseconds since the epoch, moving on at the same rate as nanoTime
+     */
+    long currentTimeMillis();
+
+    /**
+     * Wait until the given time has passed on this clock, or the thread is unparked
+     *
+     * @param blocker What the thread is waiting for, for thread dumps
+     * @param nanos How long to wait at most, in nanoseconds. Returns straight away if 0 or less
+     */
+    void parkNanos(Object blocker, long nanos);
+
+    /**
+     * Wait until the thread is unparked
+     *
+     * @param blocker What the thread is waiting for, for thread dumps
+     */
+    void park(Object blocker);
+
+    /**
+     * Wake a thread parked on this scheduler, or make its next park return straight away if it isn't parked
+     */
+    void unpark(Thread thread);
+
+    /**
+     * Make a thread that waits on this scheduler. It isn't started
+     *
+     * @param task What the thread runs
+     * @param name What the thread is called
+     */
+    Thread newThread(Runnable task, String name);
+}
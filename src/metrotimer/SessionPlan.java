@@ -0,0 +1,184 @@
+package metrotimer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A practice session: a list of segments played one after another without stopping, each at its own tempo and
+ * accent for a set time, possibly repeated. The usual tempo ladder is a few minutes at each of several tempos.
+ *
+ * Written as segments separated by semicolons, each "bpm[/accent] duration [xrepeats]", where the duration is
+ * seconds or min:sec. For example "92/4 2:00 x2; 100/4 2:00; 108/4 1:30".
+ */
+public final class SessionPlan {
+
+    /**
+     * An empty plan
+     */
+    public static final SessionPlan EMPTY = new SessionPlan(Collections.<Segment>emptyList());
+
+    /**
+     * The segments in the order they're played
+     */
+    private final List<Segment> segments;
+
+    /**
+     * @param segments The segments in the order they're played. Copied
+     */
+    public SessionPlan(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    /**
+     * Read a plan written as described above. A blank string is an empty plan
+     *
+     * @throws IllegalArgumentException If the plan couldn't be understood
+     */
+    public static SessionPlan parse(String text) {
+        List<Segment> segments = new ArrayList<>();
+        for (String part : text.split(";")) {
+            if (!part.trim().isEmpty()) segments.add(Segment.parse(part));
+        }
+        return new SessionPlan(segments);
+    }
+
+    /**
+     * @return The segments in the order they're played. Unmodifiable
+     */
+    public List<Segment> getSegments() {
+        return segments;
+    }
+
+    public boolean isEmpty() {
+        return segments.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof SessionPlan && segments.equals(((SessionPlan) o).segments);
+    }
+
+    @Override
+    public int hashCode() {
+        return segments.hashCode();
+    }
+
+    /**
+     * @return The plan written the way parse reads it
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (Segment s : segments) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(s);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * One part of a session at a single tempo
+     */
+    public static final class Segment {
+
+        /**
+         * The tempo in BPM
+         */
+        private final double bpm;
+
+        /**
+         * Accent every N beats, where this = N. 0 for no accents
+         */
+        private final int accentInterval;
+
+        /**
+         * How long each repeat lasts, in milliseconds. Rounded to whole bars when played
+         */
+        private final long durationMs;
+
+        /**
+         * The number of times the segment is played in a row
+         */
+        private final int repeats;
+
+        public Segment(double bpm, int accentInterval, long durationMs, int repeats) {
+            if (!(bpm >= Controller.MIN_BPM && bpm <= Controller.MAX_BPM)) {
+                throw new IllegalArgumentException(
+                        "bpm must be from " + Controller.MIN_BPM + " to " + Controller.MAX_BPM + ": " + bpm);
+            }
+            if (accentInterval < 0) throw new IllegalArgumentException("accent must not be negative: " + accentInterval);
+            if (durationMs <= 0) throw new IllegalArgumentException("duration must be positive: " + durationMs);
+            if (repeats < 1) throw new IllegalArgumentException("repeats must be at least 1: " + repeats);
+            this.bpm = bpm;
+            this.accentInterval = accentInterval;
+            this.durationMs = durationMs;
+            this.repeats = repeats;
+        }
+
+        /**
+         * Read a segment written as "bpm[/accent] duration [xrepeats]"
+         *
+         * @throws IllegalArgumentException If the segment couldn't be understood
+         */
+        public static Segment parse(String text) {
+            String[] words = text.trim().split("\\s+");
+            if (words.length < 2 || words.length > 3) {
+                throw new IllegalArgumentException("Expected bpm[/accent] duration [xrepeats]: " + text);
+            }
+            try {
+                int slash = words[0].indexOf('/');
+                double bpm = Double.parseDouble((slash < 0) ? words[0] : words[0].substring(0, slash));
+                int accent = (slash < 0) ? 0 : Integer.parseInt(words[0].substring(slash + 1));
+                long duration = ClickTrack.parseDurationMs(words[1]);
+                int repeats = 1;
+                if (words.length == 3) {
+                    if (!words[2].startsWith("x")) throw new IllegalArgumentException("Expected xrepeats: " + words[2]);
+                    repeats = Integer.parseInt(words[2].substring(1));
+                }
+                return new Segment(bpm, accent, duration, repeats);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Bad number in segment " + text, e);
+            }
+        }
+
+        public double getBpm() {
+            return bpm;
+        }
+
+        public int getAccentInterval() {
+            return accentInterval;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        public int getRepeats() {
+            return repeats;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Segment)) return false;
+            Segment other = (Segment) o;
+            return bpm == other.bpm && accentInterval == other.accentInterval && durationMs == other.durationMs
+                    && repeats == other.repeats;
+        }
+
+        @Override
+        public int hashCode() {
+            return ((Double.hashCode(bpm) * 31 + accentInterval) * 31 + Long.hashCode(durationMs)) * 31 + repeats;
+        }
+
+        @Override
+        public String toString() {
+            long sec = durationMs / 1000;
+            String duration = (durationMs % 1000 == 0)
+                    ? String.format("%d:%02d", sec / 60, sec % 60) : Double.toString(durationMs / 1000d);
+            String tempo = (bpm == (long) bpm) ? Long.toString((long) bpm) : Double.toString(bpm);
+            return tempo + ((accentInterval == 0) ? "" : "/" + accentInterval) + " " + duration
+                    + ((repeats == 1) ? "" : " x" + repeats);
+        }
+    }
+}
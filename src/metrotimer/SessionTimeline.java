@@ -0,0 +1,152 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A SessionPlan worked out ahead of time for the audio thread to play: repeats written out, beeps rendered, and
+ * every segment's length fixed as a whole number of bars, so that each tempo change lands exactly on a downbeat and
+ * the audio thread only has to count beats.
+ *
+ * Beats are counted the same way as accents: a segment of n bars ends on the accented beat that finishes its last
+ * bar, and the next segment's tempo takes over from that beat. The first segment counts from one beat before the
+ * first click, like the accents do, so it's one beat shorter than the rest would be.
+ */
+public final class SessionTimeline {
+
+    /**
+     * The settings for each segment, repeats written out
+     */
+    private final MetronomeParams[] params;
+
+    /**
+     * The number of beats in each segment
+     */
+    private final long[] beats;
+
+    /**
+     * The frame each segment ends on, counting from the session's first click
+     */
+    private final long[] endFrames;
+
+    private SessionTimeline(MetronomeParams[] params, long[] beats, long[] endFrames) {
+        this.params = params;
+        this.beats = beats;
+        this.endFrames = endFrames;
+    }
+
+    /**
+     * Work out a plan for playing. Renders beeps, so shouldn't be called on the audio thread
+     *
+     * @param plan The plan to play. Must not be empty
+     * @param hiFreq The frequency of the accented beep
+     * @param loFreq The frequency of the unaccented beep
+     * @param voices Extra voices to play through the whole session
+     * @param format The tone format of the output (see Audio.toneFormat)
+     */
+    public static SessionTimeline compile(SessionPlan plan, float hiFreq, float loFreq, List<ClickVoice> voices,
+                                          AudioFormat format) {
+        return compile(plan, hiFreq, loFreq, Audio.getBeep(hiFreq, format), Audio.getBeep(loFreq, format), voices,
+                format);
+    }
+
+    /**
+     * Work out a plan for playing with clicks that have already been got ready, such as samples
+     *
+     * @param hiBeep The PCM data for the accented click, in the tone format. Must not be changed afterwards
+     * @param loBeep The PCM data for the unaccented click, in the tone format. Must not be changed afterwards
+     */
+    public static SessionTimeline compile(SessionPlan plan, float hiFreq, float loFreq, byte[] hiBeep, byte[] loBeep,
+                                          List<ClickVoice> voices, AudioFormat format) {
+        if (plan.isEmpty()) throw new IllegalArgumentException("Nothing to play in an empty plan");
+        byte[][] voiceBeeps = Audio.getVoiceBeeps(voices, format);
+        double sampleRate = format.getSampleRate();
+
+        List<MetronomeParams> params = new ArrayList<>();
+        List<Long> beats = new ArrayList<>();
+        for (SessionPlan.Segment segment : plan.getSegments()) {
+            int accent = segment.getAccentInterval();
+            MetronomeParams p = new MetronomeParams(segment.getBpm(), hiFreq, loFreq, accent,
+                    (accent == 0) ? null : hiBeep, loBeep, voices, voiceBeeps);
+            // round to the nearest whole bar, but always at least one
+            int beatsPerBar = Math.max(accent, 1);
+            double barMs = 60_000d / segment.getBpm() * beatsPerBar;
+            long bars = Math.max(1, Math.round(segment.getDurationMs() / barMs));
+            for (int i = 0; i < segment.getRepeats(); i++) {
+                params.add(p);
+                beats.add(bars * beatsPerBar);
+            }
+        }
+
+        long[] beatCounts = new long[beats.size()];
+        long[] endFrames = new long[beats.size()];
+        double end = 0;
+        for (int i = 0; i < beatCounts.length; i++) {
+            beatCounts[i] = beats.get(i);
+            double framesPerBeat = sampleRate * 60 / params.get(i).getBpm();
+            // the first click is beat 1, so the first segment is one beat in already
+            end += ((i == 0) ? beatCounts[i] - 1 : beatCounts[i]) * framesPerBeat;
+            endFrames[i] = (long) end;
+        }
+        return new SessionTimeline(params.toArray(new MetronomeParams[0]), beatCounts, endFrames);
+    }
+
+    /**
+     * @return The number of segments, repeats included
+     */
+    public int size() {
+        return params.length;
+    }
+
+    /**
+     * @return The settings to play the given segment with
+     */
+    public MetronomeParams getParams(int segment) {
+        return params[segment];
+    }
+
+    /**
+     * @return The number of beats in the given segment
+     */
+    public long getBeats(int segment) {
+        return beats[segment];
+    }
+
+    /**
+     * @return The frame the given segment ends on (and the next starts on), counting from the session's first click
+     */
+    public long getEndFrame(int segment) {
+        return endFrames[segment];
+    }
+
+    /**
+     * @return The frame the given segment starts on, counting from the session's first click
+     */
+    public long getStartFrame(int segment) {
+        return (segment == 0) ? 0 : endFrames[segment - 1];
+    }
+
+    /**
+     * @return The frame the whole session ends on, counting from its first click
+     */
+    public long getLengthFrames() {
+        return endFrames[endFrames.length - 1];
+    }
+
+    /**
+     * @param frame A frame counting from the session's first click
+     * @return The segment playing at that frame, or size() if the session's over
+     */
+    public int segmentAt(long frame) {
+        int lo = 0;
+        int hi = endFrames.length;
+        // binary search for the first segment that hasn't ended by frame
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (endFrames[mid] <= frame) lo = mid + 1;
+            else hi = mid;
+        }
+        return lo;
+    }
+}
@@ -0,0 +1,61 @@
+package metrotimer;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures how quickly the app starts: how long after the JVM starts the window is ready, and how long after start
+ * is first pressed the first click is heard. Both are kept in TimingMetrics.
+ *
+ * With -Dmetrotimer.probe=true the app presses start by itself as soon as it's ready, prints both times once the
+ * first click has been heard, and exits. That's how StartupBenchmark measures it, and how package-image.sh trains
+ * the class data sharing archive.
+ */
+public final class StartupProbe {
+
+    /**
+     * Is the app being run just to measure its startup?
+     */
+    static final boolean ENABLED = Boolean.getBoolean("metrotimer.probe");
+
+    /**
+     * How long to wait for the first click before giving up
+     */
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * How often to look at whether the first click has been heard
+     */
+    private static final long POLL_MILLIS = 1;
+
+    private StartupProbe() {}
+
+    /**
+     * Called once the app is ready to use. Records the time, and when probing, presses start and exits once the
+     * first click has been heard
+     *
+     * @param pressStart Starts the metronome. Only run when probing
+     * @param executor Where to look at whether the first click has been heard: Audio's control thread, so that
+     *                 probing makes no thread of its own. Only used when probing
+     */
+    static void ready(Runnable pressStart, ScheduledExecutorService executor) {
+        // read the time before touching TimingMetrics, which might still be registering with JMX
+        long uptimeMillis = ManagementFactory.getRuntimeMXBean().getUptime();
+        TimingMetrics.get().recordWindowShown(uptimeMillis);
+        if (!ENABLED) return;
+        pressStart.run();
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        // looked at between other jobs rather than waited for, so the control thread can get the first click going
+        executor.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                TimingMetrics metrics = TimingMetrics.get();
+                if (metrics.getTimeToFirstClickMillis() < 0 && System.currentTimeMillis() < deadline) return;
+                System.out.printf("Startup: ready after %d ms, first click heard %.1f ms after pressing start%n",
+                        metrics.getTimeToWindowMillis(), metrics.getTimeToFirstClickMillis());
+                System.exit(metrics.getTimeToFirstClickMillis() < 0 ? 1 : 0);
+            }
+        }, POLL_MILLIS, POLL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,186 @@
+package metrotimer;
+
+/**
+ * A tempo that changes smoothly over time, for accelerando and ritardando practice: from one tempo to another over a
+ * set time, then holding at the second tempo. A linear ramp adds the same number of BPM every second; an exponential
+ * one multiplies the tempo by the same amount every second, which sounds more even over a wide range.
+ *
+ * Beats are placed by solving for the exact time each one falls on, counting from the ramp's start, rather than by
+ * adding up beat lengths, so the ramp lands on its end tempo at exactly the right time however long it lasts.
+ *
+ * Written as "start-end duration [lin|exp]", where the duration is seconds or min:sec, e.g. "80-140 10:00 exp".
+ * Ramps are linear unless written otherwise.
+ */
+public final class TempoRamp {
+
+    /**
+     * The ways the tempo can get from start to end
+     */
+    public enum Curve {
+        LINEAR("lin"),
+        EXPONENTIAL("exp");
+
+        /**
+         * How the curve is written
+         */
+        private final String name;
+
+        Curve(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    /**
+     * The tempo at the start, in BPM
+     */
+    private final double startBpm;
+
+    /**
+     * The tempo at the end and from then on, in BPM
+     */
+    private final double endBpm;
+
+    /**
+     * How long it takes to get from one to the other, in milliseconds
+     */
+    private final long durationMs;
+
+    private final Curve curve;
+
+    /**
+     * The same length of time in seconds
+     */
+    private final double durationSec;
+
+    /**
+     * For an exponential ramp, the natural log of how many times faster the tempo gets every second. 0 for a linear
+     * ramp or one that doesn't change tempo
+     */
+    private final double growth;
+
+    /**
+     * The number of beats played by the end of the ramp
+     */
+    private final double rampBeats;
+
+    public TempoRamp(double startBpm, double endBpm, long durationMs, Curve curve) {
+        if (!(startBpm >= Controller.MIN_BPM && startBpm <= Controller.MAX_BPM)
+                || !(endBpm >= Controller.MIN_BPM && endBpm <= Controller.MAX_BPM)) {
+            throw new IllegalArgumentException("Tempos must be from " + Controller.MIN_BPM + " to "
+                    + Controller.MAX_BPM + ": " + startBpm + "-" + endBpm);
+        }
+        if (durationMs <= 0) throw new IllegalArgumentException("duration must be positive: " + durationMs);
+        this.startBpm = startBpm;
+        this.endBpm = endBpm;
+        this.durationMs = durationMs;
+        this.curve = curve;
+        this.durationSec = durationMs / 1000d;
+        this.growth = (curve == Curve.EXPONENTIAL) ? Math.log(endBpm / startBpm) / durationSec : 0;
+        this.rampBeats = (growth == 0)
+                ? (startBpm + endBpm) / 2 * durationSec / 60
+                : (endBpm - startBpm) / (60 * growth);
+    }
+
+    /**
+     * Read a ramp written as described above
+     *
+     * @throws IllegalArgumentException If the ramp couldn't be understood
+     */
+    public static TempoRamp parse(String text) {
+        String[] words = text.trim().split("\\s+");
+        if (words.length < 2 || words.length > 3) {
+            throw new IllegalArgumentException("Expected start-end duration [lin|exp]: " + text);
+        }
+        int dash = words[0].indexOf('-', 1);
+        if (dash < 0) throw new IllegalArgumentException("Expected start-end: " + words[0]);
+        Curve curve = Curve.LINEAR;
+        if (words.length == 3) {
+            if (words[2].equals(Curve.EXPONENTIAL.toString())) curve = Curve.EXPONENTIAL;
+            else if (!words[2].equals(Curve.LINEAR.toString())) {
+                throw new IllegalArgumentException("Expected lin or exp: " + words[2]);
+            }
+        }
+        try {
+            return new TempoRamp(Double.parseDouble(words[0].substring(0, dash)),
+                    Double.parseDouble(words[0].substring(dash + 1)), ClickTrack.parseDurationMs(words[1]), curve);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad number in ramp " + text, e);
+        }
+    }
+
+    /**
+     * @param seconds The time since the ramp started
+     * @return The tempo at that time, in BPM
+     */
+    public double bpmAt(double seconds) {
+        if (seconds >= durationSec) return endBpm;
+        if (seconds <= 0) return startBpm;
+        return (curve == Curve.EXPONENTIAL)
+                ? startBpm * Math.exp(growth * seconds)
+                : startBpm + (endBpm - startBpm) * seconds / durationSec;
+    }
+
+    /**
+     * @param beat A number of beats since the ramp started, which needn't be whole
+     * @return The time since the ramp started at which that many beats have been played, in seconds
+     */
+    public double secondsToBeat(double beat) {
+        if (beat >= rampBeats) return durationSec + (beat - rampBeats) * 60 / endBpm;
+        double minutesOfBeats = beat * 60;
+        if (growth != 0) return Math.log1p(growth * minutesOfBeats / startBpm) / growth;
+        // solve startBpm t + (endBpm - startBpm) t^2 / 2d = 60 beat for t, written so it can't cancel out when the
+        // tempo barely changes
+        double a = (endBpm - startBpm) / (2 * durationSec);
+        return 2 * minutesOfBeats / (startBpm + Math.sqrt(startBpm * startBpm + 4 * a * minutesOfBeats));
+    }
+
+    public double getStartBpm() {
+        return startBpm;
+    }
+
+    public double getEndBpm() {
+        return endBpm;
+    }
+
+    public long getDurationMs() {
+        return durationMs;
+    }
+
+    public Curve getCurve() {
+        return curve;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof TempoRamp)) return false;
+        TempoRamp other = (TempoRamp) o;
+        return startBpm == other.startBpm && endBpm == other.endBpm && durationMs == other.durationMs
+                && curve == other.curve;
+    }
+
+    @Override
+    public int hashCode() {
+        return ((Double.hashCode(startBpm) * 31 + Double.hashCode(endBpm)) * 31 + Long.hashCode(durationMs)) * 31
+                + curve.hashCode();
+    }
+
+    /**
+     * @return The ramp written the way parse reads it
+     */
+    @Override
+    public String toString() {
+        long sec = durationMs / 1000;
+        String duration = (durationMs % 1000 == 0)
+                ? String.format("%d:%02d", sec / 60, sec % 60) : Double.toString(durationMs / 1000d);
+        return formatBpm(startBpm) + "-" + formatBpm(endBpm) + " " + duration + " " + curve;
+    }
+
+    private static String formatBpm(double bpm) {
+        return (bpm == (long) bpm) ? Long.toString((long) bpm) : Double.toString(bpm);
+    }
+}
@@ -0,0 +1,23 @@
+package metrotimer;
+
+/**
+ * A monotonic clock, read in nanoseconds. Readings from one source can be subtracted to get elapsed time, but mean
+ * nothing on their own and can't be compared with readings from any other source.
+ */
+public interface TimeSource {
+
+    /**
+     * The system's monotonic clock, System.nanoTime
+     */
+    TimeSource SYSTEM = new TimeSource() {
+        @Override
+        public long nanoTime() {
+            return System.nanoTime();
+        }
+    };
+
+    /**
+     * @return The current time in nanoseconds. Never less than any earlier reading from the same source
+     */
+    long nanoTime();
+}
@@ -0,0 +1,419 @@
+package metrotimer;
+
+/**
+ * Controls for the timer.
+ *
+ * The countdown runs on a single thread against a deadline rather than a fixed-rate tick, so it keeps millisecond
+ * resolution and never drifts. While the metronome is playing the countdown is measured on the audio stream's own
+ * clock, so a 2 minute timer lasts exactly 2 minutes of clicks, and the alarm is booked with the audio output ahead of
+ * time so it starts on the exact frame the timer runs out on (or on the next downbeat, if snapping is turned on).
+ * Otherwise it's measured on the system's monotonic clock, or whatever Scheduler it's given instead: the countdown
+ * thread does all its waiting on that, so on a SimulatedScheduler a 30 minute loop goes by in moments.
+ *
+ * During a practice session the timer shows the time left in the session's current segment instead, read off the
+ * audio stream's position, and stops when the session does.
+ *
+ * Given a PracticeLog, the countdown thread publishes every time the timer starts over from its saved time to a ring of
+ * its own.
+ */
+public class TimerController {
+
+    /**
+     * How far ahead of time the alarm is booked with the audio output when the metronome is playing. Must be a few
+     * blocks at least, so that the output thread hasn't rendered past it by the time it's booked
+     */
+    private static final long SCHEDULE_AHEAD_NANOS = 50_000_000;
+
+    /**
+     * How often to check whether a booked alarm has started yet, once it's due
+     */
+    private static final long POLL_NANOS = 5_000_000;
+
+    /**
+     * How often to check whether the output has started playing a session yet
+     */
+    private static final long SESSION_START_POLL_NANOS = 10_000_000;
+
+    /**
+     * How long shutDown() waits for the countdown thread to finish, in milliseconds
+     */
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 1000;
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000;
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private Model model;
+
+    private Audio audio;
+
+    /**
+     * The clock used whenever the metronome isn't playing, which the countdown thread waits on
+     */
+    private final Scheduler systemClock;
+
+    /**
+     * The thread running the countdown, started the first time the timer is. It sleeps while the timer is stopped
+     */
+    private Thread thread;
+
+    /**
+     * Is the timer currently running?
+     */
+    private volatile boolean timerRunning = false;
+
+    /**
+     * Has shutDown() been called? The countdown thread finishes, and the timer can't be started again
+     */
+    private volatile boolean shutDown = false;
+
+    /**
+     * The number of times the timer has been started, so the countdown thread can tell when it's been stopped and
+     * started again between two of its ticks
+     */
+    private volatile int starts = 0;
+
+    /**
+     * The session the timer is following, or null if it's counting down by itself
+     */
+    private volatile SessionTimeline session;
+
+    /**
+     * Where the countdown thread publishes the timer starting over, or null to keep no log
+     */
+    private volatile EventRing practiceEvents;
+
+    ////// countdown state, only used by the countdown thread
+
+    /**
+     * The time left until the alarm, in nanoseconds. Can be below 0 if the countdown is late
+     */
+    private long remainingNanos;
+
+    /**
+     * The clock the last tick was measured on
+     */
+    private TimeSource clock;
+
+    /**
+     * The reading of that clock at the last tick
+     */
+    private long lastReading;
+
+    /**
+     * The reading of the system clock at the last tick, to bridge the gap when switching clocks
+     */
+    private long lastSystemReading;
+
+    /**
+     * The alarm booked with the audio output that hasn't started yet, or null
+     */
+    private ScheduledAlarm scheduled;
+
+    /**
+     * The clock that alarm was booked on
+     */
+    private FrameClock scheduledClock;
+
+    public TimerController() {
+        this(Scheduler.SYSTEM);
+    }
+
+    /**
+     * @param systemClock The clock to count down on whenever the metronome isn't playing, and to wait on
+     */
+    public TimerController(Scheduler systemClock) {
+        this.systemClock = systemClock;
+    }
+
+    /**
+     * Start counting down from the timer's current value, then stop or restart and set off an alarm when it hits 0
+     */
+    public synchronized void startTimer() {
+        if (model.timeUp() || timerRunning) return;
+        session = null;
+        wake();
+    }
+
+    /**
+     * Follow a session the audio output has just started, showing the time left in each segment until it ends. The
+     * saved time goes back on the timer afterwards
+     *
+     * @param timeline The session, as returned by Audio.startSession
+     */
+    public synchronized void startSessionTimer(SessionTimeline timeline) {
+        session = timeline;
+        wake();
+    }
+
+    /**
+     * Start the countdown thread on a new run, starting the thread if need be
+     */
+    private void wake() {
+        if (shutDown) return;
+        starts++;
+        timerRunning = true;
+        if (thread == null) {
+            thread = systemClock.newThread(new Runnable() {
+                @Override
+                public void run() {
+                    runCountdown();
+                }
+            }, "Timer");
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            systemClock.unpark(thread);
+        }
+    }
+
+    /**
+     * What the countdown thread does: wait for the timer to start, then tick until it stops, sleeping until whatever
+     * needs doing next (the display changing or the alarm being due)
+     */
+    private void runCountdown() {
+        while (true) {
+            while (!timerRunning && !shutDown) systemClock.park(this);
+            if (shutDown) return;
+            int run = starts;
+            boolean followingSession = session != null;
+            resetCountdown();
+            while (timerRunning && starts == run) {
+                long wait = tick();
+                long wakeAt = systemClock.nanoTime() + wait;
+                while (timerRunning && starts == run && wait > 0) {
+                    systemClock.parkNanos(this, wait);
+                    wait = wakeAt - systemClock.nanoTime();
+                }
+                TimingMetrics.get().recordTimerTick(Math.max(systemClock.nanoTime() - wakeAt, 0));
+            }
+            if (scheduled != null) {
+                // stopped while the output had the alarm booked: if it's too late to stop the alarm, or time was
+                // already up, start the next loop's time over
+                if (scheduled.cancel() && remainingNanos > 0) {
+                    model.setTimerMillis((remainingNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+                } else if (model.isTimerLooping()) {
+                    restoreSavedTime();
+                }
+                scheduled = null;
+            }
+            if (followingSession) restoreSavedTime();
+        }
+    }
+
+    /**
+     * Start counting down from whatever's on the timer now
+     */
+    void resetCountdown() {
+        remainingNanos = model.getTimerMillis() * NANOS_PER_MILLI;
+        clock = null;
+        lastSystemReading = systemClock.nanoTime();
+        scheduled = null;
+    }
+
+    /**
+     * Bring the countdown up to date: take off however much time has passed since the last tick, update the display,
+     * and deal with the alarm if it's due
+     *
+     * @return How long to wait before the next tick, in nanoseconds
+     */
+    long tick() {
+        SessionTimeline timeline = session;
+        if (timeline != null) return sessionTick(timeline);
+
+        FrameClock frameClock = audio.getFrameClock();
+        TimeSource current = (frameClock != null) ? frameClock : systemClock;
+        long now = current.nanoTime();
+        long systemNow = (current == systemClock) ? now : systemClock.nanoTime();
+        // readings from different clocks can't be compared, so time spent switching is measured on the system clock
+        remainingNanos -= (current == clock) ? now - lastReading : systemNow - lastSystemReading;
+        clock = current;
+        lastReading = now;
+        lastSystemReading = systemNow;
+
+        if (scheduled != null) return waitForAlarm(frameClock, now);
+
+        if (frameClock != null && remainingNanos <= SCHEDULE_AHEAD_NANOS) {
+            // book the alarm with the output, which starts it on the exact frame
+            long frame = frameClock.nanosToFrames(now + remainingNanos);
+            scheduled = audio.scheduleAlarm(frameClock, frame, model.isTimerSnapToDownbeat());
+            if (scheduled != null) {
+                scheduledClock = frameClock;
+                model.setTimerMillis(0);
+                return Math.max(remainingNanos, POLL_NANOS);
+            }
+            // the metronome just stopped: go by the system clock from here on
+        }
+
+        if (remainingNanos <= 0) {
+            audio.alarm();
+            timeUp(-remainingNanos, -1);
+        } else {
+            model.setTimerMillis((remainingNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+        }
+        if (!timerRunning) return 0;
+
+        // wake up when the display next changes, or when the alarm is due
+        long untilAlarm = remainingNanos - ((frameClock != null) ? SCHEDULE_AHEAD_NANOS : 0);
+        long untilNextSecond = remainingNanos % NANOS_PER_SECOND;
+        if (untilNextSecond == 0) untilNextSecond = NANOS_PER_SECOND;
+        return Math.max(Math.min(untilAlarm, untilNextSecond), 0);
+    }
+
+    /**
+     * Show the time left in the session's current segment, or stop if the session's over
+     *
+     * @return How long to wait before the next tick, in nanoseconds
+     */
+    private long sessionTick(SessionTimeline timeline) {
+        FrameClock frameClock = audio.getFrameClock();
+        if (frameClock == null || audio.getSessionTimeline() != timeline) {
+            // the session finished (the output sounded the alarm itself) or the metronome was stopped
+            stopTimer();
+            return 0;
+        }
+        long frame = audio.getSessionFrame();
+        if (frame < 0) {
+            // the output hasn't got to the session yet
+            model.setTimerMillis(frameClock.framesToNanos(timeline.getEndFrame(0)) / NANOS_PER_MILLI);
+            return SESSION_START_POLL_NANOS;
+        }
+        int segment = timeline.segmentAt(frame);
+        if (segment == timeline.size()) {
+            model.setTimerMillis(0);
+            return SESSION_START_POLL_NANOS;
+        }
+        long left = frameClock.framesToNanos(timeline.getEndFrame(segment) - frame);
+        model.setTimerMillis((left + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+        // wake up when the display next changes, or when the segment ends
+        long untilNextSecond = left % NANOS_PER_SECOND;
+        return (untilNextSecond == 0) ? NANOS_PER_SECOND : untilNextSecond;
+    }
+
+    /**
+     * Check on the alarm booked with the output, and start the next loop from when it started
+     *
+     * @return How long to wait before the next tick, in nanoseconds
+     */
+    private long waitForAlarm(FrameClock frameClock, long now) {
+        if (scheduled.hasStarted()) {
+            // count the next loop from the frame the alarm started on, which is a downbeat if snapping. If the
+            // metronome has stopped since then that frame's on another clock, so count from now
+            boolean sameClock = frameClock == scheduledClock;
+            long late = sameClock ? now - frameClock.framesToNanos(scheduled.getStartFrame()) : 0;
+            long frame = sameClock ? scheduled.getStartFrame() : -1;
+            scheduled = null;
+            timeUp(late, frame);
+        } else if (frameClock != scheduledClock && scheduled.cancel()) {
+            // the output stopped without ever playing it
+            scheduled = null;
+            audio.alarm();
+            timeUp(0, -1);
+        } else {
+            return (frameClock == scheduledClock)
+                    ? Math.max(frameClock.framesToNanos(scheduled.getFrame()) - now, POLL_NANOS) : POLL_NANOS;
+        }
+        return 0;
+    }
+
+    /**
+     * The alarm has gone off: start the timer over, or stop it if it doesn't loop
+     *
+     * @param lateNanos How long ago the alarm started. Taken off the next loop so that loops don't drift
+     * @param frame The frame of the audio stream the alarm started on, or -1 if it wasn't booked with the output
+     */
+    private void timeUp(long lateNanos, long frame) {
+        ModelState state = model.getState();
+        if (state.isTimerLooping() && state.getSavedTimerMillis() > 0) {
+            remainingNanos = state.getSavedTimerMillis() * NANOS_PER_MILLI - lateNanos;
+            model.setTimerMillis((remainingNanos + NANOS_PER_MILLI - 1) / NANOS_PER_MILLI);
+            logRestart(state.getSavedTimerMillis(), frame, lateNanos);
+        } else {
+            remainingNanos = 0;
+            model.setTimerMillis(0);
+            stopTimer();
+        }
+    }
+
+    /**
+     * Put the saved time back on the timer and log it. Countdown thread only
+     */
+    private void restoreSavedTime() {
+        model.restoreSavedTime();
+        FrameClock frameClock = audio.getFrameClock();
+        logRestart(model.getSavedTimerMillis(), (frameClock != null) ? frameClock.nanosToFrames(frameClock.nanoTime())
+                : -1, 0);
+    }
+
+    /**
+     * Publish the timer starting over. Countdown thread only
+     *
+     * @param savedMillis The time it started over from
+     * @param frame The frame of the audio stream it started over on, or -1 if it wasn't on one
+     * @param lateNanos How long ago it started over
+     */
+    private void logRestart(long savedMillis, long frame, long lateNanos) {
+        EventRing events = practiceEvents;
+        if (events == null) return;
+        events.offer(PracticeLog.TIMER_RESTART, systemClock.currentTimeMillis() - lateNanos / NANOS_PER_MILLI, frame,
+                savedMillis / 1000f);
+    }
+
+    /**
+     * Stop the countdown. Whatever time is left stays on the timer
+     */
+    public void stopTimer() {
+        synchronized (this) {
+            this.timerRunning = false;
+            if (thread != null) systemClock.unpark(thread);
+        }
+        this.model.notifySubscribers(Model.Field.RUNNING);
+    }
+
+    /**
+     * Stop the timer for good, and wait a bounded time for the countdown thread to finish, so that it can't book
+     * another alarm with the audio output once this has returned
+     */
+    public void shutDown() {
+        Thread countdown;
+        synchronized (this) {
+            shutDown = true;
+            timerRunning = false;
+            countdown = thread;
+            if (countdown != null) systemClock.unpark(countdown);
+        }
+        if (countdown == null) return;
+        try {
+            countdown.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (countdown.isAlive()) System.err.println("Timer thread didn't stop");
+    }
+
+    public boolean timerRunning() {
+        return timerRunning;
+    }
+
+    /**
+     * @return Is the timer following a session rather than counting down by itself?
+     */
+    public boolean followingSession() {
+        return timerRunning && session != null;
+    }
+
+    public void setModel(Model model) {
+        this.model = model;
+    }
+
+    public void setAudio(Audio audio) {
+        this.audio = audio;
+    }
+
+    /**
+     * @param log Where to record the timer starting over from now on, or null to record nothing
+     */
+    public void setPracticeLog(PracticeLog log) {
+        this.practiceEvents = (log != null) ? log.newRing() : null;
+    }
+}
@@ -0,0 +1,489 @@
+package metrotimer;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Timing measurements from the audio and timer threads: how far beats land from where they should, how often the
+ * output runs dry or nearly does, how full the lookahead stays, how long writes block, how late timer ticks run and
+ * how far MIDI clock beats go out from their clicks. Available through JMX as
+ * metrotimer:type=TimingMetrics and as JFR events in the MetroTimer category.
+ *
+ * Each kind of measurement only ever has one thread recording it (the audio thread for beats and writes, the
+ * LookaheadSink's writer for the lookahead and near misses, the timer thread for ticks, the MIDI clock's sending
+ * thread for skew), so the counters are plain volatile fields rather than
+ * atomics. Recording allocates nothing unless the matching JFR event is enabled.
+ */
+public class TimingMetrics implements TimingMetricsMXBean {
+
+    /**
+     * The name this is registered under with JMX
+     */
+    public static final String OBJECT_NAME = "metrotimer:type=TimingMetrics";
+
+    /**
+     * The upper bound of each write blocking histogram bucket in microseconds, doubling from 16 us up to about 1 s
+     */
+    private static final long[] WRITE_BUCKET_BOUNDS_MICROS = new long[17];
+
+    static {
+        for (int i = 0; i < WRITE_BUCKET_BOUNDS_MICROS.length; i++) WRITE_BUCKET_BOUNDS_MICROS[i] = 16L << i;
+    }
+
+    private static final TimingMetrics INSTANCE = new TimingMetrics();
+
+    static {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(INSTANCE, new ObjectName(OBJECT_NAME));
+        } catch (JMException e) {
+            System.err.println("Couldn't register timing metrics with JMX: " + e.getMessage());
+        }
+    }
+
+    private static final EventType BEAT_ONSET_EVENT = EventType.getEventType(BeatOnsetEvent.class);
+    private static final EventType UNDERRUN_EVENT = EventType.getEventType(UnderrunEvent.class);
+    private static final EventType NEAR_MISS_EVENT = EventType.getEventType(NearMissEvent.class);
+    private static final EventType TIMER_TICK_EVENT = EventType.getEventType(TimerTickEvent.class);
+    private static final EventType MIDI_CLOCK_SKEW_EVENT = EventType.getEventType(MidiClockSkewEvent.class);
+
+    private volatile long beatsMeasured;
+    private volatile long lastBeatJitterNanos;
+    private volatile long maxBeatJitterNanos;
+    private volatile long totalBeatJitterNanos;
+
+    private volatile long underruns;
+
+    private volatile double lookaheadMillis;
+    private volatile long lookaheadFillNanos;
+    private volatile long minLookaheadFillNanos = Long.MAX_VALUE;
+    private volatile long nearMisses;
+
+    private volatile long writes;
+    private volatile long maxWriteBlockNanos;
+    private volatile long totalWriteBlockNanos;
+
+    /**
+     * One bucket per bound in WRITE_BUCKET_BOUNDS_MICROS, plus one for everything longer
+     */
+    private final AtomicLongArray writeHistogram = new AtomicLongArray(WRITE_BUCKET_BOUNDS_MICROS.length + 1);
+
+    private volatile int bufferSizeBytes;
+    private volatile double outputLatencyMillis;
+
+    private volatile long timerTicks;
+    private volatile long maxTimerLatenessNanos;
+    private volatile long totalTimerLatenessNanos;
+
+    private volatile long midiClockBeats;
+    private volatile long lastMidiClockSkewNanos;
+    private volatile long maxMidiClockSkewNanos;
+    private volatile long totalMidiClockSkewNanos;
+    private volatile long midiClockDropped;
+
+    private volatile long timeToWindowMillis = -1;
+    private volatile long firstStartNanos = -1;
+    private volatile long timeToFirstClickNanos = -1;
+
+    private TimingMetrics() {}
+
+    /**
+     * @return The metrics shared by every thread in the app
+     */
+    public static TimingMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record where a beat is going to be heard compared to where it should be. Audio thread only.
+     *
+     * @param beat The number of the beat since the metronome started
+     * @param frame The frame the beat starts on, counting from when the metronome started
+     * @param jitterNanos How much later (or earlier, if negative) than scheduled the beat will be heard
+     */
+    void recordBeatOnset(long beat, long frame, long jitterNanos) {
+        long abs = Math.abs(jitterNanos);
+        beatsMeasured = beatsMeasured + 1;
+        lastBeatJitterNanos = jitterNanos;
+        totalBeatJitterNanos = totalBeatJitterNanos + abs;
+        if (abs > maxBeatJitterNanos) maxBeatJitterNanos = abs;
+        if (BEAT_ONSET_EVENT.isEnabled()) {
+            BeatOnsetEvent event = new BeatOnsetEvent();
+            event.beat = beat;
+            event.frame = frame;
+            event.jitter = jitterNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Record that the output buffer was found empty. Audio thread only.
+     *
+     * @param framePosition The output's frame position when it was found empty
+     */
+    void recordUnderrun(long framePosition) {
+        underruns = underruns + 1;
+        if (UNDERRUN_EVENT.isEnabled()) {
+            UnderrunEvent event = new UnderrunEvent();
+            event.framePosition = framePosition;
+            event.commit();
+        }
+    }
+
+    /**
+     * Record the size of the lookahead the output was opened with. Audio thread only.
+     *
+     * @param millis How long it takes to play a full lookahead, in milliseconds
+     */
+    void recordLookahead(double millis) {
+        lookaheadMillis = millis;
+    }
+
+    /**
+     * Record how much was left in the lookahead when the writer took a block out of it. Writer thread only.
+     *
+     * @param fillNanos How long it takes to play what was left, in nanoseconds
+     */
+    void recordLookaheadFill(long fillNanos) {
+        lookaheadFillNanos = fillNanos;
+        if (fillNanos < minLookaheadFillNanos) minLookaheadFillNanos = fillNanos;
+    }
+
+    /**
+     * Record that the output buffer was found less than a quarter full when the next block was written. Writer thread
+     * only.
+     *
+     * @param framePosition The output's frame position when it was found low
+     * @param queuedNanos How long it would have taken to play what was left in the output buffer, in nanoseconds
+     */
+    void recordNearMiss(long framePosition, long queuedNanos) {
+        nearMisses = nearMisses + 1;
+        if (NEAR_MISS_EVENT.isEnabled()) {
+            NearMissEvent event = new NearMissEvent();
+            event.framePosition = framePosition;
+            event.queued = queuedNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Record how long a write to the output blocked for. Audio thread only.
+     */
+    void recordWrite(long blockedNanos) {
+        writes = writes + 1;
+        totalWriteBlockNanos = totalWriteBlockNanos + blockedNanos;
+        if (blockedNanos > maxWriteBlockNanos) maxWriteBlockNanos = blockedNanos;
+        long micros = blockedNanos / 1000;
+        int bucket = 0;
+        while (bucket < WRITE_BUCKET_BOUNDS_MICROS.length && micros >= WRITE_BUCKET_BOUNDS_MICROS[bucket]) bucket++;
+        writeHistogram.lazySet(bucket, writeHistogram.get(bucket) + 1);
+    }
+
+    /**
+     * Record the size the output buffer was opened with. Audio thread only.
+     *
+     * @param bytes The size of the buffer in bytes
+     * @param latencyMillis How long it takes to play a full buffer, in milliseconds
+     */
+    void recordBufferSize(int bytes, double latencyMillis) {
+        bufferSizeBytes = bytes;
+        outputLatencyMillis = latencyMillis;
+    }
+
+    /**
+     * Record how late a timer tick ran. Timer thread only.
+     */
+    void recordTimerTick(long latenessNanos) {
+        timerTicks = timerTicks + 1;
+        totalTimerLatenessNanos = totalTimerLatenessNanos + latenessNanos;
+        if (latenessNanos > maxTimerLatenessNanos) maxTimerLatenessNanos = latenessNanos;
+        if (TIMER_TICK_EVENT.isEnabled()) {
+            TimerTickEvent event = new TimerTickEvent();
+            event.lateness = latenessNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Record how far from its click being heard the MIDI clock tick on a beat was sent. MIDI clock thread only.
+     *
+     * @param skewNanos How much later (or earlier, if negative) than the click the tick was sent
+     */
+    void recordMidiClockSkew(long skewNanos) {
+        long abs = Math.abs(skewNanos);
+        midiClockBeats = midiClockBeats + 1;
+        lastMidiClockSkewNanos = skewNanos;
+        totalMidiClockSkewNanos = totalMidiClockSkewNanos + abs;
+        if (abs > maxMidiClockSkewNanos) maxMidiClockSkewNanos = abs;
+        if (MIDI_CLOCK_SKEW_EVENT.isEnabled()) {
+            MidiClockSkewEvent event = new MidiClockSkewEvent();
+            event.skew = skewNanos;
+            event.commit();
+        }
+    }
+
+    /**
+     * Record MIDI clock messages there was no room to queue, which are never sent. Output thread only.
+     *
+     * @param count The number of messages dropped
+     */
+    void recordMidiClockDropped(int count) {
+        midiClockDropped = midiClockDropped + count;
+    }
+
+    /**
+     * Record the window being shown, the first time it is. UI thread only.
+     *
+     * @param uptimeMillis How long the JVM has been running
+     */
+    void recordWindowShown(long uptimeMillis) {
+        if (timeToWindowMillis < 0) timeToWindowMillis = uptimeMillis;
+    }
+
+    /**
+     * Record the metronome being started, the first time it is
+     *
+     * @param nanos The System.nanoTime at which it was started
+     */
+    synchronized void recordStartRequested(long nanos) {
+        if (firstStartNanos < 0) firstStartNanos = nanos;
+    }
+
+    /**
+     * Record when the first click after the metronome started will be heard, the first time it starts. Audio thread
+     * only.
+     *
+     * @param heardNanos The System.nanoTime at which it will be heard
+     */
+    void recordClickHeard(long heardNanos) {
+        if (firstStartNanos >= 0 && timeToFirstClickNanos < 0) timeToFirstClickNanos = heardNanos - firstStartNanos;
+    }
+
+    @Override
+    public long getBeatsMeasured() {
+        return beatsMeasured;
+    }
+
+    @Override
+    public long getLastBeatJitterMicros() {
+        return lastBeatJitterNanos / 1000;
+    }
+
+    @Override
+    public long getMaxBeatJitterMicros() {
+        return maxBeatJitterNanos / 1000;
+    }
+
+    @Override
+    public double getMeanBeatJitterMicros() {
+        long n = beatsMeasured;
+        return (n == 0) ? 0 : totalBeatJitterNanos / 1000d / n;
+    }
+
+    @Override
+    public long getUnderruns() {
+        return underruns;
+    }
+
+    @Override
+    public double getLookaheadMillis() {
+        return lookaheadMillis;
+    }
+
+    @Override
+    public double getLookaheadFillMillis() {
+        return lookaheadFillNanos / 1e6;
+    }
+
+    @Override
+    public double getMinLookaheadFillMillis() {
+        long nanos = minLookaheadFillNanos;
+        return (nanos == Long.MAX_VALUE) ? -1 : nanos / 1e6;
+    }
+
+    @Override
+    public long getNearMisses() {
+        return nearMisses;
+    }
+
+    @Override
+    public long getWrites() {
+        return writes;
+    }
+
+    @Override
+    public long getMaxWriteBlockMicros() {
+        return maxWriteBlockNanos / 1000;
+    }
+
+    @Override
+    public double getMeanWriteBlockMicros() {
+        long n = writes;
+        return (n == 0) ? 0 : totalWriteBlockNanos / 1000d / n;
+    }
+
+    @Override
+    public long[] getWriteBlockHistogram() {
+        long[] counts = new long[writeHistogram.length()];
+        for (int i = 0; i < counts.length; i++) counts[i] = writeHistogram.get(i);
+        return counts;
+    }
+
+    @Override
+    public long[] getWriteBlockHistogramBoundsMicros() {
+        return WRITE_BUCKET_BOUNDS_MICROS.clone();
+    }
+
+    @Override
+    public int getBufferSizeBytes() {
+        return bufferSizeBytes;
+    }
+
+    @Override
+    public double getOutputLatencyMillis() {
+        return outputLatencyMillis;
+    }
+
+    @Override
+    public long getTimerTicks() {
+        return timerTicks;
+    }
+
+    @Override
+    public long getMaxTimerLatenessMicros() {
+        return maxTimerLatenessNanos / 1000;
+    }
+
+    @Override
+    public double getMeanTimerLatenessMicros() {
+        long n = timerTicks;
+        return (n == 0) ? 0 : totalTimerLatenessNanos / 1000d / n;
+    }
+
+    @Override
+    public long getMidiClockBeats() {
+        return midiClockBeats;
+    }
+
+    @Override
+    public long getLastMidiClockSkewMicros() {
+        return lastMidiClockSkewNanos / 1000;
+    }
+
+    @Override
+    public long getMaxMidiClockSkewMicros() {
+        return maxMidiClockSkewNanos / 1000;
+    }
+
+    @Override
+    public double getMeanMidiClockSkewMicros() {
+        long n = midiClockBeats;
+        return (n == 0) ? 0 : totalMidiClockSkewNanos / 1000d / n;
+    }
+
+    @Override
+    public long getMidiClockDropped() {
+        return midiClockDropped;
+    }
+
+    @Override
+    public long getTimeToWindowMillis() {
+        return timeToWindowMillis;
+    }
+
+    @Override
+    public double getTimeToFirstClickMillis() {
+        long nanos = timeToFirstClickNanos;
+        return (nanos < 0) ? -1 : nanos / 1e6;
+    }
+
+    @Override
+    public void reset() {
+        beatsMeasured = 0;
+        lastBeatJitterNanos = 0;
+        maxBeatJitterNanos = 0;
+        totalBeatJitterNanos = 0;
+        underruns = 0;
+        minLookaheadFillNanos = Long.MAX_VALUE;
+        nearMisses = 0;
+        writes = 0;
+        maxWriteBlockNanos = 0;
+        totalWriteBlockNanos = 0;
+        for (int i = 0; i < writeHistogram.length(); i++) writeHistogram.set(i, 0);
+        timerTicks = 0;
+        maxTimerLatenessNanos = 0;
+        totalTimerLatenessNanos = 0;
+        midiClockBeats = 0;
+        lastMidiClockSkewNanos = 0;
+        maxMidiClockSkewNanos = 0;
+        totalMidiClockSkewNanos = 0;
+        midiClockDropped = 0;
+    }
+
+    @Name("metrotimer.BeatOnset")
+    @Label("Beat Onset")
+    @Category("MetroTimer")
+    @Description("Where a beat is going to be heard compared to where the beat grid says it should be")
+    static class BeatOnsetEvent extends Event {
+        @Label("Beat")
+        long beat;
+
+        @Label("Frame")
+        long frame;
+
+        @Label("Jitter")
+        @Timespan(Timespan.NANOSECONDS)
+        long jitter;
+    }
+
+    @Name("metrotimer.Underrun")
+    @Label("Output Underrun")
+    @Category("MetroTimer")
+    @Description("The output buffer ran dry before the next block was written")
+    static class UnderrunEvent extends Event {
+        @Label("Frame Position")
+        long framePosition;
+    }
+
+    @Name("metrotimer.NearMiss")
+    @Label("Output Near Miss")
+    @Category("MetroTimer")
+    @Description("The output buffer was less than a quarter full when the next block was written to it")
+    static class NearMissEvent extends Event {
+        @Label("Frame Position")
+        long framePosition;
+
+        @Label("Queued")
+        @Timespan(Timespan.NANOSECONDS)
+        long queued;
+    }
+
+    @Name("metrotimer.TimerTick")
+    @Label("Timer Tick")
+    @Category("MetroTimer")
+    @Description("A tick of the countdown timer, and how late it ran")
+    static class TimerTickEvent extends Event {
+        @Label("Lateness")
+        @Timespan(Timespan.NANOSECONDS)
+        long lateness;
+    }
+
+    @Name("metrotimer.MidiClockSkew")
+    @Label("MIDI Clock Skew")
+    @Category("MetroTimer")
+    @Description("How far from its click being heard the MIDI clock tick on a beat was sent")
+    static class MidiClockSkewEvent extends Event {
+        @Label("Skew")
+        @Timespan(Timespan.NANOSECONDS)
+        long skew;
+    }
+}
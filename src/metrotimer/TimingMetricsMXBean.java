@@ -0,0 +1,147 @@
+package metrotimer;
+
+/**
+ * Timing measurements from the audio and timer threads, as seen through JMX
+ */
+public interface TimingMetricsMXBean {
+
+    /**
+     * @return The number of beats whose onset time has been measured
+     */
+    long getBeatsMeasured();
+
+    /**
+     * @return How far the last beat's predicted onset was from where the beat grid says it should be, in microseconds
+     */
+    long getLastBeatJitterMicros();
+
+    /**
+     * @return The largest beat onset error seen, in microseconds
+     */
+    long getMaxBeatJitterMicros();
+
+    /**
+     * @return The average size of the beat onset error, in microseconds
+     */
+    double getMeanBeatJitterMicros();
+
+    /**
+     * @return The number of times the output buffer ran dry before the next block was written
+     */
+    long getUnderruns();
+
+    /**
+     * @return How long it takes to play a full lookahead, in milliseconds, or 0 if the output has none
+     */
+    double getLookaheadMillis();
+
+    /**
+     * @return How much was left in the lookahead when the last block was taken out of it, in milliseconds of audio
+     */
+    double getLookaheadFillMillis();
+
+    /**
+     * @return The least that's been left in the lookahead when a block was taken out of it, in milliseconds of audio,
+     *         or -1 if none has been yet
+     */
+    double getMinLookaheadFillMillis();
+
+    /**
+     * @return The number of times the output buffer was less than a quarter full when the next block was written
+     */
+    long getNearMisses();
+
+    /**
+     * @return The number of blocks written to the output
+     */
+    long getWrites();
+
+    /**
+     * @return The longest a single write blocked for, in microseconds
+     */
+    long getMaxWriteBlockMicros();
+
+    /**
+     * @return The average time a write blocked for, in microseconds
+     */
+    double getMeanWriteBlockMicros();
+
+    /**
+     * @return The number of writes that blocked for each range of times in getWriteBlockHistogramBoundsMicros
+     */
+    long[] getWriteBlockHistogram();
+
+    /**
+     * @return The upper bound (exclusive) of each bucket in the write blocking histogram, in microseconds. The last
+     *         bucket has no upper bound
+     */
+    long[] getWriteBlockHistogramBoundsMicros();
+
+    /**
+     * @return The size of the output buffer in bytes
+     */
+    int getBufferSizeBytes();
+
+    /**
+     * @return How long it takes for the output to play a full buffer, in milliseconds
+     */
+    double getOutputLatencyMillis();
+
+    /**
+     * @return The number of timer ticks measured
+     */
+    long getTimerTicks();
+
+    /**
+     * @return The latest any timer tick ran after it was due, in microseconds
+     */
+    long getMaxTimerLatenessMicros();
+
+    /**
+     * @return The average time timer ticks ran after they were due, in microseconds
+     */
+    double getMeanTimerLatenessMicros();
+
+    /**
+     * @return The number of beats sent as MIDI clock whose skew has been measured
+     */
+    long getMidiClockBeats();
+
+    /**
+     * @return How far from its click being heard the last beat's MIDI clock tick was sent, in microseconds. Positive
+     *         if the tick was late
+     */
+    long getLastMidiClockSkewMicros();
+
+    /**
+     * @return The largest MIDI clock skew seen, in microseconds
+     */
+    long getMaxMidiClockSkewMicros();
+
+    /**
+     * @return The average size of the MIDI clock skew, in microseconds
+     */
+    double getMeanMidiClockSkewMicros();
+
+    /**
+     * @return The number of MIDI clock messages dropped, never sent, for want of room to queue them
+     */
+    long getMidiClockDropped();
+
+    /**
+     * @return How long after the JVM started the window was shown and ready to use, in milliseconds, or -1 if it
+     *         hasn't been yet
+     */
+    long getTimeToWindowMillis();
+
+    /**
+     * @return How long after start was first pressed the first click was heard, in milliseconds, or -1 if it hasn't
+     *         been yet
+     */
+    double getTimeToFirstClickMillis();
+
+    /**
+     * Set every measurement back to zero, apart from the startup times, which only happen once
+     */
+    void reset();
+}
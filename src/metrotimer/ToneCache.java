@@ -0,0 +1,159 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded cache of rendered tones, so that the same beep is only ever synthesized once. When the cache is full the
+ * least recently used tone gets thrown out.
+ *
+ * The buffers handed out are shared between everyone who asks for the same tone, so they must never be changed.
+ */
+public class ToneCache {
+
+    /**
+     * The peak level of every cached tone, from 0 to 1. This is how loud the beeps have always been, and samples
+     * are brought to the same level
+     */
+    static final double AMPLITUDE = 1 / (2 * Math.PI);
+
+    /**
+     * The maximum number of tones to keep
+     */
+    private final int capacity;
+
+    /**
+     * All cached tones, in least recently used first order
+     */
+    private final LinkedHashMap<Key, byte[]> tones;
+
+    /**
+     * The number of times a tone was found in the cache
+     */
+    private final AtomicLong hits = new AtomicLong();
+
+    /**
+     * The number of times a tone had to be synthesized
+     */
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param capacity The maximum number of tones to keep
+     */
+    public ToneCache(final int capacity) {
+        this.capacity = capacity;
+        this.tones = new LinkedHashMap<Key, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, byte[]> eldest) {
+                return size() > ToneCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Get a sine tone at full volume, synthesizing it only if it isn't already cached.
+     *
+     * @param freq The pitch of the tone in Hz
+     * @param format The format of the PCM data. Must be 16-bit signed PCM
+     * @param durationMs How long the tone lasts
+     * @param envelope The shape of the tone's volume over its length
+     * @return The tone's PCM data. Shared, so it must not be changed
+     */
+    public byte[] get(float freq, AudioFormat format, int durationMs, Wavetable.Envelope envelope) {
+        Key key = new Key(freq, format, durationMs, envelope);
+        synchronized (tones) {
+            byte[] tone = tones.get(key);
+            if (tone != null) {
+                hits.incrementAndGet();
+                return tone;
+            }
+        }
+        // render outside the lock; if two threads race for the same tone the second one just replaces the first
+        misses.incrementAndGet();
+        byte[] tone = Wavetable.renderTone(freq, format, durationMs, envelope, AMPLITUDE);
+        synchronized (tones) {
+            tones.put(key, tone);
+        }
+        return tone;
+    }
+
+    /**
+     * @return The number of times a tone was found in the cache
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return The number of times a tone had to be synthesized
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The number of tones currently cached
+     */
+    public int size() {
+        synchronized (tones) {
+            return tones.size();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ToneCache[size=%d/%d, hits=%d, misses=%d]", size(), capacity, getHits(), getMisses());
+    }
+
+    /**
+     * Everything that makes one rendered tone different from another
+     */
+    private static final class Key {
+
+        private final float freq;
+        private final float sampleRate;
+        private final int sampleSizeInBits;
+        private final int channels;
+        private final boolean bigEndian;
+        private final int durationMs;
+        private final Wavetable.Envelope envelope;
+
+        Key(float freq, AudioFormat format, int durationMs, Wavetable.Envelope envelope) {
+            this.freq = freq;
+            this.sampleRate = format.getSampleRate();
+            this.sampleSizeInBits = format.getSampleSizeInBits();
+            this.channels = format.getChannels();
+            this.bigEndian = format.isBigEndian();
+            this.durationMs = durationMs;
+            this.envelope = envelope;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key k = (Key) o;
+            return freq == k.freq
+                    && sampleRate == k.sampleRate
+                    && sampleSizeInBits == k.sampleSizeInBits
+                    && channels == k.channels
+                    && bigEndian == k.bigEndian
+                    && durationMs == k.durationMs
+                    && envelope == k.envelope;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = Float.floatToIntBits(freq);
+            h = 31 * h + Float.floatToIntBits(sampleRate);
+            h = 31 * h + sampleSizeInBits;
+            h = 31 * h + channels;
+            h = 31 * h + (bigEndian ? 1 : 0);
+            h = 31 * h + durationMs;
+            h = 31 * h + envelope.hashCode();
+            return h;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Mixes any number of overlapping sounds into one stream of PCM data, using a fixed pool of voices so that nothing
+ * is allocated while playing. Every sound is scheduled to start on an exact frame of the stream, so sounds
+ * triggered from different places (clicks, alarms) stay sample-aligned with each other.
+ *
+ * Sounds are 16-bit mono, in the tone format that goes with the output format (see Audio.toneFormat), and are mixed
+ * in mono. The mix is written straight out in the output format, at whatever sample size and channel count it has, so
+ * every channel gets the same sample and sounds take no more memory or mixing for being played in stereo.
+ *
+ * Only the thread doing the rendering may use a mixer.
+ */
+public class VoiceMixer {
+
+    /**
+     * Gains are fixed-point numbers with this many bits after the point, so mixing needs no floating point
+     */
+    private static final int GAIN_BITS = 15;
+
+    /**
+     * A gain of 1
+     */
+    private static final int UNITY_GAIN = 1 << GAIN_BITS;
+
+    /**
+     * The number of samples in one frame of the output
+     */
+    private final int channels;
+
+    /**
+     * The number of bytes in one sample of the output
+     */
+    private final int bytesPerSample;
+
+    /**
+     * The byte order of the tones and the output
+     */
+    private final boolean bigEndian;
+
+    /**
+     * The pool of voices, some of which may be idle
+     */
+    private final Voice[] voices;
+
+    /**
+     * Where the voices get added together before being scaled and converted to bytes, one sample per frame
+     */
+    private final int[] mix;
+
+    /**
+     * The frame number of the first frame of the next block to be rendered
+     */
+    private long framesRendered = 0;
+
+    /**
+     * @param format The format of the output. Must be 16, 24 or 32-bit signed PCM
+     * @param voiceCount The most sounds that can play at once. Starting another steals the one closest to finishing
+     * @param maxBlockFrames The most frames that will be rendered at once
+     */
+    public VoiceMixer(AudioFormat format, int voiceCount, int maxBlockFrames) {
+        if (!NativeFormat.isPlayable(format)) {
+            throw new IllegalArgumentException("Only 16, 24 or 32-bit signed PCM is supported: " + format);
+        }
+        this.channels = format.getChannels();
+        this.bytesPerSample = format.getSampleSizeInBits() / 8;
+        this.bigEndian = format.isBigEndian();
+        this.voices = new Voice[voiceCount];
+        for (int i = 0; i < voiceCount; i++) voices[i] = new Voice();
+        this.mix = new int[maxBlockFrames];
+    }
+
+    /**
+     * Schedule a sound to start playing on a given frame
+     *
+     * @param tone The PCM data for the sound, in the tone format. Not copied, so it must not be changed
+     * @param startFrame The frame of the stream the sound starts on. If it's already been rendered, the sound starts
+     *                   at the start of the next block instead
+     */
+    public void trigger(byte[] tone, long startFrame) {
+        trigger(tone, startFrame, 1);
+    }
+
+    /**
+     * Schedule a sound to start playing on a given frame, quieter than it was rendered
+     *
+     * @param tone The PCM data for the sound, in the tone format. Not copied, so it must not be changed
+     * @param startFrame The frame of the stream the sound starts on. If it's already been rendered, the sound starts
+     *                   at the start of the next block instead
+     * @param gain What to multiply the sound by, from 0 to 1 inclusive
+     */
+    public void trigger(byte[] tone, long startFrame, float gain) {
+        Voice voice = voices[0];
+        for (Voice v : voices) {
+            if (v.tone == null) {
+                voice = v;
+                break;
+            }
+            // no free voices: steal the one with the least left to play
+            if (v.samplesLeft() < voice.samplesLeft()) voice = v;
+        }
+        voice.tone = tone;
+        voice.startFrame = Math.max(startFrame, framesRendered);
+        voice.pos = 0;
+        voice.gain = Math.round(gain * UNITY_GAIN);
+    }
+
+    /**
+     * Mix the next block of every playing voice into PCM data, with a volume that moves linearly from fromVolume at
+     * the start of the block to toVolume at the end
+     *
+     * @param out The buffer to write to. Must have room for numFrames frames
+     * @param numFrames The number of frames to render. No more than maxBlockFrames
+     * @param fromVolume The volume multiplier from 0 to 1 inclusive at the start of the block
+     * @param toVolume The volume multiplier from 0 to 1 inclusive at the end of the block
+     */
+    public void render(byte[] out, int numFrames, double fromVolume, double toVolume) {
+        long blockEnd = framesRendered + numFrames;
+        for (int i = 0; i < numFrames; i++) mix[i] = 0;
+
+        for (Voice v : voices) {
+            if (v.tone == null || v.startFrame >= blockEnd) continue;
+            int offset = (int) Math.max(0, v.startFrame - framesRendered);
+            int toMix = Math.min(numFrames - offset, v.tone.length / 2 - v.pos);
+            byte[] tone = v.tone;
+            int src = v.pos * 2;
+            int gain = v.gain;
+            for (int i = offset; i < offset + toMix; i++, src += 2) {
+                int sample = bigEndian
+                        ? (short) (((tone[src] & 0xFF) << 8) | (tone[src + 1] & 0xFF))
+                        : (short) (((tone[src + 1] & 0xFF) << 8) | (tone[src] & 0xFF));
+                mix[i] += (sample * gain) >> GAIN_BITS;
+            }
+            v.pos += toMix;
+            if (v.pos * 2 >= tone.length) v.tone = null;
+        }
+
+        double step = (numFrames == 0) ? 0 : (toVolume - fromVolume) / numFrames;
+        if (bytesPerSample == 2) write16(out, numFrames, fromVolume, step);
+        else write(out, numFrames, fromVolume, step);
+        framesRendered = blockEnd;
+    }
+
+    /**
+     * Scale the mix and write it out as 16-bit, which is the commonest case and worth a loop of its own
+     */
+    private void write16(byte[] out, int numFrames, double volume, double step) {
+        for (int i = 0, j = 0; i < numFrames; i++) {
+            int scaled = (int) (mix[i] * volume);
+            short s = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, scaled));
+            byte first = (byte) (bigEndian ? s >> 8 : s & 0xFF);
+            byte second = (byte) (bigEndian ? s & 0xFF : s >> 8);
+            for (int c = 0; c < channels; c++, j += 2) {
+                out[j] = first;
+                out[j + 1] = second;
+            }
+            volume += step;
+        }
+    }
+
+    /**
+     * Scale the mix and write it out at any sample size, to every channel. Samples bigger than 16 bits get the
+     * volume applied at their full size, so quiet volumes lose nothing
+     */
+    private void write(byte[] out, int numFrames, double volume, double step) {
+        int shift = (bytesPerSample - 2) * 8;
+        long max = (1L << (bytesPerSample * 8 - 1)) - 1;
+        long min = -max - 1;
+        double scale = (double) (1L << shift);
+        int j = 0;
+        for (int i = 0; i < numFrames; i++) {
+            long s = Math.max(min, Math.min(max, (long) (mix[i] * volume * scale)));
+            int first = j;
+            if (bigEndian) {
+                for (int b = bytesPerSample - 1; b >= 0; b--) out[j++] = (byte) (s >> (b * 8));
+            } else {
+                for (int b = 0; b < bytesPerSample; b++) out[j++] = (byte) (s >> (b * 8));
+            }
+            // every other channel gets a copy of the first
+            for (int c = 1; c < channels; c++) {
+                for (int b = 0; b < bytesPerSample; b++) out[j++] = out[first + b];
+            }
+            volume += step;
+        }
+    }
+
+    /**
+     * @return Is nothing playing or waiting to play?
+     */
+    public boolean isIdle() {
+        for (Voice v : voices) {
+            if (v.tone != null) return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return The number of frames rendered so far
+     */
+    public long getFramesRendered() {
+        return framesRendered;
+    }
+
+    /**
+     * One sound playing (or waiting to play) in the mix
+     */
+    private static final class Voice {
+
+        /**
+         * The PCM data being played, or null if the voice is free
+         */
+        byte[] tone;
+
+        /**
+         * The frame of the stream the sound starts on
+         */
+        long startFrame;
+
+        /**
+         * The index of the next sample of the tone to be played
+         */
+        int pos;
+
+        /**
+         * What to multiply the tone by, where UNITY_GAIN is 1
+         */
+        int gain;
+
+        /**
+         * @return The number of samples left to play, or 0 if the voice is free
+         */
+        int samplesLeft() {
+            return (tone == null) ? 0 : tone.length / 2 - pos;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+/**
+ * Streams everything written to it into a WAV file, as fast as it's written. The header is filled in with the real
+ * length of the data when the sink is closed, so the file isn't playable until then.
+ */
+public class WavFileSink implements AudioSink {
+
+    /**
+     * The size of a canonical PCM WAV header in bytes
+     */
+    private static final int HEADER_BYTES = 44;
+
+    /**
+     * How much data is collected before it's written to the file
+     */
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+
+    /**
+     * The file to write to
+     */
+    private final File file;
+
+    /**
+     * The format data is written to this sink in. Samples are converted to little-endian on the way to the file
+     */
+    private final AudioFormat format;
+
+    /**
+     * Data waiting to be written to the file, or null if the sink isn't open
+     */
+    private ByteBuffer writeBuffer;
+
+    /**
+     * The open file, or null if the sink isn't open
+     */
+    private FileChannel channel;
+
+    /**
+     * The number of bytes of PCM data written since the sink was opened
+     */
+    private long dataBytes = 0;
+
+    /**
+     * @param file The file to write to. Overwritten if it exists
+     * @param format The format data will be written in. Must be signed PCM
+     */
+    public WavFileSink(File file, AudioFormat format) {
+        if (format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("Only signed PCM can be written to a WAV file: " + format);
+        }
+        this.file = file;
+        this.format = format;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel != null;
+    }
+
+    @Override
+    public void open(int bufferSize) throws IOException {
+        channel = new RandomAccessFile(file, "rw").getChannel();
+        channel.truncate(0);
+        writeBuffer = ByteBuffer.allocateDirect(WRITE_BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+        dataBytes = 0;
+        // leave room for the header, which can't be written until we know how long the data is
+        channel.position(HEADER_BYTES);
+    }
+
+    @Override
+    public void start() {}
+
+    @Override
+    public void stop() {}
+
+    @Override
+    public void flush() {}
+
+    @Override
+    public void drain() {}
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        int bytesPerSample = format.getSampleSizeInBits() / 8;
+        boolean swap = format.isBigEndian() && bytesPerSample > 1;
+        int end = off + len;
+        while (off < end) {
+            if (writeBuffer.remaining() < bytesPerSample) drainBuffer();
+            int chunk = Math.min(end - off, writeBuffer.remaining() / bytesPerSample * bytesPerSample);
+            if (swap) {
+                // WAV data is always little-endian, so reverse the bytes of each sample
+                for (int i = off; i < off + chunk; i += bytesPerSample) {
+                    for (int j = bytesPerSample - 1; j >= 0; j--) writeBuffer.put(b[i + j]);
+                }
+            } else {
+                writeBuffer.put(b, off, chunk);
+            }
+            off += chunk;
+        }
+        dataBytes += len;
+    }
+
+    /**
+     * Write everything in writeBuffer to the file
+     */
+    private void drainBuffer() throws IOException {
+        writeBuffer.flip();
+        while (writeBuffer.hasRemaining()) channel.write(writeBuffer);
+        writeBuffer.clear();
+    }
+
+    @Override
+    public int getBufferSize() {
+        return WRITE_BUFFER_BYTES;
+    }
+
+    @Override
+    public int available() {
+        return WRITE_BUFFER_BYTES;
+    }
+
+    @Override
+    public boolean isRealTime() {
+        return false;
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return dataBytes / format.getFrameSize();
+    }
+
+    /**
+     * Write out any buffered data, fill in the header and close the file
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel == null) return;
+        try {
+            drainBuffer();
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            int blockAlign = format.getFrameSize();
+            header.put(new byte[] {'R', 'I', 'F', 'F'})
+                    .putInt((int) (HEADER_BYTES - 8 + dataBytes))
+                    .put(new byte[] {'W', 'A', 'V', 'E'})
+                    .put(new byte[] {'f', 'm', 't', ' '})
+                    .putInt(16)
+                    .putShort((short) 1)    // uncompressed PCM
+                    .putShort((short) format.getChannels())
+                    .putInt((int) format.getSampleRate())
+                    .putInt((int) format.getSampleRate() * blockAlign)
+                    .putShort((short) blockAlign)
+                    .putShort((short) format.getSampleSizeInBits())
+                    .put(new byte[] {'d', 'a', 't', 'a'})
+                    .putInt((int) dataBytes);
+            header.flip();
+            channel.position(0);
+            while (header.hasRemaining()) channel.write(header);
+        } finally {
+            channel.close();
+            channel = null;
+            writeBuffer = null;
+        }
+    }
+}
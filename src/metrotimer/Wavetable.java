@@ -0,0 +1,90 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A table-lookup sine oscillator shared by everything that needs to synthesize a tone. Looking up and interpolating
+ * between two table entries is much cheaper than calling Math.sin for every sample.
+ */
+public final class Wavetable {
+
+    /**
+     * The number of entries in one cycle of the table. Must be a power of 2
+     */
+    private static final int TABLE_SIZE = 4096;
+
+    /**
+     * One cycle of a sine wave, plus a copy of the first entry on the end so interpolation never has to wrap
+     */
+    private static final float[] SINE = new float[TABLE_SIZE + 1];
+
+    static {
+        for (int i = 0; i <= TABLE_SIZE; i++) {
+            SINE[i] = (float) Math.sin(2 * Math.PI * i / TABLE_SIZE);
+        }
+    }
+
+    /**
+     * The shape of a tone's volume over its length
+     */
+    public enum Envelope {
+        /**
+         * Full volume from start to finish
+         */
+        NONE,
+        /**
+         * Full volume at the start, fading linearly to silence at the end
+         */
+        LINEAR_DECAY
+    }
+
+    private Wavetable() {}
+
+    /**
+     * @param phase How far through the cycle to look, where 0 is the start and 1 is the start of the next cycle.
+     *              Must be in [0, 1)
+     * @return The (interpolated) value of a sine wave at that point
+     */
+    public static float sine(double phase) {
+        double index = phase * TABLE_SIZE;
+        int i = (int) index;
+        float frac = (float) (index - i);
+        return SINE[i] + (SINE[i + 1] - SINE[i]) * frac;
+    }
+
+    /**
+     * Synthesize a sine tone as PCM data in the given format. The same sample is written to every channel.
+     *
+     * @param freq The pitch of the tone in Hz
+     * @param format The format of the PCM data. Must be 16-bit signed PCM
+     * @param durationMs How long the tone lasts
+     * @param envelope The shape of the tone's volume over its length
+     * @param amplitude The peak value of the tone, from 0 to 1
+     * @return A new byte buffer containing the tone
+     */
+    public static byte[] renderTone(float freq, AudioFormat format, int durationMs, Envelope envelope,
+                                    double amplitude) {
+        if (format.getSampleSizeInBits() != 16 || format.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("Only 16-bit signed PCM is supported: " + format);
+        }
+        int numFrames = (int) (durationMs * format.getSampleRate() / 1000);
+        int channels = format.getChannels();
+        boolean bigEndian = format.isBigEndian();
+        byte[] out = new byte[numFrames * format.getFrameSize()];
+
+        double phase = 0;
+        double phaseStep = freq / format.getSampleRate();
+        int pos = 0;
+        for (int i = 0; i < numFrames; i++) {
+            double gain = (envelope == Envelope.LINEAR_DECAY) ? amplitude * (numFrames - i) / numFrames : amplitude;
+            short a = (short) (sine(phase) * gain * Short.MAX_VALUE);
+            for (int c = 0; c < channels; c++) {
+                out[pos++] = (byte) (bigEndian ? a >> 8 : a & 0xFF);
+                out[pos++] = (byte) (bigEndian ? a & 0xFF : a >> 8);
+            }
+            phase += phaseStep;
+            phase -= Math.floor(phase);
+        }
+        return out;
+    }
+}
@@ -0,0 +1,42 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Plays an Audio on simulated time, as Simulation does, for the cases that don't need a whole app around it
+ */
+public class AudioTest {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * With no Model it plays at the default volume, and a session that ends stops the metronome without anyone to
+     * tell, leaving the output thread there to play again
+     */
+    @Test
+    public void playsWithoutAModel() {
+        SimulatedScheduler scheduler = new SimulatedScheduler();
+        PacedSink sink = new PacedSink(Audio.defaultFormat(), scheduler);
+        Audio audio = new Audio(sink, scheduler);
+        try {
+            audio.startSession(SessionPlan.parse("120 0:02"), 1760, 880, Collections.<ClickVoice>emptyList());
+            audio.alarm();
+            scheduler.parkNanos(this, 4 * NANOS_PER_SECOND);
+            assertFalse(audio.audioPlaying(), "playing after the session ended");
+
+            audio.start(120, 1760, 880, 4);
+            scheduler.parkNanos(this, NANOS_PER_SECOND);
+            long before = sink.getLongFramePosition();
+            scheduler.parkNanos(this, NANOS_PER_SECOND);
+            assertTrue(audio.audioPlaying(), "playing after starting again");
+            assertTrue(sink.getLongFramePosition() > before, "frames played after starting again");
+        } finally {
+            audio.shutDown();
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Renders beats onto a RecordingMixer and checks the frames they were put on
+ */
+public class ClickRendererTest {
+
+    private static final float SAMPLE_RATE = 48000;
+
+    private static final int BLOCK_FRAMES = 256;
+
+    private final byte[] hi = new byte[4];
+
+    private final byte[] lo = new byte[4];
+
+    /**
+     * Settings too fast for a beat to last a frame are never switched to, so rendering carries on at the tempo
+     * already playing instead of never getting past the beat. With nothing playing yet, they're played at the
+     * default tempo
+     */
+    @Test
+    @Timeout(10)
+    public void neverSwitchesToATempoItCantPlay() {
+        AtomicReference<MetronomeParams> params = new AtomicReference<>(params(120));
+        RecordingMixer mixer = new RecordingMixer(BLOCK_FRAMES);
+        ClickRenderer renderer = new ClickRenderer(SAMPLE_RATE, params, mixer);
+        render(renderer, 48000);
+        params.set(params(1e9));
+        render(renderer, 48000);
+        List<Long> beats = mixer.framesOf(lo);
+        assertEquals(4, beats.size(), "beats in two seconds at 120 BPM");
+        assertEquals(72000, (long) beats.get(3));
+
+        params = new AtomicReference<>(params(Double.MAX_VALUE));
+        mixer = new RecordingMixer(BLOCK_FRAMES);
+        renderer = new ClickRenderer(SAMPLE_RATE, params, mixer);
+        render(renderer, 48000);
+        assertEquals(60d / ModelState.DEFAULTS.getBpm() * SAMPLE_RATE, (double) mixer.framesOf(lo).get(1));
+    }
+
+    /**
+     * Each voice's pulses are spread evenly over its cycle, placed from the exact position of the beat the cycle
+     * starts on, at a tempo whose beats don't fall on whole frames. A cycle starts on every beat whose number is a
+     * multiple of the voice's beats, counting from 1, and a voice that starts partway through a cycle joins in
+     * with the pulses still to come
+     */
+    @Test
+    public void spreadsPulsesEvenlyOverEachCycle() {
+        double bpm = 97.3;
+        List<ClickVoice> voices = Arrays.asList(new ClickVoice(3, 4, 660, 1), new ClickVoice(5, 2, 1320, 0.5f),
+                new ClickVoice(7, 1, 440, 0.25f));
+        byte[][] beeps = {new byte[4], new byte[4], new byte[4]};
+        AtomicReference<MetronomeParams> params = new AtomicReference<>(
+                new MetronomeParams(bpm, 1760, 880, 4, hi, lo, voices, beeps));
+        RecordingMixer mixer = new RecordingMixer(BLOCK_FRAMES);
+        ClickRenderer renderer = new ClickRenderer(SAMPLE_RATE, params, mixer);
+        int frames = 60 * (int) SAMPLE_RATE;
+        render(renderer, frames);
+
+        double framesPerBeat = SAMPLE_RATE * 60 / bpm;
+        for (int v = 0; v < voices.size(); v++) {
+            ClickVoice voice = voices.get(v);
+            double framesPerPulse = framesPerBeat * voice.getBeats() / voice.getPulses();
+            List<Long> pulses = mixer.framesOf(beeps[v]);
+            int heard = 0;
+            // beat number n (from 1) starts at (n - 1) * framesPerBeat, and cycle m starts on beat m * beats
+            for (int m = 0; (m * voice.getBeats() - 1) * framesPerBeat < frames; m++) {
+                double cycleStart = (m * voice.getBeats() - 1) * framesPerBeat;
+                for (int p = 0; p < voice.getPulses(); p++) {
+                    double exact = cycleStart + p * framesPerPulse;
+                    if (exact < 0 || exact >= frames) continue;
+                    if (heard == pulses.size()) fail(voice + ": no pulse " + p + " of cycle " + m + " at " + exact);
+                    long frame = pulses.get(heard++);
+                    if (frame < Math.floor(exact - 1e-6) || frame > Math.floor(exact)) {
+                        fail(voice + ": pulse " + p + " of cycle " + m + " on frame " + frame + ", expected " + exact);
+                    }
+                }
+            }
+            assertEquals(heard, pulses.size(), voice + ": pulses played");
+        }
+        for (RecordingMixer.Trigger t : mixer.triggers) {
+            if (t.tone == beeps[1]) assertEquals(0.5f, t.gain, "gain of " + voices.get(1));
+        }
+    }
+
+    /**
+     * @return Settings with no accents and no voices at the given tempo
+     */
+    private MetronomeParams params(double bpm) {
+        return new MetronomeParams(bpm, 1760, 880, 0, hi, lo);
+    }
+
+    /**
+     * Render the given number of frames a block at a time
+     */
+    private static void render(ClickRenderer renderer, int frames) {
+        for (int done = 0; done < frames; done += BLOCK_FRAMES) renderer.render(Math.min(BLOCK_FRAMES, frames - done));
+    }
+}
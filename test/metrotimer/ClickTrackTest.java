@@ -0,0 +1,54 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.File;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Reads click tracks from the lines ClickTrackExporter is given
+ */
+public class ClickTrackTest {
+
+    /**
+     * Every setting given on the line is read, and the rest get the app's defaults
+     */
+    @Test
+    public void readsATrack() {
+        ClickTrack track = ClickTrack.parse("ex1-92.wav bpm=92.5 accent=4 duration=2:00 alarm=1:00 hi=1320");
+        assertEquals(new File("ex1-92.wav"), track.getFile());
+        assertEquals(92.5, track.getBpm());
+        assertEquals(4, track.getAccentInterval());
+        assertEquals(1320, track.getHiFreq());
+        assertEquals(880, track.getLoFreq());
+        assertEquals(120_000, track.getDurationMs());
+        assertEquals(60_000, track.getAlarmIntervalMs());
+    }
+
+    /**
+     * A tempo outside the range the app plays, or that isn't a number at all, is refused rather than rendered, since
+     * a beat that never ends would never let the export finish
+     */
+    @Test
+    public void refusesTempoOutsideTheRange() {
+        for (String bpm : new String[] {"Infinity", "NaN", "0", "-60", "9.9", "300.1", "1e9"}) {
+            assertThrows(IllegalArgumentException.class, parsing("x.wav bpm=" + bpm + " duration=2"), "bpm=" + bpm);
+        }
+        assertEquals(300, ClickTrack.parse("x.wav bpm=300 duration=2").getBpm());
+    }
+
+    /**
+     * @return Something that reads a track from the given line
+     */
+    private static Executable parsing(final String line) {
+        return new Executable() {
+            @Override
+            public void execute() {
+                ClickTrack.parse(line);
+            }
+        };
+    }
+}
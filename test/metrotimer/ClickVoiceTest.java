@@ -0,0 +1,54 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Reads and writes extra voices the way the voices box and click track lines do
+ */
+public class ClickVoiceTest {
+
+    /**
+     * Every part of every voice is read, and written back the same way
+     */
+    @Test
+    public void readsAndWritesVoices() {
+        List<ClickVoice> voices = ClickVoice.parseList(" 3:4@660, 2 : 1 @ 1320.5 x 0.5,32:32@440");
+        assertEquals(Arrays.asList(new ClickVoice(3, 4, 660, 1), new ClickVoice(2, 1, 1320.5f, 0.5f),
+                new ClickVoice(32, 32, 440, 1)), voices);
+        assertEquals("3:4@660, 2:1@1320.5x0.5, 32:32@440", ClickVoice.toString(voices));
+        assertEquals(voices, ClickVoice.parseList(ClickVoice.toString(voices)));
+        assertEquals(Collections.<ClickVoice>emptyList(), ClickVoice.parseList(" "));
+    }
+
+    /**
+     * More pulses or beats in a cycle than can be played are refused, since every pulse is a voice started on the
+     * audio thread. So is anything else that can't be played
+     */
+    @Test
+    public void refusesWhatCantBePlayed() {
+        for (String spec : new String[] {"100000:1@440", "33:1@440", "1:33@440", "0:1@440", "1:0@440", "-1:1@440",
+                "3:4@0", "3:4@NaN", "3:4@660x1.5", "3:4@660x-1", "3:4@660xNaN", "3@660", "3:4", "3:4@high"}) {
+            assertThrows(IllegalArgumentException.class, parsing(spec), spec);
+        }
+    }
+
+    /**
+     * @return Something that reads a voice list from the given text
+     */
+    private static Executable parsing(final String specs) {
+        return new Executable() {
+            @Override
+            public void execute() {
+                ClickVoice.parseList(specs);
+            }
+        };
+    }
+}
@@ -0,0 +1,125 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Opens and closes a LookaheadSink the way Audio does, on the system's clock since a writer stuck for real can't be
+ * waited out in simulated time
+ */
+public class LookaheadSinkTest {
+
+    private static final int BLOCK_FRAMES = Audio.BLOCK_FRAMES;
+
+    /**
+     * However many times it's reopened, there's one writer, and it's gone once the sink is released
+     */
+    @Test
+    public void reopeningKeepsOneWriter() throws Exception {
+        int writersBefore = writers();
+        final LookaheadSink sink = new LookaheadSink(new PacedSink(Audio.defaultFormat(), Scheduler.SYSTEM),
+                4 * BLOCK_FRAMES, BLOCK_FRAMES, Scheduler.SYSTEM);
+        byte[] block = new byte[BLOCK_FRAMES * Audio.defaultFormat().getFrameSize()];
+        for (int i = 0; i < 5; i++) {
+            sink.open(8 * block.length);
+            sink.start();
+            for (int j = 0; j < 4; j++) sink.write(block, 0, block.length);
+            sink.drain();
+            sink.close();
+            assertEquals(writersBefore + 1, writers(), "writers after opening " + (i + 1) + " times");
+        }
+        sink.release();
+        assertEquals(writersBefore, writers(), "writers after releasing");
+        assertThrows(IOException.class, opening(sink, 8 * block.length), "opening after releasing");
+    }
+
+    /**
+     * A writer that's still stuck in a write from before stops the sink being opened again, until it's got out
+     */
+    @Test
+    public void refusesToReopenWhileTheWriterIsStuck() throws Exception {
+        CountDownLatch stuck = new CountDownLatch(1);
+        CountDownLatch unstick = new CountDownLatch(1);
+        LookaheadSink sink = new LookaheadSink(new StuckSink(stuck, unstick), BLOCK_FRAMES, BLOCK_FRAMES,
+                Scheduler.SYSTEM);
+        byte[] block = new byte[BLOCK_FRAMES * Audio.defaultFormat().getFrameSize()];
+        sink.open(block.length);
+        sink.start();
+        sink.write(block, 0, block.length);
+        stuck.await();
+        sink.close();
+        assertThrows(IOException.class, opening(sink, block.length), "opening with the writer stuck");
+
+        unstick.countDown();
+        sink.open(block.length);
+        assertTrue(sink.isOpen(), "open once the writer's got out");
+        sink.release();
+    }
+
+    /**
+     * @return Something that opens the sink with the given buffer size
+     */
+    private static Executable opening(final LookaheadSink sink, final int bufferSize) {
+        return new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                sink.open(bufferSize);
+            }
+        };
+    }
+
+    /**
+     * @return The number of lookahead writer threads alive
+     */
+    private static int writers() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("Audio writer") && thread.isAlive()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * A sink whose writes never finish until let go of, even when it's flushed, like a sound card that's gone away
+     */
+    private static final class StuckSink extends NullSink {
+
+        /**
+         * Counted down once a write has got stuck
+         */
+        private final CountDownLatch stuck;
+
+        /**
+         * Lets every write go, stuck or not, once counted down
+         */
+        private final CountDownLatch unstick;
+
+        StuckSink(CountDownLatch stuck, CountDownLatch unstick) {
+            super(Audio.defaultFormat());
+            this.stuck = stuck;
+            this.unstick = unstick;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            stuck.countDown();
+            try {
+                unstick.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public boolean isRealTime() {
+            return true;
+        }
+    }
+}
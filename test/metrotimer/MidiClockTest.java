@@ -0,0 +1,285 @@
+package metrotimer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import javax.sound.midi.MidiMessage;
+import javax.sound.midi.Receiver;
+import javax.sound.midi.ShortMessage;
+import javax.sound.midi.Transmitter;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Sends MIDI clock from one metronome through an in-JVM loopback, on a SimulatedScheduler with PacedSinks, and checks
+ * what goes out and how a second metronome following it keeps up
+ */
+public class MidiClockTest {
+
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+
+    /**
+     * The length of one frame at the default format's sample rate, in nanoseconds
+     */
+    private static final double NANOS_PER_FRAME = 1e9 / Audio.defaultFormat().getSampleRate();
+
+    private final SimulatedScheduler scheduler = new SimulatedScheduler();
+    private final List<Metronome> metronomes = new ArrayList<>();
+
+    @AfterEach
+    public void shutDown() {
+        for (Metronome m : metronomes) m.shutDown();
+    }
+
+    /**
+     * A start, then 24 ticks to the beat with the first on the beat, evenly spaced to within a frame, then a stop
+     * with nothing after it
+     */
+    @Test
+    public void sendsTwentyFourEvenlySpacedTicksABeat() {
+        Metronome leader = new Metronome(120);
+        Loopback loopback = new Loopback();
+        leader.sync.sendClockTo(loopback);
+
+        leader.controller.handleMetroClick();
+        play(10 * NANOS_PER_SECOND);
+        leader.controller.handleMetroClick();
+        play(NANOS_PER_SECOND);
+
+        List<Message> messages = loopback.messages;
+        assertEquals(ShortMessage.START, messages.get(0).status, "first message");
+        assertEquals(ShortMessage.STOP, messages.get(messages.size() - 1).status, "last message");
+        List<Long> ticks = loopback.ticks();
+        assertEquals(messages.size() - 2, ticks.size(), "messages other than the start and stop that are ticks");
+        // 20 beats in 10 seconds, give or take the one that was playing when it was stopped
+        assertTrue(ticks.size() > 19 * ClickRenderer.TICKS_PER_BEAT, ticks.size() + " ticks");
+        assertTrue(ticks.size() <= 21 * ClickRenderer.TICKS_PER_BEAT, ticks.size() + " ticks");
+        double tickNanos = 60e9 / 120 / ClickRenderer.TICKS_PER_BEAT;
+        for (int i = 1; i < ticks.size(); i++) {
+            long gap = ticks.get(i) - ticks.get(i - 1);
+            assertEquals(tickNanos, gap, 2 * NANOS_PER_FRAME, "gap before tick " + i);
+        }
+        assertEquals(0, TimingMetrics.get().getMidiClockDropped(), "ticks dropped");
+    }
+
+    /**
+     * The follower starts with the clock, takes up its tempo and a change to it, and stops with it
+     */
+    @Test
+    public void followerTakesTheTempoAndStartsAndStops() {
+        Metronome leader = new Metronome(120);
+        Metronome follower = new Metronome(90);
+        Loopback loopback = new Loopback();
+        leader.sync.sendClockTo(loopback);
+        MidiClockFollower clockFollower = follower.sync.followClockFrom(loopback);
+
+        leader.controller.handleMetroClick();
+        play(5 * NANOS_PER_SECOND);
+        assertTrue(follower.audio.audioPlaying(), "follower playing");
+        assertEquals(120, follower.model.getBpm(), MidiClockFollower.TEMPO_STEP);
+        assertEquals(120, clockFollower.getClockBpm(), MidiClockFollower.TEMPO_STEP);
+
+        leader.model.setBpm(150);
+        play(5 * NANOS_PER_SECOND);
+        assertEquals(150, follower.model.getBpm(), MidiClockFollower.TEMPO_STEP);
+
+        leader.controller.handleMetroClick();
+        play(NANOS_PER_SECOND);
+        assertFalse(follower.audio.audioPlaying(), "follower playing after the stop");
+    }
+
+    /**
+     * A tempo too close to the follower's for it to change to still doesn't pull the beats apart, and the output
+     * latency the follower starts with is taken up: after a few beats to settle, every one of the follower's beats is
+     * heard within a millisecond of the clock's
+     */
+    @Test
+    public void followerStaysInPhase() {
+        // 0.04 BPM out would drift by 100 ms over the 5 minutes
+        Metronome leader = new Metronome(120.04);
+        Metronome follower = new Metronome(120);
+        Loopback loopback = new Loopback();
+        leader.sync.sendClockTo(loopback);
+        follower.sync.followClockFrom(loopback);
+        // hear when the follower's beats are heard, by the ticks it sends on them
+        Loopback heard = new Loopback();
+        follower.audio.setMidiClock(new MidiClock(heard, scheduler));
+
+        leader.controller.handleMetroClick();
+        play(300 * NANOS_PER_SECOND);
+        assertEquals(120, follower.model.getBpm(), 0, "follower's tempo");
+
+        List<Long> leaderBeats = loopback.beats();
+        List<Long> followerBeats = heard.beats();
+        assertTrue(followerBeats.size() > 590, followerBeats.size() + " beats followed");
+        int settled = 0;
+        for (long beat : followerBeats) {
+            if (beat < 10 * NANOS_PER_SECOND) continue;
+            long nearest = Long.MAX_VALUE;
+            for (long leaderBeat : leaderBeats) {
+                if (Math.abs(leaderBeat - beat) < Math.abs(nearest)) nearest = leaderBeat - beat;
+            }
+            assertEquals(0, nearest, 1e6, "follower's beat at " + beat + " ns from the clock's nearest");
+            settled++;
+        }
+        assertTrue(settled > 570, settled + " beats checked");
+    }
+
+    /**
+     * Switching from one output to another while playing sends on one sending thread throughout, and closes each
+     * output replaced. The thread is gone once the metronome's shut down
+     */
+    @Test
+    public void choosingAnotherOutputKeepsOneSender() {
+        int sendersBefore = senders();
+        Metronome leader = new Metronome(120);
+        leader.controller.handleMetroClick();
+        List<Loopback> outputs = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Loopback loopback = new Loopback();
+            outputs.add(loopback);
+            leader.sync.sendClockTo(loopback);
+            play(NANOS_PER_SECOND);
+            assertEquals(sendersBefore + 1, senders(), "senders after choosing " + (i + 1) + " outputs");
+        }
+        for (int i = 0; i < outputs.size(); i++) {
+            assertTrue(outputs.get(i).ticks().size() > 0, "ticks sent to output " + i);
+            assertEquals(i < outputs.size() - 1, outputs.get(i).closed, "output " + i + " closed");
+        }
+        leader.shutDown();
+        metronomes.remove(leader);
+        assertEquals(sendersBefore, senders(), "senders after shutting down");
+        assertTrue(outputs.get(outputs.size() - 1).closed, "last output closed");
+    }
+
+    /**
+     * @return The number of MIDI clock sending threads alive
+     */
+    private static int senders() {
+        int count = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().equals("MIDI clock") && thread.isAlive()) count++;
+        }
+        return count;
+    }
+
+    /**
+     * Let simulated time go by while the metronomes play
+     */
+    private void play(long nanos) {
+        scheduler.parkNanos(this, nanos);
+    }
+
+    /**
+     * A metronome wired up the way the app wires one, playing to a PacedSink through a lookahead
+     */
+    private final class Metronome {
+        final Model model = new Model();
+        final Audio audio = new Audio(Audio.withLookahead(new PacedSink(Audio.defaultFormat(), scheduler),
+                scheduler), scheduler);
+        final Controller controller = new Controller();
+        final TimerController timerController = new TimerController(scheduler);
+        final MidiSync sync = new MidiSync(model, audio, controller);
+
+        Metronome(double bpm) {
+            timerController.setAudio(audio);
+            timerController.setModel(model);
+            controller.setAudio(audio);
+            controller.setModel(model);
+            controller.setTimerController(timerController);
+            controller.setMidiSync(sync);
+            audio.setModel(model);
+            model.setBpm(bpm);
+            metronomes.add(this);
+        }
+
+        void shutDown() {
+            timerController.shutDown();
+            sync.off();
+            audio.shutDown();
+        }
+    }
+
+    /**
+     * A message and the time on the scheduler it went out at
+     */
+    private static final class Message {
+        final int status;
+        final long nanos;
+
+        Message(int status, long nanos) {
+            this.status = status;
+            this.nanos = nanos;
+        }
+    }
+
+    /**
+     * Passes on every message sent to it, like a MIDI cable from an output port to an input port, and keeps a note of
+     * each
+     */
+    private final class Loopback implements Receiver, Transmitter {
+
+        final List<Message> messages = new ArrayList<>();
+
+        /**
+         * Has it been closed, as a MIDI device's receiver is once nothing is sent to it any more?
+         */
+        volatile boolean closed = false;
+
+        private volatile Receiver receiver;
+
+        @Override
+        public void send(MidiMessage message, long timeStamp) {
+            synchronized (this) {
+                messages.add(new Message(message.getStatus(), scheduler.nanoTime()));
+            }
+            Receiver r = receiver;
+            if (r != null) r.send(message, timeStamp);
+        }
+
+        /**
+         * @return When each tick went out
+         */
+        synchronized List<Long> ticks() {
+            List<Long> ticks = new ArrayList<>();
+            for (Message m : messages) {
+                if (m.status == ShortMessage.TIMING_CLOCK) ticks.add(m.nanos);
+            }
+            return ticks;
+        }
+
+        /**
+         * @return When each tick on a beat went out: every 24th after a start, starting with the first
+         */
+        synchronized List<Long> beats() {
+            List<Long> beats = new ArrayList<>();
+            int ticks = -1;
+            for (Message m : messages) {
+                if (m.status == ShortMessage.START) ticks = 0;
+                else if (m.status == ShortMessage.STOP) ticks = -1;
+                else if (m.status == ShortMessage.TIMING_CLOCK && ticks >= 0
+                        && ticks++ % ClickRenderer.TICKS_PER_BEAT == 0) beats.add(m.nanos);
+            }
+            return beats;
+        }
+
+        @Override
+        public void setReceiver(Receiver receiver) {
+            this.receiver = receiver;
+        }
+
+        @Override
+        public Receiver getReceiver() {
+            return receiver;
+        }
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.SourceDataLine;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Picks formats from mixers that offer what sound systems do, with unspecified rates and channel counts among them
+ */
+public class NativeFormatTest {
+
+    private static final int ANY = AudioSystem.NOT_SPECIFIED;
+
+    private static final boolean NATIVE_BIG_ENDIAN = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+    /**
+     * The rate comes first, then stereo over mono, then the smallest sample size, then the machine's byte order
+     */
+    @Test
+    public void picksTheBestOfWhatsOffered() {
+        List<AudioFormat> offered = Arrays.asList(
+                pcm(44100, 16, 2, NATIVE_BIG_ENDIAN),
+                pcm(96000, 16, 2, NATIVE_BIG_ENDIAN),
+                pcm(48000, 24, 2, NATIVE_BIG_ENDIAN),
+                pcm(48000, 16, 1, NATIVE_BIG_ENDIAN),
+                pcm(48000, 16, 2, !NATIVE_BIG_ENDIAN),
+                pcm(48000, 16, 2, NATIVE_BIG_ENDIAN),
+                pcm(48000, 16, 6, NATIVE_BIG_ENDIAN));
+        assertPicked(pcm(48000, 16, 2, NATIVE_BIG_ENDIAN), NativeFormat.negotiate(new FakeMixer(offered, offered)));
+        // in whatever order they're offered
+        List<AudioFormat> reversed = Arrays.asList(offered.get(6), offered.get(5), offered.get(4), offered.get(3),
+                offered.get(2), offered.get(1), offered.get(0));
+        assertPicked(pcm(48000, 16, 2, NATIVE_BIG_ENDIAN), NativeFormat.negotiate(new FakeMixer(reversed, reversed)));
+    }
+
+    /**
+     * A rate or channel count left unspecified is filled in with the usual ones, and only those the mixer says it
+     * supports are picked
+     */
+    @Test
+    public void fillsInWhatsLeftUnspecified() {
+        AudioFormat any = pcm(ANY, 16, ANY, NATIVE_BIG_ENDIAN);
+        List<AudioFormat> supported = Arrays.asList(pcm(44100, 16, 1, NATIVE_BIG_ENDIAN),
+                pcm(44100, 16, 2, NATIVE_BIG_ENDIAN), pcm(22050, 16, 2, NATIVE_BIG_ENDIAN));
+        assertPicked(pcm(44100, 16, 2, NATIVE_BIG_ENDIAN),
+                NativeFormat.negotiate(new FakeMixer(Arrays.asList(any), supported)));
+        assertPicked(pcm(48000, 16, 2, NATIVE_BIG_ENDIAN), NativeFormat.negotiate(new FakeMixer(Arrays.asList(any),
+                Arrays.asList(pcm(48000, 16, 2, NATIVE_BIG_ENDIAN), pcm(48000, 16, 1, NATIVE_BIG_ENDIAN)))));
+    }
+
+    /**
+     * Formats the output can't be rendered in are passed over, and with nothing else offered there's nothing to pick
+     */
+    @Test
+    public void passesOverWhatCantBePlayed() {
+        List<AudioFormat> unplayable = Arrays.asList(
+                new AudioFormat(AudioFormat.Encoding.PCM_UNSIGNED, 48000, 8, 2, 2, 48000, false),
+                new AudioFormat(AudioFormat.Encoding.PCM_FLOAT, 48000, 32, 2, 8, 48000, false),
+                new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, 48000, 20, 2, 6, 48000, false),
+                new AudioFormat(AudioFormat.Encoding.ULAW, 8000, 8, 1, 1, 8000, false),
+                pcm(48000, ANY, 2, false));
+        for (AudioFormat format : unplayable) assertFalse(NativeFormat.isPlayable(format), format.toString());
+        assertNull(NativeFormat.negotiate(new FakeMixer(unplayable, unplayable)));
+        assertNull(NativeFormat.negotiate(new FakeMixer(Arrays.asList(pcm(48000, 16, 2, false)),
+                Arrays.<AudioFormat>asList())), "offered but not supported");
+        assertTrue(NativeFormat.isPlayable(pcm(44100, 24, 1, true)));
+    }
+
+    @Test
+    public void describesFormats() {
+        assertEquals("48kHz 16-bit stereo", NativeFormat.describe(pcm(48000, 16, 2, false)));
+        assertEquals("44.1kHz 24-bit mono", NativeFormat.describe(pcm(44100, 24, 1, true)));
+        assertEquals("96kHz 32-bit 6 channels", NativeFormat.describe(pcm(96000, 32, 6, false)));
+    }
+
+    /**
+     * Check that a format was picked, and it's the expected one
+     */
+    private static void assertPicked(AudioFormat expected, AudioFormat actual) {
+        if (actual == null || !expected.matches(actual) || !actual.matches(expected)) {
+            assertEquals(expected.toString(), String.valueOf(actual));
+        }
+    }
+
+    /**
+     * @return Signed PCM with the frame size worked out, or left unspecified if the sample size or channels are
+     */
+    private static AudioFormat pcm(float rate, int bits, int channels, boolean bigEndian) {
+        int frameSize = (bits == ANY || channels == ANY) ? ANY : channels * bits / 8;
+        return new AudioFormat(AudioFormat.Encoding.PCM_SIGNED, rate, bits, channels, frameSize, rate, bigEndian);
+    }
+
+    /**
+     * A mixer with one kind of source line, which offers some formats and supports others. Nothing can be opened
+     */
+    private static final class FakeMixer implements Mixer {
+
+        private final List<AudioFormat> offered;
+
+        private final List<AudioFormat> supported;
+
+        FakeMixer(List<AudioFormat> offered, List<AudioFormat> supported) {
+            this.offered = offered;
+            this.supported = supported;
+        }
+
+        @Override
+        public Line.Info[] getSourceLineInfo(Line.Info info) {
+            return new Line.Info[] {new DataLine.Info(SourceDataLine.class, offered.toArray(new AudioFormat[0]),
+                    ANY, ANY)};
+        }
+
+        @Override
+        public boolean isLineSupported(Line.Info info) {
+            for (AudioFormat wanted : ((DataLine.Info) info).getFormats()) {
+                for (AudioFormat format : supported) {
+                    if (format.matches(wanted) && wanted.matches(format)) return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Mixer.Info getMixerInfo() {
+            return null;
+        }
+
+        @Override
+        public Line.Info[] getSourceLineInfo() {
+            return getSourceLineInfo(null);
+        }
+
+        @Override
+        public Line.Info[] getTargetLineInfo() {
+            return new Line.Info[0];
+        }
+
+        @Override
+        public Line.Info[] getTargetLineInfo(Line.Info info) {
+            return new Line.Info[0];
+        }
+
+        @Override
+        public Line getLine(Line.Info info) {
+            throw new IllegalArgumentException("Nothing can be opened on a fake mixer");
+        }
+
+        @Override
+        public int getMaxLines(Line.Info info) {
+            return 0;
+        }
+
+        @Override
+        public Line[] getSourceLines() {
+            return new Line[0];
+        }
+
+        @Override
+        public Line[] getTargetLines() {
+            return new Line[0];
+        }
+
+        @Override
+        public void synchronize(Line[] lines, boolean maintainSync) {
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        public void unsynchronize(Line[] lines) {
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        public boolean isSynchronizationSupported(Line[] lines, boolean maintainSync) {
+            return false;
+        }
+
+        @Override
+        public Line.Info getLineInfo() {
+            return new Line.Info(Mixer.class);
+        }
+
+        @Override
+        public void open() {
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public boolean isOpen() {
+            return false;
+        }
+
+        @Override
+        public Control[] getControls() {
+            return new Control[0];
+        }
+
+        @Override
+        public boolean isControlSupported(Control.Type control) {
+            return false;
+        }
+
+        @Override
+        public Control getControl(Control.Type control) {
+            throw new IllegalArgumentException();
+        }
+
+        @Override
+        public void addLineListener(LineListener listener) {
+        }
+
+        @Override
+        public void removeLineListener(LineListener listener) {
+        }
+    }
+}
@@ -0,0 +1,157 @@
+package metrotimer;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Takes data at the speed a sound card plays it, with a buffer of the size it's opened with, but plays nowhere. The
+ * speed comes from a Scheduler, so on the system's it stands in for a sound card in real time, and on a
+ * SimulatedScheduler it lets hours of playing go by in moments with everything timed exactly as it would be.
+ */
+public class PacedSink implements AudioSink {
+
+    private final AudioFormat format;
+
+    /**
+     * Where time comes from, and what writes wait on when the buffer's full
+     */
+    private final Scheduler scheduler;
+
+    private boolean open = false;
+
+    /**
+     * The size of the buffer, in frames
+     */
+    private int bufferFrames;
+
+    /**
+     * Is it playing what's written?
+     */
+    private boolean playing = false;
+
+    /**
+     * The number of frames written since it was opened
+     */
+    private long written = 0;
+
+    /**
+     * The number of frames played since it was opened, including the fraction of one being played
+     */
+    private double played = 0;
+
+    /**
+     * The scheduler's time when played was last brought up to date
+     */
+    private long lastNanos;
+
+    /**
+     * @param format The format that data is expected in
+     * @param scheduler Where time comes from
+     */
+    public PacedSink(AudioFormat format, Scheduler scheduler) {
+        this.format = format;
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Move the play position on by the time since it was last moved, as far as what's been written
+     */
+    private void advance() {
+        long now = scheduler.nanoTime();
+        if (playing) played = Math.min(written, played + (now - lastNanos) * format.getSampleRate() / 1e9);
+        lastNanos = now;
+    }
+
+    /**
+     * @return How long it takes to play the given number of frames, rounded up, in nanoseconds
+     */
+    private long nanosToPlay(double frames) {
+        return Math.max((long) Math.ceil(frames * 1e9 / format.getSampleRate()), 1);
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void open(int bufferSize) {
+        bufferFrames = bufferSize / format.getFrameSize();
+        written = 0;
+        played = 0;
+        open = true;
+    }
+
+    @Override
+    public synchronized void start() {
+        advance();
+        playing = true;
+    }
+
+    @Override
+    public synchronized void stop() {
+        advance();
+        playing = false;
+    }
+
+    @Override
+    public synchronized void flush() {
+        advance();
+        written = (long) played;
+        played = written;
+    }
+
+    @Override
+    public void drain() {
+        long wait;
+        while ((wait = waitFor(0)) > 0) scheduler.parkNanos(this, wait);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        int frames = len / format.getFrameSize();
+        long wait;
+        while ((wait = waitFor(bufferFrames - frames)) > 0) scheduler.parkNanos(this, wait);
+        synchronized (this) {
+            advance();
+            written += frames;
+        }
+    }
+
+    /**
+     * @param frames The most frames that may be left to play
+     * @return How long until no more than that are left to play, in nanoseconds, or 0 if there already aren't, or if
+     *         it's stopped and there never will be
+     */
+    private synchronized long waitFor(int frames) {
+        advance();
+        double excess = written - played - Math.max(frames, 0);
+        return (excess > 0 && playing) ? nanosToPlay(excess) : 0;
+    }
+
+    @Override
+    public synchronized int getBufferSize() {
+        return bufferFrames * format.getFrameSize();
+    }
+
+    @Override
+    public synchronized int available() {
+        advance();
+        return (int) (bufferFrames - (written - (long) played)) * format.getFrameSize();
+    }
+
+    @Override
+    public synchronized long getLongFramePosition() {
+        advance();
+        return (long) played;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+    }
+}
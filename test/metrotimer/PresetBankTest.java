@@ -0,0 +1,77 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Saves and reads back preset banks the way Controller does, each save going over the file last read
+ */
+public class PresetBankTest {
+
+    @TempDir
+    File folder;
+
+    /**
+     * A bank read from a file can be saved straight back over it, with nothing left holding on to the file, and every
+     * field of every preset comes back as it was saved
+     */
+    @Test
+    public void savesOverTheFileItWasReadFrom() throws Exception {
+        File file = new File(folder, "presets.mtp");
+        PresetBank bank = PresetBank.of(Arrays.asList(
+                new Preset("Warm-up", 92.5, 4, 1320, 880, Collections.<ClickVoice>emptyList(), 300),
+                new Preset("Clave", 110, 0, 1000, 660,
+                        Arrays.asList(new ClickVoice(3, 2, 1320, 0.5f), new ClickVoice(5, 4, 440, 1)), 0)));
+        bank.write(file);
+        for (int i = 0; i < 3; i++) {
+            PresetBank read = PresetBank.read(file);
+            assertEquals(bank.getPresets(), read.getPresets(), "presets read back after " + (i + 1) + " saves");
+            bank = read.withPreset(new Preset("Take " + i, 60 + i, 3, 1320, 880,
+                    Collections.<ClickVoice>emptyList(), 0));
+            bank.write(file);
+        }
+        assertEquals(bank.getPresets(), PresetBank.read(file).getPresets(), "presets read back at the end");
+        assertEquals(5, PresetBank.read(file).size(), "presets in the bank");
+    }
+
+    /**
+     * A bank holding a tempo the app can't play, which it can't have saved itself, isn't loaded, since the metronome
+     * would never get past the bar line it switched to that preset on
+     */
+    @Test
+    public void refusesATempoOutsideTheRange() throws Exception {
+        final File file = new File(folder, "presets.mtp");
+        PresetBank.of(Collections.singletonList(
+                new Preset("A", 120, 4, 1320, 880, Collections.<ClickVoice>emptyList(), 0))).write(file);
+        for (double bpm : new double[] {Double.POSITIVE_INFINITY, Double.NaN, 0, 1e9}) {
+            ByteBuffer bank = ByteBuffer.wrap(Files.readAllBytes(file.toPath()));
+            // after the magic, version, count, and the name's length and its one byte
+            bank.putDouble(4 + 2 + 4 + 2 + 1, bpm);
+            Files.write(file.toPath(), bank.array());
+            assertThrows(IOException.class, reading(file), "bank with bpm " + bpm);
+        }
+    }
+
+    /**
+     * @return Something that reads the bank in the given file
+     */
+    private static Executable reading(final File file) {
+        return new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                PresetBank.read(file);
+            }
+        };
+    }
+}
@@ -0,0 +1,59 @@
+package metrotimer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A VoiceMixer that remembers every sound it's told to start, so a test can check where a ClickRenderer put them
+ */
+public class RecordingMixer extends VoiceMixer {
+
+    /**
+     * One sound started on the mixer
+     */
+    public static final class Trigger {
+
+        public final byte[] tone;
+
+        public final long frame;
+
+        public final float gain;
+
+        Trigger(byte[] tone, long frame, float gain) {
+            this.tone = tone;
+            this.frame = frame;
+            this.gain = gain;
+        }
+
+        @Override
+        public String toString() {
+            return "frame " + frame;
+        }
+    }
+
+    /**
+     * Every sound started so far, in the order they were started
+     */
+    public final List<Trigger> triggers = new ArrayList<>();
+
+    public RecordingMixer(int maxBlockFrames) {
+        super(Audio.defaultFormat(), Audio.VOICES, maxBlockFrames);
+    }
+
+    @Override
+    public void trigger(byte[] tone, long startFrame, float gain) {
+        triggers.add(new Trigger(tone, startFrame, gain));
+        super.trigger(tone, startFrame, gain);
+    }
+
+    /**
+     * @return The frames the given tone was started on, in order
+     */
+    public List<Long> framesOf(byte[] tone) {
+        List<Long> frames = new ArrayList<>();
+        for (Trigger t : triggers) {
+            if (t.tone == tone) frames.add(t.frame);
+        }
+        return frames;
+    }
+}
@@ -0,0 +1,268 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.junit.jupiter.api.io.TempDir;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Decodes WAV files written out by hand, in each sample format understood and with the chunk layouts recorders
+ * leave, and resamples sines to check the filter
+ */
+public class SampleDecoderTest {
+
+    private static final int PCM = 1;
+
+    private static final int FLOAT = 3;
+
+    private static final int EXTENSIBLE = 0xFFFE;
+
+    /**
+     * The format clicks are decoded to
+     */
+    private static final AudioFormat TONE_FORMAT = Audio.toneFormat(Audio.defaultFormat());
+
+    @TempDir
+    File folder;
+
+    /**
+     * The same click in every sample format, mono or stereo, plain or extensible, decodes to the same PCM data,
+     * scaled so its loudest sample is at the peak given. Chunks other than fmt and data are skipped, odd-sized ones
+     * along with the byte they're padded with
+     */
+    @Test
+    public void decodesEveryFormat() throws IOException {
+        float[] click = click(441);
+        short[] expected = new short[click.length];
+        for (int i = 0; i < click.length; i++) expected[i] = (short) Math.round(click[i] / 0.8 * 0.5 * Short.MAX_VALUE);
+
+        assertDecodes(expected, wav(PCM, 1, 44100, 16, pcm(click, 1, 16), true), 1);
+        assertDecodes(expected, wav(PCM, 2, 44100, 16, pcm(click, 2, 16), false), 1);
+        assertDecodes(expected, wav(PCM, 1, 44100, 24, pcm(click, 1, 24), true), 1);
+        assertDecodes(expected, wav(PCM, 1, 44100, 32, pcm(click, 1, 32), false), 1);
+        assertDecodes(expected, wav(FLOAT, 2, 44100, 32, pcm(click, 2, -32), true), 1);
+        assertDecodes(expected, wav(EXTENSIBLE, 1, 44100, 16, pcm(click, 1, 16), true), 1);
+        // 8-bit has a step of 1/128, so it's only as close as that
+        assertDecodes(expected, wav(PCM, 1, 44100, 8, pcm(click, 1, 8), false), Short.MAX_VALUE / 100);
+    }
+
+    /**
+     * Channels are averaged, so two that cancel each other out are silence
+     */
+    @Test
+    public void averagesChannels() throws IOException {
+        float[] click = click(100);
+        ByteBuffer data = ByteBuffer.allocate(click.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+        for (float s : click) {
+            data.putShort((short) Math.round(s * Short.MAX_VALUE));
+            data.putShort((short) -Math.round(s * Short.MAX_VALUE));
+        }
+        assertDecodes(new short[click.length], wav(PCM, 2, 44100, 16, data.array(), false), 0);
+    }
+
+    /**
+     * A data chunk said to be longer than the file, as a recorder that was cut off leaves it, is decoded as far as
+     * the file goes
+     */
+    @Test
+    public void takesWhatsThereOfACutOffDataChunk() throws IOException {
+        float[] click = click(300);
+        byte[] wav = wav(PCM, 1, 44100, 16, pcm(click, 1, 16), false);
+        ByteBuffer.wrap(wav).order(ByteOrder.LITTLE_ENDIAN).putInt(wav.length - click.length * 2 - 4, 1 << 30);
+        assertEquals(click.length * 2, decode(wav).length);
+    }
+
+    /**
+     * A file that isn't a WAV, or a WAV in a format this doesn't understand, or one too long to be a click, is
+     * refused rather than played as noise
+     */
+    @Test
+    public void refusesWhatItCantDecode() throws IOException {
+        byte[] click = pcm(click(100), 1, 16);
+        byte[] notWav = "RIFX and then some more bytes".getBytes("US-ASCII");
+        byte[] adpcm = wav(2, 1, 44100, 4, click, false);
+        byte[] float64 = wav(FLOAT, 1, 44100, 64, click, false);
+        byte[] noChannels = wav(PCM, 0, 44100, 16, click, false);
+        byte[] tooLong = wav(PCM, 1, 100, 16, new byte[2 * 100 * 31], false);
+        byte[] noData = new byte[44];
+        System.arraycopy(wav(PCM, 1, 44100, 16, new byte[0], false), 0, noData, 0, 36);
+        String[] names = {"not a WAV", "ADPCM", "64-bit float", "no channels", "31 seconds", "no data"};
+        byte[][] wavs = {notWav, adpcm, float64, noChannels, tooLong, noData};
+        for (int i = 0; i < wavs.length; i++) assertThrows(IOException.class, decoding(write(wavs[i])), names[i]);
+    }
+
+    /**
+     * A file at another rate comes out at the output's rate, the same length in time
+     */
+    @Test
+    public void decodesToTheOutputRate() throws IOException {
+        float[] sine = sine(1000, 48000, 4800);
+        byte[] out = decode(wav(PCM, 1, 48000, 16, pcm(sine, 1, 16), false));
+        assertEquals(4410, out.length / 2);
+    }
+
+    /**
+     * A sine well below both rates' Nyquist frequencies comes through resampling unchanged, away from the ends where
+     * the filter runs out of input
+     */
+    @Test
+    public void resamplesWithoutChangingWhatsBelowNyquist() {
+        for (float[] rates : new float[][] {{48000, 44100}, {22050, 44100}, {44100, 96000}}) {
+            float[] in = sine(1000, rates[0], (int) rates[0] / 10);
+            float[] out = SampleDecoder.resample(in, rates[0], rates[1]);
+            assertEquals((int) Math.ceil(in.length * rates[1] / rates[0]), out.length, "resampled length");
+            float[] expected = sine(1000, rates[1], out.length);
+            for (int i = out.length / 4; i < out.length * 3 / 4; i++) {
+                if (Math.abs(out[i] - expected[i]) > 0.01) {
+                    fail(rates[0] + " to " + rates[1] + ": sample " + i + " is " + out[i] + ", expected "
+                            + expected[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Going down in rate, a sine above the new rate's Nyquist frequency is filtered out rather than folded back down
+     * as a tone that wasn't there
+     */
+    @Test
+    public void filtersOutWhatWouldAlias() {
+        float[] out = SampleDecoder.resample(sine(20000, 48000, 4800), 48000, 22050);
+        double sumOfSquares = 0;
+        for (int i = out.length / 4; i < out.length * 3 / 4; i++) sumOfSquares += out[i] * out[i];
+        double rms = Math.sqrt(sumOfSquares / (out.length / 2));
+        assertTrue(rms < 0.01, "a 20 kHz sine resampled to 22.05 kHz is still there at " + rms + " RMS");
+    }
+
+    /**
+     * Check that a WAV decodes to the given samples, each within a tolerance
+     */
+    private void assertDecodes(short[] expected, byte[] wav, int tolerance) throws IOException {
+        byte[] pcm = SampleDecoder.decode(write(wav), TONE_FORMAT, 0.5);
+        assertEquals(expected.length * 2, pcm.length, "decoded length");
+        ByteBuffer out = ByteBuffer.wrap(pcm).order(TONE_FORMAT.isBigEndian() ? ByteOrder.BIG_ENDIAN
+                : ByteOrder.LITTLE_ENDIAN);
+        for (int i = 0; i < expected.length; i++) {
+            short sample = out.getShort(i * 2);
+            if (Math.abs(sample - expected[i]) > tolerance) {
+                fail("sample " + i + " is " + sample + ", expected " + expected[i]);
+            }
+        }
+    }
+
+    /**
+     * @return Something that decodes the given file
+     */
+    private static Executable decoding(final File file) {
+        return new Executable() {
+            @Override
+            public void execute() throws Throwable {
+                SampleDecoder.decode(file, TONE_FORMAT, 1);
+            }
+        };
+    }
+
+    /**
+     * @return The WAV decoded to the tone format at full scale
+     */
+    private byte[] decode(byte[] wav) throws IOException {
+        return SampleDecoder.decode(write(wav), TONE_FORMAT, 1);
+    }
+
+    /**
+     * @return A new file in the test's folder holding the given bytes
+     */
+    private File write(byte[] bytes) throws IOException {
+        File file = File.createTempFile("click", ".wav", folder);
+        Files.write(file.toPath(), bytes);
+        return file;
+    }
+
+    /**
+     * @return A decaying 1 kHz click at 44.1 kHz, peaking at 0.8
+     */
+    private static float[] click(int frames) {
+        float[] click = new float[frames];
+        for (int i = 0; i < frames; i++) {
+            click[i] = (float) (0.8 * Math.sin(2 * Math.PI * 1000 * i / 44100 + Math.PI / 2) * Math.exp(-i / 100d));
+        }
+        return click;
+    }
+
+    /**
+     * @return A sine of amplitude 1
+     */
+    private static float[] sine(double freq, float rate, int frames) {
+        float[] sine = new float[frames];
+        for (int i = 0; i < frames; i++) sine[i] = (float) Math.sin(2 * Math.PI * freq * i / rate);
+        return sine;
+    }
+
+    /**
+     * @param bits The sample size, or -32 for 32-bit float
+     * @return The samples as WAV data, little-endian, the same in every channel
+     */
+    private static byte[] pcm(float[] samples, int channels, int bits) {
+        ByteBuffer out = ByteBuffer.allocate(samples.length * channels * Math.abs(bits) / 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        for (float s : samples) {
+            for (int c = 0; c < channels; c++) {
+                switch (bits) {
+                    case 8: out.put((byte) (Math.round(s * 127) + 128)); break;
+                    case 16: out.putShort((short) Math.round(s * Short.MAX_VALUE)); break;
+                    case 24:
+                        int a = Math.round(s * 8388607);
+                        out.put((byte) a).put((byte) (a >> 8)).put((byte) (a >> 16));
+                        break;
+                    case 32: out.putInt((int) Math.round(s * (double) Integer.MAX_VALUE)); break;
+                    default: out.putFloat(s);
+                }
+            }
+        }
+        return out.array();
+    }
+
+    /**
+     * @param code The WAV format code. An extensible WAV gives integer PCM as its real code
+     * @param otherChunks Put an odd-sized chunk that isn't fmt or data before each of them?
+     * @return A whole WAV file
+     */
+    private static byte[] wav(int code, int channels, int rate, int bits, byte[] data, boolean otherChunks) {
+        int fmtSize = (code == EXTENSIBLE) ? 40 : 16;
+        int other = otherChunks ? 2 * (8 + 4) : 0;
+        ByteBuffer out = ByteBuffer.allocate(12 + 8 + fmtSize + 8 + data.length + other)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        out.putInt(0x46464952).putInt(out.capacity() - 8).putInt(0x45564157);
+        if (otherChunks) junk(out);
+        out.putInt(0x20746d66).putInt(fmtSize);
+        int frameSize = channels * bits / 8;
+        out.putShort((short) code).putShort((short) channels).putInt(rate).putInt(rate * frameSize)
+                .putShort((short) frameSize).putShort((short) bits);
+        if (code == EXTENSIBLE) {
+            out.putShort((short) 22).putShort((short) bits).putInt(0).putShort((short) PCM);
+            // the rest of the sub-format GUID
+            out.position(out.position() + 14);
+        }
+        if (otherChunks) junk(out);
+        out.putInt(0x61746164).putInt(data.length).put(data);
+        return out.array();
+    }
+
+    /**
+     * Put a 3-byte LIST chunk and the byte it's padded with
+     */
+    private static void junk(ByteBuffer out) {
+        out.putInt(0x5453494c).putInt(3).put((byte) 1).put((byte) 2).put((byte) 3).put((byte) 0);
+    }
+}
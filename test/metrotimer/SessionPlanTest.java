@@ -0,0 +1,57 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Reads and writes session plans the way the session box and the headless session command do
+ */
+public class SessionPlanTest {
+
+    /**
+     * Every part of every segment is read, and written back the same way
+     */
+    @Test
+    public void readsAndWritesAPlan() {
+        SessionPlan plan = SessionPlan.parse(" 92/4 2:00 x2;100/4 2:00 ; 108.5 90.5; ");
+        assertEquals(Arrays.asList(
+                new SessionPlan.Segment(92, 4, 120_000, 2),
+                new SessionPlan.Segment(100, 4, 120_000, 1),
+                new SessionPlan.Segment(108.5, 0, 90_500, 1)), plan.getSegments());
+        assertEquals("92/4 2:00 x2; 100/4 2:00; 108.5 90.5", plan.toString());
+        assertEquals(plan, SessionPlan.parse(plan.toString()));
+        assertTrue(SessionPlan.parse("  ").isEmpty(), "blank plan");
+    }
+
+    /**
+     * A tempo outside the range the app plays, or that isn't a number at all, is refused, since the audio thread
+     * would never get past a beat that never ends. So is anything else that can't be played
+     */
+    @Test
+    public void refusesWhatCantBePlayed() {
+        for (String text : new String[] {"Infinity 1:00", "NaN 1:00", "0 1:00", "9 1:00", "301 1:00", "1e9 1:00",
+                "92 0", "92/-1 1:00", "92 1:00 x0", "92 1:00 2", "92", "92 1:00 x2 x2", "fast 1:00"}) {
+            assertThrows(IllegalArgumentException.class, parsing(text), text);
+        }
+        assertEquals(10, SessionPlan.parse("10 1:00").getSegments().get(0).getBpm());
+        assertEquals(300, SessionPlan.parse("300 1:00").getSegments().get(0).getBpm());
+    }
+
+    /**
+     * @return Something that reads a plan from the given text
+     */
+    private static Executable parsing(final String text) {
+        return new Executable() {
+            @Override
+            public void execute() {
+                SessionPlan.parse(text);
+            }
+        };
+    }
+}
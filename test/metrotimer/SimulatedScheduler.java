@@ -0,0 +1,267 @@
+package metrotimer;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A Scheduler whose time only moves on when nothing is left to run at the current time, and then jumps straight to
+ * the next moment a thread is waiting for. A metronome playing to a PacedSink on one of these plays an hour in about
+ * as long as it takes to render an hour of clicks, and every beat, alarm and timer loop lands on the same frame it
+ * would in real time, every run.
+ *
+ * The threads taking part are the one that made the scheduler, any made by newThread, and any other that parks on it.
+ * Time stands still while any of them is running (or blocked on something other than this scheduler), so nothing
+ * happens behind the back of a thread that's busy. Once they're all parked, time moves to the earliest of their
+ * wake-up times and the threads due then are woken. A thread that has finished no longer takes part.
+ *
+ * Time starts at 0, and the wall clock at the epoch time given.
+ */
+public class SimulatedScheduler implements Scheduler {
+
+    /**
+     * How often a parked thread looks again, in real time, at whether time can move on. Only matters when a thread
+     * taking part dies without being made by newThread, since nothing else says so
+     */
+    private static final long POLL_NANOS = 10_000_000;
+
+    private static final long NANOS_PER_MILLI = 1_000_000;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * Every thread taking part. Guarded by lock
+     */
+    private final Map<Thread, Sleeper> sleepers = new HashMap<>();
+
+    /**
+     * The wall-clock time when nanoTime reads 0
+     */
+    private final long startMillis;
+
+    /**
+     * The current time. Only changed while holding lock
+     */
+    private volatile long now = 0;
+
+    /**
+     * Start at time 0, with the wall clock at the real time now
+     */
+    public SimulatedScheduler() {
+        this(System.currentTimeMillis());
+    }
+
+    /**
+     * @param startMillis What the wall clock reads at time 0, in milliseconds since the epoch
+     */
+    public SimulatedScheduler(long startMillis) {
+        this.startMillis = startMillis;
+        lock.lock();
+        try {
+            sleeper(Thread.currentThread());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return startMillis + now / NANOS_PER_MILLI;
+    }
+
+    @Override
+    public void parkNanos(Object blocker, long nanos) {
+        if (nanos <= 0) return;
+        lock.lock();
+        try {
+            long wakeAt = now + nanos;
+            // saturate rather than wrap around for waits as good as forever
+            parkUntil((wakeAt < now) ? Long.MAX_VALUE : wakeAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void park(Object blocker) {
+        lock.lock();
+        try {
+            parkUntil(Long.MAX_VALUE);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Wait until time reaches wakeAt or the thread is unparked or interrupted, moving time on if every other thread is
+     * waiting too. Must hold lock
+     */
+    private void parkUntil(long wakeAt) {
+        Sleeper me = sleeper(Thread.currentThread());
+        me.parked = true;
+        me.wakeAt = wakeAt;
+        try {
+            while (!me.permit && now < wakeAt) {
+                if (!moveOn()) me.woken.await(POLL_NANOS, TimeUnit.NANOSECONDS);
+            }
+        } catch (InterruptedException e) {
+            // like LockSupport, an interrupt just wakes the thread
+            Thread.currentThread().interrupt();
+        } finally {
+            me.parked = false;
+            me.permit = false;
+        }
+    }
+
+    /**
+     * If every thread taking part is parked, move time on to the earliest time one of them is waiting for and wake
+     * those due then. Must hold lock
+     *
+     * @return Did time move on?
+     */
+    private boolean moveOn() {
+        long next = Long.MAX_VALUE;
+        for (Iterator<Sleeper> it = sleepers.values().iterator(); it.hasNext(); ) {
+            Sleeper s = it.next();
+            if (s.thread.getState() == Thread.State.TERMINATED) {
+                it.remove();
+                continue;
+            }
+            // one that's been woken but hasn't got going yet is as good as running
+            if (!s.parked || s.permit || s.wakeAt <= now) return false;
+            next = Math.min(next, s.wakeAt);
+        }
+        if (next == Long.MAX_VALUE) return false;
+        now = next;
+        for (Sleeper s : sleepers.values()) {
+            if (s.wakeAt <= next) s.woken.signal();
+        }
+        return true;
+    }
+
+    @Override
+    public void unpark(Thread thread) {
+        lock.lock();
+        try {
+            Sleeper s = sleepers.get(thread);
+            if (s == null) {
+                // not waiting on this scheduler, so it can only be waiting on LockSupport
+                LockSupport.unpark(thread);
+                return;
+            }
+            s.permit = true;
+            s.woken.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Make a thread that takes part from now on, even before it's started, so that time waits for it to get going
+     */
+    @Override
+    public Thread newThread(final Runnable task, String name) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    task.run();
+                } finally {
+                    finished();
+                }
+            }
+        }, name);
+        lock.lock();
+        try {
+            sleeper(thread);
+        } finally {
+            lock.unlock();
+        }
+        return thread;
+    }
+
+    /**
+     * Stop the current thread taking part, and move time on if it was the last one running
+     */
+    private void finished() {
+        lock.lock();
+        try {
+            sleepers.remove(Thread.currentThread());
+            moveOn();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Move time on by hand, waking any parked thread that's due by then, whether or not the others are parked. For
+     * driving the clock from a thread that never parks on it
+     *
+     * @param nanos How far to move time on, in nanoseconds
+     */
+    public void advance(long nanos) {
+        lock.lock();
+        try {
+            now += nanos;
+            for (Sleeper s : sleepers.values()) {
+                if (s.parked && s.wakeAt <= now) s.woken.signal();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return What a thread is doing, starting it taking part if it isn't already. Must hold lock
+     */
+    private Sleeper sleeper(Thread thread) {
+        Sleeper s = sleepers.get(thread);
+        if (s == null) {
+            s = new Sleeper(thread, lock.newCondition());
+            sleepers.put(thread, s);
+        }
+        return s;
+    }
+
+    /**
+     * One thread taking part. Guarded by lock
+     */
+    private static final class Sleeper {
+
+        final Thread thread;
+
+        /**
+         * Signalled when the thread's time comes or it's unparked
+         */
+        final Condition woken;
+
+        /**
+         * Is the thread parked on the scheduler?
+         */
+        boolean parked = false;
+
+        /**
+         * Has the thread been unparked since it last parked?
+         */
+        boolean permit = false;
+
+        /**
+         * The time the thread is parked until
+         */
+        long wakeAt;
+
+        Sleeper(Thread thread, Condition woken) {
+            this.thread = thread;
+            this.woken = woken;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package metrotimer;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Plays the metronome for hours of simulated time, with a looping timer going off over it, on a SimulatedScheduler
+ * and a PacedSink, then reads back the practice log for where every beat, alarm and timer loop landed. Wired up the
+ * way the app wires a metronome, so everything from the controller down to the lookahead's writer takes part.
+ */
+final class Simulation {
+
+    private static final long NANOS_PER_MINUTE = 60_000_000_000L;
+
+    final int hours;
+    final double bpm;
+    final int timerMinutes;
+
+    /**
+     * The frames of the events logged, in the order they were logged
+     */
+    final List<Long> beats = new ArrayList<>();
+    final List<Long> alarms = new ArrayList<>();
+    final List<Long> restarts = new ArrayList<>();
+
+    /**
+     * The number of events the log had no room for
+     */
+    long dropped;
+
+    /**
+     * How long the simulation took in real time, in nanoseconds
+     */
+    long elapsedNanos;
+
+    /**
+     * @param hours How long to play for, in simulated time
+     * @param bpm The tempo
+     * @param timerMinutes How long the timer's loop is
+     */
+    private Simulation(int hours, double bpm, int timerMinutes) {
+        this.hours = hours;
+        this.bpm = bpm;
+        this.timerMinutes = timerMinutes;
+    }
+
+    /**
+     * Play for hours of simulated time and read back what was logged
+     *
+     * @param lookahead Play through a lookahead, as a sound card's line is played to, rather than to the sink itself?
+     */
+    static Simulation run(int hours, double bpm, int timerMinutes, boolean lookahead) throws IOException {
+        Simulation simulation = new Simulation(hours, bpm, timerMinutes);
+        File logFile = File.createTempFile("simulation", ".log");
+        // the log only gets its header once its first writing turn opens it, so it mustn't look like an old log
+        logFile.delete();
+        try {
+            simulation.play(logFile, lookahead);
+            PracticeLog.read(logFile, new EventRing.Reader() {
+                @Override
+                public void event(int kind, long millis, long frame, float value) {
+                    if (kind == PracticeLog.BEAT) simulation.beats.add(frame);
+                    else if (kind == PracticeLog.ALARM) simulation.alarms.add(frame);
+                    else if (kind == PracticeLog.TIMER_RESTART) simulation.restarts.add(frame);
+                }
+            });
+        } finally {
+            logFile.delete();
+        }
+        return simulation;
+    }
+
+    private void play(File logFile, boolean lookahead) {
+        SimulatedScheduler scheduler = new SimulatedScheduler();
+        Model model = new Model();
+        AudioSink sink = new PacedSink(Audio.defaultFormat(), scheduler);
+        if (lookahead) sink = Audio.withLookahead(sink, scheduler);
+        Audio audio = new Audio(sink, scheduler);
+        TimerController timerController = new TimerController(scheduler);
+        Controller controller = new Controller();
+        timerController.setAudio(audio);
+        timerController.setModel(model);
+        controller.setAudio(audio);
+        controller.setModel(model);
+        controller.setTimerController(timerController);
+        audio.setModel(model);
+        PracticeLog log = PracticeLog.start(logFile, audio.getControl());
+        audio.setPracticeLog(log);
+        timerController.setPracticeLog(log);
+
+        model.setBpm(bpm);
+        model.setTimerAndSavedTime(timerMinutes, 0);
+        model.setTimerLooping(true);
+        model.setTimerSnapToDownbeat(false);
+
+        long started = System.nanoTime();
+        controller.handleMetroClick();
+        controller.handleTimerClick();
+        for (int minute = 0; minute < hours * 60; minute++) {
+            scheduler.parkNanos(log, NANOS_PER_MINUTE);
+            // keep the log up with the rings, since simulated time doesn't wait for its writing turns
+            log.flush();
+        }
+        controller.handleTimerClick();
+        controller.handleMetroClick();
+        // let the output thread play out what's left and stop
+        scheduler.parkNanos(log, NANOS_PER_MINUTE);
+        elapsedNanos = System.nanoTime() - started;
+        timerController.shutDown();
+        audio.shutDown();
+        log.close();
+        dropped = log.getDropped();
+    }
+
+    /**
+     * @return The length of a beat, in frames
+     */
+    double beatFrames() {
+        return Audio.defaultFormat().getSampleRate() * 60 / bpm;
+    }
+
+    /**
+     * @return The length of the timer's loop, in frames
+     */
+    long loopFrames() {
+        return (long) Audio.defaultFormat().getSampleRate() * 60 * timerMinutes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d h at %s BPM with a %d minute timer", hours, bpm, timerMinutes);
+    }
+}
@@ -0,0 +1,90 @@
+package metrotimer;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Plays the metronome and a looping timer for a day of simulated time, and for a while at a tempo and timer length
+ * that don't divide evenly into frames, and checks that every beat, alarm and timer loop landed on the frame it
+ * should have
+ */
+public class SimulationTest {
+
+    /**
+     * How long the long run plays for, in simulated hours. Set with -Dmetrotimer.simulationHours
+     */
+    private static final int HOURS = Integer.getInteger("metrotimer.simulationHours", 24);
+
+    private static List<Simulation> simulations;
+
+    @BeforeAll
+    public static void simulate() throws Exception {
+        simulations = Arrays.asList(
+                Simulation.run(HOURS, 120, 30, false),
+                // through a lookahead like a sound card's line is, so its writer thread takes part too
+                Simulation.run(2, 97.3, 7, true));
+        for (Simulation s : simulations) {
+            System.out.printf("Simulated %s in %.2f s%n", s, s.elapsedNanos / 1e9);
+        }
+    }
+
+    /**
+     * Every beat starts on the frame its exact position falls in, or the one before if adding up the beat lengths left
+     * it a hair short of a whole frame, so the beat never drifts however long it plays
+     */
+    @Test
+    public void beatsLandOnTheirFrames() {
+        for (Simulation s : simulations) {
+            int expectedBeats = (int) (s.hours * 3600 * s.bpm / 60);
+            assertTrue(s.beats.size() >= expectedBeats, s + ": " + s.beats.size() + " beats, expected at least "
+                    + expectedBeats);
+            for (int i = 1; i < s.beats.size(); i++) {
+                double expected = s.beats.get(0) + i * s.beatFrames();
+                long frame = s.beats.get(i);
+                if (frame < Math.floor(expected - 1e-6) || frame > Math.floor(expected)) {
+                    fail(s + ": beat " + i + " on frame " + frame + ", expected " + expected);
+                }
+            }
+        }
+    }
+
+    /**
+     * The timer goes off once a loop, exactly a loop's worth of frames after the last time
+     */
+    @Test
+    public void alarmsComeOneLoopApart() {
+        for (Simulation s : simulations) {
+            assertEquals(s.hours * 60 / s.timerMinutes, s.alarms.size(), s + ": alarms");
+            for (int i = 1; i < s.alarms.size(); i++) {
+                assertEquals(s.loopFrames(), s.alarms.get(i) - s.alarms.get(i - 1), s + ": frames before alarm " + i);
+            }
+        }
+    }
+
+    /**
+     * Each loop of the timer starts again on the frame its alarm went off on
+     */
+    @Test
+    public void timerLoopsRestartOnTheirAlarms() {
+        for (Simulation s : simulations) {
+            assertEquals(s.alarms, s.restarts, s + ": frames of timer loops and their alarms");
+        }
+    }
+
+    /**
+     * The practice log keeps up, so the checks above saw everything that was played
+     */
+    @Test
+    public void nothingDropped() {
+        for (Simulation s : simulations) {
+            assertEquals(0, s.dropped, s + ": events dropped");
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package metrotimer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Reads and writes tempo ramps, and checks that the beats they place keep to the tempo they say they're at
+ */
+public class TempoRampTest {
+
+    /**
+     * Every part of a ramp is read, and written back the same way
+     */
+    @Test
+    public void readsAndWritesARamp() {
+        TempoRamp ramp = TempoRamp.parse(" 80-140.5 10:00 exp ");
+        assertEquals(new TempoRamp(80, 140.5, 600_000, TempoRamp.Curve.EXPONENTIAL), ramp);
+        assertEquals("80-140.5 10:00 exp", ramp.toString());
+        assertEquals(ramp, TempoRamp.parse(ramp.toString()));
+        assertEquals(new TempoRamp(120, 60, 30_500, TempoRamp.Curve.LINEAR), TempoRamp.parse("120-60 30.5"));
+    }
+
+    /**
+     * A tempo at either end outside the range the app plays, or that isn't a number at all, is refused, since past
+     * the end of the ramp a beat would never end. So is anything else that can't be played
+     */
+    @Test
+    public void refusesWhatCantBePlayed() {
+        for (String text : new String[] {"80-Infinity 1:00", "Infinity-80 1:00", "80-NaN 1:00", "80-0 1:00",
+                "80-1e9 1:00", "5-80 1:00", "80-301 1:00", "80-120 0", "80-120 1:00 log", "80 1:00", "80-120"}) {
+            assertThrows(IllegalArgumentException.class, parsing(text), text);
+        }
+        assertEquals(new TempoRamp(10, 300, 1000, TempoRamp.Curve.LINEAR), TempoRamp.parse("10-300 1"));
+    }
+
+    /**
+     * Each beat lasts somewhere between a beat at the tempo the ramp is at when it starts and one at the tempo when
+     * it ends. The ramp gets through as many beats as its average tempo says by the end of its duration, and holds
+     * its end tempo after
+     */
+    @Test
+    public void beatsKeepToTheTempo() {
+        for (TempoRamp ramp : new TempoRamp[] {TempoRamp.parse("80-140 2:00 lin"), TempoRamp.parse("80-140 2:00 exp"),
+                TempoRamp.parse("180-60 0:45 lin"), TempoRamp.parse("180-60 0:45 exp"),
+                TempoRamp.parse("100-100 1:00 exp")}) {
+            for (int beat = 0; beat < 400; beat++) {
+                double start = ramp.secondsToBeat(beat);
+                double end = ramp.secondsToBeat(beat + 1);
+                double a = 60 / ramp.bpmAt(start);
+                double b = 60 / ramp.bpmAt(end);
+                if (end - start < Math.min(a, b) - 1e-9 || end - start > Math.max(a, b) + 1e-9) {
+                    fail(ramp + ": beat " + beat + " lasts " + (end - start) + " s, between " + a + " and " + b);
+                }
+            }
+            double seconds = ramp.getDurationMs() / 1000d;
+            double from = ramp.getStartBpm();
+            double to = ramp.getEndBpm();
+            // the mean tempo: the log mean for an exponential ramp, which is the plain mean when it doesn't change
+            double mean = (ramp.getCurve() == TempoRamp.Curve.LINEAR || from == to)
+                    ? (from + to) / 2 : (to - from) / Math.log(to / from);
+            double beats = mean * seconds / 60;
+            assertEquals(seconds, ramp.secondsToBeat(beats), 1e-9, ramp + ": end of the ramp");
+            assertEquals(from, ramp.bpmAt(0), ramp + ": tempo at the start");
+            assertEquals(to, ramp.bpmAt(seconds), ramp + ": tempo at the end");
+            assertEquals(to, ramp.bpmAt(seconds + 60), ramp + ": tempo after the end");
+            assertEquals(600 / to, ramp.secondsToBeat(beats + 20) - ramp.secondsToBeat(beats + 10), 1e-9,
+                    ramp + ": 10 beats after the end");
+        }
+    }
+
+    /**
+     * @return Something that reads a ramp from the given text
+     */
+    private static Executable parsing(final String text) {
+        return new Executable() {
+            @Override
+            public void execute() {
+                TempoRamp.parse(text);
+            }
+        };
+    }
+}